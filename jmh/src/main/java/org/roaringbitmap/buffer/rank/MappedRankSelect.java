@@ -0,0 +1,90 @@
+package org.roaringbitmap.buffer.rank;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rank and select over a mapped bitmap, with and without the cumulative cardinalities following
+ * the serialized bitmap.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class MappedRankSelect {
+
+  @Param({"100", "10000", "60000"})
+  int containers;
+
+  ImmutableRoaringBitmap plain;
+  ImmutableRoaringBitmap indexed;
+  int[] values;
+  int[] ranks;
+
+  @Setup(Level.Trial)
+  public void init() throws IOException {
+    Random random = new Random(1234);
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    for (int key = 0; key < containers; ++key) {
+      for (int i = 0; i < 100; ++i) {
+        bitmap.add((key << 16) + random.nextInt(1 << 16));
+      }
+    }
+    ByteArrayOutputStream plainBytes = new ByteArrayOutputStream();
+    bitmap.serialize(new DataOutputStream(plainBytes));
+    plain = new ImmutableRoaringBitmap(ByteBuffer.wrap(plainBytes.toByteArray()));
+    ByteArrayOutputStream indexedBytes = new ByteArrayOutputStream();
+    bitmap.serializeWithCumulativeCardinalities(new DataOutputStream(indexedBytes));
+    indexed = new ImmutableRoaringBitmap(ByteBuffer.wrap(indexedBytes.toByteArray()));
+    values = new int[1000];
+    ranks = new int[1000];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = random.nextInt(containers << 16);
+      ranks[i] = random.nextInt(bitmap.getCardinality());
+    }
+  }
+
+  @Benchmark
+  public long rankPlain() {
+    return rank(plain);
+  }
+
+  @Benchmark
+  public long rankIndexed() {
+    return rank(indexed);
+  }
+
+  @Benchmark
+  public long selectPlain() {
+    return select(plain);
+  }
+
+  @Benchmark
+  public long selectIndexed() {
+    return select(indexed);
+  }
+
+  private long rank(ImmutableRoaringBitmap bitmap) {
+    long total = 0;
+    for (int value : values) {
+      total += bitmap.rankLong(value);
+    }
+    return total;
+  }
+
+  private long select(ImmutableRoaringBitmap bitmap) {
+    long total = 0;
+    for (int rank : ranks) {
+      total += bitmap.select(rank);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,61 @@
+package org.roaringbitmap.concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.roaringbitmap.ConcurrentRoaringBitmap;
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Many threads adding random values spread over the given number of keys (high 16 bits), to a
+ * RoaringBitmap behind a global lock or to a ConcurrentRoaringBitmap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(32)
+public class ConcurrentWritersBenchmark {
+
+  @Param({"16", "1024", "65536"})
+  public int keys;
+
+  @Param({"64", "1024"})
+  public int stripes;
+
+  private RoaringBitmap locked;
+  private ConcurrentRoaringBitmap concurrent;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    locked = new RoaringBitmap();
+    concurrent = new ConcurrentRoaringBitmap(stripes);
+  }
+
+  private int randomValue() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return (random.nextInt(keys) << 16) | random.nextInt(1 << 16);
+  }
+
+  @Benchmark
+  public boolean globalLock() {
+    int value = randomValue();
+    synchronized (locked) {
+      return locked.checkedAdd(value);
+    }
+  }
+
+  @Benchmark
+  public boolean striped() {
+    return concurrent.checkedAdd(randomValue());
+  }
+}
@@ -0,0 +1,115 @@
+package org.roaringbitmap.iteration;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.BatchIterator;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading every value of a bitmap through getIntIterator() with reading it through
+ * getBatchIterator().
+ */
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(jvmArgsPrepend = "-XX:-TieredCompilation")
+public class BatchIteratorBenchmark {
+
+  @Param({"0.001", "0.01", "0.1", "0.5"})
+  double density;
+
+  @Param({"false", "true"})
+  boolean runOptimize;
+
+  @Param({"256"})
+  int bufferSize;
+
+  private RoaringBitmap bitmap;
+  private ImmutableRoaringBitmap immutableBitmap;
+  private int[] buffer;
+
+  @Setup
+  public void init() throws IOException {
+    bitmap = new RoaringBitmap();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int universe = 1 << 24;
+    final int cardinality = (int) (density * universe);
+    // mix of random values and long runs so that every container type shows up
+    while (bitmap.getCardinality() < cardinality) {
+      int start = random.nextInt(universe);
+      if (random.nextInt(4) == 0) {
+        bitmap.add((long) start, Math.min(universe, start + random.nextInt(512) + 1L));
+      } else {
+        bitmap.add(start);
+      }
+    }
+    if (runOptimize) {
+      bitmap.runOptimize();
+    }
+    MutableRoaringBitmap mutable = bitmap.toMutableRoaringBitmap();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    mutable.serialize(dos);
+    dos.close();
+    immutableBitmap = new ImmutableRoaringBitmap(ByteBuffer.wrap(bos.toByteArray()));
+    buffer = new int[bufferSize];
+  }
+
+  @Benchmark
+  public int intIterator() {
+    IntIterator it = bitmap.getIntIterator();
+    int result = 0;
+    while (it.hasNext()) {
+      result ^= it.next();
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int batchIterator() {
+    BatchIterator it = bitmap.getBatchIterator();
+    int[] buffer = this.buffer;
+    int result = 0;
+    while (it.hasNext()) {
+      int n = it.nextBatch(buffer);
+      for (int i = 0; i < n; ++i) {
+        result ^= buffer[i];
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int intIteratorBuffer() {
+    IntIterator it = immutableBitmap.getIntIterator();
+    int result = 0;
+    while (it.hasNext()) {
+      result ^= it.next();
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int batchIteratorBuffer() {
+    BatchIterator it = immutableBitmap.getBatchIterator();
+    int[] buffer = this.buffer;
+    int result = 0;
+    while (it.hasNext()) {
+      int n = it.nextBatch(buffer);
+      for (int i = 0; i < n; ++i) {
+        result ^= buffer[i];
+      }
+    }
+    return result;
+  }
+}
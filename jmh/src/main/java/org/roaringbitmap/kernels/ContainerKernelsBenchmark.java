@@ -0,0 +1,103 @@
+package org.roaringbitmap.kernels;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.ContainerKernels;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares implementations of {@link ContainerKernels}, for instance
+ * -p kernels=org.roaringbitmap.ScalarContainerKernels,com.example.VectorContainerKernels (the
+ * latter being on the classpath of the benchmarks).
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class ContainerKernelsBenchmark {
+
+  @Param({"org.roaringbitmap.ScalarContainerKernels"})
+  String kernels;
+
+  @Param({"64", "1024", "4096"})
+  int arrayLength;
+
+  ContainerKernels implementation;
+  short[] set1;
+  short[] set2;
+  short[] buffer;
+  long[] bitmap1;
+  long[] bitmap2;
+  long[] output;
+
+  @Setup(Level.Trial)
+  public void init() throws ReflectiveOperationException {
+    implementation = (ContainerKernels) Class.forName(kernels).getConstructor().newInstance();
+    Random random = new Random(1234);
+    set1 = sortedValues(random, arrayLength);
+    set2 = sortedValues(random, 4096);
+    buffer = new short[4096];
+    bitmap1 = new long[1 << 10];
+    bitmap2 = new long[1 << 10];
+    for (int k = 0; k < bitmap1.length; ++k) {
+      bitmap1[k] = random.nextLong();
+      bitmap2[k] = random.nextLong();
+    }
+    output = new long[1 << 10];
+  }
+
+  private static short[] sortedValues(Random random, int count) {
+    int[] values = random.ints(0, 1 << 16).distinct().limit(count).sorted().toArray();
+    short[] shorts = new short[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      shorts[i] = (short) values[i];
+    }
+    return shorts;
+  }
+
+  @Benchmark
+  public int intersect() {
+    return implementation.intersect(set1, set1.length, set2, set2.length, buffer);
+  }
+
+  @Benchmark
+  public int intersectionCardinality() {
+    return implementation.intersectionCardinality(set1, set1.length, set2, set2.length);
+  }
+
+  @Benchmark
+  public int andCardinality() {
+    return implementation.andCardinality(bitmap1, bitmap2);
+  }
+
+  @Benchmark
+  public long[] and() {
+    implementation.and(bitmap1, bitmap2, output);
+    return output;
+  }
+
+  @Benchmark
+  public int or() {
+    return implementation.or(bitmap1, bitmap2, output);
+  }
+
+  @Benchmark
+  public long[] xor() {
+    implementation.xor(bitmap1, bitmap2, output);
+    return output;
+  }
+
+  @Benchmark
+  public int cardinality() {
+    return implementation.cardinality(bitmap1);
+  }
+
+  @Benchmark
+  public long[] setBits() {
+    Arrays.fill(output, 0L);
+    implementation.setBits(set1, set1.length, output);
+    return output;
+  }
+}
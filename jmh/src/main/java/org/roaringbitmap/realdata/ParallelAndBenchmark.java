@@ -0,0 +1,123 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.ParallelAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.BufferParallelAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+/**
+ * Compares the sequential and parallel wide AND/ANDNOT aggregations. The densest bitmaps of
+ * each dataset are aggregated, so that many containers share a key; varying the width and the
+ * parallelism shows from which point forking per key group pays off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelAndBenchmark {
+
+  private static final Cache<String, RoaringBitmap[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, DIMENSION_008,
+          DIMENSION_003, DIMENSION_033, USCENSUS2000,
+          WEATHER_SEPT_85, WIKILEAKS_NOQUOTES, CENSUS_INCOME_SRT, CENSUS1881_SRT, WEATHER_SEPT_85_SRT,
+          WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  @Param({"2", "8", "32", "128"})
+  public int width;
+
+  @Param({"1", "4", "8"})
+  public int parallelism;
+
+  ForkJoinPool pool;
+  RoaringBitmap[] bitmaps;
+  ImmutableRoaringBitmap[] immutableRoaringBitmaps;
+  RoaringBitmap[] subtrahends;
+  ImmutableRoaringBitmap[] immutableSubtrahends;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    RoaringBitmap[] all = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RoaringBitmap::bitmapOf)
+              .toArray(RoaringBitmap[]::new);
+    });
+    bitmaps = Arrays.stream(all)
+            .sorted(Comparator.comparingLong(RoaringBitmap::getLongCardinality).reversed())
+            .limit(width)
+            .toArray(RoaringBitmap[]::new);
+    immutableRoaringBitmaps = Arrays.stream(bitmaps).map(RoaringBitmap::toMutableRoaringBitmap)
+            .toArray(ImmutableRoaringBitmap[]::new);
+    subtrahends = Arrays.copyOfRange(bitmaps, 1, bitmaps.length);
+    immutableSubtrahends = Arrays.copyOfRange(immutableRoaringBitmaps, 1, bitmaps.length);
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Benchmark
+  public RoaringBitmap fastAnd() {
+    return FastAggregation.and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap parallelAnd() {
+    return ParallelAggregation.and(pool, bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap fastAndNot() {
+    return RoaringBitmap.andNot(bitmaps[0], FastAggregation.or(subtrahends));
+  }
+
+  @Benchmark
+  public RoaringBitmap parallelAndNot() {
+    return ParallelAggregation.andNot(pool, bitmaps[0], subtrahends);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferFastAnd() {
+    return BufferFastAggregation.and(immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferParallelAnd() {
+    return BufferParallelAggregation.and(pool, immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferFastAndNot() {
+    return ImmutableRoaringBitmap.andNot(immutableRoaringBitmaps[0],
+            BufferFastAggregation.or(immutableSubtrahends));
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferParallelAndNot() {
+    return BufferParallelAggregation.andNot(pool, immutableRoaringBitmaps[0],
+            immutableSubtrahends);
+  }
+
+}
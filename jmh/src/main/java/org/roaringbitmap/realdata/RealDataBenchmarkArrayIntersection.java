@@ -0,0 +1,95 @@
+package org.roaringbitmap.realdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.IntersectionStrategy;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Intersects the array containers sharing a key in consecutive bitmaps of each dataset, with each
+ * {@link IntersectionStrategy}, to tune the thresholds of the adaptive strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkArrayIntersection {
+
+  @Param({"MERGE", "GALLOP", "TWO_SIDED_GALLOP", "BINARY_PROBE", "ADAPTIVE"})
+  public IntersectionStrategy strategy;
+
+  private final List<short[]> left = new ArrayList<>();
+  private final List<short[]> right = new ArrayList<>();
+  private final short[] buffer = new short[4096];
+
+  @Setup
+  public void setup(RealDataRoaringOnlyBenchmarkState bs) {
+    left.clear();
+    right.clear();
+    for (int i = 0; i + 1 < bs.bitmaps.size(); ++i) {
+      TreeMap<Integer, short[]> arrays1 = arrays(bs.bitmaps.get(i));
+      TreeMap<Integer, short[]> arrays2 = arrays(bs.bitmaps.get(i + 1));
+      for (Integer key : arrays1.keySet()) {
+        if (arrays2.containsKey(key)) {
+          left.add(arrays1.get(key));
+          right.add(arrays2.get(key));
+        }
+      }
+    }
+  }
+
+  // the low 16 bits of the values of each key holding at most 4096 values
+  private static TreeMap<Integer, short[]> arrays(RoaringBitmap bitmap) {
+    TreeMap<Integer, List<Short>> values = new TreeMap<>();
+    IntIterator it = bitmap.getIntIterator();
+    while (it.hasNext()) {
+      int value = it.next();
+      values.computeIfAbsent(value >>> 16, k -> new ArrayList<>()).add((short) value);
+    }
+    TreeMap<Integer, short[]> arrays = new TreeMap<>();
+    values.forEach((key, lows) -> {
+      if (lows.size() <= 4096) {
+        short[] array = new short[lows.size()];
+        for (int j = 0; j < array.length; ++j) {
+          array[j] = lows.get(j);
+        }
+        arrays.put(key, array);
+      }
+    });
+    return arrays;
+  }
+
+  @Benchmark
+  public int intersect() {
+    int total = 0;
+    for (int i = 0; i < left.size(); ++i) {
+      short[] set1 = left.get(i);
+      short[] set2 = right.get(i);
+      total += strategy.intersect(set1, set1.length, set2, set2.length, buffer);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public int intersectionCardinality() {
+    int total = 0;
+    for (int i = 0; i < left.size(); ++i) {
+      short[] set1 = left.get(i);
+      short[] set2 = right.get(i);
+      total += strategy.intersectionCardinality(set1, set1.length, set2, set2.length);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,63 @@
+package org.roaringbitmap.realdata;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.roaringbitmap.BitmapExpression;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Evaluates (A OR B OR C) AND NOT (D OR E) AND F over consecutive bitmaps of each dataset, by
+ * materializing every intermediate bitmap or with a fused BitmapExpression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkExpression {
+
+  @Benchmark
+  public long materialized(RealDataRoaringOnlyBenchmarkState bs) {
+    List<RoaringBitmap> bitmaps = bs.bitmaps;
+    long total = 0;
+    for (int i = 0; i + 6 <= bitmaps.size(); i += 6) {
+      RoaringBitmap abc = FastAggregation.or(bitmaps.get(i), bitmaps.get(i + 1),
+          bitmaps.get(i + 2));
+      RoaringBitmap de = RoaringBitmap.or(bitmaps.get(i + 3), bitmaps.get(i + 4));
+      total += RoaringBitmap.and(RoaringBitmap.andNot(abc, de), bitmaps.get(i + 5))
+          .getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fused(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (int i = 0; i + 6 <= bs.bitmaps.size(); i += 6) {
+      total += expression(bs.bitmaps, i).evaluate().getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long fusedCardinality(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (int i = 0; i + 6 <= bs.bitmaps.size(); i += 6) {
+      total += expression(bs.bitmaps, i).cardinality();
+    }
+    return total;
+  }
+
+  private static BitmapExpression expression(List<RoaringBitmap> bitmaps, int i) {
+    return BitmapExpression.and(
+        BitmapExpression.of(bitmaps.get(i + 5)),
+        BitmapExpression.andNot(
+            BitmapExpression.or(bitmaps.get(i), bitmaps.get(i + 1), bitmaps.get(i + 2)),
+            BitmapExpression.or(bitmaps.get(i + 3), bitmaps.get(i + 4))));
+  }
+
+}
@@ -0,0 +1,51 @@
+package org.roaringbitmap.realdata;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Computes A OR (NOT B within [0, n)) over consecutive bitmaps of each dataset, n being past the
+ * largest value of both bitmaps, by flipping B first or with the fused orNot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkOrNot {
+
+  @Benchmark
+  public long flipAndOr(RealDataRoaringOnlyBenchmarkState bs) {
+    List<RoaringBitmap> bitmaps = bs.bitmaps;
+    long total = 0;
+    for (int i = 0; i + 1 < bitmaps.size(); ++i) {
+      RoaringBitmap x1 = bitmaps.get(i);
+      RoaringBitmap x2 = bitmaps.get(i + 1);
+      total += RoaringBitmap.or(x1, RoaringBitmap.flip(x2, 0L, rangeEnd(x1, x2)))
+          .getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long orNot(RealDataRoaringOnlyBenchmarkState bs) {
+    List<RoaringBitmap> bitmaps = bs.bitmaps;
+    long total = 0;
+    for (int i = 0; i + 1 < bitmaps.size(); ++i) {
+      RoaringBitmap x1 = bitmaps.get(i);
+      RoaringBitmap x2 = bitmaps.get(i + 1);
+      total += RoaringBitmap.orNot(x1, x2, rangeEnd(x1, x2)).getLongCardinality();
+    }
+    return total;
+  }
+
+  private static long rangeEnd(RoaringBitmap x1, RoaringBitmap x2) {
+    long last1 = x1.isEmpty() ? -1 : Integer.toUnsignedLong(x1.last());
+    long last2 = x2.isEmpty() ? -1 : Integer.toUnsignedLong(x2.last());
+    return Math.max(last1, last2) + 1;
+  }
+}
@@ -0,0 +1,85 @@
+package org.roaringbitmap.realdata;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.roaringbitmap.PersistentRoaringBitmap;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Creates a new version of each bitmap holding a value past its last one, while keeping the
+ * previous version: with a deep clone, with a copy-on-write snapshot, or with a persistent bitmap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkPersistent {
+
+  @State(Scope.Benchmark)
+  public static class PersistentState {
+
+    List<PersistentRoaringBitmap> bitmaps;
+
+    @Setup
+    public void setup(RealDataRoaringOnlyBenchmarkState bs) {
+      bitmaps = bs.bitmaps.stream()
+          .map(PersistentRoaringBitmap::fromRoaringBitmap)
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Benchmark
+  public long cloneThenAdd(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      RoaringBitmap version = bitmap.clone();
+      version.add(bitmap.isEmpty() ? 0 : bitmap.last() + 1);
+      total += version.getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long snapshotThenAdd(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      RoaringBitmap version = bitmap.snapshot();
+      version.add(bitmap.isEmpty() ? 0 : bitmap.last() + 1);
+      total += version.getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long persistentAdd(RealDataRoaringOnlyBenchmarkState bs, PersistentState ps) {
+    long total = 0;
+    for (int i = 0; i < ps.bitmaps.size(); ++i) {
+      RoaringBitmap bitmap = bs.bitmaps.get(i);
+      PersistentRoaringBitmap version =
+          ps.bitmaps.get(i).add(bitmap.isEmpty() ? 0 : bitmap.last() + 1);
+      total += version.getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public int persistentCompareVersions(RealDataRoaringOnlyBenchmarkState bs, PersistentState ps) {
+    int changed = 0;
+    for (int i = 0; i < ps.bitmaps.size(); ++i) {
+      RoaringBitmap bitmap = bs.bitmaps.get(i);
+      PersistentRoaringBitmap previous = ps.bitmaps.get(i);
+      if (!previous.equals(previous.add(bitmap.isEmpty() ? 0 : bitmap.first()))) {
+        ++changed;
+      }
+    }
+    return changed;
+  }
+}
@@ -0,0 +1,65 @@
+package org.roaringbitmap.realdata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Counts the values of each bitmap falling in the second quarter of its universe, and checks
+ * whether each bitmap holds more than 100 values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkRangeCardinality {
+
+  private static final long THRESHOLD = 100;
+
+  @Benchmark
+  public long rankDifference(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      int end = bitmap.isEmpty() ? 1 : (bitmap.last() >>> 1) + 1;
+      int start = end >>> 1;
+      total += bitmap.rankLong(end - 1) - (start == 0 ? 0 : bitmap.rankLong(start - 1));
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long rangeCardinality(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      int end = bitmap.isEmpty() ? 1 : (bitmap.last() >>> 1) + 1;
+      int start = end >>> 1;
+      total += bitmap.rangeCardinality(start, end);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public int thresholdWithCardinality(RealDataRoaringOnlyBenchmarkState bs) {
+    int count = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      if (bitmap.getLongCardinality() > THRESHOLD) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int cardinalityExceeds(RealDataRoaringOnlyBenchmarkState bs) {
+    int count = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      if (bitmap.cardinalityExceeds(THRESHOLD)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,91 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+/**
+ * Computes the union of all the serialized bitmaps of each dataset, either by constructing an
+ * ImmutableRoaringBitmap over each buffer or by reading the buffers with serializedOr.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkSerializedOr {
+
+  private static final Cache<String, ByteBuffer[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, DIMENSION_008,
+          DIMENSION_003, DIMENSION_033, USCENSUS2000,
+          WEATHER_SEPT_85, WIKILEAKS_NOQUOTES, CENSUS_INCOME_SRT, CENSUS1881_SRT, WEATHER_SEPT_85_SRT,
+          WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  ByteBuffer[] buffers;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    buffers = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RealDataBenchmarkSerializedOr::serialize)
+              .toArray(ByteBuffer[]::new);
+    });
+  }
+
+  private static ByteBuffer serialize(int[] values) {
+    MutableRoaringBitmap bitmap = MutableRoaringBitmap.bitmapOf(values);
+    bitmap.runOptimize();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DataOutputStream dos = new DataOutputStream(bos)) {
+      bitmap.serialize(dos);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] bytes = bos.toByteArray();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    return buffer;
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap constructAndOr() {
+    Iterator<ImmutableRoaringBitmap> bitmaps = Arrays.stream(buffers)
+            .map(ImmutableRoaringBitmap::new)
+            .iterator();
+    return BufferFastAggregation.or(bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap constructAndHorizontalOr() {
+    Iterator<ImmutableRoaringBitmap> bitmaps = Arrays.stream(buffers)
+            .map(ImmutableRoaringBitmap::new)
+            .iterator();
+    return BufferFastAggregation.horizontal_or(bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap serializedOr() {
+    return BufferFastAggregation.serializedOr(Arrays.asList(buffers).iterator());
+  }
+
+}
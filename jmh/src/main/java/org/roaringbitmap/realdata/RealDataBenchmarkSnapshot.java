@@ -0,0 +1,41 @@
+package org.roaringbitmap.realdata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.realdata.state.RealDataRoaringOnlyBenchmarkState;
+
+/**
+ * Copies each bitmap before adding a value past its last one, with a deep clone or with a
+ * copy-on-write snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkSnapshot {
+
+  @Benchmark
+  public long cloneThenAdd(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      RoaringBitmap copy = bitmap.clone();
+      copy.add(bitmap.isEmpty() ? 0 : bitmap.last() + 1);
+      total += copy.getLongCardinality();
+    }
+    return total;
+  }
+
+  @Benchmark
+  public long snapshotThenAdd(RealDataRoaringOnlyBenchmarkState bs) {
+    long total = 0;
+    for (RoaringBitmap bitmap : bs.bitmaps) {
+      RoaringBitmap copy = bitmap.snapshot();
+      copy.add(bitmap.isEmpty() ? 0 : bitmap.last() + 1);
+      total += copy.getLongCardinality();
+    }
+    return total;
+  }
+}
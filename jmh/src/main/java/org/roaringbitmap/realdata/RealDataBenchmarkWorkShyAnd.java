@@ -0,0 +1,109 @@
+package org.roaringbitmap.realdata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.ZipRealDataRetriever;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.roaringbitmap.RealDataset.*;
+
+/**
+ * Compares the pairwise AND aggregation with workShyAnd, which intersects the keys first and the
+ * containers of each common key in a single buffer. The densest bitmaps of each dataset are
+ * aggregated, so that many containers share a key. The last benchmarks only keep the first
+ * thousand values of the intersection, either by limiting the full result or by bounding the
+ * aggregation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RealDataBenchmarkWorkShyAnd {
+
+  private static final Cache<String, RoaringBitmap[]> DATASET_CACHE =
+          CacheBuilder.newBuilder().maximumSize(1).build();
+
+  private static final int LIMIT = 1000;
+
+  @Param({// putting the data sets in alpha. order
+          CENSUS_INCOME, CENSUS1881, DIMENSION_008,
+          DIMENSION_003, DIMENSION_033, USCENSUS2000,
+          WEATHER_SEPT_85, WIKILEAKS_NOQUOTES, CENSUS_INCOME_SRT, CENSUS1881_SRT, WEATHER_SEPT_85_SRT,
+          WIKILEAKS_NOQUOTES_SRT
+  })
+  public String dataset;
+
+  @Param({"2", "8", "32", "128"})
+  public int width;
+
+  RoaringBitmap[] bitmaps;
+  ImmutableRoaringBitmap[] immutableRoaringBitmaps;
+  long[] buffer = new long[1 << 10];
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    RoaringBitmap[] all = DATASET_CACHE.get(dataset, () -> {
+      System.out.println("Loading" + dataset);
+      ZipRealDataRetriever dataRetriever = new ZipRealDataRetriever(dataset);
+      return StreamSupport.stream(dataRetriever.fetchBitPositions().spliterator(), false)
+              .map(RoaringBitmap::bitmapOf)
+              .toArray(RoaringBitmap[]::new);
+    });
+    bitmaps = Arrays.stream(all)
+            .sorted(Comparator.comparingLong(RoaringBitmap::getLongCardinality).reversed())
+            .limit(width)
+            .toArray(RoaringBitmap[]::new);
+    immutableRoaringBitmaps = Arrays.stream(bitmaps).map(RoaringBitmap::toMutableRoaringBitmap)
+            .toArray(ImmutableRoaringBitmap[]::new);
+  }
+
+  @Benchmark
+  public RoaringBitmap naiveAnd() {
+    return FastAggregation.naive_and(bitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap workShyAnd() {
+    return FastAggregation.workShyAnd(buffer, bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferNaiveAnd() {
+    return BufferFastAggregation.naive_and(immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferWorkShyAnd() {
+    return BufferFastAggregation.workShyAnd(buffer, immutableRoaringBitmaps);
+  }
+
+  @Benchmark
+  public RoaringBitmap andThenLimit() {
+    return FastAggregation.and(bitmaps).limit(LIMIT);
+  }
+
+  @Benchmark
+  public RoaringBitmap boundedAnd() {
+    return FastAggregation.workShyAnd(buffer, LIMIT, bitmaps);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferAndThenLimit() {
+    return BufferFastAggregation.and(immutableRoaringBitmaps).limit(LIMIT);
+  }
+
+  @Benchmark
+  public MutableRoaringBitmap bufferBoundedAnd() {
+    return BufferFastAggregation.workShyAnd(buffer, LIMIT, immutableRoaringBitmaps);
+  }
+
+}
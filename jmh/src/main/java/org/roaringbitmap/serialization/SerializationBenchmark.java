@@ -18,6 +18,7 @@ import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.StreamingDeserializer;
 import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 
@@ -35,6 +36,23 @@ public class SerializationBenchmark {
     return benchmarkState.presoutbb.limit();
   }
 
+  @BenchmarkMode(Mode.AverageTime)
+  @Benchmark
+  public int testDeserializeByteBuffer(BenchmarkState benchmarkState) throws IOException {
+    benchmarkState.presoutbb.rewind();
+    benchmarkState.bitmap_b.deserialize(benchmarkState.presoutbb);
+    return benchmarkState.presoutbb.limit();
+  }
+
+  @BenchmarkMode(Mode.AverageTime)
+  @Benchmark
+  public RoaringBitmap testStreamingDeserialize(BenchmarkState benchmarkState)
+      throws IOException {
+    benchmarkState.presoutbb.rewind();
+    return StreamingDeserializer.deserialize(
+        new ByteBufferBackedInputStream(benchmarkState.presoutbb));
+  }
+
   @BenchmarkMode(Mode.AverageTime)
   @Benchmark
   public int testMutableDeserializeMutable(BenchmarkState benchmarkState) throws IOException {
@@ -55,6 +73,15 @@ public class SerializationBenchmark {
   }
 
 
+  @BenchmarkMode(Mode.AverageTime)
+  @Benchmark
+  public int testSerializeByteBuffer(BenchmarkState benchmarkState) {
+    benchmarkState.outbb.rewind();
+    benchmarkState.bitmap_a.serialize(benchmarkState.outbb);
+    return benchmarkState.outbb.limit();
+  }
+
+
   @BenchmarkMode(Mode.AverageTime)
   @Benchmark
   public int testMutableSerialize(BenchmarkState benchmarkState) throws IOException {
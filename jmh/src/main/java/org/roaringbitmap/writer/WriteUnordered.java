@@ -2,6 +2,7 @@ package org.roaringbitmap.writer;
 
 import org.openjdk.jmh.annotations.*;
 import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.UnorderedWriter;
 import org.roaringbitmap.Util;
 
 import java.util.*;
@@ -75,5 +76,24 @@ public class WriteUnordered {
     Util.partialRadixSort(copy);
     return RoaringBitmap.bitmapOf(copy);
   }
+
+  @Benchmark
+  public RoaringBitmap incrementalNativeAdd() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int i = 0; i < data.length; ++i) {
+      bitmap.add(data[i]);
+    }
+    return bitmap;
+  }
+
+  @Benchmark
+  public RoaringBitmap incrementalUseUnorderedWriter() {
+    UnorderedWriter writer = new UnorderedWriter();
+    for (int i = 0; i < data.length; ++i) {
+      writer.add(data[i]);
+    }
+    writer.flush();
+    return writer.getUnderlying();
+  }
 }
 
@@ -5,6 +5,8 @@
 package org.roaringbitmap;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -172,7 +174,7 @@ public final class ArrayContainer extends Container implements Cloneable {
     ArrayContainer value1 = this;
     final int desiredCapacity = Math.min(value1.getCardinality(), value2.getCardinality());
     ArrayContainer answer = new ArrayContainer(desiredCapacity);
-    answer.cardinality = Util.unsignedIntersect2by2(value1.content, value1.getCardinality(),
+    answer.cardinality = Kernels.INSTANCE.intersect(value1.content, value1.getCardinality(),
         value2.content, value2.getCardinality(), answer.content);
     return answer;
   }
@@ -190,7 +192,7 @@ public final class ArrayContainer extends Container implements Cloneable {
 
   @Override
   public int andCardinality(final ArrayContainer value2) {
-    return Util.unsignedLocalIntersect2by2Cardinality(content, cardinality, value2.content,
+    return Kernels.INSTANCE.intersectionCardinality(content, cardinality, value2.content,
         value2.getCardinality());
   }
 
@@ -420,6 +422,11 @@ public final class ArrayContainer extends Container implements Cloneable {
     return cardinality;
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new ArrayBatchIterator(this);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     return new ReverseArrayContainerShortIterator(this);
@@ -522,7 +529,7 @@ public final class ArrayContainer extends Container implements Cloneable {
   @Override
   public ArrayContainer iand(final ArrayContainer value2) {
     ArrayContainer value1 = this;
-    value1.cardinality = Util.unsignedIntersect2by2(value1.content, value1.getCardinality(),
+    value1.cardinality = Kernels.INSTANCE.intersect(value1.content, value1.getCardinality(),
         value2.content, value2.getCardinality(), value1.content);
     return this;
   }
@@ -1148,6 +1155,69 @@ public final class ArrayContainer extends Container implements Cloneable {
     return Util.toIntUnsigned(content[cardinality - 1]);
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    int index = Util.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index >= 0) {
+      return Util.toIntUnsigned(fromValue);
+    }
+    index = -index - 1;
+    return index < cardinality ? Util.toIntUnsigned(content[index]) : -1;
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    int index = Util.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index >= 0) {
+      return Util.toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    return index >= 0 ? Util.toIntUnsigned(content[index]) : -1;
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    int index = Util.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index < 0) {
+      return Util.toIntUnsigned(fromValue);
+    }
+    // value - index is the same for all the values of the run containing fromValue
+    final int base = Util.toIntUnsigned(fromValue) - index;
+    int low = index;
+    int high = cardinality - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (Util.toIntUnsigned(content[mid]) - mid == base) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int next = Util.toIntUnsigned(content[low]) + 1;
+    return next < (1 << 16) ? next : -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    int index = Util.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index < 0) {
+      return Util.toIntUnsigned(fromValue);
+    }
+    // value - index is the same for all the values of the run containing fromValue
+    final int base = Util.toIntUnsigned(fromValue) - index;
+    int low = 0;
+    int high = index;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Util.toIntUnsigned(content[mid]) - mid == base) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return Util.toIntUnsigned(content[low]) - 1;
+  }
+
   @Override
   public MappeableContainer toMappeableContainer() {
     return new MappeableArrayContainer(this);
@@ -1198,6 +1268,47 @@ public final class ArrayContainer extends Container implements Cloneable {
     }
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    buffer.asShortBuffer().put(content, 0, cardinality);
+    buffer.position(buffer.position() + 2 * cardinality);
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < cardinality; ++i) {
+      final int value = Util.toIntUnsigned(content[i]);
+      bits[value >>> 6] |= 1L << value;
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < cardinality; ++i) {
+      final int value = Util.toIntUnsigned(content[i]);
+      bits[value >>> 6] &= ~(1L << value);
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    int cleared = 0;
+    int i = 0;
+    while (i < cardinality) {
+      final int word = Util.toIntUnsigned(content[i]) >>> 6;
+      long mask = 0;
+      do {
+        mask |= 1L << content[i];
+        ++i;
+      } while (i < cardinality && Util.toIntUnsigned(content[i]) >>> 6 == word);
+      Arrays.fill(bits, cleared, word, 0L);
+      bits[word] &= mask;
+      cleared = word + 1;
+    }
+    Arrays.fill(bits, cleared, bits.length, 0L);
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     serialize(out);
@@ -1395,3 +1506,43 @@ final class ReverseArrayContainerShortIterator implements ShortIterator {
     pos = parent.cardinality - 1;
   }
 }
+
+
+final class ArrayBatchIterator implements ContainerBatchIterator {
+  int index;
+  ArrayContainer parent;
+
+  ArrayBatchIterator(ArrayContainer p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    final int consumed = Math.min(parent.cardinality - index, buffer.length - offset);
+    final short[] content = parent.content;
+    for (int k = 0; k < consumed; ++k) {
+      buffer[offset + k] = key | Util.toIntUnsigned(content[index + k]);
+    }
+    index += consumed;
+    return consumed;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return index < parent.cardinality;
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(ArrayContainer p) {
+    parent = p;
+    index = 0;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * An iterator which writes the values of a bitmap into a caller-supplied array, several values
+ * at a time. This amortizes the cost of the per-value calls made through an {@link IntIterator}.
+ *
+ * Usage:
+ *
+ * <pre>
+ * {@code
+ *   int[] buffer = new int[256];
+ *   BatchIterator it = bitmap.getBatchIterator();
+ *   while (it.hasNext()) {
+ *     int n = it.nextBatch(buffer);
+ *     for (int i = 0; i < n; ++i) {
+ *       // do something with buffer[i]
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+public interface BatchIterator extends Cloneable {
+
+  /**
+   * Writes the next values, in ascending order, into the buffer starting at index 0. At most
+   * buffer.length values are written.
+   *
+   * @param buffer the array receiving the values
+   * @return the number of values written, 0 only if the iterator is exhausted
+   */
+  int nextBatch(int[] buffer);
+
+  /**
+   * @return whether there are more values to read
+   */
+  boolean hasNext();
+
+  /**
+   * Creates a copy of the iterator.
+   *
+   * @return a clone of the current iterator
+   */
+  BatchIterator clone();
+}
@@ -8,6 +8,8 @@ import org.roaringbitmap.buffer.MappeableBitmapContainer;
 import org.roaringbitmap.buffer.MappeableContainer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -168,15 +170,10 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container and(final BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & value2.bitmap[k]);
-    }
+    int newCardinality = Kernels.INSTANCE.andCardinality(this.bitmap, value2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
       final BitmapContainer answer = new BitmapContainer();
-      for (int k = 0; k < answer.bitmap.length; ++k) {
-        answer.bitmap[k] = this.bitmap[k] & value2.bitmap[k];
-      }
+      Kernels.INSTANCE.and(this.bitmap, value2.bitmap, answer.bitmap);
       answer.cardinality = newCardinality;
       return answer;
     }
@@ -204,11 +201,7 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public int andCardinality(final BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & value2.bitmap[k]);
-    }
-    return newCardinality;
+    return Kernels.INSTANCE.andCardinality(this.bitmap, value2.bitmap);
   }
 
   @Override
@@ -294,10 +287,7 @@ public final class BitmapContainer extends Container implements Cloneable {
    * Recomputes the cardinality of the bitmap.
    */
   protected void computeCardinality() {
-    this.cardinality = 0;
-    for (int k = 0; k < this.bitmap.length; k++) {
-      this.cardinality += Long.bitCount(this.bitmap[k]);
-    }
+    this.cardinality = Kernels.INSTANCE.cardinality(this.bitmap);
   }
 
   protected int cardinalityInRange(int start, int end) {
@@ -497,6 +487,11 @@ public final class BitmapContainer extends Container implements Cloneable {
     return cardinality;
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new BitmapBatchIterator(bitmap);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     return new ReverseBitmapContainerShortIterator(this.bitmap);
@@ -539,14 +534,9 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container iand(final BitmapContainer b2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] & b2.bitmap[k]);
-    }
+    int newCardinality = Kernels.INSTANCE.andCardinality(this.bitmap, b2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
-      for (int k = 0; k < this.bitmap.length; ++k) {
-        this.bitmap[k] = this.bitmap[k] & b2.bitmap[k];
-      }
+      Kernels.INSTANCE.and(this.bitmap, b2.bitmap, this.bitmap);
       this.cardinality = newCardinality;
       return this;
     }
@@ -749,12 +739,7 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container ior(final BitmapContainer b2) {
-    this.cardinality = 0;
-    for (int k = 0; k < this.bitmap.length; k++) {
-      long w = this.bitmap[k] | b2.bitmap[k];
-      this.bitmap[k] = w;
-      this.cardinality += Long.bitCount(w);
-    }
+    this.cardinality = Kernels.INSTANCE.or(this.bitmap, b2.bitmap, this.bitmap);
     if (isFull()) {
       return RunContainer.full();
     }
@@ -838,14 +823,9 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container ixor(BitmapContainer b2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] ^ b2.bitmap[k]);
-    }
+    int newCardinality = Kernels.INSTANCE.xorCardinality(this.bitmap, b2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
-      for (int k = 0; k < this.bitmap.length; ++k) {
-        this.bitmap[k] = this.bitmap[k] ^ b2.bitmap[k];
-      }
+      Kernels.INSTANCE.xor(this.bitmap, b2.bitmap, this.bitmap);
       this.cardinality = newCardinality;
       return this;
     }
@@ -939,10 +919,7 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   protected void loadData(final ArrayContainer arrayContainer) {
     this.cardinality = arrayContainer.cardinality;
-    for (int k = 0; k < arrayContainer.cardinality; ++k) {
-      final short x = arrayContainer.content[k];
-      bitmap[Util.toIntUnsigned(x) / 64] |= (1L << x);
-    }
+    Kernels.INSTANCE.setBits(arrayContainer.content, arrayContainer.cardinality, bitmap);
   }
 
   /**
@@ -1090,8 +1067,12 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container or(final BitmapContainer value2) {
-    BitmapContainer value1 = this.clone();
-    return value1.ior(value2);
+    final BitmapContainer answer = new BitmapContainer();
+    answer.cardinality = Kernels.INSTANCE.or(this.bitmap, value2.bitmap, answer.bitmap);
+    if (answer.isFull()) {
+      return RunContainer.full();
+    }
+    return answer;
   }
 
   @Override
@@ -1295,6 +1276,34 @@ public final class BitmapContainer extends Container implements Cloneable {
     serialize(out);
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    buffer.asLongBuffer().put(bitmap);
+    buffer.position(buffer.position() + 8 * bitmap.length);
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] |= bitmap[i];
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= ~bitmap[i];
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= bitmap[i];
+    }
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     serialize(out);
@@ -1321,15 +1330,10 @@ public final class BitmapContainer extends Container implements Cloneable {
 
   @Override
   public Container xor(BitmapContainer value2) {
-    int newCardinality = 0;
-    for (int k = 0; k < this.bitmap.length; ++k) {
-      newCardinality += Long.bitCount(this.bitmap[k] ^ value2.bitmap[k]);
-    }
+    int newCardinality = Kernels.INSTANCE.xorCardinality(this.bitmap, value2.bitmap);
     if (newCardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
       final BitmapContainer answer = new BitmapContainer();
-      for (int k = 0; k < answer.bitmap.length; ++k) {
-        answer.bitmap[k] = this.bitmap[k] ^ value2.bitmap[k];
-      }
+      Kernels.INSTANCE.xor(this.bitmap, value2.bitmap, answer.bitmap);
       answer.cardinality = newCardinality;
       return answer;
     }
@@ -1383,6 +1387,50 @@ public final class BitmapContainer extends Container implements Cloneable {
     return (i + 1) * 64 - Long.numberOfLeadingZeros(bitmap[i]) - 1;
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    return nextSetBit(Util.toIntUnsigned(fromValue));
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    return prevSetBit(Util.toIntUnsigned(fromValue));
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    final int i = Util.toIntUnsigned(fromValue);
+    int x = i >>> 6;
+    long w = ~bitmap[x] >>> i;
+    if (w != 0) {
+      return i + numberOfTrailingZeros(w);
+    }
+    for (++x; x < MAX_CAPACITY / 64; ++x) {
+      w = ~bitmap[x];
+      if (w != 0) {
+        return x * 64 + numberOfTrailingZeros(w);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    final int i = Util.toIntUnsigned(fromValue);
+    int x = i >>> 6;
+    long w = ~bitmap[x] << (63 - i);
+    if (w != 0) {
+      return i - numberOfLeadingZeros(w);
+    }
+    for (--x; x >= 0; --x) {
+      w = ~bitmap[x];
+      if (w != 0) {
+        return x * 64 + 63 - numberOfLeadingZeros(w);
+      }
+    }
+    return -1;
+  }
+
 }
 
 
@@ -1537,3 +1585,59 @@ final class ReverseBitmapContainerShortIterator implements ShortIterator {
     }
   }
 }
+
+
+final class BitmapBatchIterator implements ContainerBatchIterator {
+  long w;
+  int x;
+
+  long[] bitmap;
+
+  BitmapBatchIterator(long[] p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    int pos = offset;
+    final int limit = buffer.length;
+    while (pos < limit && x < bitmap.length) {
+      final int base = key + (x << 6);
+      while (w != 0 && pos < limit) {
+        buffer[pos++] = base + numberOfTrailingZeros(w);
+        w &= (w - 1);
+      }
+      while (w == 0) {
+        ++x;
+        if (x == bitmap.length) {
+          break;
+        }
+        w = bitmap[x];
+      }
+    }
+    return pos - offset;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return x < bitmap.length;
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(long[] b) {
+    bitmap = b;
+    for (x = 0; x < bitmap.length; ++x) {
+      if ((w = bitmap[x]) != 0) {
+        break;
+      }
+    }
+  }
+}
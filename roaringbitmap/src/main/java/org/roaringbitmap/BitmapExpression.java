@@ -0,0 +1,422 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * A boolean expression over RoaringBitmaps, such as (A OR B OR C) AND NOT (D OR E) AND F,
+ * evaluated without materializing any intermediate bitmap.
+ *
+ * The expression is evaluated one 16-bit key at a time across all its inputs: for each key, only
+ * the containers of the inputs are combined, and only keys that may be present in the result are
+ * visited. In particular, an AND skips every key missing from one of its operands, and the right
+ * hand side of an AND NOT is only looked at for the keys of its left hand side. Unions are
+ * computed lazily (see {@link FastAggregation#horizontal_or(RoaringBitmap...)}) and repaired once
+ * per key.
+ *
+ * <pre>
+ * {@code
+ *      BitmapExpression e = BitmapExpression.and(
+ *          BitmapExpression.andNot(
+ *              BitmapExpression.or(a, b, c),
+ *              BitmapExpression.or(d, e)),
+ *          BitmapExpression.of(f));
+ *      RoaringBitmap result = e.evaluate();
+ *      long count = e.cardinality(); // no result is built
+ * }
+ * </pre>
+ *
+ * Expressions are immutable and may be evaluated several times, also concurrently, as long as the
+ * underlying bitmaps are not modified meanwhile. The input bitmaps are never modified.
+ */
+public abstract class BitmapExpression {
+
+  // sentinel key, larger than any 16-bit key
+  private static final int NO_KEY = 1 << 16;
+
+  BitmapExpression() {}
+
+  /**
+   * Expression standing for a bitmap.
+   *
+   * @param bitmap the bitmap
+   * @return the expression
+   */
+  public static BitmapExpression of(final RoaringBitmap bitmap) {
+    return new BitmapExpression() {
+      @Override
+      Node compile() {
+        return new Leaf(bitmap.highLowContainer);
+      }
+    };
+  }
+
+  /**
+   * Intersection of the operands. Operands are combined in the order given, so that the most
+   * selective ones should come first.
+   *
+   * @param operands at least one expression
+   * @return the expression
+   */
+  public static BitmapExpression and(final BitmapExpression... operands) {
+    if (operands.length == 0) {
+      throw new IllegalArgumentException("AND requires at least one operand");
+    }
+    return new BitmapExpression() {
+      @Override
+      Node compile() {
+        return new And(compileAll(operands));
+      }
+    };
+  }
+
+  /**
+   * Intersection of the bitmaps.
+   *
+   * @param bitmaps at least one bitmap
+   * @return the expression
+   */
+  public static BitmapExpression and(RoaringBitmap... bitmaps) {
+    return and(ofAll(bitmaps));
+  }
+
+  /**
+   * Union of the operands.
+   *
+   * @param operands expressions
+   * @return the expression
+   */
+  public static BitmapExpression or(final BitmapExpression... operands) {
+    return new BitmapExpression() {
+      @Override
+      Node compile() {
+        return new Or(compileAll(operands));
+      }
+    };
+  }
+
+  /**
+   * Union of the bitmaps.
+   *
+   * @param bitmaps bitmaps
+   * @return the expression
+   */
+  public static BitmapExpression or(RoaringBitmap... bitmaps) {
+    return or(ofAll(bitmaps));
+  }
+
+  /**
+   * Difference between two expressions: the values of left which are not in right.
+   *
+   * @param left expression to subtract from
+   * @param right expression to subtract
+   * @return the expression
+   */
+  public static BitmapExpression andNot(final BitmapExpression left,
+      final BitmapExpression right) {
+    return new BitmapExpression() {
+      @Override
+      Node compile() {
+        return new AndNot(left.compile(), right.compile());
+      }
+    };
+  }
+
+  private static BitmapExpression[] ofAll(RoaringBitmap... bitmaps) {
+    BitmapExpression[] operands = new BitmapExpression[bitmaps.length];
+    for (int i = 0; i < bitmaps.length; ++i) {
+      operands[i] = of(bitmaps[i]);
+    }
+    return operands;
+  }
+
+  private static Node[] compileAll(BitmapExpression[] operands) {
+    Node[] nodes = new Node[operands.length];
+    for (int i = 0; i < operands.length; ++i) {
+      nodes[i] = operands[i].compile();
+    }
+    return nodes;
+  }
+
+  /**
+   * Creates the evaluation state of this expression. Each evaluation uses its own state, so that
+   * an expression can be shared.
+   *
+   * @return the root of a new evaluation tree
+   */
+  abstract Node compile();
+
+  /**
+   * Computes the bitmap this expression stands for.
+   *
+   * @return a new bitmap
+   */
+  public RoaringBitmap evaluate() {
+    Node root = compile();
+    RoaringArray answer = new RoaringArray();
+    for (int key = root.nextKey(0); key != NO_KEY; key = root.nextKey(key + 1)) {
+      Container c = root.container((short) key, false);
+      if (c != null) {
+        answer.append((short) key, root.borrowed ? c.clone() : c);
+      }
+    }
+    return new RoaringBitmap(answer);
+  }
+
+  /**
+   * Computes the cardinality of the bitmap this expression stands for, without building it.
+   *
+   * @return the cardinality
+   */
+  public long cardinality() {
+    Node root = compile();
+    long cardinality = 0;
+    for (int key = root.nextKey(0); key != NO_KEY; key = root.nextKey(key + 1)) {
+      cardinality += root.cardinality((short) key);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether the bitmap this expression stands for is empty, stopping at the first key
+   * holding a value.
+   *
+   * @return whether the result is empty
+   */
+  public boolean isEmpty() {
+    Node root = compile();
+    for (int key = root.nextKey(0); key != NO_KEY; key = root.nextKey(key + 1)) {
+      if (root.container((short) key, true) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Evaluation state of a sub-expression. Keys are visited in increasing order:
+   * {@link #nextKey(int)} is called with non-decreasing arguments, and
+   * {@link #container(short, boolean)} is only called for a key just returned by nextKey.
+   */
+  abstract static class Node {
+
+    // whether the last container returned belongs to an input bitmap, and must not be modified
+    boolean borrowed;
+
+    /**
+     * Finds the smallest key, at least as large as the given one, for which the sub-expression
+     * may hold values.
+     *
+     * @param from smallest key to consider, as an unsigned int
+     * @return the key, or NO_KEY if there is none
+     */
+    abstract int nextKey(int from);
+
+    /**
+     * Computes the container of the sub-expression for the given key, and sets
+     * {@link #borrowed}.
+     *
+     * @param key the current key
+     * @param lazy whether the cardinality of the result may be left unrepaired
+     * @return the container, or null if it is empty
+     */
+    abstract Container container(short key, boolean lazy);
+
+    int cardinality(short key) {
+      Container c = container(key, false);
+      return c == null ? 0 : c.getCardinality();
+    }
+  }
+
+  static final class Leaf extends Node {
+
+    private final RoaringArray array;
+    private int pos = 0;
+
+    Leaf(RoaringArray array) {
+      this.array = array;
+    }
+
+    @Override
+    int nextKey(int from) {
+      if (from >= NO_KEY) {
+        return NO_KEY;
+      }
+      if (pos < array.size && Util.toIntUnsigned(array.keys[pos]) < from) {
+        pos = array.advanceUntil((short) from, pos);
+      }
+      return pos < array.size ? Util.toIntUnsigned(array.keys[pos]) : NO_KEY;
+    }
+
+    @Override
+    Container container(short key, boolean lazy) {
+      borrowed = true;
+      return array.values[pos];
+    }
+  }
+
+  static final class Or extends Node {
+
+    private final Node[] operands;
+
+    Or(Node[] operands) {
+      this.operands = operands;
+    }
+
+    @Override
+    int nextKey(int from) {
+      int min = NO_KEY;
+      for (Node operand : operands) {
+        min = Math.min(min, operand.nextKey(from));
+      }
+      return min;
+    }
+
+    @Override
+    Container container(short key, boolean lazy) {
+      final int k = Util.toIntUnsigned(key);
+      Container result = null;
+      boolean resultBorrowed = false;
+      for (Node operand : operands) {
+        if (operand.nextKey(k) != k) {
+          continue;
+        }
+        Container c = operand.container(key, true);
+        if (c == null) {
+          continue;
+        }
+        if (result == null) {
+          result = c;
+          resultBorrowed = operand.borrowed;
+        } else if (!resultBorrowed) {
+          result = result.lazyIOR(c);
+        } else if (!operand.borrowed) {
+          result = c.lazyIOR(result);
+          resultBorrowed = false;
+        } else {
+          result = result.lazyOR(c);
+          resultBorrowed = false;
+        }
+      }
+      if (result != null && !resultBorrowed && !lazy) {
+        result = result.repairAfterLazy();
+      }
+      borrowed = resultBorrowed;
+      return result;
+    }
+  }
+
+  static final class And extends Node {
+
+    private final Node[] operands;
+
+    And(Node[] operands) {
+      this.operands = operands;
+    }
+
+    @Override
+    int nextKey(int from) {
+      int candidate = from;
+      int agreeing = 0;
+      // leapfrog until every operand agrees on the candidate
+      for (int i = 0; agreeing < operands.length; i = (i + 1) % operands.length) {
+        int next = operands[i].nextKey(candidate);
+        if (next == NO_KEY) {
+          return NO_KEY;
+        }
+        if (next == candidate) {
+          ++agreeing;
+        } else {
+          candidate = next;
+          agreeing = 1;
+        }
+      }
+      return candidate;
+    }
+
+    // intersection of the first count operands, null if empty
+    private Container intersect(short key, int count) {
+      Container result = null;
+      boolean resultBorrowed = false;
+      for (int i = 0; i < count; ++i) {
+        Node operand = operands[i];
+        Container c = operand.container(key, false);
+        if (c == null) {
+          return null;
+        }
+        if (result == null) {
+          result = c;
+          resultBorrowed = operand.borrowed;
+        } else if (!resultBorrowed) {
+          result = result.iand(c);
+        } else if (!operand.borrowed) {
+          result = c.iand(result);
+          resultBorrowed = false;
+        } else {
+          result = result.and(c);
+          resultBorrowed = false;
+        }
+        if (result.isEmpty()) {
+          return null;
+        }
+      }
+      borrowed = resultBorrowed;
+      return result;
+    }
+
+    @Override
+    Container container(short key, boolean lazy) {
+      return intersect(key, operands.length);
+    }
+
+    @Override
+    int cardinality(short key) {
+      if (operands.length == 1) {
+        return super.cardinality(key);
+      }
+      Container partial = intersect(key, operands.length - 1);
+      if (partial == null) {
+        return 0;
+      }
+      Container last = operands[operands.length - 1].container(key, false);
+      return last == null ? 0 : partial.andCardinality(last);
+    }
+  }
+
+  static final class AndNot extends Node {
+
+    private final Node left;
+    private final Node right;
+
+    AndNot(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    int nextKey(int from) {
+      return left.nextKey(from);
+    }
+
+    @Override
+    Container container(short key, boolean lazy) {
+      Container result = left.container(key, false);
+      if (result == null) {
+        return null;
+      }
+      borrowed = left.borrowed;
+      final int k = Util.toIntUnsigned(key);
+      if (right.nextKey(k) != k) {
+        return result;
+      }
+      Container c = right.container(key, false);
+      if (c == null) {
+        return result;
+      }
+      result = borrowed ? result.andNot(c) : result.iandNot(c);
+      borrowed = false;
+      return result.isEmpty() ? null : result;
+    }
+  }
+}
@@ -0,0 +1,459 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe bitmap, meant to be written by many threads at once. The keys (high 16 bits) are
+ * split into stripes of consecutive keys, each stripe holding its containers in a
+ * {@link RoaringArray} guarded by its own lock, so that writers only contend when they write to
+ * the same stripe.
+ *
+ * Iterations and serializations work on consistent snapshots: taking a snapshot briefly locks
+ * all the stripes, but only to mark their containers as shared, as in
+ * {@link RoaringBitmap#snapshot()}. A writer clones a shared container before its first
+ * modification, so that iterating over a snapshot, or serializing it, never blocks writers and is
+ * not affected by them. The cardinality and emptiness are computed under the locks of all the
+ * stripes instead, so that they do not make the next writes clone their containers.
+ *
+ * <pre>
+ * {@code
+ *      ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap();
+ *      // from any thread
+ *      bitmap.add(1234);
+ *      // from any other thread
+ *      for (int value : bitmap) {
+ *        ...
+ *      }
+ * }
+ * </pre>
+ *
+ * The serialized form is the one of {@link RoaringBitmap}.
+ */
+public class ConcurrentRoaringBitmap implements Iterable<Integer> {
+
+  /**
+   * Number of stripes of the bitmaps built with the default constructor, each stripe covering 64
+   * consecutive keys.
+   */
+  public static final int DEFAULT_STRIPES = 1 << 10;
+
+  private final Stripe[] stripes;
+  // the stripe of a key is key >>> stripeShift
+  private final int stripeShift;
+
+  /**
+   * Create an empty bitmap with {@link #DEFAULT_STRIPES} stripes.
+   */
+  public ConcurrentRoaringBitmap() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * Create an empty bitmap. With 65536 stripes, each key (high 16 bits) has its own lock; fewer
+   * stripes make snapshots cheaper.
+   *
+   * @param stripes the number of stripes, a power of two in [1, 65536]
+   */
+  public ConcurrentRoaringBitmap(int stripes) {
+    if (stripes < 1 || stripes > 1 << 16 || Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("The number of stripes must be a power of two in [1, "
+          + (1 << 16) + "]");
+    }
+    this.stripes = new Stripe[stripes];
+    for (int i = 0; i < stripes; ++i) {
+      this.stripes[i] = new Stripe();
+    }
+    this.stripeShift = 16 - Integer.numberOfTrailingZeros(stripes);
+  }
+
+  /**
+   * Add the value to the bitmap.
+   *
+   * @param x integer value
+   */
+  public void add(final int x) {
+    checkedAdd(x);
+  }
+
+  /**
+   * Add the value to the bitmap, if it is not already present.
+   *
+   * @param x integer value
+   * @return true if the value was added, false if it was already present
+   */
+  public boolean checkedAdd(final int x) {
+    final short hb = Util.highbits(x);
+    final Stripe stripe = stripeOf(hb);
+    stripe.lock.writeLock().lock();
+    try {
+      return stripe.add(hb, Util.lowbits(x));
+    } finally {
+      stripe.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Add all the integers in [rangeStart,rangeEnd) to the bitmap. The range is not added
+   * atomically: a concurrent snapshot may only see a part of it.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void add(final long rangeStart, final long rangeEnd) {
+    updateRange(rangeStart, rangeEnd, true);
+  }
+
+  /**
+   * Remove the value from the bitmap.
+   *
+   * @param x integer value
+   */
+  public void remove(final int x) {
+    checkedRemove(x);
+  }
+
+  /**
+   * Remove the value from the bitmap, if it is present.
+   *
+   * @param x integer value
+   * @return true if the value was removed, false if it was not present
+   */
+  public boolean checkedRemove(final int x) {
+    final short hb = Util.highbits(x);
+    final Stripe stripe = stripeOf(hb);
+    stripe.lock.writeLock().lock();
+    try {
+      return stripe.remove(hb, Util.lowbits(x));
+    } finally {
+      stripe.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove all the integers in [rangeStart,rangeEnd) from the bitmap. The range is not removed
+   * atomically: a concurrent snapshot may only see a part of it.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void remove(final long rangeStart, final long rangeEnd) {
+    updateRange(rangeStart, rangeEnd, false);
+  }
+
+  /**
+   * Checks whether the value is included, which blocks while a writer modifies its stripe.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public boolean contains(final int x) {
+    final short hb = Util.highbits(x);
+    final Stripe stripe = stripeOf(hb);
+    stripe.lock.readLock().lock();
+    try {
+      final Container c = stripe.array.getContainer(hb);
+      return c != null && c.contains(Util.lowbits(x));
+    } finally {
+      stripe.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Remove all the values.
+   */
+  public void clear() {
+    replace(new RoaringArray());
+  }
+
+  /**
+   * Returns the number of distinct integers added to the bitmap, which blocks writers while the
+   * cardinalities of the stripes are summed.
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    long cardinality = 0;
+    readLockAll();
+    try {
+      for (Stripe stripe : stripes) {
+        final RoaringArray array = stripe.array;
+        for (int i = 0; i < array.size(); ++i) {
+          cardinality += array.getContainerAtIndex(i).getCardinality();
+        }
+      }
+    } finally {
+      readUnlockAll();
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether the bitmap is empty, which blocks writers while the stripes are checked.
+   *
+   * @return true if this bitmap contains no set bit
+   */
+  public boolean isEmpty() {
+    readLockAll();
+    try {
+      for (Stripe stripe : stripes) {
+        // stripes do not keep empty containers
+        if (stripe.array.size() > 0) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      readUnlockAll();
+    }
+  }
+
+  /**
+   * Iterate over the values of a snapshot, in increasing unsigned order. Writers are not blocked
+   * during the iteration, and their modifications are not seen.
+   *
+   * @return an iterator over the snapshot
+   */
+  public PeekableIntIterator getIntIterator() {
+    return snapshot().getIntIterator();
+  }
+
+  /**
+   * Iterate over the values of a snapshot, see {@link #getIntIterator()}.
+   *
+   * @return an iterator over the snapshot
+   */
+  @Override
+  public Iterator<Integer> iterator() {
+    return snapshot().iterator();
+  }
+
+  /**
+   * Returns a snapshot as a RoaringBitmap, which can be modified independently. Its containers are
+   * shared with this bitmap until either side modifies them, see {@link RoaringBitmap#snapshot()}.
+   * Use {@link RoaringBitmap#forEach(IntConsumer)} on it to visit the values of a snapshot.
+   *
+   * @return the snapshot
+   */
+  public RoaringBitmap toRoaringBitmap() {
+    return snapshot();
+  }
+
+  /**
+   * Serialize a snapshot, in the format of {@link RoaringBitmap#serialize(DataOutput)}. Writers
+   * are not blocked during the serialization.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    snapshot().serialize(out);
+  }
+
+  /**
+   * Replace the values with a bitmap serialized by {@link RoaringBitmap#serialize(DataOutput)}.
+   * The bitmap is read before the stripes are locked.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    bitmap.deserialize(in);
+    replace(bitmap.highLowContainer);
+  }
+
+  private Stripe stripeOf(short hb) {
+    return stripes[Util.toIntUnsigned(hb) >>> stripeShift];
+  }
+
+  private void updateRange(final long rangeStart, final long rangeEnd, final boolean add) {
+    RoaringBitmap.rangeSanityCheck(rangeStart, rangeEnd);
+    if (rangeStart >= rangeEnd) {
+      return; // empty range
+    }
+    final int hbStart = Util.toIntUnsigned(Util.highbits(rangeStart));
+    final int lbStart = Util.toIntUnsigned(Util.lowbits(rangeStart));
+    final int hbLast = Util.toIntUnsigned(Util.highbits(rangeEnd - 1));
+    final int lbLast = Util.toIntUnsigned(Util.lowbits(rangeEnd - 1));
+    int hb = hbStart;
+    while (hb <= hbLast) {
+      final Stripe stripe = stripeOf((short) hb);
+      final int stripeLast = Math.min(hbLast, ((hb >>> stripeShift) + 1 << stripeShift) - 1);
+      stripe.lock.writeLock().lock();
+      try {
+        for (; hb <= stripeLast; ++hb) {
+          // first container may contain partial range
+          final int containerStart = (hb == hbStart) ? lbStart : 0;
+          // last container may contain partial range
+          final int containerLast = (hb == hbLast) ? lbLast : Util.maxLowBitAsInteger();
+          if (add) {
+            stripe.add((short) hb, containerStart, containerLast + 1);
+          } else {
+            stripe.remove((short) hb, containerStart, containerLast + 1);
+          }
+        }
+      } finally {
+        stripe.lock.writeLock().unlock();
+      }
+    }
+  }
+
+  // a consistent view of the bitmap, sharing its containers until they are modified
+  private RoaringBitmap snapshot() {
+    final RoaringArray[] arrays = new RoaringArray[stripes.length];
+    lockAll();
+    try {
+      for (int i = 0; i < stripes.length; ++i) {
+        arrays[i] = stripes[i].freeze();
+      }
+    } finally {
+      unlockAll();
+    }
+    int size = 0;
+    for (RoaringArray array : arrays) {
+      size += array.size();
+    }
+    final RoaringArray answer = new RoaringArray(new short[size], new Container[size], 0);
+    for (RoaringArray array : arrays) {
+      answer.append(array, 0, array.size());
+    }
+    return new RoaringBitmap(answer);
+  }
+
+  // replaces the content of all the stripes with the containers of the array
+  private void replace(RoaringArray array) {
+    final RoaringArray[] arrays = new RoaringArray[stripes.length];
+    for (int i = 0, k = 0; i < stripes.length; ++i) {
+      final int start = k;
+      while (k < array.size()
+          && Util.toIntUnsigned(array.getKeyAtIndex(k)) >>> stripeShift == i) {
+        ++k;
+      }
+      arrays[i] = new RoaringArray(Arrays.copyOfRange(array.keys, start, k),
+          Arrays.copyOfRange(array.values, start, k), k - start);
+    }
+    lockAll();
+    try {
+      for (int i = 0; i < stripes.length; ++i) {
+        stripes[i].array = arrays[i];
+        stripes[i].arrayShared = false;
+      }
+    } finally {
+      unlockAll();
+    }
+  }
+
+  // writers only hold one lock at a time, so that locking in order cannot deadlock
+  private void lockAll() {
+    for (Stripe stripe : stripes) {
+      stripe.lock.writeLock().lock();
+    }
+  }
+
+  private void unlockAll() {
+    for (int i = stripes.length - 1; i >= 0; --i) {
+      stripes[i].lock.writeLock().unlock();
+    }
+  }
+
+  private void readLockAll() {
+    for (Stripe stripe : stripes) {
+      stripe.lock.readLock().lock();
+    }
+  }
+
+  private void readUnlockAll() {
+    for (int i = stripes.length - 1; i >= 0; --i) {
+      stripes[i].lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * The containers of a stripe, only accessed under its lock.
+   */
+  private static final class Stripe {
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    RoaringArray array = new RoaringArray();
+    // whether array is referenced by the last snapshot, and must be copied before being modified
+    boolean arrayShared = false;
+
+    RoaringArray freeze() {
+      for (int i = 0; i < array.size(); ++i) {
+        array.getContainerAtIndex(i).markShared();
+      }
+      arrayShared = true;
+      return array;
+    }
+
+    boolean add(short hb, short lb) {
+      final int i = array.getIndex(hb);
+      if (i >= 0) {
+        final Container c = array.getContainerAtIndex(i);
+        if (c.contains(lb)) {
+          return false;
+        }
+        writableArray().setContainerAtIndex(i, writableContainer(i).add(lb));
+      } else {
+        writableArray().insertNewKeyValueAt(-i - 1, hb, new ArrayContainer().add(lb));
+      }
+      return true;
+    }
+
+    void add(short hb, int start, int end) {
+      final int i = array.getIndex(hb);
+      if (i >= 0) {
+        writableArray().setContainerAtIndex(i, writableContainer(i).iadd(start, end));
+      } else {
+        writableArray().insertNewKeyValueAt(-i - 1, hb, Container.rangeOfOnes(start, end));
+      }
+    }
+
+    boolean remove(short hb, short lb) {
+      final int i = array.getIndex(hb);
+      if (i < 0 || !array.getContainerAtIndex(i).contains(lb)) {
+        return false;
+      }
+      update(i, writableContainer(i).remove(lb));
+      return true;
+    }
+
+    void remove(short hb, int start, int end) {
+      final int i = array.getIndex(hb);
+      if (i >= 0) {
+        update(i, writableContainer(i).iremove(start, end));
+      }
+    }
+
+    private void update(int i, Container c) {
+      if (c.isEmpty()) {
+        writableArray().removeAtIndex(i);
+      } else {
+        writableArray().setContainerAtIndex(i, c);
+      }
+    }
+
+    private RoaringArray writableArray() {
+      if (arrayShared) {
+        array = new RoaringArray(Arrays.copyOf(array.keys, array.size()),
+            Arrays.copyOf(array.values, array.size()), array.size());
+        arrayShared = false;
+      }
+      return array;
+    }
+
+    // the container at the index, cloned if it is shared with a snapshot
+    private Container writableContainer(int i) {
+      return writableArray().getWritableContainerAtIndex(i);
+    }
+  }
+}
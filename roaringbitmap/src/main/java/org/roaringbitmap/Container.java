@@ -8,6 +8,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.NoSuchElementException;
 
 import org.roaringbitmap.buffer.MappeableContainer;
@@ -17,6 +18,9 @@ import org.roaringbitmap.buffer.MappeableContainer;
  */
 public abstract class Container implements Iterable<Short>, Cloneable, Externalizable {
 
+  // set once the container is referenced by several bitmaps, see RoaringBitmap#snapshot()
+  private boolean shared = false;
+
   /**
    * Create a container initialized with a range of consecutive values
    *
@@ -307,6 +311,13 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    */
   public abstract void forEach(short msb, IntConsumer ic);
 
+  /**
+   * Iterator to write the values of the container, several at a time, into an integer array.
+   *
+   * @return batch iterator
+   */
+  public abstract ContainerBatchIterator getBatchIterator();
+
   /**
    * Iterator to visit the short values in the container in descending order.
    *
@@ -729,6 +740,23 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    */
   public abstract Container or(RunContainer x);
 
+  /**
+   * Computes the union of this container with the values of [0, endOfRange) missing from the other
+   * container, without computing the complement of the other container. This container as well as
+   * the provided container are left unaffected.
+   *
+   * @param x other container
+   * @param endOfRange end of the range (exclusive), in [1, 65536]
+   * @return aggregated container
+   */
+  public Container orNot(Container x, int endOfRange) {
+    long[] bits = new long[1 << 10];
+    Util.setBitmapRange(bits, 0, endOfRange);
+    x.removeFrom(bits);
+    orInto(bits);
+    return new BitmapContainer(bits, -1).repairAfterLazy();
+  }
+
 
   /**
    * Rank returns the number of integers that are smaller or equal to x (Rank(infinity) would be
@@ -818,6 +846,35 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    */
   protected abstract void writeArray(DataOutput out) throws IOException;
 
+  /**
+   * Write just the underlying array, starting at the position of the buffer, which is moved past
+   * the data.
+   *
+   * @param buffer little endian buffer with enough room left
+   */
+  protected abstract void writeArray(ByteBuffer buffer);
+
+  /**
+   * Sets the bits of the values of this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void orInto(long[] bits);
+
+  /**
+   * Clears the bits of the values of this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void removeFrom(long[] bits);
+
+  /**
+   * Clears the bits of the values missing from this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void andInto(long[] bits);
+
 
   /**
    * Computes the bitwise XOR of this container with another (symmetric difference). This container
@@ -884,6 +941,56 @@ public abstract class Container implements Iterable<Short>, Cloneable, Externali
    */
   public abstract int last();
 
+  /**
+   * Gets the smallest value held in the container which is greater than or equal to the given
+   * value.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int nextValue(short fromValue);
+
+  /**
+   * Gets the largest value held in the container which is smaller than or equal to the given
+   * value.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int previousValue(short fromValue);
+
+  /**
+   * Gets the smallest value missing from the container which is greater than or equal to the
+   * given value.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int nextAbsentValue(short fromValue);
+
+  /**
+   * Gets the largest value missing from the container which is smaller than or equal to the given
+   * value.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int previousAbsentValue(short fromValue);
+
+  /**
+   * Whether the container may be referenced by several bitmaps, in which case it must be cloned
+   * before being modified in place. Clones are not shared.
+   *
+   * @return whether the container is shared
+   */
+  boolean isShared() {
+    return shared;
+  }
+
+  void markShared() {
+    shared = true;
+  }
+
   /**
    * Throw if the container is empty
    * @param condition a boolean expression
@@ -0,0 +1,36 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * Iterator over the values of a single container which writes them, several at a time, into an
+ * integer array. Used by the {@link BatchIterator} implementations.
+ */
+public interface ContainerBatchIterator extends Cloneable {
+
+  /**
+   * Writes the next values of the container into the buffer, starting at the given offset and
+   * stopping when either the container or the buffer is exhausted. The most significant 16 bits
+   * of each value are given by the most significant bits of the provided key.
+   *
+   * @param key indicates most significant bits
+   * @param buffer the array receiving the values
+   * @param offset index of the first slot to write
+   * @return the number of values written
+   */
+  int next(int key, int[] buffer, int offset);
+
+  /**
+   * @return whether the container has more values to read
+   */
+  boolean hasNext();
+
+  /**
+   * Creates a copy of the iterator.
+   *
+   * @return a clone of the current iterator
+   */
+  ContainerBatchIterator clone();
+}
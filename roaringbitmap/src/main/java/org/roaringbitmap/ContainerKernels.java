@@ -0,0 +1,116 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * The innermost loops of array and bitmap containers: intersections of sorted arrays of 16-bit
+ * values, and word-wise operations over the 1024 words of bitmap containers.
+ *
+ * The implementation used by all containers is chosen once, when containers are first used: it
+ * is the class named by the system property {@value #KERNELS_PROPERTY}, which must have a public
+ * no-argument constructor. This lets an implementation relying on a newer runtime (for instance
+ * on vector instructions) be provided separately. If the property is not set, or if the class
+ * cannot be loaded on the current runtime, {@link ScalarContainerKernels} is used; the latter
+ * case is logged as a warning through java.util.logging.
+ *
+ * Implementations must be thread-safe, and must return exactly what ScalarContainerKernels
+ * returns.
+ */
+public interface ContainerKernels {
+
+  /**
+   * The system property naming the implementation to use.
+   */
+  String KERNELS_PROPERTY = "org.roaringbitmap.kernels";
+
+  /**
+   * Intersect two sorted arrays of unsigned 16-bit values and write the result to the provided
+   * output array
+   *
+   * @param set1 first array
+   * @param length1 length of first array
+   * @param set2 second array
+   * @param length2 length of second array
+   * @param buffer output array, large enough for the smallest array
+   * @return cardinality of the intersection
+   */
+  int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer);
+
+  /**
+   * Compute the cardinality of the intersection of two sorted arrays of unsigned 16-bit values
+   *
+   * @param set1 first array
+   * @param length1 length of first array
+   * @param set2 second array
+   * @param length2 length of second array
+   * @return cardinality of the intersection
+   */
+  int intersectionCardinality(short[] set1, int length1, short[] set2, int length2);
+
+  /**
+   * Compute the number of bits set in the bitwise AND of two bitmaps
+   *
+   * @param bitmap1 first bitmap
+   * @param bitmap2 second bitmap, as long as the first one
+   * @return the number of bits set in bitmap1 AND bitmap2
+   */
+  int andCardinality(long[] bitmap1, long[] bitmap2);
+
+  /**
+   * Compute the number of bits set in the bitwise XOR of two bitmaps
+   *
+   * @param bitmap1 first bitmap
+   * @param bitmap2 second bitmap, as long as the first one
+   * @return the number of bits set in bitmap1 XOR bitmap2
+   */
+  int xorCardinality(long[] bitmap1, long[] bitmap2);
+
+  /**
+   * Write the bitwise AND of two bitmaps
+   *
+   * @param bitmap1 first bitmap
+   * @param bitmap2 second bitmap, as long as the first one
+   * @param output where the result is written, may be one of the bitmaps
+   */
+  void and(long[] bitmap1, long[] bitmap2, long[] output);
+
+  /**
+   * Write the bitwise OR of two bitmaps, and count its bits. Unlike intersections and symmetric
+   * differences, unions are always kept as bitmaps, hence the cardinality is computed along.
+   *
+   * @param bitmap1 first bitmap
+   * @param bitmap2 second bitmap, as long as the first one
+   * @param output where the result is written, may be one of the bitmaps
+   * @return the number of bits set in the result
+   */
+  int or(long[] bitmap1, long[] bitmap2, long[] output);
+
+  /**
+   * Write the bitwise XOR of two bitmaps
+   *
+   * @param bitmap1 first bitmap
+   * @param bitmap2 second bitmap, as long as the first one
+   * @param output where the result is written, may be one of the bitmaps
+   */
+  void xor(long[] bitmap1, long[] bitmap2, long[] output);
+
+  /**
+   * Compute the number of bits set in a bitmap
+   *
+   * @param bitmap the bitmap
+   * @return the number of bits set
+   */
+  int cardinality(long[] bitmap);
+
+  /**
+   * Set the bits of the given 16-bit values in a bitmap, as when converting an array container
+   * to a bitmap container
+   *
+   * @param values the values, as unsigned shorts
+   * @param length how many values to consider
+   * @param bitmap a bitmap of 1024 words
+   */
+  void setBits(short[] values, int length, long[] bitmap);
+}
@@ -37,15 +37,32 @@ public final class FastAggregation {
   /**
    * Compute the AND aggregate.
    *
-   * In practice, calls {#link naive_and}
+   * In practice, calls {#link workShyAnd} when there are more than 10 bitmaps, {#link naive_and}
+   * otherwise
    *
    * @param bitmaps input bitmaps
    * @return aggregated bitmap
    */
   public static RoaringBitmap and(RoaringBitmap... bitmaps) {
+    if (bitmaps.length > 10) {
+      return workShyAnd(new long[1 << 10], bitmaps);
+    }
     return naive_and(bitmaps);
   }
 
+  /**
+   * Compute the AND aggregate, keeping only its maxCardinality smallest values. The keys (high 16
+   * bits) are processed in increasing order and the computation stops as soon as maxCardinality
+   * values are found. The result is the same as and(bitmaps).limit(maxCardinality).
+   *
+   * @param maxCardinality the largest number of values to return
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap and(int maxCardinality, RoaringBitmap... bitmaps) {
+    return workShyAnd(new long[1 << 10], maxCardinality, bitmaps);
+  }
+
   /**
    * Calls naive_or.
    *
@@ -274,6 +291,122 @@ public final class FastAggregation {
     return answer;
   }
 
+  /**
+   * Compute the AND aggregate without intermediate bitmaps. The keys (high 16 bits) common to all
+   * bitmaps are found first. Then, for each of these keys, the containers are intersected in the
+   * provided buffer, starting from the smallest one, and the key is dropped as soon as the
+   * intersection is empty.
+   *
+   * @param buffer a buffer of 1024 longs, overwritten
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap workShyAnd(long[] buffer, RoaringBitmap... bitmaps) {
+    return workShyAnd(buffer, Integer.MAX_VALUE, bitmaps);
+  }
+
+  /**
+   * Compute the AND aggregate without intermediate bitmaps, keeping only its maxCardinality
+   * smallest values, see {@link #workShyAnd(long[], RoaringBitmap...)}. The common keys are
+   * processed in increasing order and the computation stops as soon as maxCardinality values are
+   * found.
+   *
+   * @param buffer a buffer of 1024 longs, overwritten
+   * @param maxCardinality the largest number of values to return
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static RoaringBitmap workShyAnd(long[] buffer, int maxCardinality,
+      RoaringBitmap... bitmaps) {
+    if (buffer.length != 1 << 10) {
+      throw new IllegalArgumentException("The buffer must hold 1024 longs");
+    }
+    RoaringBitmap answer = new RoaringBitmap();
+    if (bitmaps.length == 0) {
+      return answer;
+    }
+    short[] keys = commonKeys(bitmaps);
+    BitmapContainer scratch = new BitmapContainer(buffer, -1);
+    int[] positions = new int[bitmaps.length];
+    Container[] containers = new Container[bitmaps.length];
+    int cardinality = 0;
+    for (int k = 0; k < keys.length && cardinality < maxCardinality; ++k) {
+      short key = keys[k];
+      int smallest = 0;
+      for (int i = 0; i < bitmaps.length; ++i) {
+        RoaringArray array = bitmaps[i].highLowContainer;
+        positions[i] = array.advanceUntil(key, positions[i] - 1);
+        containers[i] = array.getContainerAtIndex(positions[i]);
+        if (containers[i].getCardinality() < containers[smallest].getCardinality()) {
+          smallest = i;
+        }
+      }
+      Arrays.fill(buffer, 0L);
+      containers[smallest].orInto(buffer);
+      boolean empty = false;
+      for (int i = 0; i < containers.length && !empty; ++i) {
+        if (i != smallest) {
+          containers[i].andInto(buffer);
+          empty = isEmpty(buffer);
+        }
+      }
+      if (!empty) {
+        scratch.computeCardinality();
+        Container result;
+        if (scratch.getCardinality() > maxCardinality - cardinality) {
+          result = scratch.limit(maxCardinality - cardinality);
+        } else if (scratch.getCardinality() <= ArrayContainer.DEFAULT_MAX_SIZE) {
+          result = scratch.toArrayContainer();
+        } else {
+          result = scratch.clone();
+        }
+        cardinality += result.getCardinality();
+        answer.highLowContainer.append(key, result);
+      }
+    }
+    return answer;
+  }
+
+  // the keys found in all bitmaps, in increasing order
+  private static short[] commonKeys(RoaringBitmap... bitmaps) {
+    RoaringArray fewest = bitmaps[0].highLowContainer;
+    for (RoaringBitmap bitmap : bitmaps) {
+      if (bitmap.highLowContainer.size() < fewest.size()) {
+        fewest = bitmap.highLowContainer;
+      }
+    }
+    short[] keys = Arrays.copyOf(fewest.keys, fewest.size());
+    int size = keys.length;
+    for (int i = 0; i < bitmaps.length && size > 0; ++i) {
+      RoaringArray array = bitmaps[i].highLowContainer;
+      if (array == fewest) {
+        continue;
+      }
+      int kept = 0;
+      int position = 0;
+      for (int k = 0; k < size; ++k) {
+        position = array.advanceUntil(keys[k], position - 1);
+        if (position == array.size()) {
+          break;
+        }
+        if (array.getKeyAtIndex(position) == keys[k]) {
+          keys[kept++] = keys[k];
+        }
+      }
+      size = kept;
+    }
+    return Arrays.copyOf(keys, size);
+  }
+
+  private static boolean isEmpty(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 
   /**
    * Compute overall OR between bitmaps two-by-two.
@@ -1,6 +1,9 @@
 package org.roaringbitmap;
 
-import java.util.Arrays;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.nio.ByteBuffer;
 
 /**
  * This extends {@link RoaringBitmap} to provide better performance for .rank and .select
@@ -12,47 +15,97 @@ import java.util.Arrays;
  * .rank/.select over read-only {@link RoaringBitmap}, especially if the {@link RoaringBitmap} holds
  * a large number of underlying buckets.
  * 
- * This implementation will discard the cache of cardinality on any write operations, and it will
- * memoize the computed cardinalities on any .rank or .select operation
+ * This implementation memoizes the cardinalities of the buckets in a Fenwick tree (binary indexed
+ * tree) on any .rank or .select operation, so that both take a logarithmic time. Adding or
+ * removing a single value updates the tree in logarithmic time, unless a bucket is created or
+ * removed. Other write operations only dismiss the part of the tree covering the buckets they may
+ * have modified, and it is rebuilt lazily.
  * 
  * @author Benoit Lacelle
  *
  */
 public class FastRankRoaringBitmap extends RoaringBitmap {
-  // The cache of cardinalities: it maps the index of the underlying bucket to the cumulated
-  // cardinalities (i.e. the sum of current bucket cardinalities plus all previous bucklet
-  // cardinalities)
-  private boolean cumulatedCardinalitiesCacheIsValid = false;
-  private int[] highToCumulatedCardinality = null;
+  // The cardinalities of the first indexedBuckets buckets, and the Fenwick tree over them: the
+  // node n (1-based) holds the sum of the cardinalities of the buckets of index in
+  // [n - lowestOneBit(n), n)
+  private int[] cardinalities = null;
+  private long[] tree = null;
+  private int indexedBuckets = 0;
+
+  // Dismiss the cache for the buckets from the given index
+  private void resetCache(int fromIndex) {
+    indexedBuckets = Math.min(indexedBuckets, fromIndex);
+  }
 
   private void resetCache() {
-    // Reset the cache on any write operation
-    if (highToCumulatedCardinality != null && highToCumulatedCardinality.length >= 1) {
-      // We tag the first bucket to indicate the cache is dismissed
-      cumulatedCardinalitiesCacheIsValid = false;
+    resetCache(0);
+  }
+
+  // Dismiss the cache for the buckets which may be modified by a range operation
+  private void resetCache(long rangeStart) {
+    resetCache(firstIndexFrom(Util.highbits(rangeStart)));
+  }
+
+  // Dismiss the cache for the buckets which may be modified by an operation with x2, those with a
+  // key smaller than the keys of x2 are left untouched
+  private void resetCache(RoaringBitmap x2) {
+    if (x2.highLowContainer.size() > 0) {
+      resetCache(firstIndexFrom(x2.highLowContainer.getKeyAtIndex(0)));
+    }
+  }
+
+  private int firstIndexFrom(short key) {
+    int index = highLowContainer.getIndex(key);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  // Updates the cache after a single value of the given key was added or removed
+  private void updateCache(short key, int bucketCountBefore) {
+    int index = highLowContainer.getIndex(key);
+    if (highLowContainer.size() != bucketCountBefore) {
+      // a bucket was created or removed: the next ones moved
+      resetCache(index >= 0 ? index : -index - 1);
+    } else if (index >= 0 && index < indexedBuckets) {
+      int cardinality = highLowContainer.getContainerAtIndex(index).getCardinality();
+      int delta = cardinality - cardinalities[index];
+      if (delta != 0) {
+        cardinalities[index] = cardinality;
+        for (int node = index + 1; node <= indexedBuckets; node += node & -node) {
+          tree[node] += delta;
+        }
+      }
     }
   }
 
   // VisibleForTesting
   boolean isCacheDismissed() {
-    return !cumulatedCardinalitiesCacheIsValid;
+    return indexedBuckets == 0 || indexedBuckets < highLowContainer.size();
   }
 
   @Override
   public void add(long rangeStart, long rangeEnd) {
-    resetCache();
+    resetCache(rangeStart);
     super.add(rangeStart, rangeEnd);
   }
 
   @Override
   public void add(int x) {
-    resetCache();
+    int bucketCount = highLowContainer.size();
     super.add(x);
+    updateCache(Util.highbits(x), bucketCount);
   }
 
   @Override
   public void add(int... dat) {
-    resetCache();
+    if (dat.length > 0) {
+      int min = dat[0];
+      for (int value : dat) {
+        if (Integer.compareUnsigned(value, min) < 0) {
+          min = value;
+        }
+      }
+      resetCache(firstIndexFrom(Util.highbits(min)));
+    }
     super.add(dat);
   }
 
@@ -70,9 +123,53 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
   }
 
   @Override
-  public void flip(int x) {
+  public FastRankRoaringBitmap clone() {
+    FastRankRoaringBitmap x = (FastRankRoaringBitmap) super.clone();
+    if (tree != null) {
+      x.cardinalities = cardinalities.clone();
+      x.tree = tree.clone();
+    }
+    return x;
+  }
+
+  @Override
+  void containersModified(short firstKey) {
+    resetCache(firstIndexFrom(firstKey));
+  }
+
+  @Override
+  public FastRankRoaringBitmap snapshot() {
+    FastRankRoaringBitmap x = (FastRankRoaringBitmap) super.snapshot();
+    if (tree != null) {
+      x.cardinalities = cardinalities.clone();
+      x.tree = tree.clone();
+    }
+    return x;
+  }
+
+  @Override
+  public void deserialize(DataInput in) throws IOException {
+    resetCache();
+    super.deserialize(in);
+  }
+
+  @Override
+  public void deserialize(ByteBuffer bbf) throws IOException {
     resetCache();
+    super.deserialize(bbf);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    resetCache();
+    super.readExternal(in);
+  }
+
+  @Override
+  public void flip(int x) {
+    int bucketCount = highLowContainer.size();
     super.flip(x);
+    updateCache(Util.highbits(x), bucketCount);
   }
 
   @Deprecated
@@ -84,7 +181,7 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
 
   @Override
   public void flip(long rangeStart, long rangeEnd) {
-    resetCache();
+    resetCache(rangeStart);
     super.flip(rangeStart, rangeEnd);
   }
 
@@ -96,7 +193,7 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
 
   @Override
   public void andNot(RoaringBitmap x2) {
-    resetCache();
+    resetCache(x2);
     super.andNot(x2);
   }
 
@@ -109,67 +206,109 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
 
   @Override
   public void remove(int x) {
-    resetCache();
+    int bucketCount = highLowContainer.size();
     super.remove(x);
+    updateCache(Util.highbits(x), bucketCount);
   }
 
   @Override
   public void remove(long rangeStart, long rangeEnd) {
-    resetCache();
+    resetCache(rangeStart);
     super.remove(rangeStart, rangeEnd);
   }
 
   @Override
   public boolean checkedAdd(int x) {
-    resetCache();
-    return super.checkedAdd(x);
+    int bucketCount = highLowContainer.size();
+    boolean added = super.checkedAdd(x);
+    updateCache(Util.highbits(x), bucketCount);
+    return added;
   }
 
   @Override
   public boolean checkedRemove(int x) {
-    resetCache();
-    return super.checkedRemove(x);
+    int bucketCount = highLowContainer.size();
+    boolean removed = super.checkedRemove(x);
+    updateCache(Util.highbits(x), bucketCount);
+    return removed;
   }
 
   @Override
   public void or(RoaringBitmap x2) {
-    resetCache();
+    resetCache(x2);
     super.or(x2);
   }
 
   @Override
-  public void xor(RoaringBitmap x2) {
+  public void orNot(RoaringBitmap other, long rangeEnd) {
     resetCache();
+    super.orNot(other, rangeEnd);
+  }
+
+  @Override
+  public void xor(RoaringBitmap x2) {
+    resetCache(x2);
     super.xor(x2);
   }
 
+  @Override
+  protected void lazyor(RoaringBitmap x2) {
+    resetCache(x2);
+    super.lazyor(x2);
+  }
+
+  @Override
+  protected void naivelazyor(RoaringBitmap x2) {
+    resetCache(x2);
+    super.naivelazyor(x2);
+  }
+
+  @Override
+  protected void repairAfterLazy() {
+    resetCache();
+    super.repairAfterLazy();
+  }
+
   /**
-   * On any .rank or .select operation, we pre-compute all cumulated cardinalities. It will enable
-   * using a binary-search to spot the relevant underlying bucket. We may prefer to cache
-   * cardinality only up-to the selected rank, but it would lead to a more complex implementation
+   * On any .rank or .select operation, we index the cardinalities of all the buckets which are
+   * not indexed yet. The nodes of the tree covering buckets which are still indexed are kept, so
+   * that only the dismissed suffix is computed again.
    */
   private void preComputeCardinalities() {
-    if (!cumulatedCardinalitiesCacheIsValid) {
-      int nbBuckets = highLowContainer.size();
-
-      // Ensure the cache size is the right one
-      if (highToCumulatedCardinality == null || highToCumulatedCardinality.length != nbBuckets) {
-        highToCumulatedCardinality = new int[nbBuckets];
+    final int nbBuckets = highLowContainer.size();
+    indexedBuckets = Math.min(indexedBuckets, nbBuckets);
+    if (tree == null || tree.length <= nbBuckets) {
+      int capacity = Math.max(nbBuckets, tree == null ? 0 : 2 * (tree.length - 1));
+      int[] newCardinalities = new int[capacity];
+      long[] newTree = new long[capacity + 1];
+      if (tree != null) {
+        System.arraycopy(cardinalities, 0, newCardinalities, 0, indexedBuckets);
+        System.arraycopy(tree, 0, newTree, 0, indexedBuckets + 1);
       }
-
-      // Ensure the cache content is valid
-      if (highToCumulatedCardinality.length >= 1) {
-        // As we compute the cumulated cardinalities, the first index is an edge case
-        highToCumulatedCardinality[0] = highLowContainer.getContainerAtIndex(0).getCardinality();
-
-        for (int i = 1; i < highToCumulatedCardinality.length; i++) {
-          highToCumulatedCardinality[i] = highToCumulatedCardinality[i - 1]
-              + highLowContainer.getContainerAtIndex(i).getCardinality();
-        }
+      cardinalities = newCardinalities;
+      tree = newTree;
+    }
+    for (int node = indexedBuckets + 1; node <= nbBuckets; ++node) {
+      int cardinality = highLowContainer.getContainerAtIndex(node - 1).getCardinality();
+      cardinalities[node - 1] = cardinality;
+      // the node sums the bucket and the nodes covering the buckets just before it
+      long sum = cardinality;
+      final int stop = node - (node & -node);
+      for (int child = node - 1; child > stop; child -= child & -child) {
+        sum += tree[child];
       }
+      tree[node] = sum;
+    }
+    indexedBuckets = nbBuckets;
+  }
 
-      cumulatedCardinalitiesCacheIsValid = true;
+  // the sum of the cardinalities of the first nbBuckets buckets
+  private long cumulatedCardinality(int nbBuckets) {
+    long sum = 0;
+    for (int node = nbBuckets; node > 0; node -= node & -node) {
+      sum += tree[node];
     }
+    return sum;
   }
 
   @Override
@@ -185,71 +324,38 @@ public class FastRankRoaringBitmap extends RoaringBitmap {
     int index = Util.hybridUnsignedBinarySearch(this.highLowContainer.keys, 0,
         this.highLowContainer.size(), xhigh);
 
-    boolean hasBitmapOnIdex;
     if (index < 0) {
-      hasBitmapOnIdex = false;
-      index = -1 - index;
-    } else {
-      hasBitmapOnIdex = true;
+      return cumulatedCardinality(-1 - index);
     }
-
-    long size = 0;
-    if (index > 0) {
-      size += highToCumulatedCardinality[index - 1];
-    }
-
-    long rank = size;
-    if (hasBitmapOnIdex) {
-      rank = size + this.highLowContainer.getContainerAtIndex(index).rank(Util.lowbits(x));
-    }
-
-    return rank;
+    return cumulatedCardinality(index)
+        + this.highLowContainer.getContainerAtIndex(index).rank(Util.lowbits(x));
   }
 
   @Override
   public int select(int j) {
     preComputeCardinalities();
 
-    if (highLowContainer.size() == 0) {
-      // empty: .select is out-of-bounds
-
-      throw new IllegalArgumentException(
-          "select " + j + " when the cardinality is " + this.getCardinality());
-    }
-
-    int index = Arrays.binarySearch(highToCumulatedCardinality, j);
-
-    int fixedIndex;
+    final int nbBuckets = highLowContainer.size();
 
+    // descending the tree to find the bucket holding the j-th value
     long leftover = Util.toUnsignedLong(j);
-
-    if (index == highToCumulatedCardinality.length - 1) {
-      // We select the total cardinality: we are selecting the last element
-      return this.last();
-    } else if (index >= 0) {
-      // We selected a cumulated cardinality: we are selecting the last element of given bucket
-      int keycontrib = this.highLowContainer.getKeyAtIndex(index + 1) << 16;
-
-      // If first bucket has cardinality 1 and we select 1: we actual select the first item of
-      // second bucket
-      int output = keycontrib + this.highLowContainer.getContainerAtIndex(index + 1).first();
-
-      return output;
-    } else {
-      // We selected a cardinality not matching exactly the cumulated cardinalities: we are not
-      // selected the last element of a bucket
-      fixedIndex = -1 - index;
-      if (fixedIndex > 0) {
-        leftover -= highToCumulatedCardinality[fixedIndex - 1];
+    int index = 0;
+    for (int step = Integer.highestOneBit(nbBuckets); step > 0; step >>>= 1) {
+      if (index + step <= nbBuckets && tree[index + step] <= leftover) {
+        index += step;
+        leftover -= tree[index];
       }
     }
 
-    int keycontrib = this.highLowContainer.getKeyAtIndex(fixedIndex) << 16;
-    int lowcontrib = Util.toIntUnsigned(
-        this.highLowContainer.getContainerAtIndex(fixedIndex).select((int) leftover));
-    int value = lowcontrib + keycontrib;
-
+    if (index == nbBuckets) {
+      // .select is out-of-bounds
+      throw new IllegalArgumentException(
+          "select " + j + " when the cardinality is " + this.getCardinality());
+    }
 
-    return value;
+    int keycontrib = this.highLowContainer.getKeyAtIndex(index) << 16;
+    int lowcontrib = Util.toIntUnsigned(
+        this.highLowContainer.getContainerAtIndex(index).select((int) leftover));
+    return lowcontrib + keycontrib;
   }
 }
@@ -69,6 +69,18 @@ public interface ImmutableBitmapDataProvider {
    */
   public IntIterator getReverseIntIterator();
 
+  /**
+   * This iterator can be faster than {@link #getIntIterator} when many values are read, since
+   * whole containers are decoded into the caller's buffer at once.
+   *
+   * @return an iterator over set bits which fills int arrays, in ascending sorted order
+   * @throws UnsupportedOperationException if the bitmap does not provide batch iterators
+   */
+  public default BatchIterator getBatchIterator() {
+    throw new UnsupportedOperationException("Batch iteration is not supported by "
+        + getClass().getName());
+  }
+
   /**
    * Estimate of the memory usage of this data structure.
    * 
@@ -126,6 +138,34 @@ public interface ImmutableBitmapDataProvider {
    */
   public long rankLong(int x);
 
+  /**
+   * Computes the number of values in the interval [start,end), without building a bitmap of
+   * them: only the containers overlapping the interval are visited.
+   *
+   * @param start inclusive beginning of the range, in [0, 0xffffffff]
+   * @param end exclusive ending of the range, in [0, 0xffffffff + 1]
+   * @return the number of values in the range
+   */
+  public default long rangeCardinality(long start, long end) {
+    RoaringBitmap.rangeSanityCheck(start, end);
+    if (start >= end) {
+      return 0;
+    }
+    final long before = start == 0 ? 0 : rankLong((int) (start - 1));
+    return rankLong((int) (end - 1)) - before;
+  }
+
+  /**
+   * Checks whether the cardinality of the bitmap is greater than the threshold, stopping as soon
+   * as enough values have been counted.
+   *
+   * @param threshold the threshold
+   * @return true if the cardinality is greater than the threshold
+   */
+  public default boolean cardinalityExceeds(long threshold) {
+    return getLongCardinality() > threshold;
+  }
+
   /**
    * Return the jth value stored in this bitmap. The provided value 
    * needs to be smaller than the cardinality otherwise an 
@@ -155,6 +195,76 @@ public interface ImmutableBitmapDataProvider {
    */
   public int last();
 
+  /**
+   * Returns the first value in the bitmap which is greater than or equal to fromValue,
+   * considering values as unsigned 32-bit integers.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned long, or -1 if there is none
+   */
+  public default long nextValue(int fromValue) {
+    PeekableIntIterator it = getIntIterator();
+    it.advanceIfNeeded(fromValue);
+    return it.hasNext() ? Util.toUnsignedLong(it.next()) : -1L;
+  }
+
+  /**
+   * Returns the last value in the bitmap which is smaller than or equal to fromValue,
+   * considering values as unsigned 32-bit integers.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned long, or -1 if there is none
+   */
+  public default long previousValue(int fromValue) {
+    IntIterator it = getReverseIntIterator();
+    while (it.hasNext()) {
+      int value = it.next();
+      if (Integer.compareUnsigned(value, fromValue) <= 0) {
+        return Util.toUnsignedLong(value);
+      }
+    }
+    return -1L;
+  }
+
+  /**
+   * Returns the first value missing from the bitmap which is greater than or equal to fromValue,
+   * considering values as unsigned 32-bit integers.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned long, or -1 if there is none
+   */
+  public default long nextAbsentValue(int fromValue) {
+    PeekableIntIterator it = getIntIterator();
+    it.advanceIfNeeded(fromValue);
+    long candidate = Util.toUnsignedLong(fromValue);
+    while (it.hasNext() && Util.toUnsignedLong(it.next()) == candidate) {
+      ++candidate;
+    }
+    return candidate <= 0xFFFFFFFFL ? candidate : -1L;
+  }
+
+  /**
+   * Returns the last value missing from the bitmap which is smaller than or equal to fromValue,
+   * considering values as unsigned 32-bit integers.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned long, or -1 if there is none
+   */
+  public default long previousAbsentValue(int fromValue) {
+    IntIterator it = getReverseIntIterator();
+    long candidate = Util.toUnsignedLong(fromValue);
+    while (it.hasNext()) {
+      long value = Util.toUnsignedLong(it.next());
+      if (value < candidate) {
+        break;
+      }
+      if (value == candidate) {
+        --candidate;
+      }
+    }
+    return candidate;
+  }
+
   /**
    * Serialize this bitmap.
    *
@@ -0,0 +1,195 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * Algorithms intersecting two sorted arrays of unsigned 16-bit values, as held by array
+ * containers. {@link #ADAPTIVE}, used by default, picks one of the others from the lengths of the
+ * arrays. Another one can be used by all array containers through
+ * {@link ScalarContainerKernels#ScalarContainerKernels(IntersectionStrategy)} (see
+ * {@link ContainerKernels}).
+ */
+public enum IntersectionStrategy {
+
+  /**
+   * Scans both arrays, best when they have similar lengths.
+   */
+  MERGE {
+    @Override
+    int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+        boolean write) {
+      return write ? Util.unsignedLocalIntersect2by2(set1, length1, set2, length2, buffer)
+          : Util.unsignedLocalIntersect2by2Cardinality(set1, length1, set2, length2);
+    }
+  },
+
+  /**
+   * Scans the smallest array, galloping over the largest one to find each of its values.
+   */
+  GALLOP {
+    @Override
+    int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+        boolean write) {
+      if (length1 > length2) {
+        return gallop(set2, length2, set1, length1, buffer, write);
+      }
+      return gallop(set1, length1, set2, length2, buffer, write);
+    }
+  },
+
+  /**
+   * Gallops over either array, whichever is behind, best when the values of both arrays come in
+   * clusters.
+   */
+  TWO_SIDED_GALLOP {
+    @Override
+    int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+        boolean write) {
+      int pos = 0;
+      int k1 = 0;
+      int k2 = 0;
+      while (k1 < length1 && k2 < length2) {
+        short s1 = set1[k1];
+        short s2 = set2[k2];
+        int v1 = Util.toIntUnsigned(s1);
+        int v2 = Util.toIntUnsigned(s2);
+        if (v1 < v2) {
+          k1 = Util.advanceUntil(set1, k1, length1, s2);
+        } else if (v2 < v1) {
+          k2 = Util.advanceUntil(set2, k2, length2, s1);
+        } else {
+          if (write) {
+            buffer[pos] = s1;
+          }
+          ++pos;
+          ++k1;
+          ++k2;
+        }
+      }
+      return pos;
+    }
+  },
+
+  /**
+   * Looks up each value of the smallest array in the largest one with a binary search, best when
+   * the smallest array holds only a handful of values.
+   */
+  BINARY_PROBE {
+    @Override
+    int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+        boolean write) {
+      if (length1 > length2) {
+        return probe(set2, length2, set1, length1, buffer, write);
+      }
+      return probe(set1, length1, set2, length2, buffer, write);
+    }
+  },
+
+  /**
+   * Picks one of the other strategies from the lengths of the arrays.
+   */
+  ADAPTIVE {
+    @Override
+    int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+        boolean write) {
+      return choose(length1, length2).intersect(set1, length1, set2, length2, buffer, write);
+    }
+  };
+
+  // Starting points, not tuned yet: run RealDataBenchmarkArrayIntersection before changing them.
+  // Until then Util.unsignedIntersect2by2 keeps its own threshold.
+  // the smallest array is probed when it is at least that many times smaller
+  static final int PROBE_RATIO = 1024;
+  // the largest array is galloped over when it is at least that many times larger
+  static final int GALLOP_RATIO = 64;
+
+  /**
+   * The strategy used by ADAPTIVE to intersect arrays of the given lengths
+   *
+   * @param length1 length of the first array
+   * @param length2 length of the second array
+   * @return a strategy other than ADAPTIVE
+   */
+  public static IntersectionStrategy choose(int length1, int length2) {
+    int small = Math.min(length1, length2);
+    int large = Math.max(length1, length2);
+    if (small * PROBE_RATIO <= large) {
+      return BINARY_PROBE;
+    }
+    if (small * GALLOP_RATIO <= large) {
+      return GALLOP;
+    }
+    return MERGE;
+  }
+
+  /**
+   * Intersect two sorted lists and write the result to the provided output array
+   *
+   * @param set1 first array
+   * @param length1 length of first array
+   * @param set2 second array
+   * @param length2 length of second array
+   * @param buffer output array, large enough for the smallest array
+   * @return cardinality of the intersection
+   */
+  public int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer) {
+    return intersect(set1, length1, set2, length2, buffer, true);
+  }
+
+  /**
+   * Compute the cardinality of the intersection of two sorted lists
+   *
+   * @param set1 first array
+   * @param length1 length of first array
+   * @param set2 second array
+   * @param length2 length of second array
+   * @return cardinality of the intersection
+   */
+  public int intersectionCardinality(short[] set1, int length1, short[] set2, int length2) {
+    return intersect(set1, length1, set2, length2, null, false);
+  }
+
+  // writes to buffer only if write is set
+  abstract int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer,
+      boolean write);
+
+  private static int gallop(short[] small, int smallLength, short[] large, int largeLength,
+      short[] buffer, boolean write) {
+    int pos = 0;
+    int k = 0;
+    for (int i = 0; i < smallLength && k < largeLength; ++i) {
+      short s = small[i];
+      k = Util.advanceUntil(large, k - 1, largeLength, s);
+      if (k < largeLength && large[k] == s) {
+        if (write) {
+          buffer[pos] = s;
+        }
+        ++pos;
+        ++k;
+      }
+    }
+    return pos;
+  }
+
+  private static int probe(short[] small, int smallLength, short[] large, int largeLength,
+      short[] buffer, boolean write) {
+    int pos = 0;
+    int k = 0;
+    for (int i = 0; i < smallLength && k < largeLength; ++i) {
+      short s = small[i];
+      int index = Util.unsignedBinarySearch(large, k, largeLength, s);
+      if (index >= 0) {
+        if (write) {
+          buffer[pos] = s;
+        }
+        ++pos;
+        k = index + 1;
+      } else {
+        k = -index - 1;
+      }
+    }
+    return pos;
+  }
+}
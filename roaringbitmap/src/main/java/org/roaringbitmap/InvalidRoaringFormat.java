@@ -0,0 +1,21 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * Thrown when mapping data which is not a valid serialized bitmap, or whose optional blocks are
+ * inconsistent with the bitmap they follow.
+ */
+public class InvalidRoaringFormat extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param message what is wrong with the data
+   */
+  public InvalidRoaringFormat(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the {@link ContainerKernels} used by the containers, chosen once per class loader so that
+ * calls through it can be inlined.
+ */
+final class Kernels {
+
+  static final ContainerKernels INSTANCE = load(System.getProperty(
+      ContainerKernels.KERNELS_PROPERTY));
+
+  private Kernels() {
+  }
+
+  // falls back to the scalar kernels if the named ones cannot run here, with a warning since they
+  // were asked for explicitly
+  static ContainerKernels load(String className) {
+    if (className != null && !className.isEmpty()) {
+      try {
+        return (ContainerKernels) Class.forName(className).getConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        // e.g. a module required by these kernels is missing from the runtime
+        Logger.getLogger(Kernels.class.getName()).log(Level.WARNING, "Cannot use the kernels "
+            + className + " named by " + ContainerKernels.KERNELS_PROPERTY
+            + ", falling back to " + ScalarContainerKernels.class.getName(), e);
+      }
+    }
+    return new ScalarContainerKernels();
+  }
+}
@@ -103,6 +103,25 @@ public class OrderedWriter {
     }
   }
 
+  /**
+   * Computes the serialized size of the underlying bitmap as if the buffered additions were
+   * flushed, leaving them buffered so that values of the same key may still be added.
+   *
+   * @return the size in bytes
+   */
+  int serializedSizeInBytes() {
+    if (!dirty) {
+      return underlying.serializedSizeInBytes();
+    }
+    // the container flush would append, without copying the bitmap
+    Container buffered = new BitmapContainer(bitmap, -1).repairAfterLazy().runOptimize();
+    RoaringArray highLowContainer = underlying.highLowContainer;
+    boolean hasRun = buffered instanceof RunContainer || highLowContainer.hasRunContainer();
+    return underlying.serializedSizeInBytes() - highLowContainer.headerSize()
+        + RoaringArray.headerSize(hasRun, highLowContainer.size() + 1)
+        + buffered.getArraySizeInBytes();
+  }
+
   private Container chooseBestContainer() {
     Container container = new BitmapContainer(bitmap,-1).repairAfterLazy().runOptimize();
     return container instanceof BitmapContainer ? container.clone() : container;
@@ -0,0 +1,475 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.util.Iterator;
+
+/**
+ * An immutable bitmap, each modification returning a new version. The containers are stored in a
+ * tree indexed by their key (high 16 bits), and a new version only copies the path to the
+ * containers it modifies: versions share the containers and the nodes they did not touch, so that
+ * keeping many versions of a bitmap costs roughly one copy of it plus the differences.
+ *
+ * Operations between versions of the same bitmap skip the subtrees they share, so that comparing
+ * them with {@link #equals(Object)}, or computing their {@link #xor(PersistentRoaringBitmap)}, is
+ * proportional to their differences rather than to their size.
+ *
+ * <pre>
+ * {@code
+ *      PersistentRoaringBitmap v1 = PersistentRoaringBitmap.bitmapOf(1, 2, 3);
+ *      PersistentRoaringBitmap v2 = v1.add(1000);
+ *      // v1 still holds 1, 2, 3
+ * }
+ * </pre>
+ *
+ * Instances are immutable, and can be read by several threads without synchronization.
+ */
+public final class PersistentRoaringBitmap implements Iterable<Integer> {
+
+  // bits of the key indexing the children of a node, from the highest bits at the root
+  private static final int BITS = 4;
+  private static final int FANOUT = 1 << BITS;
+  private static final int MASK = FANOUT - 1;
+  // levels of nodes: the children of the nodes of the last level are containers
+  private static final int DEPTH = 16 / BITS;
+
+  private static final PersistentRoaringBitmap EMPTY = new PersistentRoaringBitmap(null);
+
+  // null when the bitmap is empty
+  private final Node root;
+
+  private PersistentRoaringBitmap(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns the empty bitmap.
+   *
+   * @return the empty bitmap
+   */
+  public static PersistentRoaringBitmap empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Generate a bitmap with the specified values set to true.
+   *
+   * @param dat set values
+   * @return a new bitmap
+   */
+  public static PersistentRoaringBitmap bitmapOf(final int... dat) {
+    return fromRoaringBitmap(RoaringBitmap.bitmapOf(dat));
+  }
+
+  /**
+   * Create a bitmap with the values of a RoaringBitmap, in time proportional to its number of
+   * containers: the containers are shared, and the RoaringBitmap clones them before modifying
+   * them, see {@link RoaringBitmap#snapshot()}.
+   *
+   * @param bitmap the values
+   * @return a new bitmap
+   */
+  public static PersistentRoaringBitmap fromRoaringBitmap(RoaringBitmap bitmap) {
+    final RoaringArray array = bitmap.highLowContainer.snapshot();
+    if (array.size() == 0) {
+      return EMPTY;
+    }
+    return new PersistentRoaringBitmap((Node) build(array, 0, array.size(), 0));
+  }
+
+  /**
+   * Create a RoaringBitmap with the values of this bitmap, in time proportional to the number of
+   * containers: the containers are shared, and the RoaringBitmap clones them before modifying
+   * them, see {@link RoaringBitmap#snapshot()}.
+   *
+   * @return a new RoaringBitmap
+   */
+  public RoaringBitmap toRoaringBitmap() {
+    final RoaringArray answer = new RoaringArray();
+    collect(root, 0, 0, answer);
+    return new RoaringBitmap(answer);
+  }
+
+  /**
+   * Returns a version including the value.
+   *
+   * @param x integer value
+   * @return the new version, or this bitmap if it already contains the value
+   */
+  public PersistentRoaringBitmap add(final int x) {
+    final int key = Util.toIntUnsigned(Util.highbits(x));
+    final short lb = Util.lowbits(x);
+    final Container c = getContainer(key);
+    if (c == null) {
+      return new PersistentRoaringBitmap(with(root, 0, key, new ArrayContainer().add(lb)));
+    }
+    if (c.contains(lb)) {
+      return this;
+    }
+    return new PersistentRoaringBitmap(with(root, 0, key, c.clone().add(lb)));
+  }
+
+  /**
+   * Returns a version including all the integers in [rangeStart,rangeEnd).
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return the new version
+   */
+  public PersistentRoaringBitmap add(final long rangeStart, final long rangeEnd) {
+    final RoaringBitmap range = new RoaringBitmap();
+    range.add(rangeStart, rangeEnd);
+    return or(fromRoaringBitmap(range));
+  }
+
+  /**
+   * Returns a version without the value.
+   *
+   * @param x integer value
+   * @return the new version, or this bitmap if it does not contain the value
+   */
+  public PersistentRoaringBitmap remove(final int x) {
+    final int key = Util.toIntUnsigned(Util.highbits(x));
+    final short lb = Util.lowbits(x);
+    final Container c = getContainer(key);
+    if (c == null || !c.contains(lb)) {
+      return this;
+    }
+    final Container removed = c.clone().remove(lb);
+    return new PersistentRoaringBitmap(with(root, 0, key, removed.isEmpty() ? null : removed));
+  }
+
+  /**
+   * Returns a version without the integers in [rangeStart,rangeEnd).
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   * @return the new version
+   */
+  public PersistentRoaringBitmap remove(final long rangeStart, final long rangeEnd) {
+    final RoaringBitmap range = new RoaringBitmap();
+    range.add(rangeStart, rangeEnd);
+    return andNot(fromRoaringBitmap(range));
+  }
+
+  /**
+   * Bitwise AND (intersection) operation.
+   *
+   * @param other other bitmap
+   * @return the intersection, as a new version
+   */
+  public PersistentRoaringBitmap and(final PersistentRoaringBitmap other) {
+    return merge(other, Operation.AND);
+  }
+
+  /**
+   * Bitwise ANDNOT (difference) operation.
+   *
+   * @param other other bitmap
+   * @return the values of this bitmap missing from the other one, as a new version
+   */
+  public PersistentRoaringBitmap andNot(final PersistentRoaringBitmap other) {
+    return merge(other, Operation.AND_NOT);
+  }
+
+  /**
+   * Bitwise OR (union) operation.
+   *
+   * @param other other bitmap
+   * @return the union, as a new version
+   */
+  public PersistentRoaringBitmap or(final PersistentRoaringBitmap other) {
+    return merge(other, Operation.OR);
+  }
+
+  /**
+   * Bitwise XOR (symmetric difference) operation, which is proportional to the differences between
+   * two versions of the same bitmap.
+   *
+   * @param other other bitmap
+   * @return the symmetric difference, as a new version
+   */
+  public PersistentRoaringBitmap xor(final PersistentRoaringBitmap other) {
+    return merge(other, Operation.XOR);
+  }
+
+  /**
+   * Checks whether the value is included.
+   *
+   * @param x integer value
+   * @return whether the integer value is included.
+   */
+  public boolean contains(final int x) {
+    final Container c = getContainer(Util.toIntUnsigned(Util.highbits(x)));
+    return c != null && c.contains(Util.lowbits(x));
+  }
+
+  /**
+   * Returns the number of distinct integers in the bitmap, in constant time.
+   *
+   * @return the cardinality
+   */
+  public long getLongCardinality() {
+    return root == null ? 0 : root.cardinality;
+  }
+
+  /**
+   * Checks whether the bitmap is empty.
+   *
+   * @return true if this bitmap contains no set bit
+   */
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /**
+   * Iterate over the values, in increasing unsigned order.
+   *
+   * @return an iterator over the values
+   */
+  public PeekableIntIterator getIntIterator() {
+    return toRoaringBitmap().getIntIterator();
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    return toRoaringBitmap().iterator();
+  }
+
+  /**
+   * Checks whether the two bitmaps hold the same values. The subtrees shared by the two bitmaps
+   * are skipped, so that comparing two versions is proportional to their differences.
+   *
+   * @param o other object
+   * @return true if the other object is a PersistentRoaringBitmap with the same values
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PersistentRoaringBitmap)) {
+      return false;
+    }
+    return equal(root, ((PersistentRoaringBitmap) o).root, 0);
+  }
+
+  @Override
+  public int hashCode() {
+    // equal bitmaps have the same keys and cardinality, whatever the types of their containers
+    return 31 * Long.hashCode(getLongCardinality()) + hashKeys(root, 0, 0);
+  }
+
+  @Override
+  public String toString() {
+    return toRoaringBitmap().toString();
+  }
+
+  private Container getContainer(int key) {
+    Object child = root;
+    for (int level = 0; level < DEPTH && child != null; ++level) {
+      child = ((Node) child).children[index(key, level)];
+    }
+    return (Container) child;
+  }
+
+  private PersistentRoaringBitmap merge(PersistentRoaringBitmap other, Operation operation) {
+    final Node node = (Node) merge(root, other.root, 0, operation);
+    if (node == root) {
+      return this;
+    }
+    return node == other.root ? other : new PersistentRoaringBitmap(node);
+  }
+
+  private static int index(int key, int level) {
+    return (key >>> (16 - BITS * (level + 1))) & MASK;
+  }
+
+  private static long cardinality(Object child) {
+    if (child == null) {
+      return 0;
+    }
+    if (child instanceof Node) {
+      return ((Node) child).cardinality;
+    }
+    return ((Container) child).getCardinality();
+  }
+
+  // copies the path to the key, to set its container, or remove it if null
+  private static Node with(Node node, int level, int key, Container c) {
+    final int i = index(key, level);
+    final Object[] children = node == null ? new Object[FANOUT] : node.children.clone();
+    final Object old = children[i];
+    children[i] = level == DEPTH - 1 ? c : with((Node) old, level + 1, key, c);
+    final long cardinality =
+        (node == null ? 0 : node.cardinality) - cardinality(old) + cardinality(children[i]);
+    return cardinality == 0 ? null : new Node(children, cardinality);
+  }
+
+  // the subtree of the containers at indexes [from, to) of the array, which share their first
+  // level * BITS bits
+  private static Object build(RoaringArray array, int from, int to, int level) {
+    if (level == DEPTH) {
+      return array.getContainerAtIndex(from);
+    }
+    final Object[] children = new Object[FANOUT];
+    long cardinality = 0;
+    int k = from;
+    while (k < to) {
+      final int i = index(Util.toIntUnsigned(array.getKeyAtIndex(k)), level);
+      int end = k + 1;
+      while (end < to && index(Util.toIntUnsigned(array.getKeyAtIndex(end)), level) == i) {
+        ++end;
+      }
+      children[i] = build(array, k, end, level + 1);
+      cardinality += cardinality(children[i]);
+      k = end;
+    }
+    return new Node(children, cardinality);
+  }
+
+  private static void collect(Object child, int level, int prefix, RoaringArray answer) {
+    if (child == null) {
+      return;
+    }
+    if (level == DEPTH) {
+      final Container c = (Container) child;
+      c.markShared();
+      answer.append((short) prefix, c);
+      return;
+    }
+    final Object[] children = ((Node) child).children;
+    for (int i = 0; i < FANOUT; ++i) {
+      collect(children[i], level + 1, (prefix << BITS) | i, answer);
+    }
+  }
+
+  private static Object merge(Object x, Object y, int level, Operation operation) {
+    if (x == y) {
+      return operation.keepsShared ? x : null;
+    }
+    if (y == null) {
+      return operation.keepsLeft ? x : null;
+    }
+    if (x == null) {
+      return operation.keepsRight ? y : null;
+    }
+    if (level == DEPTH) {
+      final Container c = operation.apply((Container) x, (Container) y);
+      return c.isEmpty() ? null : c;
+    }
+    final Object[] left = ((Node) x).children;
+    final Object[] right = ((Node) y).children;
+    final Object[] children = new Object[FANOUT];
+    boolean sameAsLeft = true;
+    boolean sameAsRight = true;
+    long cardinality = 0;
+    for (int i = 0; i < FANOUT; ++i) {
+      children[i] = merge(left[i], right[i], level + 1, operation);
+      sameAsLeft &= children[i] == left[i];
+      sameAsRight &= children[i] == right[i];
+      cardinality += cardinality(children[i]);
+    }
+    // keep sharing the nodes the operation did not change
+    if (sameAsLeft) {
+      return x;
+    }
+    if (sameAsRight) {
+      return y;
+    }
+    return cardinality == 0 ? null : new Node(children, cardinality);
+  }
+
+  private static boolean equal(Object x, Object y, int level) {
+    if (x == y) {
+      return true;
+    }
+    if (x == null || y == null) {
+      return false;
+    }
+    if (level == DEPTH) {
+      return x.equals(y);
+    }
+    if (((Node) x).cardinality != ((Node) y).cardinality) {
+      return false;
+    }
+    for (int i = 0; i < FANOUT; ++i) {
+      if (!equal(((Node) x).children[i], ((Node) y).children[i], level + 1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hashKeys(Object child, int level, int prefix) {
+    if (child == null) {
+      return 0;
+    }
+    if (level == DEPTH) {
+      return prefix + 1;
+    }
+    int hash = 0;
+    final Object[] children = ((Node) child).children;
+    for (int i = 0; i < FANOUT; ++i) {
+      hash = 31 * hash + hashKeys(children[i], level + 1, (prefix << BITS) | i);
+    }
+    return hash;
+  }
+
+  /**
+   * An immutable node of the tree, whose children are nodes, or containers at the last level.
+   */
+  private static final class Node {
+
+    final Object[] children;
+    // the number of values in the subtree
+    final long cardinality;
+
+    Node(Object[] children, long cardinality) {
+      this.children = children;
+      this.cardinality = cardinality;
+    }
+  }
+
+  private enum Operation {
+    AND(true, false, false) {
+      @Override
+      Container apply(Container x, Container y) {
+        return x.and(y);
+      }
+    },
+    AND_NOT(false, true, false) {
+      @Override
+      Container apply(Container x, Container y) {
+        return x.andNot(y);
+      }
+    },
+    OR(true, true, true) {
+      @Override
+      Container apply(Container x, Container y) {
+        return x.or(y);
+      }
+    },
+    XOR(false, true, true) {
+      @Override
+      Container apply(Container x, Container y) {
+        return x.xor(y);
+      }
+    };
+
+    // what the operation does with a subtree shared by both sides, or only found on one side
+    final boolean keepsShared;
+    final boolean keepsLeft;
+    final boolean keepsRight;
+
+    Operation(boolean keepsShared, boolean keepsLeft, boolean keepsRight) {
+      this.keepsShared = keepsShared;
+      this.keepsLeft = keepsLeft;
+      this.keepsRight = keepsRight;
+    }
+
+    abstract Container apply(Container x, Container y);
+  }
+}
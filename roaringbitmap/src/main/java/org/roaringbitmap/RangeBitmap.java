@@ -0,0 +1,363 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ * An immutable index of one unsigned long value per row, answering threshold queries
+ * (lte, lt, gte, gt, between) with the bitmap of the matching row ids. Rows are numbered from 0 in
+ * the order their values were appended.
+ *
+ * The values are stored as a base-2 range-encoded bit-sliced index: slice i is the bitmap of the
+ * rows whose i-th bit is 0, so that "value &lt;= threshold" costs a single union or intersection
+ * per slice (Chan and Ioannidis, "Bitmap Index Design and Evaluation", SIGMOD 1998).
+ *
+ * <pre>
+ * {@code
+ *      RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+ *      for (long value : column) {
+ *        appender.add(value);
+ *      }
+ *      ByteBuffer buffer = ... // e.g., a memory-mapped file
+ *      appender.serialize(buffer);
+ *
+ *      //...
+ *
+ *      RangeBitmap index = RangeBitmap.map(buffer);
+ *      RoaringBitmap rows = index.between(10, 20);
+ * }
+ * </pre>
+ *
+ * The serialized layout, in little-endian order, is a 2-byte cookie, the number of slices on one
+ * byte, a reserved byte, the number of rows as a 4-byte integer, the maximum value as an 8-byte
+ * integer, the 4-byte offset of each slice from the start of the layout and finally the slices in
+ * the portable RoaringBitmap format. A mapped RangeBitmap only reads the slices a query needs,
+ * directly from the buffer (as ImmutableRoaringBitmap does), without copying them on the heap.
+ */
+public final class RangeBitmap {
+
+  private static final short COOKIE = (short) 0xF00D;
+
+  private static final int HEADER_SIZE = 2 + 1 + 1 + 4 + 8;
+
+  private final ByteBuffer buffer;
+
+  private final int sliceCount;
+
+  private final int rows;
+
+  private final long maxValue;
+
+  private RangeBitmap(ByteBuffer buffer) {
+    this.buffer = buffer;
+    if (buffer.getShort(0) != COOKIE) {
+      throw new IllegalArgumentException("I failed to find the right cookie.");
+    }
+    this.sliceCount = buffer.get(2) & 0xFF;
+    this.rows = buffer.getInt(4);
+    this.maxValue = buffer.getLong(8);
+  }
+
+  /**
+   * Map a RangeBitmap to the serialized data, starting at the current position of the buffer.
+   * The content of the buffer must not be modified while the RangeBitmap is in use; the buffer
+   * itself (position, limit, byte order) is not modified.
+   *
+   * @param buffer data source
+   * @return a RangeBitmap over the buffer
+   */
+  public static RangeBitmap map(ByteBuffer buffer) {
+    return new RangeBitmap(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  /**
+   * Create an appender for values no larger (in unsigned order) than maxValue.
+   *
+   * @param maxValue the largest value which may be appended
+   * @return a new appender
+   */
+  public static Appender appender(long maxValue) {
+    return new Appender(maxValue);
+  }
+
+  /**
+   * @return the number of rows, which may be up to 2^32 - 1
+   */
+  public long getRowCount() {
+    return Util.toUnsignedLong(rows);
+  }
+
+  /**
+   * @return the largest value which may be present, as given to the appender
+   */
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * @return the number of bytes of the mapped serialized form
+   */
+  public int serializedSizeInBytes() {
+    if (sliceCount == 0) {
+      return HEADER_SIZE;
+    }
+    final ImmutableRoaringBitmap last = slice(sliceCount - 1);
+    return buffer.getInt(HEADER_SIZE + 4 * (sliceCount - 1)) + last.serializedSizeInBytes();
+  }
+
+  private ImmutableRoaringBitmap slice(int i) {
+    ByteBuffer bb = buffer.duplicate();
+    bb.position(buffer.getInt(HEADER_SIZE + 4 * i));
+    return new ImmutableRoaringBitmap(bb);
+  }
+
+  /**
+   * @param threshold inclusive upper bound, unsigned
+   * @return the rows whose value is at most the threshold
+   */
+  public RoaringBitmap lte(long threshold) {
+    return toRoaringBitmap(lteOrNull(threshold));
+  }
+
+  /**
+   * @param threshold exclusive upper bound, unsigned
+   * @return the rows whose value is less than the threshold
+   */
+  public RoaringBitmap lt(long threshold) {
+    return threshold == 0 ? new RoaringBitmap() : lte(threshold - 1);
+  }
+
+  /**
+   * @param threshold inclusive lower bound, unsigned
+   * @return the rows whose value is at least the threshold
+   */
+  public RoaringBitmap gte(long threshold) {
+    return threshold == 0 ? allRows() : gt(threshold - 1);
+  }
+
+  /**
+   * @param threshold exclusive lower bound, unsigned
+   * @return the rows whose value is greater than the threshold
+   */
+  public RoaringBitmap gt(long threshold) {
+    MutableRoaringBitmap lte = lteOrNull(threshold);
+    if (lte == null) {
+      return new RoaringBitmap();
+    }
+    lte.flip(0L, Util.toUnsignedLong(rows));
+    return lte.toRoaringBitmap();
+  }
+
+  /**
+   * @param min inclusive lower bound, unsigned
+   * @param max inclusive upper bound, unsigned
+   * @return the rows whose value is between min and max
+   */
+  public RoaringBitmap between(long min, long max) {
+    if (Long.compareUnsigned(min, max) > 0) {
+      return new RoaringBitmap();
+    }
+    if (min == 0) {
+      return lte(max);
+    }
+    MutableRoaringBitmap upper = lteOrNull(max);
+    MutableRoaringBitmap lower = lteOrNull(min - 1);
+    if (upper == null) {
+      if (lower == null) {
+        return new RoaringBitmap();
+      }
+      lower.flip(0L, Util.toUnsignedLong(rows));
+      return lower.toRoaringBitmap();
+    }
+    if (lower != null) {
+      upper.andNot(lower);
+    }
+    return upper.toRoaringBitmap();
+  }
+
+  private RoaringBitmap allRows() {
+    RoaringBitmap all = new RoaringBitmap();
+    all.add(0L, Util.toUnsignedLong(rows));
+    return all;
+  }
+
+  private RoaringBitmap toRoaringBitmap(MutableRoaringBitmap rowsOrNull) {
+    return rowsOrNull == null ? allRows() : rowsOrNull.toRoaringBitmap();
+  }
+
+  /**
+   * Evaluate "value &lt;= threshold" from the least significant slice up.
+   *
+   * @param threshold inclusive upper bound
+   * @return the matching rows, or null if all the rows match
+   */
+  private MutableRoaringBitmap lteOrNull(long threshold) {
+    if (Long.compareUnsigned(threshold, maxValue) >= 0) {
+      return null;
+    }
+    MutableRoaringBitmap answer = null; // null stands for all the rows
+    for (int i = 0; i < sliceCount; i++) {
+      if ((threshold & (1L << i)) != 0) {
+        // bit is 1: the lower bits decide only for the rows having a 1 too
+        if (answer != null) {
+          answer.or(slice(i));
+        }
+      } else {
+        // bit is 0: the row must have a 0
+        if (answer == null) {
+          answer = slice(i).toMutableRoaringBitmap();
+        } else {
+          answer.and(slice(i));
+        }
+      }
+    }
+    return answer;
+  }
+
+  /**
+   * Builds a RangeBitmap from a stream of values, one per row.
+   */
+  public static final class Appender {
+
+    private final long maxValue;
+
+    private final int sliceCount;
+
+    private final OrderedWriter[] writers;
+
+    private int rows = 0;
+
+    // the slices are flushed when serializing: no row may be appended afterwards
+    private boolean sealed = false;
+
+    private Appender(long maxValue) {
+      this.maxValue = maxValue;
+      this.sliceCount = 64 - Long.numberOfLeadingZeros(maxValue);
+      this.writers = new OrderedWriter[sliceCount];
+      for (int i = 0; i < sliceCount; i++) {
+        writers[i] = new OrderedWriter();
+      }
+    }
+
+    /**
+     * Append the value of the next row.
+     *
+     * @param value the value, at most maxValue in unsigned order
+     * @throws IllegalArgumentException if the value is larger than maxValue
+     * @throws IllegalStateException if the appender has already been serialized
+     */
+    public void add(long value) {
+      if (sealed) {
+        throw new IllegalStateException("Cannot append after serialization");
+      }
+      if (Long.compareUnsigned(value, maxValue) > 0) {
+        throw new IllegalArgumentException(Long.toUnsignedString(value)
+            + " is larger than the maximum value " + Long.toUnsignedString(maxValue));
+      }
+      if (rows == -1) {
+        throw new IllegalStateException("Too many rows");
+      }
+      for (int i = 0; i < sliceCount; i++) {
+        if ((value & (1L << i)) == 0) {
+          writers[i].add(rows);
+        }
+      }
+      rows++;
+    }
+
+    private RoaringBitmap[] slices() {
+      sealed = true;
+      RoaringBitmap[] slices = new RoaringBitmap[sliceCount];
+      for (int i = 0; i < sliceCount; i++) {
+        writers[i].flush();
+        slices[i] = writers[i].getUnderlying();
+        slices[i].runOptimize();
+      }
+      return slices;
+    }
+
+    /**
+     * Report the number of bytes required to serialize the values appended so far. Unlike
+     * serialization, this does not prevent appending more values.
+     *
+     * @return the size in bytes
+     */
+    public int serializedSizeInBytes() {
+      int size = HEADER_SIZE + 4 * sliceCount;
+      for (OrderedWriter writer : writers) {
+        size += writer.serializedSizeInBytes();
+      }
+      return size;
+    }
+
+    /**
+     * Serialize the values appended so far, at the current position of the buffer, which is
+     * advanced past the written bytes. No value may be appended afterwards.
+     *
+     * @param buffer the destination, with at least serializedSizeInBytes() remaining bytes
+     */
+    public void serialize(final ByteBuffer buffer) {
+      try {
+        serialize(new DataOutputStream(new OutputStream() {
+          @Override
+          public void write(int b) {
+            buffer.put((byte) b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            buffer.put(b, off, len);
+          }
+        }));
+      } catch (IOException e) {
+        throw new IllegalStateException(e); // will not happen
+      }
+    }
+
+    /**
+     * Serialize the values appended so far. No value may be appended afterwards.
+     *
+     * @param out the DataOutput stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void serialize(DataOutput out) throws IOException {
+      RoaringBitmap[] slices = slices();
+      out.writeShort(Short.reverseBytes(COOKIE));
+      out.writeByte(sliceCount);
+      out.writeByte(0);
+      out.writeInt(Integer.reverseBytes(rows));
+      out.writeLong(Long.reverseBytes(maxValue));
+      int offset = HEADER_SIZE + 4 * sliceCount;
+      for (RoaringBitmap slice : slices) {
+        out.writeInt(Integer.reverseBytes(offset));
+        offset += slice.serializedSizeInBytes();
+      }
+      for (RoaringBitmap slice : slices) {
+        slice.serialize(out);
+      }
+    }
+
+    /**
+     * Build a RangeBitmap on the heap from the values appended so far.
+     *
+     * @return a new RangeBitmap
+     */
+    public RangeBitmap build() {
+      ByteBuffer buffer = ByteBuffer.allocate(serializedSizeInBytes());
+      serialize(buffer);
+      buffer.flip();
+      return map(buffer);
+    }
+  }
+}
@@ -6,9 +6,11 @@ package org.roaringbitmap;
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static org.roaringbitmap.Util.compareUnsigned;
 
 
@@ -229,8 +231,25 @@ public final class RoaringArray implements Cloneable, Externalizable {
     keys = Arrays.copyOf(keys, size);
     values = Arrays.copyOf(values, size);
     for (Container c : values) {
-      c.trim();
+      // shared containers may be read by other threads
+      if (!c.isShared()) {
+        c.trim();
+      }
+    }
+  }
+
+  /**
+   * Create a copy sharing the containers, which are marked as shared so that both copies clone
+   * them before modifying them.
+   *
+   * @return the copy
+   */
+  RoaringArray snapshot() {
+    for (int k = 0; k < this.size; ++k) {
+      this.values[k].markShared();
     }
+    return new RoaringArray(Arrays.copyOf(this.keys, this.size),
+        Arrays.copyOf(this.values, this.size), this.size);
   }
 
   @Override
@@ -330,6 +349,89 @@ public final class RoaringArray implements Cloneable, Externalizable {
     }
   }
 
+  /**
+   * Deserialize, copying the containers in bulk out of the buffer. The position of the buffer
+   * is moved past the serialized data; its byte order is ignored.
+   *
+   * @param bbf the byte buffer (can be mapped, direct, array backed etc.)
+   * @throws IOException if the data is not a serialized bitmap
+   */
+  public void deserialize(ByteBuffer bbf) throws IOException {
+    this.clear();
+    final ByteBuffer buffer = bbf.slice().order(LITTLE_ENDIAN);
+    checkRemaining(buffer, 4);
+    final int cookie = buffer.getInt();
+    if ((cookie & 0xFFFF) != SERIAL_COOKIE && cookie != SERIAL_COOKIE_NO_RUNCONTAINER) {
+      throw new IOException("I failed to find one of the right cookies.");
+    }
+    final boolean hasrun = (cookie & 0xFFFF) == SERIAL_COOKIE;
+    if (!hasrun) {
+      checkRemaining(buffer, 4);
+    }
+    final int size = hasrun ? (cookie >>> 16) + 1 : buffer.getInt();
+    if (size < 0 || size > (1 << 16)) {
+      throw new IOException("Size too large");
+    }
+    // the run flags, the keys and cardinalities and the offsets, if present
+    checkRemaining(buffer, headerSize(hasrun, size) - buffer.position());
+    if ((this.keys == null) || (this.keys.length < size)) {
+      this.keys = new short[size];
+      this.values = new Container[size];
+    }
+
+    byte[] bitmapOfRunContainers = null;
+    if (hasrun) {
+      bitmapOfRunContainers = new byte[(size + 7) / 8];
+      buffer.get(bitmapOfRunContainers);
+    }
+    final short[] keysAndCardinalities = new short[2 * size];
+    buffer.asShortBuffer().get(keysAndCardinalities);
+    buffer.position(buffer.position() + 4 * size);
+    if ((!hasrun) || (size >= NO_OFFSET_THRESHOLD)) {
+      // skipping the offsets
+      buffer.position(buffer.position() + 4 * size);
+    }
+    // Reading the containers
+    for (int k = 0; k < size; ++k) {
+      final int cardinality = 1 + Util.toIntUnsigned(keysAndCardinalities[2 * k + 1]);
+      Container val;
+      if (bitmapOfRunContainers != null
+          && ((bitmapOfRunContainers[k / 8] & (1 << (k % 8))) != 0)) {
+        checkRemaining(buffer, 2);
+        int nbrruns = Util.toIntUnsigned(buffer.getShort());
+        checkRemaining(buffer, 4 * nbrruns);
+        final short[] lengthsAndValues = new short[2 * nbrruns];
+        buffer.asShortBuffer().get(lengthsAndValues);
+        buffer.position(buffer.position() + 4 * nbrruns);
+        val = new RunContainer(lengthsAndValues, nbrruns);
+      } else if (cardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
+        checkRemaining(buffer, BitmapContainer.MAX_CAPACITY / 8);
+        final long[] bitmapArray = new long[BitmapContainer.MAX_CAPACITY / 64];
+        buffer.asLongBuffer().get(bitmapArray);
+        buffer.position(buffer.position() + 8 * bitmapArray.length);
+        val = new BitmapContainer(bitmapArray, cardinality);
+      } else {
+        checkRemaining(buffer, 2 * cardinality);
+        final short[] shortArray = new short[cardinality];
+        buffer.asShortBuffer().get(shortArray);
+        buffer.position(buffer.position() + 2 * cardinality);
+        val = new ArrayContainer(shortArray);
+      }
+      this.keys[k] = keysAndCardinalities[2 * k];
+      this.values[k] = val;
+    }
+    this.size = size;
+    bbf.position(bbf.position() + buffer.position());
+  }
+
+  // fails as reading a truncated DataInput would, rather than with a buffer exception
+  private static void checkRemaining(ByteBuffer buffer, int bytes) throws EOFException {
+    if (buffer.remaining() < bytes) {
+      throw new EOFException("Truncated serialized bitmap: " + bytes + " bytes expected, "
+          + buffer.remaining() + " remaining");
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (o instanceof RoaringArray) {
@@ -375,6 +477,16 @@ public final class RoaringArray implements Cloneable, Externalizable {
     return this.values[i];
   }
 
+  // the container to modify in place: a shared container is replaced by a clone first
+  protected Container getWritableContainerAtIndex(int i) {
+    Container c = this.values[i];
+    if (c.isShared()) {
+      c = c.clone();
+      this.values[i] = c;
+    }
+    return c;
+  }
+
   /**
    * Create a ContainerPointer for this RoaringArray
    * @return a ContainerPointer
@@ -482,7 +594,12 @@ public final class RoaringArray implements Cloneable, Externalizable {
   }
 
   protected int headerSize() {
-    if (hasRunContainer()) {
+    return headerSize(hasRunContainer(), size);
+  }
+
+  // size of the header of the serialized form of size containers
+  static int headerSize(boolean hasRun, int size) {
+    if (hasRun) {
       if (size < NO_OFFSET_THRESHOLD) {// for small bitmaps, we omit the offsets
         return 4 + (size + 7) / 8 + 4 * size;
       }
@@ -589,6 +706,54 @@ public final class RoaringArray implements Cloneable, Externalizable {
     }
   }
 
+  /**
+   * Serialize, copying the containers in bulk into the buffer. The position of the buffer is
+   * moved past the serialized data; its byte order is ignored.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param bbf the byte buffer, with at least {@link #serializedSizeInBytes()} bytes remaining
+   */
+  public void serialize(ByteBuffer bbf) {
+    final ByteBuffer buffer = bbf.slice().order(LITTLE_ENDIAN);
+    int startOffset;
+    boolean hasrun = hasRunContainer();
+    if (hasrun) {
+      buffer.putInt(SERIAL_COOKIE | ((size - 1) << 16));
+      byte[] bitmapOfRunContainers = new byte[(size + 7) / 8];
+      for (int i = 0; i < size; ++i) {
+        if (this.values[i] instanceof RunContainer) {
+          bitmapOfRunContainers[i / 8] |= (1 << (i % 8));
+        }
+      }
+      buffer.put(bitmapOfRunContainers);
+      if (this.size < NO_OFFSET_THRESHOLD) {
+        startOffset = 4 + 4 * this.size + bitmapOfRunContainers.length;
+      } else {
+        startOffset = 4 + 8 * this.size + bitmapOfRunContainers.length;
+      }
+    } else { // backwards compatibility
+      buffer.putInt(SERIAL_COOKIE_NO_RUNCONTAINER);
+      buffer.putInt(size);
+      startOffset = 4 + 4 + 4 * this.size + 4 * this.size;
+    }
+    for (int k = 0; k < size; ++k) {
+      buffer.putShort(this.keys[k]);
+      buffer.putShort((short) (this.values[k].getCardinality() - 1));
+    }
+    if ((!hasrun) || (this.size >= NO_OFFSET_THRESHOLD)) {
+      // writing the containers offsets
+      for (int k = 0; k < this.size; k++) {
+        buffer.putInt(startOffset);
+        startOffset = startOffset + this.values[k].getArraySizeInBytes();
+      }
+    }
+    for (int k = 0; k < size; ++k) {
+      values[k].writeArray(buffer);
+    }
+    bbf.position(bbf.position() + buffer.position());
+  }
+
   /**
    * Report the number of bytes required for serialization.
    *
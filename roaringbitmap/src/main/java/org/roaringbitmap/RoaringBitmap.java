@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -124,6 +125,60 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
   }
 
+  private final class RoaringBatchIterator implements BatchIterator {
+
+    private int key;
+
+    private ContainerBatchIterator iter;
+
+    private int pos = 0;
+
+    @Override
+    public BatchIterator clone() {
+      try {
+        RoaringBatchIterator x = (RoaringBatchIterator) super.clone();
+        if (this.iter != null) {
+          x.iter = this.iter.clone();
+        }
+        return x;
+      } catch (CloneNotSupportedException e) {
+        return null;// will not happen
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return pos < RoaringBitmap.this.highLowContainer.size();
+    }
+
+    @Override
+    public int nextBatch(int[] buffer) {
+      final RoaringArray ra = RoaringBitmap.this.highLowContainer;
+      int consumed = 0;
+      while (consumed < buffer.length && pos < ra.size()) {
+        if (iter == null) {
+          final Container c = ra.getContainerAtIndex(pos);
+          key = ra.getKeyAtIndex(pos) << 16;
+          final int card = c.getCardinality();
+          if (card <= buffer.length - consumed) {
+            // the whole container fits: no need for an iterator
+            c.fillLeastSignificant16bits(buffer, consumed, key);
+            consumed += card;
+            ++pos;
+            continue;
+          }
+          iter = c.getBatchIterator();
+        }
+        consumed += iter.next(key, buffer, consumed);
+        if (!iter.hasNext()) {
+          iter = null;
+          ++pos;
+        }
+      }
+      return consumed;
+    }
+  }
+
   private final class RoaringReverseIntIterator implements IntIterator {
 
     int hs = 0;
@@ -178,7 +233,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
   private static final long serialVersionUID = 6L;
 
-  private static void rangeSanityCheck(final long rangeStart, final long rangeEnd) {
+  static void rangeSanityCheck(final long rangeStart, final long rangeEnd) {
     if (rangeStart < 0 || rangeStart > (1L << 32)-1) {
       throw new IllegalArgumentException("rangeStart="+ rangeStart
                                          +" should be in [0, 0xffffffff]");
@@ -392,7 +447,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       currenthb = Util.highbits(val);
       currentcontainerindex = highLowContainer.getIndex(currenthb);
       if (currentcontainerindex >= 0) {
-        currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+        currentcont = highLowContainer.getWritableContainerAtIndex(currentcontainerindex);
         Container newcont = currentcont.add(Util.lowbits(val));
         if(newcont != currentcont) {
           highLowContainer.setContainerAtIndex(currentcontainerindex, newcont);
@@ -420,7 +475,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
         currenthb = newhb;
         currentcontainerindex = highLowContainer.getIndex(currenthb);
         if (currentcontainerindex >= 0) {
-          currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+          currentcont = highLowContainer.getWritableContainerAtIndex(currentcontainerindex);
           Container newcont = currentcont.add(Util.lowbits(val));
           if(newcont != currentcont) {
             highLowContainer.setContainerAtIndex(currentcontainerindex, newcont);
@@ -753,6 +808,57 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return answer;
   }
 
+  /**
+   * Bitwise ORNOT operation: the result holds the values of the first bitmap, together with the
+   * values of [0, rangeEnd) which are missing from the second bitmap. This is equivalent to
+   * flipping the second bitmap over [0, rangeEnd) and computing the union, without the
+   * intermediate bitmap. The provided bitmaps are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @param rangeEnd end point of the range (exclusive)
+   * @return result of the operation
+   */
+  public static RoaringBitmap orNot(final RoaringBitmap x1, final RoaringBitmap x2,
+      long rangeEnd) {
+    rangeSanityCheck(0, rangeEnd);
+    final RoaringBitmap answer = new RoaringBitmap();
+    if (rangeEnd == 0) {
+      answer.highLowContainer.appendCopy(x1.highLowContainer, 0, x1.highLowContainer.size());
+      return answer;
+    }
+    final int maxKey = (int) ((rangeEnd - 1) >>> 16);
+    final int lastEnd = (int) (rangeEnd - ((long) maxKey << 16));
+    final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    int pos1 = 0, pos2 = 0;
+    for (int key = 0; key <= maxKey; ++key) {
+      final short s = (short) key;
+      final int end = key == maxKey ? lastEnd : 1 << 16;
+      Container c1 = null;
+      if (pos1 < length1 && x1.highLowContainer.getKeyAtIndex(pos1) == s) {
+        c1 = x1.highLowContainer.getContainerAtIndex(pos1++);
+      }
+      Container c2 = null;
+      if (pos2 < length2 && x2.highLowContainer.getKeyAtIndex(pos2) == s) {
+        c2 = x2.highLowContainer.getContainerAtIndex(pos2++);
+      }
+      final Container result;
+      if (c2 == null) {
+        result = c1 == null ? Container.rangeOfOnes(0, end) : c1.add(0, end);
+      } else if (c1 == null) {
+        result = Container.rangeOfOnes(0, end).iandNot(c2);
+      } else {
+        result = c1.orNot(c2, end);
+      }
+      if (!result.isEmpty()) {
+        answer.highLowContainer.append(s, result);
+      }
+    }
+    // the keys past the range are copied as they are
+    answer.highLowContainer.appendCopy(x1.highLowContainer, pos1, length1);
+    return answer;
+  }
+
   /**
    * Cardinality of the bitwise OR (union) operation. The provided bitmaps are *not* modified. This
    * operation is thread-safe as long as the provided bitmaps remain unchanged.
@@ -977,7 +1083,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
       highLowContainer.setContainerAtIndex(i,
-          highLowContainer.getContainerAtIndex(i).add(Util.lowbits(x)));
+          highLowContainer.getWritableContainerAtIndex(i).add(Util.lowbits(x)));
     } else {
       final ArrayContainer newac = new ArrayContainer();
       highLowContainer.insertNewKeyValueAt(-i - 1, hb, newac.add(Util.lowbits(x)));
@@ -1011,7 +1117,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       if (i >= 0) {
         final Container c =
-            highLowContainer.getContainerAtIndex(i).iadd(containerStart, containerLast + 1);
+            highLowContainer.getWritableContainerAtIndex(i).iadd(containerStart, containerLast + 1);
         highLowContainer.setContainerAtIndex(i, c);
       } else {
         highLowContainer.insertNewKeyValueAt(-i - 1, (short) hb,
@@ -1082,7 +1188,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final short s1 = highLowContainer.getKeyAtIndex(pos1);
       final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
+        final Container c1 = highLowContainer.getWritableContainerAtIndex(pos1);
         final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final Container c = c1.iand(c2);
         if (c.getCardinality() > 0) {
@@ -1155,7 +1261,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       final short s1 = highLowContainer.getKeyAtIndex(pos1);
       final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final Container c1 = highLowContainer.getContainerAtIndex(pos1);
+        final Container c1 = highLowContainer.getWritableContainerAtIndex(pos1);
         final Container c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final Container c = c1.iandNot(c2);
         if (c.getCardinality() > 0) {
@@ -1237,7 +1343,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final short hb = Util.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      Container c = highLowContainer.getContainerAtIndex(i);
+      Container c = highLowContainer.getWritableContainerAtIndex(i);
       int oldCard = c.getCardinality();
       // we need to keep the newContainer if a switch between containers type
       // occur, in order to get the new cardinality
@@ -1266,7 +1372,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     if (i < 0) {
       return false;
     }
-    Container C = highLowContainer.getContainerAtIndex(i);
+    Container C = highLowContainer.getWritableContainerAtIndex(i);
     int oldcard = C.getCardinality();
     C.remove(Util.lowbits(x));
     int newcard = C.getCardinality();
@@ -1299,6 +1405,43 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
   }
 
+  /**
+   * Create a copy of this bitmap which shares its containers, in time proportional to the number
+   * of containers rather than to the size of the data. The copy and this bitmap can both be
+   * modified independently: a shared container is cloned the first time either of them modifies
+   * it, so that only the containers which are written are ever copied.
+   *
+   * <pre>
+   * {@code
+   *      RoaringBitmap view = bitmap.snapshot();
+   *      bitmap.add(1234); // view does not contain 1234
+   * }
+   * </pre>
+   *
+   * A snapshot must not be taken while another thread modifies the bitmap.
+   *
+   * @return a copy-on-write copy of this bitmap
+   */
+  public RoaringBitmap snapshot() {
+    try {
+      final RoaringBitmap x = (RoaringBitmap) super.clone();
+      x.highLowContainer = highLowContainer.snapshot();
+      return x;
+    } catch (final CloneNotSupportedException e) {
+      throw new RuntimeException("shouldn't happen with snapshot", e);
+    }
+  }
+
+  /**
+   * Called by the helpers modifying highLowContainer directly, such as {@link UnorderedWriter}
+   * and {@link StreamingDeserializer}, after they added or modified containers, so that
+   * subclasses caching per container information can dismiss it.
+   *
+   * @param firstKey the smallest key of the added or modified containers
+   */
+  void containersModified(short firstKey) {
+  }
+
   /**
    * Checks whether the value in included, which is equivalent to checking if the corresponding bit
    * is set (get in BitSet class).
@@ -1368,6 +1511,24 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     this.highLowContainer.deserialize(in);
   }
 
+  /**
+   * Deserialize (retrieve) this bitmap from a buffer, copying whole containers at once instead
+   * of going through a DataInput.
+   * See format specification at https://github.com/RoaringBitmap/RoaringFormatSpec
+   *
+   * The current bitmap is overwritten. The position of the buffer is moved past the serialized
+   * bitmap, so that bitmaps stored back to back can be read in turn. Unlike
+   * {@link ImmutableRoaringBitmap#ImmutableRoaringBitmap(ByteBuffer)}, the resulting bitmap does
+   * not depend on the buffer.
+   *
+   * @param bbf the byte buffer (can be mapped, direct, array backed etc.)
+   * @throws IOException if the data is not a serialized bitmap, or an EOFException if it is
+   *         truncated, as when reading from a DataInput
+   */
+  public void deserialize(ByteBuffer bbf) throws IOException {
+    this.highLowContainer.deserialize(bbf);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (o instanceof RoaringBitmap) {
@@ -1429,7 +1590,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     final short hb = Util.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      Container c = highLowContainer.getContainerAtIndex(i).flip(Util.lowbits(x));
+      Container c = highLowContainer.getWritableContainerAtIndex(i).flip(Util.lowbits(x));
       if (c.getCardinality() > 0) {
         highLowContainer.setContainerAtIndex(i, c);
       } else {
@@ -1469,7 +1630,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       if (i >= 0) {
         final Container c =
-            highLowContainer.getContainerAtIndex(i).inot(containerStart, containerLast + 1);
+            highLowContainer.getWritableContainerAtIndex(i).inot(containerStart, containerLast + 1);
         if (c.getCardinality() > 0) {
           highLowContainer.setContainerAtIndex(i, c);
         } else {
@@ -1562,6 +1723,17 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return new RoaringReverseIntIterator();
   }
 
+  /**
+   * Whole containers are decoded at once into the provided buffers, which is typically faster
+   * than calling {@link IntIterator#next} for each value.
+   *
+   * @return an iterator over set bits which fills int arrays, in ascending sorted order
+   */
+  @Override
+  public BatchIterator getBatchIterator() {
+    return new RoaringBatchIterator();
+  }
+
   /**
    * Estimate of the memory usage of this data structure. This can be expected to be within 1% of
    * the true memory usage.
@@ -1676,8 +1848,9 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          this.highLowContainer.setContainerAtIndex(pos1, highLowContainer.getContainerAtIndex(pos1)
-              .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
+          this.highLowContainer.setContainerAtIndex(pos1,
+              highLowContainer.getWritableContainerAtIndex(pos1)
+                  .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1723,7 +1896,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          BitmapContainer c1 = highLowContainer.getContainerAtIndex(pos1).toBitmapContainer();
+          BitmapContainer c1 =
+              highLowContainer.getWritableContainerAtIndex(pos1).toBitmapContainer();
           this.highLowContainer.setContainerAtIndex(pos1,
               c1.lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
@@ -1798,8 +1972,9 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          this.highLowContainer.setContainerAtIndex(pos1, highLowContainer.getContainerAtIndex(pos1)
-              .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
+          this.highLowContainer.setContainerAtIndex(pos1,
+              highLowContainer.getWritableContainerAtIndex(pos1)
+                  .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1831,6 +2006,60 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
   }
 
+  /**
+   * In-place bitwise ORNOT operation: the current bitmap gets all the values of [0, rangeEnd)
+   * which are missing from the other bitmap, values from rangeEnd on being left untouched. This
+   * is equivalent to flipping the other bitmap over [0, rangeEnd) and computing the union, without
+   * the intermediate bitmap. The current bitmap is modified.
+   *
+   * @param other other bitmap
+   * @param rangeEnd end point of the range (exclusive)
+   */
+  public void orNot(final RoaringBitmap other, long rangeEnd) {
+    rangeSanityCheck(0, rangeEnd);
+    if (rangeEnd == 0) {
+      return;
+    }
+    final int maxKey = (int) ((rangeEnd - 1) >>> 16);
+    final int lastEnd = (int) (rangeEnd - ((long) maxKey << 16));
+    final RoaringArray x1 = highLowContainer, x2 = other.highLowContainer;
+    final int length1 = x1.size(), length2 = x2.size();
+    // the keys past the range are kept as they are
+    final int tail = maxKey == 0xFFFF ? length1 : x1.advanceUntil((short) (maxKey + 1), -1);
+    final int capacity = maxKey + 1 + length1 - tail;
+    final RoaringArray answer =
+        new RoaringArray(new short[capacity], new Container[capacity], 0);
+    int pos1 = 0, pos2 = 0;
+    for (int key = 0; key <= maxKey; ++key) {
+      final short s = (short) key;
+      final int end = key == maxKey ? lastEnd : 1 << 16;
+      Container c1 = null;
+      if (pos1 < length1 && x1.getKeyAtIndex(pos1) == s) {
+        c1 = x1.getContainerAtIndex(pos1++);
+      }
+      Container c2 = null;
+      if (pos2 < length2 && x2.getKeyAtIndex(pos2) == s) {
+        c2 = x2.getContainerAtIndex(pos2++);
+      }
+      final Container result;
+      if (c2 == null) {
+        result = c1 == null
+            ? Container.rangeOfOnes(0, end) : x1.getWritableContainerAtIndex(pos1 - 1).iadd(0, end);
+      } else if (c1 == null) {
+        result = Container.rangeOfOnes(0, end).iandNot(c2);
+      } else {
+        result = c1.orNot(c2, end);
+      }
+      if (!result.isEmpty()) {
+        answer.append(s, result);
+      }
+    }
+    for (int pos = tail; pos < length1; ++pos) {
+      answer.append(x1.getKeyAtIndex(pos), x1.getContainerAtIndex(pos));
+    }
+    highLowContainer = answer;
+  }
+
 
 
   /**
@@ -1900,6 +2129,55 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return (int) rankLong(x);
   }
 
+  @Override
+  public long rangeCardinality(long start, long end) {
+    rangeSanityCheck(start, end);
+    if (start >= end) {
+      return 0;
+    }
+    final short startKey = Util.highbits(start);
+    final short endKey = Util.highbits(end - 1);
+    final int startLow = (int) start & 0xFFFF;
+    final int lastLow = (int) (end - 1) & 0xFFFF;
+    int index = highLowContainer.getIndex(startKey);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    long cardinality = 0;
+    for (; index < highLowContainer.size; ++index) {
+      final short key = highLowContainer.getKeyAtIndex(index);
+      if (Util.compareUnsigned(key, endKey) > 0) {
+        break;
+      }
+      if (key == startKey || key == endKey) {
+        final Container container = highLowContainer.getContainerAtIndex(index);
+        int count = key == endKey ? container.rank((short) lastLow) : container.getCardinality();
+        if (key == startKey && startLow > 0) {
+          count -= container.rank((short) (startLow - 1));
+        }
+        cardinality += count;
+      } else {
+        cardinality += highLowContainer.getContainerAtIndex(index).getCardinality();
+      }
+    }
+    return cardinality;
+  }
+
+  @Override
+  public boolean cardinalityExceeds(long threshold) {
+    if (threshold < 0) {
+      return true;
+    }
+    long cardinality = 0;
+    for (int i = 0; i < highLowContainer.size; ++i) {
+      cardinality += highLowContainer.getContainerAtIndex(i).getCardinality();
+      if (cardinality > threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
     this.highLowContainer.readExternal(in);
@@ -1918,7 +2196,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       return;
     }
     highLowContainer.setContainerAtIndex(i,
-        highLowContainer.getContainerAtIndex(i).remove(Util.lowbits(x)));
+        highLowContainer.getWritableContainerAtIndex(i).remove(Util.lowbits(x)));
     if (highLowContainer.getContainerAtIndex(i).getCardinality() == 0) {
       highLowContainer.removeAtIndex(i);
     }
@@ -1948,7 +2226,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
       if (i < 0) {
         return;
       }
-      final Container c = highLowContainer.getContainerAtIndex(i).iremove(lbStart, lbLast + 1);
+      final Container c =
+          highLowContainer.getWritableContainerAtIndex(i).iremove(lbStart, lbLast + 1);
       if (c.getCardinality() > 0) {
         highLowContainer.setContainerAtIndex(i, c);
       } else {
@@ -1960,7 +2239,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     int ilast = highLowContainer.getIndex((short) hbLast);
     if (ifirst >= 0) {
       if (lbStart != 0) {
-        final Container c = highLowContainer.getContainerAtIndex(ifirst).iremove(lbStart,
+        final Container c = highLowContainer.getWritableContainerAtIndex(ifirst).iremove(lbStart,
             Util.maxLowBitAsInteger() + 1);
         if (c.getCardinality() > 0) {
           highLowContainer.setContainerAtIndex(ifirst, c);
@@ -1972,7 +2251,8 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     }
     if (ilast >= 0) {
       if (lbLast != Util.maxLowBitAsInteger()) {
-        final Container c = highLowContainer.getContainerAtIndex(ilast).iremove(0, lbLast + 1);
+        final Container c =
+            highLowContainer.getWritableContainerAtIndex(ilast).iremove(0, lbLast + 1);
         if (c.getCardinality() > 0) {
           highLowContainer.setContainerAtIndex(ilast, c);
         } else {
@@ -2134,6 +2414,102 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     return highLowContainer.last();
   }
 
+  @Override
+  public long nextValue(int fromValue) {
+    short key = Util.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex >= 0) {
+      int value = highLowContainer.getContainerAtIndex(containerIndex)
+          .nextValue(Util.lowbits(fromValue));
+      if (value != -1) {
+        return toUnsignedLong(key, value);
+      }
+      ++containerIndex;
+    } else {
+      containerIndex = -containerIndex - 1;
+    }
+    if (containerIndex == highLowContainer.size) {
+      return -1L;
+    }
+    return toUnsignedLong(highLowContainer.getKeyAtIndex(containerIndex),
+        highLowContainer.getContainerAtIndex(containerIndex).first());
+  }
+
+  @Override
+  public long previousValue(int fromValue) {
+    short key = Util.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex >= 0) {
+      int value = highLowContainer.getContainerAtIndex(containerIndex)
+          .previousValue(Util.lowbits(fromValue));
+      if (value != -1) {
+        return toUnsignedLong(key, value);
+      }
+      --containerIndex;
+    } else {
+      containerIndex = -containerIndex - 2;
+    }
+    if (containerIndex < 0) {
+      return -1L;
+    }
+    return toUnsignedLong(highLowContainer.getKeyAtIndex(containerIndex),
+        highLowContainer.getContainerAtIndex(containerIndex).last());
+  }
+
+  @Override
+  public long nextAbsentValue(int fromValue) {
+    short key = Util.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex < 0) {
+      return Integer.toUnsignedLong(fromValue);
+    }
+    int value = highLowContainer.getContainerAtIndex(containerIndex)
+        .nextAbsentValue(Util.lowbits(fromValue));
+    // the container is full from fromValue on, moving on to the next keys
+    while (value == -1) {
+      if (key == -1) {
+        return -1L;
+      }
+      ++key;
+      ++containerIndex;
+      if (containerIndex == highLowContainer.size
+          || highLowContainer.getKeyAtIndex(containerIndex) != key) {
+        return toUnsignedLong(key, 0);
+      }
+      value = highLowContainer.getContainerAtIndex(containerIndex).nextAbsentValue((short) 0);
+    }
+    return toUnsignedLong(key, value);
+  }
+
+  @Override
+  public long previousAbsentValue(int fromValue) {
+    short key = Util.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex < 0) {
+      return Integer.toUnsignedLong(fromValue);
+    }
+    int value = highLowContainer.getContainerAtIndex(containerIndex)
+        .previousAbsentValue(Util.lowbits(fromValue));
+    // the container is full up to fromValue, moving on to the previous keys
+    while (value == -1) {
+      if (key == 0) {
+        return -1L;
+      }
+      --key;
+      --containerIndex;
+      if (containerIndex < 0 || highLowContainer.getKeyAtIndex(containerIndex) != key) {
+        return toUnsignedLong(key, 0xFFFF);
+      }
+      value = highLowContainer.getContainerAtIndex(containerIndex)
+          .previousAbsentValue((short) -1);
+    }
+    return toUnsignedLong(key, value);
+  }
+
+  private static long toUnsignedLong(short key, int value) {
+    return Integer.toUnsignedLong((Util.toIntUnsigned(key) << 16) | value);
+  }
+
   /**
    * Serialize this bitmap.
    *
@@ -2181,6 +2557,31 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
     this.highLowContainer.serialize(out);
   }
 
+  /**
+   * Serialize this bitmap to a buffer, copying whole containers at once instead of going through
+   * a DataOutput.
+   *
+   * See format specification at https://github.com/RoaringBitmap/RoaringFormatSpec
+   *
+   * The current bitmap is not modified. The position of the buffer is moved past the serialized
+   * bitmap; the byte order of the buffer does not matter.
+   *
+   * <pre>
+   * {@code
+   *   ByteBuffer buffer = ByteBuffer.allocate(r.serializedSizeInBytes());
+   *   r.serialize(buffer);
+   *   buffer.flip();
+   *   RoaringBitmap copy = new RoaringBitmap();
+   *   copy.deserialize(buffer);
+   * }
+   * </pre>
+   *
+   * @param buffer the byte buffer, with at least {@link #serializedSizeInBytes()} bytes remaining
+   */
+  public void serialize(ByteBuffer buffer) {
+    this.highLowContainer.serialize(buffer);
+  }
+
 
   /**
    * Assume that one wants to store "cardinality" integers in [0, universe_size), this function
@@ -2403,7 +2804,7 @@ public class RoaringBitmap implements Cloneable, Serializable, Iterable<Integer>
 
       while (true) {
         if (s1 == s2) {
-          final Container c = highLowContainer.getContainerAtIndex(pos1)
+          final Container c = highLowContainer.getWritableContainerAtIndex(pos1)
               .ixor(x2.highLowContainer.getContainerAtIndex(pos2));
           if (c.getCardinality() > 0) {
             this.highLowContainer.setContainerAtIndex(pos1, c);
@@ -8,6 +8,8 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -1047,6 +1049,11 @@ public final class RunContainer extends Container implements Cloneable {
     return valueslength[2 * index + 1];
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new RunBatchIterator(this);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     return new ReverseRunContainerShortIterator(this);
@@ -2417,6 +2424,41 @@ public final class RunContainer extends Container implements Cloneable {
     }
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    buffer.putShort((short) this.nbrruns);
+    buffer.asShortBuffer().put(this.valueslength, 0, 2 * this.nbrruns);
+    buffer.position(buffer.position() + 4 * this.nbrruns);
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.setBitmapRange(bits, start, start + toIntUnsigned(getLength(i)) + 1);
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.resetBitmapRange(bits, start, start + toIntUnsigned(getLength(i)) + 1);
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    int cleared = 0;
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.resetBitmapRange(bits, cleared, start);
+      cleared = start + toIntUnsigned(getLength(i)) + 1;
+    }
+    Util.resetBitmapRange(bits, cleared, 1 << 16);
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     serialize(out);
@@ -2538,6 +2580,71 @@ public final class RunContainer extends Container implements Cloneable {
     return start + length;
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    int index = unsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    if (index >= 0 && toIntUnsigned(fromValue) <= runEnd(index)) {
+      return toIntUnsigned(fromValue);
+    }
+    return index + 1 < nbrruns ? toIntUnsigned(getValue(index + 1)) : -1;
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    int index = unsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    if (index < 0) {
+      return -1;
+    }
+    return Math.min(toIntUnsigned(fromValue), runEnd(index));
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    int index = unsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index < 0) {
+      index = -index - 2;
+      if (index < 0 || toIntUnsigned(fromValue) > runEnd(index)) {
+        return toIntUnsigned(fromValue);
+      }
+    }
+    // skipping adjacent runs, if any
+    int next = runEnd(index) + 1;
+    while (index + 1 < nbrruns && toIntUnsigned(getValue(index + 1)) == next) {
+      next = runEnd(++index) + 1;
+    }
+    return next < (1 << 16) ? next : -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    int index = unsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index < 0) {
+      index = -index - 2;
+      if (index < 0 || toIntUnsigned(fromValue) > runEnd(index)) {
+        return toIntUnsigned(fromValue);
+      }
+    }
+    // skipping adjacent runs, if any
+    int previous = toIntUnsigned(getValue(index)) - 1;
+    while (index > 0 && runEnd(index - 1) == previous) {
+      previous = toIntUnsigned(getValue(--index)) - 1;
+    }
+    return previous;
+  }
+
+  // last value of the run
+  private int runEnd(int index) {
+    return toIntUnsigned(getValue(index)) + toIntUnsigned(getLength(index));
+  }
+
 }
 
 
@@ -2718,3 +2825,56 @@ final class ReverseRunContainerShortIterator implements ShortIterator {
 
 }
 
+
+final class RunBatchIterator implements ContainerBatchIterator {
+  int pos;
+  int le;
+
+  RunContainer parent;
+
+  RunBatchIterator(RunContainer p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    int consumed = offset;
+    final int limit = buffer.length;
+    while (consumed < limit && pos < parent.nbrruns) {
+      final int base = toIntUnsigned(parent.getValue(pos));
+      final int maxlength = toIntUnsigned(parent.getLength(pos));
+      final int count = Math.min(maxlength + 1 - le, limit - consumed);
+      final int start = key + base + le;
+      for (int k = 0; k < count; ++k) {
+        buffer[consumed + k] = start + k;
+      }
+      consumed += count;
+      le += count;
+      if (le > maxlength) {
+        pos++;
+        le = 0;
+      }
+    }
+    return consumed - offset;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return pos < parent.nbrruns;
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(RunContainer p) {
+    parent = p;
+    pos = 0;
+    le = 0;
+  }
+}
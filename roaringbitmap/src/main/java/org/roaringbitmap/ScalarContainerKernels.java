@@ -0,0 +1,103 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+/**
+ * The default {@link ContainerKernels}, relying on the plain loops of {@link Util}.
+ *
+ * To intersect array containers with another {@link IntersectionStrategy} than the adaptive one,
+ * name a subclass calling {@link #ScalarContainerKernels(IntersectionStrategy)} from its
+ * no-argument constructor in the system property {@value ContainerKernels#KERNELS_PROPERTY}.
+ */
+public class ScalarContainerKernels implements ContainerKernels {
+
+  private final IntersectionStrategy intersectionStrategy;
+
+  /**
+   * Kernels intersecting arrays with {@link IntersectionStrategy#ADAPTIVE}.
+   */
+  public ScalarContainerKernels() {
+    this(IntersectionStrategy.ADAPTIVE);
+  }
+
+  /**
+   * Kernels intersecting arrays with the given strategy.
+   *
+   * @param intersectionStrategy how arrays are intersected
+   */
+  public ScalarContainerKernels(IntersectionStrategy intersectionStrategy) {
+    this.intersectionStrategy = intersectionStrategy;
+  }
+
+  @Override
+  public int intersect(short[] set1, int length1, short[] set2, int length2, short[] buffer) {
+    return intersectionStrategy.intersect(set1, length1, set2, length2, buffer);
+  }
+
+  @Override
+  public int intersectionCardinality(short[] set1, int length1, short[] set2, int length2) {
+    return intersectionStrategy.intersectionCardinality(set1, length1, set2, length2);
+  }
+
+  @Override
+  public int andCardinality(long[] bitmap1, long[] bitmap2) {
+    int cardinality = 0;
+    for (int k = 0; k < bitmap1.length; ++k) {
+      cardinality += Long.bitCount(bitmap1[k] & bitmap2[k]);
+    }
+    return cardinality;
+  }
+
+  @Override
+  public int xorCardinality(long[] bitmap1, long[] bitmap2) {
+    int cardinality = 0;
+    for (int k = 0; k < bitmap1.length; ++k) {
+      cardinality += Long.bitCount(bitmap1[k] ^ bitmap2[k]);
+    }
+    return cardinality;
+  }
+
+  @Override
+  public void and(long[] bitmap1, long[] bitmap2, long[] output) {
+    for (int k = 0; k < bitmap1.length; ++k) {
+      output[k] = bitmap1[k] & bitmap2[k];
+    }
+  }
+
+  @Override
+  public int or(long[] bitmap1, long[] bitmap2, long[] output) {
+    int cardinality = 0;
+    for (int k = 0; k < bitmap1.length; ++k) {
+      long w = bitmap1[k] | bitmap2[k];
+      output[k] = w;
+      cardinality += Long.bitCount(w);
+    }
+    return cardinality;
+  }
+
+  @Override
+  public void xor(long[] bitmap1, long[] bitmap2, long[] output) {
+    for (int k = 0; k < bitmap1.length; ++k) {
+      output[k] = bitmap1[k] ^ bitmap2[k];
+    }
+  }
+
+  @Override
+  public int cardinality(long[] bitmap) {
+    int cardinality = 0;
+    for (int k = 0; k < bitmap.length; ++k) {
+      cardinality += Long.bitCount(bitmap[k]);
+    }
+    return cardinality;
+  }
+
+  @Override
+  public void setBits(short[] values, int length, long[] bitmap) {
+    for (int k = 0; k < length; ++k) {
+      final short x = values[k];
+      bitmap[Util.toIntUnsigned(x) / 64] |= (1L << x);
+    }
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads serialized RoaringBitmaps (see {@link RoaringBitmap#serialize(java.io.DataOutput)}) from
+ * a stream or a channel one container at a time, so that the first containers can be used before
+ * the last bytes have arrived.
+ *
+ * The input is read in large chunks into a reusable buffer, and container payloads are copied in
+ * bulk out of it, instead of going through {@link java.io.DataInput} one short or long at a time.
+ * A deserializer may be reused for several bitmaps stored back to back, and for several inputs
+ * (see {@link #reset(ReadableByteChannel)}), so that its buffers are only allocated once.
+ *
+ * <pre>
+ * {@code
+ *       StreamingDeserializer deserializer = new StreamingDeserializer(socketChannel);
+ *       RoaringBitmap union = new RoaringBitmap();
+ *       while (deserializer.next()) {
+ *         // deserializer.getKey() and deserializer.getContainer() are usable right away
+ *       }
+ *       // or, in one go
+ *       deserializer.orInto(union);
+ * }
+ * </pre>
+ *
+ * Since data is read ahead, the input should not be read by anyone else while a deserializer is
+ * working on it. Channels are expected to be in blocking mode. This class is not thread-safe.
+ */
+public class StreamingDeserializer {
+
+  /**
+   * Default size of the read buffer, in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  // a bitmap container, the largest payload we want to read at once
+  private static final int MIN_BUFFER_SIZE = BitmapContainer.MAX_CAPACITY / 8;
+
+  private final ByteBuffer buffer;
+  private ReadableByteChannel channel;
+
+  // header of the current bitmap
+  private boolean headerRead = false;
+  private int size;
+  private short[] keysAndCardinalities = new short[0];
+  private byte[] runFlags = new byte[0];
+  private boolean hasRun;
+
+  private int index;
+  private short key;
+  private Container container;
+
+  /**
+   * Creates a deserializer reading from the given channel, with the default buffer size.
+   *
+   * @param channel where to read serialized bitmaps from
+   */
+  public StreamingDeserializer(ReadableByteChannel channel) {
+    this(channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a deserializer reading from the given channel.
+   *
+   * @param channel where to read serialized bitmaps from
+   * @param bufferSize size of the read buffer in bytes, at least 8 kB
+   */
+  public StreamingDeserializer(ReadableByteChannel channel, int bufferSize) {
+    if (bufferSize < MIN_BUFFER_SIZE) {
+      throw new IllegalArgumentException("The buffer must hold at least " + MIN_BUFFER_SIZE
+          + " bytes");
+    }
+    this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    reset(channel);
+  }
+
+  /**
+   * Creates a deserializer reading from the given stream, with the default buffer size.
+   *
+   * @param in where to read serialized bitmaps from
+   */
+  public StreamingDeserializer(InputStream in) {
+    this(Channels.newChannel(in));
+  }
+
+  /**
+   * Starts reading from another channel, keeping the buffers allocated so far. Any data read
+   * ahead from the previous channel is dropped.
+   *
+   * @param channel where to read serialized bitmaps from
+   */
+  public void reset(ReadableByteChannel channel) {
+    this.channel = channel;
+    buffer.clear().flip();
+    headerRead = false;
+    container = null;
+  }
+
+  /**
+   * Moves to the next container of the current bitmap, reading only as much input as it
+   * requires.
+   *
+   * @return false if the current bitmap has no more containers
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public boolean next() throws IOException {
+    if (!headerRead) {
+      readHeader();
+    }
+    if (index + 1 >= size) {
+      container = null;
+      index = size;
+      return false;
+    }
+    ++index;
+    key = keysAndCardinalities[2 * index];
+    container = readContainer(Util.toIntUnsigned(keysAndCardinalities[2 * index + 1]) + 1,
+        hasRun && (runFlags[index / 8] & (1 << (index % 8))) != 0);
+    return true;
+  }
+
+  /**
+   * Key (high 16 bits) of the current container.
+   *
+   * @return the key
+   */
+  public short getKey() {
+    return key;
+  }
+
+  /**
+   * The current container. Each call to {@link #next()} creates a new container, which belongs to
+   * the caller.
+   *
+   * @return the container, or null if {@link #next()} has not returned true
+   */
+  public Container getContainer() {
+    return container;
+  }
+
+  /**
+   * Number of containers of the current bitmap, reading its header if needed.
+   *
+   * @return the number of containers
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public int getContainerCount() throws IOException {
+    if (!headerRead) {
+      readHeader();
+    }
+    return size;
+  }
+
+  /**
+   * Skips the containers left in the current bitmap and checks whether another bitmap follows in
+   * the input. If so, the following calls to {@link #next()} will return its containers.
+   *
+   * @return false if the input is exhausted
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public boolean nextBitmap() throws IOException {
+    if (headerRead) {
+      while (next()) {
+        // skipping
+      }
+    }
+    headerRead = false;
+    container = null;
+    return fill(1);
+  }
+
+  /**
+   * Reads the remaining containers of the current bitmap.
+   *
+   * @return a new bitmap
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public RoaringBitmap read() throws IOException {
+    RoaringArray answer = new RoaringArray();
+    while (next()) {
+      answer.append(key, container);
+    }
+    return new RoaringBitmap(answer);
+  }
+
+  /**
+   * Computes the union of the given bitmap and of the remaining containers of the current
+   * bitmap, in place, as they are read.
+   *
+   * @param target the bitmap to modify
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public void orInto(RoaringBitmap target) throws IOException {
+    RoaringArray array = target.highLowContainer;
+    boolean modified = false;
+    short firstKey = 0;
+    try {
+      while (next()) {
+        if (!modified) {
+          modified = true;
+          firstKey = key;
+        }
+        int i = array.getIndex(key);
+        if (i < 0) {
+          array.insertNewKeyValueAt(-i - 1, key, container);
+        } else {
+          array.setContainerAtIndex(i, array.getWritableContainerAtIndex(i).ior(container));
+        }
+      }
+    } finally {
+      // even if the input turns out to be corrupt, the containers read so far were merged
+      if (modified) {
+        target.containersModified(firstKey);
+      }
+    }
+  }
+
+  /**
+   * Reads a single bitmap from a stream. Bytes following the bitmap may be consumed.
+   *
+   * @param in where to read the bitmap from
+   * @return a new bitmap
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public static RoaringBitmap deserialize(InputStream in) throws IOException {
+    return new StreamingDeserializer(in).read();
+  }
+
+  /**
+   * Reads a single bitmap from a channel. Bytes following the bitmap may be consumed.
+   *
+   * @param channel where to read the bitmap from
+   * @return a new bitmap
+   * @throws IOException if the input cannot be read or is not a serialized bitmap
+   */
+  public static RoaringBitmap deserialize(ReadableByteChannel channel) throws IOException {
+    return new StreamingDeserializer(channel).read();
+  }
+
+  private void readHeader() throws IOException {
+    require(4);
+    final int cookie = buffer.getInt();
+    if ((cookie & 0xFFFF) == RoaringArray.SERIAL_COOKIE) {
+      hasRun = true;
+      size = (cookie >>> 16) + 1;
+    } else if (cookie == RoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER) {
+      hasRun = false;
+      require(4);
+      size = buffer.getInt();
+      if (size < 0 || size > (1 << 16)) {
+        throw new IOException("Invalid number of containers: " + size);
+      }
+    } else {
+      throw new IOException("I failed to find one of the right cookies.");
+    }
+    if (hasRun) {
+      if (runFlags.length < (size + 7) / 8) {
+        runFlags = new byte[(size + 7) / 8];
+      }
+      readBytes(runFlags, (size + 7) / 8);
+    }
+    if (keysAndCardinalities.length < 2 * size) {
+      keysAndCardinalities = new short[2 * size];
+    }
+    readShorts(keysAndCardinalities, 2 * size);
+    if (!hasRun || size >= RoaringArray.NO_OFFSET_THRESHOLD) {
+      // the offsets are of no use when reading sequentially
+      skip(4L * size);
+    }
+    index = -1;
+    headerRead = true;
+  }
+
+  private Container readContainer(int cardinality, boolean isRun) throws IOException {
+    if (isRun) {
+      require(2);
+      int nbrruns = Util.toIntUnsigned(buffer.getShort());
+      short[] valuesAndLengths = new short[2 * nbrruns];
+      readShorts(valuesAndLengths, valuesAndLengths.length);
+      return new RunContainer(valuesAndLengths, nbrruns);
+    }
+    if (cardinality > ArrayContainer.DEFAULT_MAX_SIZE) {
+      long[] bitmap = new long[BitmapContainer.MAX_CAPACITY / 64];
+      require(bitmap.length * 8);
+      buffer.asLongBuffer().get(bitmap);
+      buffer.position(buffer.position() + bitmap.length * 8);
+      return new BitmapContainer(bitmap, cardinality);
+    }
+    short[] content = new short[cardinality];
+    readShorts(content, cardinality);
+    return new ArrayContainer(content);
+  }
+
+  private void readShorts(short[] dest, int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      require(2);
+      int count = Math.min(length - offset, buffer.remaining() / 2);
+      buffer.asShortBuffer().get(dest, offset, count);
+      buffer.position(buffer.position() + 2 * count);
+      offset += count;
+    }
+  }
+
+  private void readBytes(byte[] dest, int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      require(1);
+      int count = Math.min(length - offset, buffer.remaining());
+      buffer.get(dest, offset, count);
+      offset += count;
+    }
+  }
+
+  private void skip(long length) throws IOException {
+    while (length > 0) {
+      require(1);
+      int count = (int) Math.min(length, buffer.remaining());
+      buffer.position(buffer.position() + count);
+      length -= count;
+    }
+  }
+
+  private void require(int bytes) throws IOException {
+    if (!fill(bytes)) {
+      throw new EOFException("The serialized bitmap is truncated");
+    }
+  }
+
+  // makes sure that at least the given number of bytes are buffered, returns false at the end
+  // of the input
+  private boolean fill(int bytes) throws IOException {
+    if (buffer.remaining() >= bytes) {
+      return true;
+    }
+    buffer.compact();
+    try {
+      while (buffer.position() < bytes) {
+        if (channel.read(buffer) < 0) {
+          return false;
+        }
+      }
+    } finally {
+      buffer.flip();
+    }
+    return true;
+  }
+}
@@ -0,0 +1,212 @@
+package org.roaringbitmap;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+
+/**
+ *
+ * This class can be used to write quickly values to a bitmap, in any order.
+ * Values are first partitioned by their 16 most significant bits into
+ * temporary buffers, one per key, and each container is then built in
+ * one pass when "flush" is called: this avoids the conversions and the
+ * searches that adding values one by one to a bitmap incurs. The buffers
+ * are kept across flushes, so that a writer can be reused.
+ * Contrary to {@link RoaringBitmap#bitmapOfUnordered(int...)}, the values
+ * do not need to be available all at once.
+ * The main use case for an UnorderedWriter is to create bitmaps quickly
+ * from unsorted streams of values.
+ * You should benchmark your particular use case to see if it helps.
+ *
+ * <pre>
+ * {@code
+ *
+ *       //...
+ *
+ *       RoaringBitmap r = new RoaringBitmap();
+ *       UnorderedWriter uw = new UnorderedWriter(r);
+ *       for (int i :....) {
+ *         uw.add(i);
+ *       }
+ *       uw.flush(); // important
+ * }
+ * </pre>
+ *
+ * Memory use is bounded by about 16 kB per distinct key buffered.
+ */
+public class UnorderedWriter {
+
+  private static final int KEY_COUNT = 1 << 16;
+  private static final int WORD_COUNT = 1 << 10;
+  private static final int INITIAL_BUCKET_SIZE = 16;
+
+  private final RoaringBitmap underlying;
+
+  // values of each key, unsorted, until there are more than ArrayContainer.DEFAULT_MAX_SIZE
+  private final short[][] buckets = new short[KEY_COUNT][];
+  private final int[] counts = new int[KEY_COUNT];
+  // values of each key as a bitset, once there are too many of them for the bucket
+  private final long[][] bitsets = new long[KEY_COUNT][];
+  // the keys holding buffered values
+  private final long[] dirtyKeys = new long[KEY_COUNT / 64];
+  private final ArrayDeque<long[]> freeBitsets = new ArrayDeque<>();
+  private boolean dirty = false;
+
+  /**
+   * Initialize an UnorderedWriter with a receiving bitmap
+   * @param underlying bitmap where the data gets written
+   */
+  public UnorderedWriter(RoaringBitmap underlying) {
+    this.underlying = underlying;
+  }
+
+  /**
+   * Initialize an UnorderedWriter and construct a new RoaringBitmap
+   */
+  public UnorderedWriter() {
+    this(new RoaringBitmap());
+  }
+
+  /**
+   * Grab a reference to the underlying bitmap
+   * @return the underlying bitmap
+   */
+  public RoaringBitmap getUnderlying() {
+    return underlying;
+  }
+
+  /**
+   * Adds the value to the underlying bitmap. The data is added to a
+   * temporary buffer. You should call "flush" when you are done.
+   * @param value the value to add.
+   */
+  public void add(int value) {
+    final int key = value >>> 16;
+    final short low = Util.lowbits(value);
+    final long[] bitset = bitsets[key];
+    if (bitset != null) {
+      bitset[(low & 0xFFFF) >>> 6] |= 1L << low;
+      return;
+    }
+    short[] bucket = buckets[key];
+    final int count = counts[key];
+    if (bucket == null) {
+      bucket = buckets[key] = new short[INITIAL_BUCKET_SIZE];
+      dirtyKeys[key >>> 6] |= 1L << key;
+      dirty = true;
+    } else if (count == bucket.length) {
+      if (count == ArrayContainer.DEFAULT_MAX_SIZE) {
+        toBitset(key)[(low & 0xFFFF) >>> 6] |= 1L << low;
+        return;
+      }
+      bucket = buckets[key] = Arrays.copyOf(bucket,
+          Math.min(2 * count, ArrayContainer.DEFAULT_MAX_SIZE));
+    } else if (count == 0) {
+      dirtyKeys[key >>> 6] |= 1L << key;
+      dirty = true;
+    }
+    bucket[count] = low;
+    counts[key] = count + 1;
+  }
+
+  /**
+   * Adds the values to the underlying bitmap. The data is added to a
+   * temporary buffer. You should call "flush" when you are done.
+   * @param values the values to add.
+   * @param offset the index of the first value to add
+   * @param n the number of values to add
+   */
+  public void addN(int[] values, int offset, int n) {
+    for (int i = offset; i < offset + n; ++i) {
+      add(values[i]);
+    }
+  }
+
+  /**
+   * Ensures that any buffered additions are flushed to the underlying bitmap.
+   * Buffered values are merged with the content of the underlying bitmap.
+   */
+  public void flush() {
+    if (!dirty) {
+      return;
+    }
+    RoaringArray highLowContainer = underlying.highLowContainer;
+    int firstKey = -1;
+    for (int w = 0; w < dirtyKeys.length; ++w) {
+      long word = dirtyKeys[w];
+      while (word != 0) {
+        final int key = (w << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        if (firstKey < 0) {
+          firstKey = key;
+        }
+        merge(highLowContainer, (short) key, buildContainer(key));
+      }
+      dirtyKeys[w] = 0;
+    }
+    dirty = false;
+    underlying.containersModified((short) firstKey);
+  }
+
+  private static void merge(RoaringArray highLowContainer, short key, Container container) {
+    final int size = highLowContainer.size;
+    // keys come in ascending order: appending is the common case
+    if (size == 0
+        || Util.compareUnsigned(highLowContainer.getKeyAtIndex(size - 1), key) < 0) {
+      highLowContainer.append(key, container);
+      return;
+    }
+    int i = highLowContainer.getIndex(key);
+    if (i >= 0) {
+      highLowContainer.setContainerAtIndex(i,
+          highLowContainer.getWritableContainerAtIndex(i).ior(container));
+    } else {
+      highLowContainer.insertNewKeyValueAt(-i - 1, key, container);
+    }
+  }
+
+  private Container buildContainer(int key) {
+    final long[] bitset = bitsets[key];
+    if (bitset != null) {
+      bitsets[key] = null;
+      Container container = new BitmapContainer(bitset, -1).repairAfterLazy().runOptimize();
+      if (container instanceof BitmapContainer) {
+        // the bitset now belongs to the container
+        return container;
+      }
+      Arrays.fill(bitset, 0L);
+      freeBitsets.push(bitset);
+      return container;
+    }
+    final short[] bucket = buckets[key];
+    final int count = counts[key];
+    counts[key] = 0;
+    // unsigned sort: flipping the sign bit maps unsigned order to signed order
+    for (int i = 0; i < count; ++i) {
+      bucket[i] ^= Short.MIN_VALUE;
+    }
+    Arrays.sort(bucket, 0, count);
+    int cardinality = 0;
+    for (int i = 0; i < count; ++i) {
+      short value = (short) (bucket[i] ^ Short.MIN_VALUE);
+      if (cardinality == 0 || bucket[cardinality - 1] != value) {
+        bucket[cardinality++] = value;
+      }
+    }
+    return new ArrayContainer(cardinality, Arrays.copyOf(bucket, cardinality)).runOptimize();
+  }
+
+  // moves the values of the key from its bucket to a bitset
+  private long[] toBitset(int key) {
+    long[] bitset = freeBitsets.isEmpty() ? new long[WORD_COUNT] : freeBitsets.pop();
+    final short[] bucket = buckets[key];
+    final int count = counts[key];
+    for (int i = 0; i < count; ++i) {
+      final int low = bucket[i] & 0xFFFF;
+      bitset[low >>> 6] |= 1L << low;
+    }
+    counts[key] = 0;
+    bitsets[key] = bitset;
+    return bitset;
+  }
+}
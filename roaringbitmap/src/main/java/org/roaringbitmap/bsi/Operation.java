@@ -0,0 +1,24 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.bsi;
+
+/**
+ * Comparison operators supported by the bit-sliced indexes.
+ */
+public enum Operation {
+  /** value == start */
+  EQ,
+  /** value != start */
+  NEQ,
+  /** value &lt; start */
+  LT,
+  /** value &lt;= start */
+  LE,
+  /** value &gt; start */
+  GT,
+  /** value &gt;= start */
+  GE,
+  /** start &lt;= value &lt;= end */
+  RANGE
+}
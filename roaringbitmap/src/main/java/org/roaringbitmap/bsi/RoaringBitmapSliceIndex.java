@@ -0,0 +1,394 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.bsi;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * A bit-sliced index: it associates a non-negative long value to integer column ids (typically,
+ * row ids of a RoaringBitmap filter). It is made of an existence bitmap, holding the column ids
+ * that have a value, and of one RoaringBitmap per bit of the values: slice i holds the column ids
+ * whose value has its i-th bit set. With a binary base, this is also the range-encoded form of the
+ * index (a slice is the complement of the "digit is at most 0" bitmap within the existence set).
+ *
+ * Comparisons follow O'Neil and Quass, "Improved Query Performance with Variant Indexes"
+ * (SIGMOD 1997): one pass over the slices, from the most significant, with two or three bitmap
+ * operations per slice. Sums are computed from the cardinalities of the slices, min/max and top-k
+ * by narrowing down a candidate bitmap slice after slice.
+ *
+ * <pre>
+ * {@code
+ *      RoaringBitmapSliceIndex bsi = new RoaringBitmapSliceIndex();
+ *      bsi.setValue(1, 250);
+ *      bsi.setValue(2, 999);
+ *      RoaringBitmap rows = bsi.compare(Operation.GE, 300, 0, null); // {2}
+ * }
+ * </pre>
+ *
+ * The serialized form is made of the number of slices as a 4-byte little-endian integer, followed
+ * by the existence bitmap and by the slices (least significant first), each in the portable
+ * RoaringBitmap format. It can be mapped without copy by
+ * {@link org.roaringbitmap.bsi.buffer.ImmutableBitSliceIndex}.
+ */
+// this class is not thread-safe
+public class RoaringBitmapSliceIndex {
+
+  private RoaringBitmap ebM;
+
+  private RoaringBitmap[] bA;
+
+  /**
+   * Create an empty index
+   */
+  public RoaringBitmapSliceIndex() {
+    ebM = new RoaringBitmap();
+    bA = new RoaringBitmap[0];
+  }
+
+  /**
+   * Number of bit slices, that is the number of bits of the largest value set so far.
+   *
+   * @return the number of slices
+   */
+  public int bitCount() {
+    return bA.length;
+  }
+
+  /**
+   * The column ids having a value. The returned bitmap must not be modified.
+   *
+   * @return the existence bitmap
+   */
+  public RoaringBitmap getExistenceBitmap() {
+    return ebM;
+  }
+
+  /**
+   * @return the number of column ids having a value
+   */
+  public long getLongCardinality() {
+    return ebM.getLongCardinality();
+  }
+
+  /**
+   * Checks whether a column id has a value.
+   *
+   * @param columnId the column id
+   * @return whether the column id has a value
+   */
+  public boolean valueExist(int columnId) {
+    return ebM.contains(columnId);
+  }
+
+  /**
+   * Set the value of a column id, replacing the previous one if any.
+   *
+   * @param columnId the column id
+   * @param value a non-negative value
+   * @throws IllegalArgumentException if the value is negative
+   */
+  public void setValue(int columnId, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative values are not supported: " + value);
+    }
+    final int bits = 64 - Long.numberOfLeadingZeros(value);
+    if (bits > bA.length) {
+      grow(bits);
+    }
+    for (int i = 0; i < bA.length; i++) {
+      if ((value & (1L << i)) != 0) {
+        bA[i].add(columnId);
+      } else {
+        bA[i].remove(columnId);
+      }
+    }
+    ebM.add(columnId);
+  }
+
+  private void grow(int bits) {
+    int old = bA.length;
+    bA = Arrays.copyOf(bA, bits);
+    for (int i = old; i < bits; i++) {
+      bA[i] = new RoaringBitmap();
+    }
+  }
+
+  /**
+   * Get the value of a column id.
+   *
+   * @param columnId the column id
+   * @return the value
+   * @throws NoSuchElementException if the column id has no value
+   */
+  public long getValue(int columnId) {
+    if (!ebM.contains(columnId)) {
+      throw new NoSuchElementException("No value for column " + columnId);
+    }
+    long value = 0;
+    for (int i = 0; i < bA.length; i++) {
+      if (bA[i].contains(columnId)) {
+        value |= 1L << i;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Remove the value of a column id, if any.
+   *
+   * @param columnId the column id
+   */
+  public void remove(int columnId) {
+    if (ebM.checkedRemove(columnId)) {
+      for (RoaringBitmap slice : bA) {
+        slice.remove(columnId);
+      }
+    }
+  }
+
+  /**
+   * Use a run-length encoding where it is estimated as more space efficient
+   */
+  public void runOptimize() {
+    ebM.runOptimize();
+    for (RoaringBitmap slice : bA) {
+      slice.runOptimize();
+    }
+  }
+
+  // the column ids to consider: the found set restricted to the existing column ids
+  private RoaringBitmap candidates(RoaringBitmap foundSet) {
+    return foundSet == null ? ebM.clone() : RoaringBitmap.and(ebM, foundSet);
+  }
+
+  /**
+   * Compare the values with the given bounds.
+   *
+   * @param operation the comparison operator
+   * @param start the value compared with, or the inclusive lower bound of a RANGE
+   * @param end the inclusive upper bound of a RANGE, ignored otherwise
+   * @param foundSet if not null, only these column ids are considered
+   * @return the column ids whose value satisfies the comparison
+   */
+  public RoaringBitmap compare(Operation operation, long start, long end,
+      RoaringBitmap foundSet) {
+    final RoaringBitmap fixedFoundSet = candidates(foundSet);
+    switch (operation) {
+      case EQ:
+        return compare(start, fixedFoundSet)[1];
+      case NEQ:
+        return RoaringBitmap.andNot(fixedFoundSet, compare(start, fixedFoundSet)[1]);
+      case LT:
+        return compare(start, fixedFoundSet)[0];
+      case LE: {
+        RoaringBitmap[] ltEqGt = compare(start, fixedFoundSet);
+        ltEqGt[0].or(ltEqGt[1]);
+        return ltEqGt[0];
+      }
+      case GT:
+        return compare(start, fixedFoundSet)[2];
+      case GE: {
+        RoaringBitmap[] ltEqGt = compare(start, fixedFoundSet);
+        ltEqGt[2].or(ltEqGt[1]);
+        return ltEqGt[2];
+      }
+      case RANGE: {
+        RoaringBitmap[] low = compare(start, fixedFoundSet);
+        low[2].or(low[1]);
+        RoaringBitmap[] high = compare(end, low[2]);
+        high[0].or(high[1]);
+        return high[0];
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported operation: " + operation);
+    }
+  }
+
+  /**
+   * Split the candidates according to their value.
+   *
+   * @param value the value compared with
+   * @param candidates column ids having a value, not modified
+   * @return the column ids whose value is respectively lower than, equal to and greater than the
+   *         given value
+   */
+  private RoaringBitmap[] compare(long value, RoaringBitmap candidates) {
+    RoaringBitmap lt = new RoaringBitmap();
+    RoaringBitmap gt = new RoaringBitmap();
+    if (value < 0) {
+      return new RoaringBitmap[] {lt, new RoaringBitmap(), candidates.clone()};
+    }
+    if (64 - Long.numberOfLeadingZeros(value) > bA.length) {
+      return new RoaringBitmap[] {candidates.clone(), new RoaringBitmap(), gt};
+    }
+    RoaringBitmap eq = candidates.clone();
+    for (int i = bA.length - 1; i >= 0 && !eq.isEmpty(); i--) {
+      if ((value & (1L << i)) != 0) {
+        lt.or(RoaringBitmap.andNot(eq, bA[i]));
+        eq.and(bA[i]);
+      } else {
+        gt.or(RoaringBitmap.and(eq, bA[i]));
+        eq.andNot(bA[i]);
+      }
+    }
+    return new RoaringBitmap[] {lt, eq, gt};
+  }
+
+  /**
+   * Sum of the values, wrapping around on overflow as long arithmetic does.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the sum of the values
+   */
+  public long sum(RoaringBitmap foundSet) {
+    final RoaringBitmap fixedFoundSet = foundSet == null ? ebM : foundSet;
+    long sum = 0;
+    for (int i = 0; i < bA.length; i++) {
+      sum += RoaringBitmap.andCardinality(bA[i], fixedFoundSet) * (1L << i);
+    }
+    return sum;
+  }
+
+  /**
+   * Smallest value.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the smallest value
+   * @throws NoSuchElementException if no considered column id has a value
+   */
+  public long min(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("No value");
+    }
+    long min = 0;
+    for (int i = bA.length - 1; i >= 0; i--) {
+      RoaringBitmap zeros = RoaringBitmap.andNot(candidates, bA[i]);
+      if (zeros.isEmpty()) {
+        min |= 1L << i;
+      } else {
+        candidates = zeros;
+      }
+    }
+    return min;
+  }
+
+  /**
+   * Largest value.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the largest value
+   * @throws NoSuchElementException if no considered column id has a value
+   */
+  public long max(RoaringBitmap foundSet) {
+    RoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("No value");
+    }
+    long max = 0;
+    for (int i = bA.length - 1; i >= 0; i--) {
+      RoaringBitmap ones = RoaringBitmap.and(candidates, bA[i]);
+      if (!ones.isEmpty()) {
+        max |= 1L << i;
+        candidates = ones;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * The k column ids having the largest values. Ties at the k-th value are broken in favor of the
+   * smallest column ids.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @param k the number of column ids to return
+   * @return k column ids, or all the considered column ids if there are fewer
+   * @throws IllegalArgumentException if k is negative
+   */
+  public RoaringBitmap topK(RoaringBitmap foundSet, int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("Negative k: " + k);
+    }
+    RoaringBitmap e = candidates(foundSet);
+    if (k >= e.getLongCardinality()) {
+      return e;
+    }
+    RoaringBitmap g = new RoaringBitmap();
+    for (int i = bA.length - 1; i >= 0; i--) {
+      RoaringBitmap ones = RoaringBitmap.and(e, bA[i]);
+      long n = g.getLongCardinality() + ones.getLongCardinality();
+      if (n > k) {
+        e = ones;
+      } else if (n < k) {
+        g.or(ones);
+        e.andNot(bA[i]);
+      } else {
+        g.or(ones);
+        return g;
+      }
+    }
+    // e holds column ids of equal value, keep as many as needed
+    g.or(e.limit(k - g.getCardinality()));
+    return g;
+  }
+
+  /**
+   * Serialize this index, in the format described in the class documentation.
+   *
+   * The current index is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serialize(DataOutput out) throws IOException {
+    out.writeInt(Integer.reverseBytes(bA.length));
+    ebM.serialize(out);
+    for (RoaringBitmap slice : bA) {
+      slice.serialize(out);
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) this index.
+   *
+   * The current index is overwritten.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    final int bitCount = Integer.reverseBytes(in.readInt());
+    if (bitCount < 0 || bitCount > 63) {
+      throw new IOException("Unsupported number of slices: " + bitCount);
+    }
+    RoaringBitmap existence = new RoaringBitmap();
+    existence.deserialize(in);
+    RoaringBitmap[] slices = new RoaringBitmap[bitCount];
+    for (int i = 0; i < bitCount; i++) {
+      slices[i] = new RoaringBitmap();
+      slices[i].deserialize(in);
+    }
+    ebM = existence;
+    bA = slices;
+  }
+
+  /**
+   * Report the number of bytes required to serialize this index.
+   *
+   * @return the size in bytes
+   */
+  public int serializedSizeInBytes() {
+    int size = 4 + ebM.serializedSizeInBytes();
+    for (RoaringBitmap slice : bA) {
+      size += slice.serializedSizeInBytes();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.bsi.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.NoSuchElementException;
+
+import org.roaringbitmap.bsi.Operation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+/**
+ * A read-only bit-sliced index mapped from a ByteBuffer holding the serialized form of a
+ * {@link org.roaringbitmap.bsi.RoaringBitmapSliceIndex}: the existence bitmap and the slices are
+ * ImmutableRoaringBitmap instances over the buffer, nothing is copied.
+ *
+ * The queries are the same as those of RoaringBitmapSliceIndex, the results are
+ * MutableRoaringBitmap instances.
+ */
+public class ImmutableBitSliceIndex {
+
+  private final ImmutableRoaringBitmap ebM;
+
+  private final ImmutableRoaringBitmap[] bA;
+
+  private final int serializedSizeInBytes;
+
+  /**
+   * Map an index to the serialized data, starting at the current position of the buffer.
+   *
+   * After creating this ImmutableBitSliceIndex, you can advance to the rest of the data (if there
+   * is more) by setting b.position(b.position() + index.serializedSizeInBytes());
+   *
+   * The input ByteBuffer is not modified.
+   *
+   * @param b data source
+   */
+  public ImmutableBitSliceIndex(ByteBuffer b) {
+    ByteBuffer bb = b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    final int bitCount = bb.getInt();
+    if (bitCount < 0 || bitCount > 63) {
+      throw new IllegalArgumentException("Unsupported number of slices: " + bitCount);
+    }
+    ebM = new ImmutableRoaringBitmap(bb);
+    bb.position(bb.position() + ebM.serializedSizeInBytes());
+    bA = new ImmutableRoaringBitmap[bitCount];
+    for (int i = 0; i < bitCount; i++) {
+      bA[i] = new ImmutableRoaringBitmap(bb);
+      bb.position(bb.position() + bA[i].serializedSizeInBytes());
+    }
+    serializedSizeInBytes = bb.position();
+  }
+
+  /**
+   * @return the number of slices
+   */
+  public int bitCount() {
+    return bA.length;
+  }
+
+  /**
+   * @return the column ids having a value
+   */
+  public ImmutableRoaringBitmap getExistenceBitmap() {
+    return ebM;
+  }
+
+  /**
+   * @return the number of column ids having a value
+   */
+  public long getLongCardinality() {
+    return ebM.getLongCardinality();
+  }
+
+  /**
+   * Checks whether a column id has a value.
+   *
+   * @param columnId the column id
+   * @return whether the column id has a value
+   */
+  public boolean valueExist(int columnId) {
+    return ebM.contains(columnId);
+  }
+
+  /**
+   * Get the value of a column id.
+   *
+   * @param columnId the column id
+   * @return the value
+   * @throws NoSuchElementException if the column id has no value
+   */
+  public long getValue(int columnId) {
+    if (!ebM.contains(columnId)) {
+      throw new NoSuchElementException("No value for column " + columnId);
+    }
+    long value = 0;
+    for (int i = 0; i < bA.length; i++) {
+      if (bA[i].contains(columnId)) {
+        value |= 1L << i;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return the number of bytes of the mapped serialized form
+   */
+  public int serializedSizeInBytes() {
+    return serializedSizeInBytes;
+  }
+
+  // the column ids to consider: the found set restricted to the existing column ids
+  private MutableRoaringBitmap candidates(ImmutableRoaringBitmap foundSet) {
+    return foundSet == null ? ebM.toMutableRoaringBitmap()
+        : ImmutableRoaringBitmap.and(ebM, foundSet);
+  }
+
+  /**
+   * Compare the values with the given bounds.
+   *
+   * @param operation the comparison operator
+   * @param start the value compared with, or the inclusive lower bound of a RANGE
+   * @param end the inclusive upper bound of a RANGE, ignored otherwise
+   * @param foundSet if not null, only these column ids are considered
+   * @return the column ids whose value satisfies the comparison
+   */
+  public MutableRoaringBitmap compare(Operation operation, long start, long end,
+      ImmutableRoaringBitmap foundSet) {
+    final MutableRoaringBitmap fixedFoundSet = candidates(foundSet);
+    switch (operation) {
+      case EQ:
+        return compare(start, fixedFoundSet)[1];
+      case NEQ:
+        return ImmutableRoaringBitmap.andNot(fixedFoundSet, compare(start, fixedFoundSet)[1]);
+      case LT:
+        return compare(start, fixedFoundSet)[0];
+      case LE: {
+        MutableRoaringBitmap[] ltEqGt = compare(start, fixedFoundSet);
+        ltEqGt[0].or(ltEqGt[1]);
+        return ltEqGt[0];
+      }
+      case GT:
+        return compare(start, fixedFoundSet)[2];
+      case GE: {
+        MutableRoaringBitmap[] ltEqGt = compare(start, fixedFoundSet);
+        ltEqGt[2].or(ltEqGt[1]);
+        return ltEqGt[2];
+      }
+      case RANGE: {
+        MutableRoaringBitmap[] low = compare(start, fixedFoundSet);
+        low[2].or(low[1]);
+        MutableRoaringBitmap[] high = compare(end, low[2]);
+        high[0].or(high[1]);
+        return high[0];
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported operation: " + operation);
+    }
+  }
+
+  // see org.roaringbitmap.bsi.RoaringBitmapSliceIndex
+  private MutableRoaringBitmap[] compare(long value, MutableRoaringBitmap candidates) {
+    MutableRoaringBitmap lt = new MutableRoaringBitmap();
+    MutableRoaringBitmap gt = new MutableRoaringBitmap();
+    if (value < 0) {
+      return new MutableRoaringBitmap[] {lt, new MutableRoaringBitmap(), candidates.clone()};
+    }
+    if (64 - Long.numberOfLeadingZeros(value) > bA.length) {
+      return new MutableRoaringBitmap[] {candidates.clone(), new MutableRoaringBitmap(), gt};
+    }
+    MutableRoaringBitmap eq = candidates.clone();
+    for (int i = bA.length - 1; i >= 0 && !eq.isEmpty(); i--) {
+      if ((value & (1L << i)) != 0) {
+        lt.or(ImmutableRoaringBitmap.andNot(eq, bA[i]));
+        eq.and(bA[i]);
+      } else {
+        gt.or(ImmutableRoaringBitmap.and(eq, bA[i]));
+        eq.andNot(bA[i]);
+      }
+    }
+    return new MutableRoaringBitmap[] {lt, eq, gt};
+  }
+
+  /**
+   * Sum of the values, wrapping around on overflow as long arithmetic does.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the sum of the values
+   */
+  public long sum(ImmutableRoaringBitmap foundSet) {
+    final ImmutableRoaringBitmap fixedFoundSet = foundSet == null ? ebM : foundSet;
+    long sum = 0;
+    for (int i = 0; i < bA.length; i++) {
+      sum += ImmutableRoaringBitmap.andCardinality(bA[i], fixedFoundSet) * (1L << i);
+    }
+    return sum;
+  }
+
+  /**
+   * Smallest value.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the smallest value
+   * @throws NoSuchElementException if no considered column id has a value
+   */
+  public long min(ImmutableRoaringBitmap foundSet) {
+    MutableRoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("No value");
+    }
+    long min = 0;
+    for (int i = bA.length - 1; i >= 0; i--) {
+      MutableRoaringBitmap zeros = ImmutableRoaringBitmap.andNot(candidates, bA[i]);
+      if (zeros.isEmpty()) {
+        min |= 1L << i;
+      } else {
+        candidates = zeros;
+      }
+    }
+    return min;
+  }
+
+  /**
+   * Largest value.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @return the largest value
+   * @throws NoSuchElementException if no considered column id has a value
+   */
+  public long max(ImmutableRoaringBitmap foundSet) {
+    MutableRoaringBitmap candidates = candidates(foundSet);
+    if (candidates.isEmpty()) {
+      throw new NoSuchElementException("No value");
+    }
+    long max = 0;
+    for (int i = bA.length - 1; i >= 0; i--) {
+      MutableRoaringBitmap ones = ImmutableRoaringBitmap.and(candidates, bA[i]);
+      if (!ones.isEmpty()) {
+        max |= 1L << i;
+        candidates = ones;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * The k column ids having the largest values. Ties at the k-th value are broken in favor of the
+   * smallest column ids.
+   *
+   * @param foundSet if not null, only these column ids are considered
+   * @param k the number of column ids to return
+   * @return k column ids, or all the considered column ids if there are fewer
+   * @throws IllegalArgumentException if k is negative
+   */
+  public MutableRoaringBitmap topK(ImmutableRoaringBitmap foundSet, int k) {
+    if (k < 0) {
+      throw new IllegalArgumentException("Negative k: " + k);
+    }
+    MutableRoaringBitmap e = candidates(foundSet);
+    if (k >= e.getLongCardinality()) {
+      return e;
+    }
+    MutableRoaringBitmap g = new MutableRoaringBitmap();
+    for (int i = bA.length - 1; i >= 0; i--) {
+      MutableRoaringBitmap ones = ImmutableRoaringBitmap.and(e, bA[i]);
+      long n = g.getLongCardinality() + ones.getLongCardinality();
+      if (n > k) {
+        e = ones;
+      } else if (n < k) {
+        g.or(ones);
+        e.andNot(bA[i]);
+      } else {
+        g.or(ones);
+        return g;
+      }
+    }
+    // e holds column ids of equal value, keep as many as needed
+    g.or(e.limit(k - g.getCardinality()));
+    return g;
+  }
+}
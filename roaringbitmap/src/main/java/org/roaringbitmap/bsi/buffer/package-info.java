@@ -0,0 +1,27 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+
+
+/**
+ * The org.roaringbitmap.bsi.buffer package provides
+ * {@link org.roaringbitmap.bsi.buffer.ImmutableBitSliceIndex}, a bit-sliced index whose
+ * bitmaps are ImmutableRoaringBitmap instances mapped from a ByteBuffer, typically
+ * holding the serialized form of a {@link org.roaringbitmap.bsi.RoaringBitmapSliceIndex}.
+ *
+ * <pre>
+ * {@code
+ *      import org.roaringbitmap.bsi.*;
+ *      import org.roaringbitmap.bsi.buffer.*;
+ *
+ *      //...
+ *
+ *      ByteBuffer bb = ... // e.g., a memory-mapped file
+ *      ImmutableBitSliceIndex prices = new ImmutableBitSliceIndex(bb);
+ *      MutableRoaringBitmap cheap = prices.compare(Operation.LE, 300, 0, null);
+ * }
+ * </pre>
+ *
+ */
+package org.roaringbitmap.bsi.buffer;
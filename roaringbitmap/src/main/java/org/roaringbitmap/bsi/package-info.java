@@ -0,0 +1,31 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+
+
+/**
+ * The org.roaringbitmap.bsi package provides
+ * a bit-sliced index ({@link org.roaringbitmap.bsi.RoaringBitmapSliceIndex}) storing
+ * a non-negative integer value per row (column id), one RoaringBitmap per bit.
+ * Range predicates and aggregates then become a handful of bitmap operations
+ * instead of a scan of the values.
+ *
+ * <pre>
+ * {@code
+ *      import org.roaringbitmap.bsi.*;
+ *
+ *      //...
+ *
+ *      RoaringBitmapSliceIndex prices = new RoaringBitmapSliceIndex();
+ *      prices.setValue(1, 250);
+ *      prices.setValue(2, 999);
+ *      prices.setValue(3, 15);
+ *
+ *      RoaringBitmap cheap = prices.compare(Operation.RANGE, 10, 300, null); // {1,3}
+ *      long total = prices.sum(cheap); // 265
+ * }
+ * </pre>
+ *
+ */
+package org.roaringbitmap.bsi;
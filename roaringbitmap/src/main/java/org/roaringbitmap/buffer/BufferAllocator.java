@@ -0,0 +1,54 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Strategy used by a MutableRoaringBitmap to obtain the storage of its containers once they are
+ * offloaded (see {@link MutableRoaringBitmap#offload()}).
+ *
+ * Buffers handed out by an allocator have their position at 0, their limit set to the requested
+ * length and a capacity that may be larger than the requested length. Their content is undefined.
+ * A buffer is returned to the allocator exactly once, after which it must no longer be used.
+ * Returning a buffer does not necessarily release its memory: the allocators of this package never
+ * free direct memory explicitly and leave it to the garbage collector.
+ *
+ * @see DirectBufferAllocator
+ * @see PooledBufferAllocator
+ */
+public interface BufferAllocator {
+
+  /**
+   * Obtain a buffer holding at least the given number of shorts.
+   *
+   * @param length number of shorts required
+   * @return a buffer whose limit is length
+   */
+  ShortBuffer allocateShortBuffer(int length);
+
+  /**
+   * Obtain a buffer holding at least the given number of longs.
+   *
+   * @param length number of longs required
+   * @return a buffer whose limit is length
+   */
+  LongBuffer allocateLongBuffer(int length);
+
+  /**
+   * Give back a buffer previously obtained from {@link #allocateShortBuffer(int)}.
+   *
+   * @param buffer the buffer to release
+   */
+  void free(ShortBuffer buffer);
+
+  /**
+   * Give back a buffer previously obtained from {@link #allocateLongBuffer(int)}.
+   *
+   * @param buffer the buffer to release
+   */
+  void free(LongBuffer buffer);
+}
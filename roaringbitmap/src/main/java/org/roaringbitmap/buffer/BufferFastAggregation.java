@@ -4,6 +4,9 @@
 
 package org.roaringbitmap.buffer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -11,6 +14,8 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.PriorityQueue;
 
+import org.roaringbitmap.Util;
+
 
 /**
  * Fast algorithms to aggregate many bitmaps.
@@ -23,15 +28,44 @@ public final class BufferFastAggregation {
   /**
    * Compute the AND aggregate.
    * 
-   * In practice, calls {#link naive_and}
+   * In practice, calls {#link workShyAnd} when there are more than 10 bitmaps, {#link naive_and}
+   * otherwise
    * 
    * @param bitmaps input bitmaps
    * @return aggregated bitmap
    */
   public static MutableRoaringBitmap and(ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length > 10) {
+      return workShyAnd(new long[1 << 10], bitmaps);
+    }
     return naive_and(bitmaps);
   }
 
+  /**
+   * Compute the AND aggregate, keeping only its maxCardinality smallest values. The keys (high 16
+   * bits) are processed in increasing order and the computation stops as soon as maxCardinality
+   * values are found. The result is the same as and(bitmaps).limit(maxCardinality).
+   *
+   * @param maxCardinality the largest number of values to return
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap and(int maxCardinality, ImmutableRoaringBitmap... bitmaps) {
+    return workShyAnd(new long[1 << 10], maxCardinality, bitmaps);
+  }
+
+  /**
+   * Compute the AND aggregate, keeping only its maxCardinality smallest values, see
+   * {@link #and(int, ImmutableRoaringBitmap...)}.
+   *
+   * @param maxCardinality the largest number of values to return
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap and(int maxCardinality, MutableRoaringBitmap... bitmaps) {
+    return and(maxCardinality, (ImmutableRoaringBitmap[]) bitmaps);
+  }
+
   /**
    * Compute the AND aggregate.
    * 
@@ -273,6 +307,138 @@ public final class BufferFastAggregation {
     return answer;
   }
 
+  /**
+   * Compute the AND aggregate without intermediate bitmaps. The keys (high 16 bits) common to all
+   * bitmaps are found first. Then, for each of these keys, the containers are intersected in the
+   * provided buffer, starting from the smallest one, and the key is dropped as soon as the
+   * intersection is empty.
+   *
+   * @param buffer a buffer of 1024 longs, overwritten
+   * @param bitmaps input bitmaps (ImmutableRoaringBitmap or MutableRoaringBitmap)
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap workShyAnd(long[] buffer,
+      ImmutableRoaringBitmap... bitmaps) {
+    return workShyAnd(buffer, Integer.MAX_VALUE, bitmaps);
+  }
+
+  /**
+   * Compute the AND aggregate without intermediate bitmaps, keeping only its maxCardinality
+   * smallest values, see {@link #workShyAnd(long[], ImmutableRoaringBitmap...)}. The common keys
+   * are processed in increasing order and the computation stops as soon as maxCardinality values
+   * are found.
+   *
+   * @param buffer a buffer of 1024 longs, overwritten
+   * @param maxCardinality the largest number of values to return
+   * @param bitmaps input bitmaps (ImmutableRoaringBitmap or MutableRoaringBitmap)
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap workShyAnd(long[] buffer, int maxCardinality,
+      ImmutableRoaringBitmap... bitmaps) {
+    if (buffer.length != 1 << 10) {
+      throw new IllegalArgumentException("The buffer must hold 1024 longs");
+    }
+    MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    if (bitmaps.length == 0) {
+      return answer;
+    }
+    short[] keys = commonKeys(bitmaps);
+    MappeableBitmapContainer scratch = new MappeableBitmapContainer(LongBuffer.wrap(buffer), -1);
+    int[] positions = new int[bitmaps.length];
+    MappeableContainer[] containers = new MappeableContainer[bitmaps.length];
+    int cardinality = 0;
+    for (int k = 0; k < keys.length && cardinality < maxCardinality; ++k) {
+      short key = keys[k];
+      int smallest = 0;
+      for (int i = 0; i < bitmaps.length; ++i) {
+        PointableRoaringArray array = bitmaps[i].highLowContainer;
+        positions[i] = array.advanceUntil(key, positions[i] - 1);
+        containers[i] = array.getContainerAtIndex(positions[i]);
+        if (containers[i].getCardinality() < containers[smallest].getCardinality()) {
+          smallest = i;
+        }
+      }
+      Arrays.fill(buffer, 0L);
+      containers[smallest].orInto(buffer);
+      boolean empty = false;
+      for (int i = 0; i < containers.length && !empty; ++i) {
+        if (i != smallest) {
+          containers[i].andInto(buffer);
+          empty = isEmpty(buffer);
+        }
+      }
+      if (!empty) {
+        scratch.computeCardinality();
+        MappeableContainer result;
+        if (scratch.getCardinality() > maxCardinality - cardinality) {
+          result = scratch.limit(maxCardinality - cardinality);
+        } else if (scratch.getCardinality() <= MappeableArrayContainer.DEFAULT_MAX_SIZE) {
+          result = scratch.toArrayContainer();
+        } else {
+          result = scratch.clone();
+        }
+        cardinality += result.getCardinality();
+        answer.getMappeableRoaringArray().append(key, result);
+      }
+    }
+    return answer;
+  }
+
+  /**
+   * Compute the AND aggregate without intermediate bitmaps, see
+   * {@link #workShyAnd(long[], ImmutableRoaringBitmap...)}.
+   *
+   * @param buffer a buffer of 1024 longs, overwritten
+   * @param bitmaps input bitmaps
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap workShyAnd(long[] buffer, MutableRoaringBitmap... bitmaps) {
+    return workShyAnd(buffer, (ImmutableRoaringBitmap[]) bitmaps);
+  }
+
+  // the keys found in all bitmaps, in increasing order
+  private static short[] commonKeys(ImmutableRoaringBitmap... bitmaps) {
+    PointableRoaringArray fewest = bitmaps[0].highLowContainer;
+    for (ImmutableRoaringBitmap bitmap : bitmaps) {
+      if (bitmap.highLowContainer.size() < fewest.size()) {
+        fewest = bitmap.highLowContainer;
+      }
+    }
+    short[] keys = new short[fewest.size()];
+    for (int k = 0; k < keys.length; ++k) {
+      keys[k] = fewest.getKeyAtIndex(k);
+    }
+    int size = keys.length;
+    for (int i = 0; i < bitmaps.length && size > 0; ++i) {
+      PointableRoaringArray array = bitmaps[i].highLowContainer;
+      if (array == fewest) {
+        continue;
+      }
+      int kept = 0;
+      int position = 0;
+      for (int k = 0; k < size; ++k) {
+        position = array.advanceUntil(keys[k], position - 1);
+        if (position == array.size()) {
+          break;
+        }
+        if (array.getKeyAtIndex(position) == keys[k]) {
+          keys[kept++] = keys[k];
+        }
+      }
+      size = kept;
+    }
+    return Arrays.copyOf(keys, size);
+  }
+
+  private static boolean isEmpty(long[] words) {
+    for (long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Compute overall AND between bitmaps two-by-two.
    * 
@@ -602,6 +768,42 @@ public final class BufferFastAggregation {
   }
 
 
+  /**
+   * Compute the OR aggregate of serialized bitmaps (see
+   * {@link MutableRoaringBitmap#serialize(java.io.DataOutput)}), each starting at the current
+   * position of its buffer, without constructing ImmutableRoaringBitmaps. The keys and the
+   * containers are read straight from the buffers by light cursors, merged with a priority queue
+   * on their current key (a bucket per key), and the containers sharing a key are ORed together
+   * in a bitset.
+   * Besides the result, the memory used grows by a few dozen bytes per bitmap, in arrays shared
+   * by all bitmaps. The buffers, their positions and their byte orders are left unchanged.
+   *
+   * This pays off with many bitmaps spread over many keys, whose naive union keeps inserting keys
+   * in the middle of the answer. When most containers hold hundreds of values, reading the
+   * bitmaps one after the other, as {@link #or(Iterator)} does, has a better memory locality.
+   *
+   * @param buffers serialized bitmaps
+   * @return aggregated bitmap
+   */
+  public static MutableRoaringBitmap serializedOr(Iterator<? extends ByteBuffer> buffers) {
+    SerializedCursors cursors = new SerializedCursors();
+    while (buffers.hasNext()) {
+      cursors.add(buffers.next());
+    }
+    MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    long[] words = new long[1 << 10];
+    MappeableBitmapContainer scratch = new MappeableBitmapContainer(LongBuffer.wrap(words), -1);
+    for (int key = cursors.nextKey(0); key >= 0; key = cursors.nextKey(key + 1)) {
+      Arrays.fill(words, 0L);
+      cursors.orInto(key, words);
+      scratch.computeCardinality();
+      answer.getMappeableRoaringArray().append((short) key,
+          scratch.getCardinality() <= MappeableArrayContainer.DEFAULT_MAX_SIZE
+              ? scratch.toArrayContainer() : scratch.clone());
+    }
+    return answer;
+  }
+
   /**
    * Compute overall XOR between bitmaps.
    * 
@@ -641,4 +843,174 @@ public final class BufferFastAggregation {
    */
   private BufferFastAggregation() {}
 
+  /**
+   * Cursors over serialized bitmaps, queued by the key of their current container. Since keys
+   * have 16 bits and each cursor only moves to larger keys, the priority queue is a bucket per
+   * key, each bucket being a linked list of cursors. The state of the cursors is kept in parallel
+   * arrays, so that adding a bitmap does not allocate anything besides the occasional growth of
+   * these arrays. Since containers are read in order, their offsets are accumulated from their
+   * sizes and the offset header is never read.
+   */
+  private static final class SerializedCursors {
+
+    private static final int NONE = -1;
+
+    // first cursor of each bucket
+    private final int[] heads = new int[1 << 16];
+    private ByteBuffer[] buffers = new ByteBuffer[16];
+    // whether the buffer is big endian, the serialized bitmaps being little endian
+    private boolean[] swapped = new boolean[16];
+    // where the serialized bitmap starts in its buffer
+    private int[] starts = new int[16];
+    private int[] sizes = new int[16];
+    private boolean[] runFlags = new boolean[16];
+    private int[] indexes = new int[16];
+    // absolute position of the current container
+    private int[] offsets = new int[16];
+    // next cursor in the same bucket
+    private int[] nexts = new int[16];
+    private int count = 0;
+
+    SerializedCursors() {
+      Arrays.fill(heads, NONE);
+    }
+
+    void add(ByteBuffer buffer) {
+      if (count == buffers.length) {
+        int newCapacity = 2 * count;
+        buffers = Arrays.copyOf(buffers, newCapacity);
+        swapped = Arrays.copyOf(swapped, newCapacity);
+        starts = Arrays.copyOf(starts, newCapacity);
+        sizes = Arrays.copyOf(sizes, newCapacity);
+        runFlags = Arrays.copyOf(runFlags, newCapacity);
+        indexes = Arrays.copyOf(indexes, newCapacity);
+        offsets = Arrays.copyOf(offsets, newCapacity);
+        nexts = Arrays.copyOf(nexts, newCapacity);
+      }
+      int c = count;
+      buffers[c] = buffer;
+      swapped[c] = buffer.order() == ByteOrder.BIG_ENDIAN;
+      starts[c] = buffer.position();
+      int cookie = getInt(c, 0);
+      boolean hasRun = (cookie & 0xFFFF) == MutableRoaringArray.SERIAL_COOKIE;
+      if (!hasRun && cookie != MutableRoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER) {
+        throw new RuntimeException("I failed to find one of the right cookies. " + cookie);
+      }
+      int size = hasRun ? (cookie >>> 16) + 1 : getInt(c, 4);
+      if (size < 0 || size > (1 << 16)) {
+        throw new RuntimeException("Invalid number of containers: " + size);
+      }
+      if (size == 0) {
+        buffers[c] = null;
+        return;
+      }
+      sizes[c] = size;
+      runFlags[c] = hasRun;
+      indexes[c] = 0;
+      if (hasRun) {
+        offsets[c] = size < MutableRoaringArray.NO_OFFSET_THRESHOLD
+            ? 4 + (size + 7) / 8 + 4 * size : 4 + (size + 7) / 8 + 8 * size;
+      } else {
+        offsets[c] = 8 + 8 * size;
+      }
+      ++count;
+      push(c);
+    }
+
+    /**
+     * Smallest key of a current container, as an unsigned value.
+     *
+     * @param from smallest key to consider
+     * @return the key, or -1 if all the cursors are exhausted
+     */
+    int nextKey(int from) {
+      for (int key = from; key < heads.length; ++key) {
+        if (heads[key] != NONE) {
+          return key;
+        }
+      }
+      return NONE;
+    }
+
+    /**
+     * ORs the current containers having the key into the bitset, and moves their cursors to
+     * their next container.
+     *
+     * @param key as returned by nextKey
+     * @param words bitset
+     */
+    void orInto(int key, long[] words) {
+      int c = heads[key];
+      heads[key] = NONE;
+      while (c != NONE) {
+        int next = nexts[c];
+        int offset = offsets[c];
+        if (isRunContainer(c)) {
+          int nbrruns = getShort(c, offset);
+          for (int r = 0; r < nbrruns; ++r) {
+            int start = getShort(c, offset + 2 + 4 * r);
+            Util.setBitmapRange(words, start, start + getShort(c, offset + 4 + 4 * r) + 1);
+          }
+          offsets[c] += BufferUtil.getSizeInBytesFromCardinalityEtc(0, nbrruns, true);
+        } else {
+          int cardinality = getShort(c, startOfKeys(c) + 4 * indexes[c] + 2) + 1;
+          if (cardinality > MappeableArrayContainer.DEFAULT_MAX_SIZE) {
+            orBitmap(buffers[c], starts[c] + offset, swapped[c], words);
+          } else {
+            orArray(buffers[c], starts[c] + offset, cardinality, swapped[c], words);
+          }
+          offsets[c] += BufferUtil.getSizeInBytesFromCardinalityEtc(cardinality, 0, false);
+        }
+        if (++indexes[c] < sizes[c]) {
+          push(c);
+        } else {
+          buffers[c] = null;
+        }
+        c = next;
+      }
+    }
+
+    private static void orBitmap(ByteBuffer buffer, int position, boolean swap, long[] words) {
+      for (int w = 0; w < words.length; ++w, position += 8) {
+        long word = buffer.getLong(position);
+        words[w] |= swap ? Long.reverseBytes(word) : word;
+      }
+    }
+
+    private static void orArray(ByteBuffer buffer, int position, int cardinality, boolean swap,
+        long[] words) {
+      for (int j = 0; j < cardinality; ++j, position += 2) {
+        short value = buffer.getShort(position);
+        int low = (swap ? Short.reverseBytes(value) : value) & 0xFFFF;
+        words[low >>> 6] |= 1L << low;
+      }
+    }
+
+    private void push(int c) {
+      int key = getShort(c, startOfKeys(c) + 4 * indexes[c]);
+      nexts[c] = heads[key];
+      heads[key] = c;
+    }
+
+    private int startOfKeys(int c) {
+      return runFlags[c] ? 4 + (sizes[c] + 7) / 8 : 8;
+    }
+
+    private boolean isRunContainer(int c) {
+      int i = indexes[c];
+      return runFlags[c] && (buffers[c].get(starts[c] + 4 + i / 8) & (1 << (i % 8))) != 0;
+    }
+
+    // reads an unsigned short
+    private int getShort(int c, int position) {
+      short value = buffers[c].getShort(starts[c] + position);
+      return (swapped[c] ? Short.reverseBytes(value) : value) & 0xFFFF;
+    }
+
+    private int getInt(int c, int position) {
+      int value = buffers[c].getInt(starts[c] + position);
+      return swapped[c] ? Integer.reverseBytes(value) : value;
+    }
+  }
+
 }
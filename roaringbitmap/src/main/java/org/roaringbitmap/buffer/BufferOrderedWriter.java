@@ -0,0 +1,358 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class can be used to write quickly values, in increasing order, straight into a serialized
+ * bitmap (see {@link MutableRoaringBitmap#serialize(java.io.DataOutput)}) held by a ByteBuffer or
+ * a file. Containers are built one at a time and written as soon as they are complete, so that
+ * bitmaps much larger than the heap can be built, and then memory-mapped as
+ * {@link ImmutableRoaringBitmap}s.
+ *
+ * <pre>
+ * {@code
+ *
+ *       //...
+ *
+ *       try (FileChannel channel = FileChannel.open(path, CREATE, WRITE, READ)) {
+ *         BufferOrderedWriter writer = new BufferOrderedWriter(channel);
+ *         for (int i :....) {
+ *           writer.add(i);
+ *         }
+ *         writer.close(); // important, writes the header
+ *         ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+ *         ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(bb);
+ *       }
+ * }
+ * </pre>
+ *
+ * Since the size of the header depends on the number of containers, containers are first written
+ * after room reserved for the largest possible header, and moved next to the header on close.
+ * Passing the largest number of distinct keys (high 16 bits) to expect makes that room smaller.
+ * Only the content of the current container is kept in memory, along with a few bytes per key.
+ */
+public class BufferOrderedWriter implements Closeable {
+
+  private static final int WORD_COUNT = 1 << 10;
+  private static final int MAX_KEYS = 1 << 16;
+  // a bitmap container, the largest payload we write
+  private static final int MAX_CONTAINER_SIZE = MappeableBitmapContainer.MAX_CAPACITY / 8;
+  private static final int STAGING_SIZE = 1 << 16;
+
+  private final Sink sink;
+  private final long start;
+  private final int maxKeys;
+  private final long reserved;
+
+  private final long[] bitmap = new long[WORD_COUNT];
+  private final ByteBuffer staging =
+      ByteBuffer.allocate(STAGING_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  // where the staged data goes, relative to start
+  private long stagingOffset;
+
+  private short[] keys = new short[16];
+  private short[] cardinalities = new short[16];
+  private int[] sizes = new int[16];
+  private byte[] runFlags = new byte[2];
+  private boolean hasRun = false;
+  private int size = 0;
+
+  private short currentKey;
+  private boolean dirty = false;
+  private boolean closed = false;
+  private long serializedSize = -1;
+
+  /**
+   * Initialize a writer producing a serialized bitmap at the current position of the buffer.
+   * The position is moved past the bitmap on close. Besides the bitmap, the buffer needs room
+   * for the largest possible header, about 520 kB.
+   *
+   * @param target where the serialized bitmap gets written
+   */
+  public BufferOrderedWriter(ByteBuffer target) {
+    this(target, MAX_KEYS);
+  }
+
+  /**
+   * Initialize a writer producing a serialized bitmap at the current position of the buffer.
+   * The position is moved past the bitmap on close. Besides the bitmap, the buffer needs room
+   * for the header of a bitmap with maxKeys keys, a little over 8 bytes per key.
+   *
+   * @param target where the serialized bitmap gets written
+   * @param maxKeys the largest number of distinct keys (high 16 bits) the bitmap may have
+   */
+  public BufferOrderedWriter(ByteBuffer target, int maxKeys) {
+    this(new BufferSink(target), target.position(), maxKeys);
+  }
+
+  /**
+   * Initialize a writer producing a serialized bitmap at the current position of the channel.
+   * The position is moved past the bitmap on close, and the file is truncated there if the bitmap
+   * was written at its end.
+   *
+   * @param target where the serialized bitmap gets written, must be readable too
+   * @throws IOException if the position of the channel cannot be read
+   */
+  public BufferOrderedWriter(FileChannel target) throws IOException {
+    this(target, MAX_KEYS);
+  }
+
+  /**
+   * Initialize a writer producing a serialized bitmap at the current position of the channel.
+   * The position is moved past the bitmap on close, and the file is truncated there if the bitmap
+   * was written at its end.
+   *
+   * @param target where the serialized bitmap gets written, must be readable too
+   * @param maxKeys the largest number of distinct keys (high 16 bits) the bitmap may have
+   * @throws IOException if the position of the channel cannot be read
+   */
+  public BufferOrderedWriter(FileChannel target, int maxKeys) throws IOException {
+    this(new ChannelSink(target), target.position(), maxKeys);
+  }
+
+  private BufferOrderedWriter(Sink sink, long start, int maxKeys) {
+    if (maxKeys < 0 || maxKeys > MAX_KEYS) {
+      throw new IllegalArgumentException("maxKeys must be in [0, " + MAX_KEYS + "]");
+    }
+    this.sink = sink;
+    this.start = start;
+    this.maxKeys = maxKeys;
+    this.reserved = Math.max(headerSize(maxKeys, true), headerSize(maxKeys, false));
+    this.stagingOffset = reserved;
+  }
+
+  /**
+   * Adds the value to the serialized bitmap. The data might be added to a temporary buffer. You
+   * must call "close" when you are done.
+   *
+   * @param value the value to add.
+   * @throws IllegalStateException if values are not added in increasing order, or if there are
+   *         more keys than expected
+   * @throws IOException if the data cannot be written
+   */
+  public void add(int value) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("The writer is closed");
+    }
+    short key = BufferUtil.highbits(value);
+    short low = BufferUtil.lowbits(value);
+    if (key != currentKey) {
+      if (BufferUtil.compareUnsigned(key, currentKey) < 0) {
+        throw new IllegalStateException("Must write in ascending key order");
+      }
+      writeContainer();
+    }
+    int ulow = low & 0xFFFF;
+    bitmap[(ulow >>> 6)] |= (1L << ulow);
+    currentKey = key;
+    dirty = true;
+  }
+
+  /**
+   * Writes the last container and the header. The serialized bitmap is complete and the target
+   * is positioned right after it. Closing the writer does not close the target.
+   *
+   * @throws IOException if the data cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    writeContainer();
+    flushStaging();
+    closed = true;
+    long payloadSize = stagingOffset - reserved;
+    ByteBuffer header = header();
+    header.flip();
+    long headerSize = header.remaining();
+    sink.write(header, start);
+    // moving the containers next to the header, in increasing order since they only move down
+    long moved = headerSize == reserved ? payloadSize : 0;
+    while (moved < payloadSize) {
+      int length = (int) Math.min(staging.capacity(), payloadSize - moved);
+      staging.clear();
+      staging.limit(length);
+      sink.read(staging, start + reserved + moved);
+      staging.flip();
+      sink.write(staging, start + headerSize + moved);
+      moved += length;
+    }
+    serializedSize = headerSize + payloadSize;
+    sink.end(start + serializedSize, start + reserved + payloadSize);
+  }
+
+  /**
+   * Size of the serialized bitmap, once the writer is closed.
+   *
+   * @return the size in bytes
+   * @throws IllegalStateException if the writer is not closed
+   */
+  public long getSerializedSizeInBytes() {
+    if (!closed) {
+      throw new IllegalStateException("The writer is not closed");
+    }
+    return serializedSize;
+  }
+
+  private void writeContainer() throws IOException {
+    if (!dirty) {
+      return;
+    }
+    if (size == maxKeys) {
+      throw new IllegalStateException("More than " + maxKeys + " keys");
+    }
+    MappeableContainer container =
+        new MappeableBitmapContainer(LongBuffer.wrap(bitmap), -1).repairAfterLazy().runOptimize();
+    if (staging.remaining() < MAX_CONTAINER_SIZE) {
+      flushStaging();
+    }
+    int before = staging.position();
+    container.writeArray(staging);
+    if (size == keys.length) {
+      int newCapacity = Math.min(2 * size, MAX_KEYS);
+      keys = Arrays.copyOf(keys, newCapacity);
+      cardinalities = Arrays.copyOf(cardinalities, newCapacity);
+      sizes = Arrays.copyOf(sizes, newCapacity);
+      runFlags = Arrays.copyOf(runFlags, (newCapacity + 7) / 8);
+    }
+    keys[size] = currentKey;
+    cardinalities[size] = (short) (container.getCardinality() - 1);
+    sizes[size] = staging.position() - before;
+    if (container instanceof MappeableRunContainer) {
+      runFlags[size / 8] |= 1 << (size % 8);
+      hasRun = true;
+    }
+    ++size;
+    Arrays.fill(bitmap, 0L);
+    dirty = false;
+  }
+
+  private void flushStaging() throws IOException {
+    staging.flip();
+    int length = staging.remaining();
+    sink.write(staging, start + stagingOffset);
+    stagingOffset += length;
+    staging.clear();
+  }
+
+  private static long headerSize(int size, boolean hasRun) {
+    if (hasRun) {
+      if (size < MutableRoaringArray.NO_OFFSET_THRESHOLD) {
+        return 4 + (size + 7) / 8 + 4L * size;
+      }
+      return 4 + (size + 7) / 8 + 8L * size;
+    }
+    return 8 + 8L * size;
+  }
+
+  // cf MutableRoaringArray.serialize
+  private ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate((int) headerSize(size, hasRun))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    if (hasRun) {
+      header.putInt(MutableRoaringArray.SERIAL_COOKIE | ((size - 1) << 16));
+      header.put(runFlags, 0, (size + 7) / 8);
+    } else {
+      header.putInt(MutableRoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER);
+      header.putInt(size);
+    }
+    for (int k = 0; k < size; ++k) {
+      header.putShort(keys[k]);
+      header.putShort(cardinalities[k]);
+    }
+    if (!hasRun || size >= MutableRoaringArray.NO_OFFSET_THRESHOLD) {
+      int offset = header.capacity();
+      for (int k = 0; k < size; ++k) {
+        header.putInt(offset);
+        offset += sizes[k];
+      }
+    }
+    return header;
+  }
+
+  private interface Sink {
+
+    void write(ByteBuffer source, long position) throws IOException;
+
+    void read(ByteBuffer destination, long position) throws IOException;
+
+    // moves the target after the bitmap, dropping what is left of the moved containers
+    void end(long position, long written) throws IOException;
+  }
+
+  private static final class BufferSink implements Sink {
+
+    private final ByteBuffer target;
+
+    BufferSink(ByteBuffer target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(ByteBuffer source, long position) {
+      ByteBuffer destination = target.duplicate();
+      destination.position((int) position);
+      destination.put(source);
+    }
+
+    @Override
+    public void read(ByteBuffer destination, long position) {
+      ByteBuffer source = target.duplicate();
+      source.position((int) position);
+      source.limit((int) position + destination.remaining());
+      destination.put(source);
+    }
+
+    @Override
+    public void end(long position, long written) {
+      target.position((int) position);
+    }
+  }
+
+  private static final class ChannelSink implements Sink {
+
+    private final FileChannel target;
+
+    ChannelSink(FileChannel target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(ByteBuffer source, long position) throws IOException {
+      while (source.hasRemaining()) {
+        position += target.write(source, position);
+      }
+    }
+
+    @Override
+    public void read(ByteBuffer destination, long position) throws IOException {
+      while (destination.hasRemaining()) {
+        int read = target.read(destination, position);
+        if (read < 0) {
+          throw new EOFException();
+        }
+        position += read;
+      }
+    }
+
+    @Override
+    public void end(long position, long written) throws IOException {
+      if (target.size() == written) {
+        target.truncate(position);
+      }
+      target.position(position);
+    }
+  }
+}
@@ -2,11 +2,16 @@ package org.roaringbitmap.buffer;
 
 import java.nio.LongBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collector;
 import java.util.stream.IntStream;
@@ -16,8 +21,9 @@ import static org.roaringbitmap.Util.compareUnsigned;
 /**
  *
  * These utility methods provide parallel implementations of
- * logical aggregation operators. AND is not implemented
- * because it is unlikely to be profitable.
+ * logical aggregation operators. AND and ANDNOT only pay off
+ * when many containers share a key, as in wide intersections
+ * of dense bitmaps; otherwise prefer {@link BufferFastAggregation}.
  *
  * There is a temporary memory overhead in using these methods,
  * since a materialisation of the rotated containers grouped by key
@@ -25,7 +31,12 @@ import static org.roaringbitmap.Util.compareUnsigned;
  *
  * Each method executes on the default fork join pool by default.
  * If this is undesirable (it usually is) wrap the call inside
- * a submission of a runnable to your own thread pool.
+ * a submission of a runnable to your own thread pool. Note that
+ * the parallel streams used internally still run on the common
+ * pool unless the submission is made to a ForkJoinPool. To keep
+ * all the work on a pool of your choice, use the overloads
+ * accepting either a ForkJoinPool, or an Executor along with the
+ * number of tasks to submit to it.
  *
  * <pre>
  * {@code
@@ -182,6 +193,47 @@ public class BufferParallelAggregation {
     return new MutableRoaringBitmap(new MutableRoaringArray(keys, values, i));
   }
 
+  /**
+   * Computes the bitwise union of the input bitmaps, running all the work on the
+   * supplied pool.
+   * @param pool the pool executing the per key tasks
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static MutableRoaringBitmap or(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return or(forking(pool), pool.getParallelism(), bitmaps);
+  }
+
+  /**
+   * Computes the bitwise union of the input bitmaps, running all the work on the
+   * supplied executor. The key groups are shared among the given number of tasks.
+   * @param executor the executor running the tasks
+   * @param parallelism the number of tasks to submit to the executor
+   * @param bitmaps the input bitmaps
+   * @return the union of the bitmaps
+   */
+  public static MutableRoaringBitmap or(Executor executor, int parallelism,
+                                           ImmutableRoaringBitmap... bitmaps) {
+    return or(executing(executor, parallelism), 1, bitmaps);
+  }
+
+  private static MutableRoaringBitmap or(GroupScheduler scheduler, int sliceParallelism,
+                                         ImmutableRoaringBitmap... bitmaps) {
+    SortedMap<Short, List<MappeableContainer>> grouped = groupByKey(bitmaps);
+    short[] keys = new short[grouped.size()];
+    MappeableContainer[] values = new MappeableContainer[grouped.size()];
+    List<List<MappeableContainer>> slices = new ArrayList<>(grouped.size());
+    int i = 0;
+    for (Map.Entry<Short, List<MappeableContainer>> slice : grouped.entrySet()) {
+      keys[i++] = slice.getKey();
+      slices.add(slice.getValue());
+    }
+    scheduler.run(i,
+        position -> values[position] = or(slices.get(position), sliceParallelism));
+    return new MutableRoaringBitmap(new MutableRoaringArray(keys, values, i));
+  }
+
+
   /**
    * Computes the bitwise symmetric difference of the input bitmaps
    * @param bitmaps the input bitmaps
@@ -194,7 +246,231 @@ public class BufferParallelAggregation {
             .collect(XOR);
   }
 
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps, running all the
+   * work on the supplied pool.
+   * @param pool the pool executing the per key tasks
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static MutableRoaringBitmap xor(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return xor(forking(pool), bitmaps);
+  }
+
+  /**
+   * Computes the bitwise symmetric difference of the input bitmaps, running all the
+   * work on the supplied executor. The key groups are shared among the given number
+   * of tasks.
+   * @param executor the executor running the tasks
+   * @param parallelism the number of tasks to submit to the executor
+   * @param bitmaps the input bitmaps
+   * @return the symmetric difference of the bitmaps
+   */
+  public static MutableRoaringBitmap xor(Executor executor, int parallelism,
+                                            ImmutableRoaringBitmap... bitmaps) {
+    return xor(executing(executor, parallelism), bitmaps);
+  }
+
+  private static MutableRoaringBitmap xor(GroupScheduler scheduler,
+                                           ImmutableRoaringBitmap... bitmaps) {
+    SortedMap<Short, List<MappeableContainer>> grouped = groupByKey(bitmaps);
+    short[] keys = new short[grouped.size()];
+    MappeableContainer[] values = new MappeableContainer[grouped.size()];
+    List<List<MappeableContainer>> slices = new ArrayList<>(grouped.size());
+    int i = 0;
+    for (Map.Entry<Short, List<MappeableContainer>> slice : grouped.entrySet()) {
+      keys[i++] = slice.getKey();
+      slices.add(slice.getValue());
+    }
+    scheduler.run(i, position -> values[position] = xor(slices.get(position)));
+    return new MutableRoaringBitmap(compact(keys, values, i));
+  }
+
+
+
+
+  /**
+   * Computes the intersection of the input bitmaps. The key sets are intersected first,
+   * then the containers sharing each common key are intersected in parallel.
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(ImmutableRoaringBitmap... bitmaps) {
+    return and(currentPool(), bitmaps);
+  }
+
+  /**
+   * Computes the intersection of the input bitmaps. The key sets are intersected first,
+   * then the containers sharing each common key are intersected by tasks forked on the
+   * supplied pool.
+   * @param pool the pool executing the per key tasks
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(ForkJoinPool pool, ImmutableRoaringBitmap... bitmaps) {
+    return and(forking(pool), bitmaps);
+  }
+
+  /**
+   * Computes the intersection of the input bitmaps. The key sets are intersected first,
+   * then the key groups are shared among the given number of tasks, submitted to the
+   * supplied executor.
+   * @param executor the executor running the tasks
+   * @param parallelism the number of tasks to submit to the executor
+   * @param bitmaps the input bitmaps
+   * @return the intersection of the bitmaps
+   */
+  public static MutableRoaringBitmap and(Executor executor, int parallelism,
+                                            ImmutableRoaringBitmap... bitmaps) {
+    return and(executing(executor, parallelism), bitmaps);
+  }
+
+  private static MutableRoaringBitmap and(GroupScheduler scheduler,
+                                           ImmutableRoaringBitmap... bitmaps) {
+    if (bitmaps.length == 0) {
+      return new MutableRoaringBitmap();
+    }
+    if (bitmaps.length == 1) {
+      return bitmaps[0].toMutableRoaringBitmap();
+    }
+    PointableRoaringArray smallest = bitmaps[0].highLowContainer;
+    for (ImmutableRoaringBitmap bitmap : bitmaps) {
+      if (bitmap.highLowContainer.size() < smallest.size()) {
+        smallest = bitmap.highLowContainer;
+      }
+    }
+    short[] keys = new short[smallest.size()];
+    MappeableContainer[][] groups = new MappeableContainer[smallest.size()][];
+    int[] positions = new int[bitmaps.length];
+    Arrays.fill(positions, -1);
+    int size = 0;
+    candidates: for (int i = 0; i < smallest.size(); ++i) {
+      short key = smallest.getKeyAtIndex(i);
+      MappeableContainer[] group = new MappeableContainer[bitmaps.length];
+      for (int j = 0; j < bitmaps.length; ++j) {
+        PointableRoaringArray ra = bitmaps[j].highLowContainer;
+        int pos = ra.advanceUntil(key, positions[j]);
+        if (pos == ra.size()) {
+          break candidates;
+        }
+        if (ra.getKeyAtIndex(pos) != key) {
+          positions[j] = pos - 1;
+          continue candidates;
+        }
+        positions[j] = pos;
+        group[j] = ra.getContainerAtIndex(pos);
+      }
+      keys[size] = key;
+      groups[size++] = group;
+    }
+    MappeableContainer[] values = new MappeableContainer[size];
+    scheduler.run(size, position -> values[position] = and(groups[position]));
+    return new MutableRoaringBitmap(compact(keys, values, size));
+  }
+
+  /**
+   * Computes the difference between a bitmap and the union of other bitmaps. The keys of
+   * the first bitmap are matched against the other bitmaps first, then the containers of
+   * each of these keys are processed in parallel.
+   * @param minuend the bitmap to subtract from
+   * @param subtrahends the bitmaps to subtract
+   * @return the difference
+   */
+  public static MutableRoaringBitmap andNot(ImmutableRoaringBitmap minuend,
+                                            ImmutableRoaringBitmap... subtrahends) {
+    return andNot(currentPool(), minuend, subtrahends);
+  }
+
+  /**
+   * Computes the difference between a bitmap and the union of other bitmaps. The keys of
+   * the first bitmap are matched against the other bitmaps first, then the containers of
+   * each of these keys are processed by tasks forked on the supplied pool.
+   * @param pool the pool executing the per key tasks
+   * @param minuend the bitmap to subtract from
+   * @param subtrahends the bitmaps to subtract
+   * @return the difference
+   */
+  public static MutableRoaringBitmap andNot(ForkJoinPool pool, ImmutableRoaringBitmap minuend,
+                                            ImmutableRoaringBitmap... subtrahends) {
+    return andNot(forking(pool), minuend, subtrahends);
+  }
+
+  /**
+   * Computes the difference between a bitmap and the union of other bitmaps. The keys of
+   * the first bitmap are matched against the other bitmaps first, then the key groups are
+   * shared among the given number of tasks, submitted to the supplied executor.
+   * @param executor the executor running the tasks
+   * @param parallelism the number of tasks to submit to the executor
+   * @param minuend the bitmap to subtract from
+   * @param subtrahends the bitmaps to subtract
+   * @return the difference
+   */
+  public static MutableRoaringBitmap andNot(Executor executor, int parallelism,
+                                            ImmutableRoaringBitmap minuend,
+                                            ImmutableRoaringBitmap... subtrahends) {
+    return andNot(executing(executor, parallelism), minuend, subtrahends);
+  }
+
+  private static MutableRoaringBitmap andNot(GroupScheduler scheduler,
+                                             ImmutableRoaringBitmap minuend,
+                                             ImmutableRoaringBitmap... subtrahends) {
+    PointableRoaringArray left = minuend.highLowContainer;
+    int length = left.size();
+    short[] keys = new short[length];
+    MappeableContainer[][] groups = new MappeableContainer[length][];
+    int[] positions = new int[subtrahends.length];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < length; ++i) {
+      short key = left.getKeyAtIndex(i);
+      List<MappeableContainer> group = new ArrayList<>();
+      group.add(left.getContainerAtIndex(i));
+      for (int j = 0; j < subtrahends.length; ++j) {
+        PointableRoaringArray ra = subtrahends[j].highLowContainer;
+        int pos = ra.advanceUntil(key, positions[j]);
+        if (pos < ra.size() && ra.getKeyAtIndex(pos) == key) {
+          group.add(ra.getContainerAtIndex(pos));
+          positions[j] = pos;
+        } else {
+          positions[j] = pos - 1;
+        }
+      }
+      keys[i] = key;
+      groups[i] = group.toArray(new MappeableContainer[0]);
+    }
+    MappeableContainer[] values = new MappeableContainer[length];
+    scheduler.run(length, position -> values[position] = andNot(groups[position]));
+    return new MutableRoaringBitmap(compact(keys, values, length));
+  }
+
+  private static MappeableContainer and(MappeableContainer[] containers) {
+    // smallest first, so that the intersection shrinks as early as possible
+    Arrays.sort(containers, Comparator.comparingInt(MappeableContainer::getCardinality));
+    MappeableContainer result = containers[0].and(containers[1]);
+    for (int i = 2; i < containers.length && !result.isEmpty(); ++i) {
+      result = result.iand(containers[i]);
+    }
+    return result;
+  }
+
+  private static MappeableContainer andNot(MappeableContainer[] containers) {
+    MappeableContainer result = containers[0].clone();
+    for (int i = 1; i < containers.length && !result.isEmpty(); ++i) {
+      result = result.iandNot(containers[i]);
+    }
+    return result;
+  }
 
+  private static MutableRoaringArray compact(short[] keys, MappeableContainer[] values,
+                                             int size) {
+    int nonEmpty = 0;
+    for (int i = 0; i < size; ++i) {
+      if (!values[i].isEmpty()) {
+        keys[nonEmpty] = keys[i];
+        values[nonEmpty++] = values[i];
+      }
+    }
+    return new MutableRoaringArray(keys, values, nonEmpty);
+  }
 
   private static MappeableContainer xor(List<MappeableContainer> containers) {
     MappeableContainer result = containers.get(0).clone();
@@ -205,7 +481,10 @@ public class BufferParallelAggregation {
   }
 
   private static MappeableContainer or(List<MappeableContainer> containers) {
-    int parallelism;
+    return or(containers, containers.size() < 512 ? 1 : availableParallelism());
+  }
+
+  private static MappeableContainer or(List<MappeableContainer> containers, int parallelism) {
     // if there are few enough containers it's possible no bitmaps will be materialised
     if (containers.size() < 16) {
       MappeableContainer result = containers.get(0).clone();
@@ -215,7 +494,7 @@ public class BufferParallelAggregation {
       return result.repairAfterLazy();
     }
     // heuristic to save memory if the union is large and likely to end up as a bitmap
-    if (containers.size() < 512 || (parallelism = availableParallelism()) == 1) {
+    if (containers.size() < 512 || parallelism == 1) {
       MappeableContainer result = new MappeableBitmapContainer(LongBuffer.allocate(1 << 10), -1);
       for (MappeableContainer container : containers) {
         result = result.lazyIOR(container);
@@ -237,5 +516,80 @@ public class BufferParallelAggregation {
             : ForkJoinPool.getCommonPoolParallelism();
   }
 
+  private static ForkJoinPool currentPool() {
+    return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+  }
+
+  private static GroupScheduler forking(ForkJoinPool pool) {
+    return (groups, task) -> {
+      if (groups == 0) {
+        return;
+      }
+      // a few tasks per worker, so that skewed groups can be balanced by work stealing
+      int grain = Math.max(1, groups / (4 * pool.getParallelism()));
+      // tasks forked by a task, including those of parallel streams, stay in its pool
+      pool.invoke(new KeyGroupTask(task, 0, groups, grain));
+    };
+  }
+
+  private static GroupScheduler executing(Executor executor, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    return (groups, task) -> {
+      AtomicInteger next = new AtomicInteger();
+      CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(parallelism, groups)];
+      for (int w = 0; w < workers.length; ++w) {
+        workers[w] = CompletableFuture.runAsync(() -> {
+          for (int i = next.getAndIncrement(); i < groups; i = next.getAndIncrement()) {
+            task.accept(i);
+          }
+        }, executor);
+      }
+      CompletableFuture.allOf(workers).join();
+    };
+  }
+
+  /**
+   * Runs a task once for each key group.
+   */
+  private interface GroupScheduler {
+    void run(int groups, IntConsumer task);
+  }
+
+  /**
+   * Applies a task to a range of key groups, splitting the range in halves until it is
+   * smaller than the grain.
+   */
+  private static final class KeyGroupTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IntConsumer task;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    KeyGroupTask(IntConsumer task, int from, int to, int grain) {
+      this.task = task;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        for (int i = from; i < to; ++i) {
+          task.accept(i);
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new KeyGroupTask(task, from, middle, grain),
+                new KeyGroupTask(task, middle, to, grain));
+      }
+    }
+  }
+
 }
 
@@ -0,0 +1,66 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator placing container storage in direct (off-heap) memory, one direct ByteBuffer per
+ * request. Freed buffers are not reused: their memory is given back to the system when the
+ * buffer is garbage collected, and not by {@link #free(ShortBuffer)} or
+ * {@link #free(LongBuffer)}, which only account for the release. Use a
+ * {@link PooledBufferAllocator} to recycle memory eagerly.
+ *
+ * This class is thread-safe.
+ */
+public class DirectBufferAllocator implements BufferAllocator {
+
+  private final AtomicLong allocatedBytes = new AtomicLong();
+
+  @Override
+  public ShortBuffer allocateShortBuffer(int length) {
+    allocatedBytes.addAndGet(2L * length);
+    return ByteBuffer.allocateDirect(2 * length).order(ByteOrder.nativeOrder()).asShortBuffer();
+  }
+
+  @Override
+  public LongBuffer allocateLongBuffer(int length) {
+    allocatedBytes.addAndGet(8L * length);
+    return ByteBuffer.allocateDirect(8 * length).order(ByteOrder.nativeOrder()).asLongBuffer();
+  }
+
+  /**
+   * Account for the release of the buffer, whose memory is reclaimed by the garbage collector.
+   *
+   * @param buffer the buffer to release
+   */
+  @Override
+  public void free(ShortBuffer buffer) {
+    allocatedBytes.addAndGet(-2L * buffer.capacity());
+  }
+
+  /**
+   * Account for the release of the buffer, whose memory is reclaimed by the garbage collector.
+   *
+   * @param buffer the buffer to release
+   */
+  @Override
+  public void free(LongBuffer buffer) {
+    allocatedBytes.addAndGet(-8L * buffer.capacity());
+  }
+
+  /**
+   * Number of bytes handed out and not yet freed.
+   *
+   * @return allocated bytes
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes.get();
+  }
+}
@@ -9,12 +9,15 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.NoSuchElementException;
 
+import org.roaringbitmap.InvalidRoaringFormat;
+
 
 /**
  * This is the underlying data structure for an ImmutableRoaringBitmap. This class is not meant for
@@ -27,9 +30,14 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
   protected static final short SERIAL_COOKIE_NO_RUNCONTAINER =
       MutableRoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER;
   private final static int startofrunbitmap = 4; // if there is a runcontainer bitmap
+  // starts the optional block of cumulative cardinalities following a serialized bitmap, it
+  // cannot be mistaken for the cookie of a serialized bitmap
+  static final int CUMULATIVE_CARDINALITIES_COOKIE = 12348;
 
   ByteBuffer buffer;
   int size;
+  // the number of values in the containers before each container, or null
+  IntBuffer cumulativeCardinalities;
 
   /**
    * Create an array based on a previously serialized ByteBuffer. The input ByteBuffer is
@@ -48,9 +56,38 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
     boolean hasRunContainers = (cookie & 0xFFFF) == SERIAL_COOKIE;
     this.size = hasRunContainers ? (cookie >>> 16) + 1 : buffer.getInt(4);
     int theLimit = size > 0 ? computeSerializedSizeInBytes() : headerSize(hasRunContainers);
+    cumulativeCardinalities = readCumulativeCardinalities(theLimit);
     buffer.limit(theLimit);
   }
 
+  // reads the block written by ImmutableRoaringBitmap.serializeWithCumulativeCardinalities, if
+  // any, right after the serialized bitmap, checking it against the cardinalities of the header
+  // since rank and select trust it
+  private IntBuffer readCumulativeCardinalities(int start) {
+    if (buffer.limit() - start < 4 || buffer.getInt(start) != CUMULATIVE_CARDINALITIES_COOKIE) {
+      return null;
+    }
+    if (buffer.limit() - start < 8 || buffer.getInt(start + 4) != size) {
+      throw new InvalidRoaringFormat("The cumulative cardinalities do not match the "
+          + size + " containers");
+    }
+    if (buffer.limit() - start - 8 < 4L * size) {
+      throw new InvalidRoaringFormat("Truncated cumulative cardinalities");
+    }
+    ByteBuffer block = buffer.duplicate();
+    block.position(start + 8);
+    block.limit(start + 8 + 4 * size);
+    IntBuffer cardinalities = block.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    long cardinality = 0;
+    for (int k = 0; k < size; ++k) {
+      if ((cardinalities.get(k) & 0xFFFFFFFFL) != cardinality) {
+        throw new InvalidRoaringFormat("Wrong cumulative cardinality for the container " + k);
+      }
+      cardinality += getCardinality(k);
+    }
+    return cardinalities;
+  }
+
   @Override
   public int advanceUntil(short x, int pos) {
     int lower = pos + 1;
@@ -155,6 +192,41 @@ public final class ImmutableRoaringArray implements PointableRoaringArray {
     return BufferUtil.toIntUnsigned(buffer.getShort(this.getStartOfKeys() + 4 * k + 2)) + 1;
   }
 
+  /**
+   * Whether the serialized bitmap was followed by its cumulative cardinalities (see
+   * {@link ImmutableRoaringBitmap#serializeWithCumulativeCardinalities(DataOutput)}).
+   *
+   * @return whether getCumulativeCardinality runs in constant time
+   */
+  boolean hasCumulativeCardinalities() {
+    return cumulativeCardinalities != null;
+  }
+
+  /**
+   * Number of values held by the containers before the container at index k. Runs in constant
+   * time when hasCumulativeCardinalities(), in linear time otherwise.
+   *
+   * @param k index of the container, in [0, size()]
+   * @return the sum of the cardinalities of the first k containers
+   */
+  long getCumulativeCardinality(int k) {
+    if ((k < 0) || (k > this.size)) {
+      throw new IllegalArgumentException(
+          "out of range container index: " + k + " (report as a bug)");
+    }
+    if (cumulativeCardinalities == null) {
+      long cardinality = 0;
+      for (int i = 0; i < k; ++i) {
+        cardinality += getCardinality(i);
+      }
+      return cardinality;
+    }
+    if (k == this.size) {
+      return k == 0 ? 0 : getCumulativeCardinality(k - 1) + getCardinality(k - 1);
+    }
+    return cumulativeCardinalities.get(k) & 0xFFFFFFFFL;
+  }
+
 
 
   @Override 
@@ -147,6 +147,61 @@ public class ImmutableRoaringBitmap
   }
 
 
+  private final class ImmutableRoaringBatchIterator implements BatchIterator {
+    private MappeableContainerPointer cp =
+        ImmutableRoaringBitmap.this.highLowContainer.getContainerPointer();
+
+    private int key;
+
+    private ContainerBatchIterator iter;
+
+    @Override
+    public BatchIterator clone() {
+      try {
+        ImmutableRoaringBatchIterator x = (ImmutableRoaringBatchIterator) super.clone();
+        if (this.iter != null) {
+          x.iter = this.iter.clone();
+        }
+        if (this.cp != null) {
+          x.cp = this.cp.clone();
+        }
+        return x;
+      } catch (CloneNotSupportedException e) {
+        return null;// will not happen
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return cp.hasContainer();
+    }
+
+    @Override
+    public int nextBatch(int[] buffer) {
+      int consumed = 0;
+      while (consumed < buffer.length && cp.hasContainer()) {
+        if (iter == null) {
+          key = BufferUtil.toIntUnsigned(cp.key()) << 16;
+          final int card = cp.getCardinality();
+          if (card <= buffer.length - consumed) {
+            // the whole container fits: no need for an iterator
+            cp.getContainer().fillLeastSignificant16bits(buffer, consumed, key);
+            consumed += card;
+            cp.advance();
+            continue;
+          }
+          iter = cp.getContainer().getBatchIterator();
+        }
+        consumed += iter.next(key, buffer, consumed);
+        if (!iter.hasNext()) {
+          iter = null;
+          cp.advance();
+        }
+      }
+      return consumed;
+    }
+  }
+
   private final class ImmutableRoaringReverseIntIterator implements IntIterator {
     private MappeableContainerPointer cp = ImmutableRoaringBitmap.this.highLowContainer
         .getContainerPointer(ImmutableRoaringBitmap.this.highLowContainer.size() - 1);
@@ -770,6 +825,58 @@ public class ImmutableRoaringBitmap
     return answer;
   }
 
+  /**
+   * Bitwise ORNOT operation: the result holds the values of the first bitmap, together with the
+   * values of [0, rangeEnd) which are missing from the second bitmap. This is equivalent to
+   * flipping the second bitmap over [0, rangeEnd) and computing the union, without the
+   * intermediate bitmap. The provided bitmaps are *not* modified.
+   *
+   * @param x1 first bitmap
+   * @param x2 other bitmap
+   * @param rangeEnd end point of the range (exclusive)
+   * @return result of the operation
+   */
+  public static MutableRoaringBitmap orNot(final ImmutableRoaringBitmap x1,
+      final ImmutableRoaringBitmap x2, long rangeEnd) {
+    MutableRoaringBitmap.rangeSanityCheck(0, rangeEnd);
+    final MutableRoaringBitmap answer = new MutableRoaringBitmap();
+    final MutableRoaringArray array = answer.getMappeableRoaringArray();
+    final int length1 = x1.highLowContainer.size(), length2 = x2.highLowContainer.size();
+    if (rangeEnd == 0) {
+      array.appendCopy(x1.highLowContainer, 0, length1);
+      return answer;
+    }
+    final int maxKey = (int) ((rangeEnd - 1) >>> 16);
+    final int lastEnd = (int) (rangeEnd - ((long) maxKey << 16));
+    int pos1 = 0, pos2 = 0;
+    for (int key = 0; key <= maxKey; ++key) {
+      final short s = (short) key;
+      final int end = key == maxKey ? lastEnd : 1 << 16;
+      MappeableContainer c1 = null;
+      if (pos1 < length1 && x1.highLowContainer.getKeyAtIndex(pos1) == s) {
+        c1 = x1.highLowContainer.getContainerAtIndex(pos1++);
+      }
+      MappeableContainer c2 = null;
+      if (pos2 < length2 && x2.highLowContainer.getKeyAtIndex(pos2) == s) {
+        c2 = x2.highLowContainer.getContainerAtIndex(pos2++);
+      }
+      final MappeableContainer result;
+      if (c2 == null) {
+        result = c1 == null ? MappeableContainer.rangeOfOnes(0, end) : c1.add(0, end);
+      } else if (c1 == null) {
+        result = MappeableContainer.rangeOfOnes(0, end).iandNot(c2);
+      } else {
+        result = c1.orNot(c2, end);
+      }
+      if (!result.isEmpty()) {
+        array.append(s, result);
+      }
+    }
+    // the keys past the range are copied as they are
+    array.appendCopy(x1.highLowContainer, pos1, length1);
+    return answer;
+  }
+
   /**
    * Compute overall OR between bitmaps.
    *
@@ -954,7 +1061,10 @@ public class ImmutableRoaringBitmap
    * Note that the input ByteBuffer is effectively copied (with the slice operation) so you should
    * expect the provided ByteBuffer to remain unchanged.
    *
-   *
+   * If the bitmap was serialized with
+   * {@link #serializeWithCumulativeCardinalities(DataOutput)}, the cumulative cardinalities
+   * following it are mapped too, and used for rank and select. The data then extends to
+   * b.position() + bitmap.serializedSizeWithCumulativeCardinalitiesInBytes().
    *
    * @param b data source
    */
@@ -1222,6 +1332,17 @@ public class ImmutableRoaringBitmap
     return new ImmutableRoaringReverseIntIterator();
   }
 
+  /**
+   * Whole containers are decoded at once into the provided buffers, which is typically faster
+   * than calling {@link IntIterator#next} for each value.
+   *
+   * @return an iterator over set bits which fills int arrays, in ascending sorted order
+   */
+  @Override
+  public BatchIterator getBatchIterator() {
+    return new ImmutableRoaringBatchIterator();
+  }
+
   /**
    * Estimate of the memory usage of this data structure. This can be expected to be within 1% of
    * the true memory usage. If exact measures are needed, we recommend using dedicated libraries
@@ -1367,8 +1488,17 @@ public class ImmutableRoaringBitmap
    */
   @Override
   public long rankLong(int x) {
-    long size = 0;
     short xhigh = BufferUtil.highbits(x);
+    ImmutableRoaringArray indexed = indexedHighLowContainer();
+    if (indexed != null) {
+      int index = indexed.getIndex(xhigh);
+      if (index < 0) {
+        return indexed.getCumulativeCardinality(-index - 1);
+      }
+      return indexed.getCumulativeCardinality(index)
+          + indexed.getContainerAtIndex(index).rank(BufferUtil.lowbits(x));
+    }
+    long size = 0;
     for (int i = 0; i < this.highLowContainer.size(); i++) {
       short key = this.highLowContainer.getKeyAtIndex(i);
       int comparison = Util.compareUnsigned(key, xhigh);
@@ -1386,6 +1516,55 @@ public class ImmutableRoaringBitmap
     return (int) rankLong(x);
   }
 
+  @Override
+  public long rangeCardinality(long start, long end) {
+    MutableRoaringBitmap.rangeSanityCheck(start, end);
+    if (start >= end) {
+      return 0;
+    }
+    final short startKey = BufferUtil.highbits(start);
+    final short endKey = BufferUtil.highbits(end - 1);
+    final int startLow = (int) start & 0xFFFF;
+    final int lastLow = (int) (end - 1) & 0xFFFF;
+    int index = highLowContainer.getIndex(startKey);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    long cardinality = 0;
+    for (; index < highLowContainer.size(); ++index) {
+      final short key = highLowContainer.getKeyAtIndex(index);
+      if (BufferUtil.compareUnsigned(key, endKey) > 0) {
+        break;
+      }
+      if (key == startKey || key == endKey) {
+        final MappeableContainer container = highLowContainer.getContainerAtIndex(index);
+        int count = key == endKey ? container.rank((short) lastLow) : container.getCardinality();
+        if (key == startKey && startLow > 0) {
+          count -= container.rank((short) (startLow - 1));
+        }
+        cardinality += count;
+      } else {
+        cardinality += highLowContainer.getCardinality(index);
+      }
+    }
+    return cardinality;
+  }
+
+  @Override
+  public boolean cardinalityExceeds(long threshold) {
+    if (threshold < 0) {
+      return true;
+    }
+    long cardinality = 0;
+    for (int i = 0; i < highLowContainer.size(); ++i) {
+      cardinality += highLowContainer.getCardinality(i);
+      if (cardinality > threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Return the jth value stored in this bitmap. The provided value 
    * needs to be smaller than the cardinality otherwise an 
@@ -1400,6 +1579,24 @@ public class ImmutableRoaringBitmap
   @Override
   public int select(int j) {
     long leftover = Util.toUnsignedLong(j);
+    ImmutableRoaringArray indexed = indexedHighLowContainer();
+    if (indexed != null && leftover < indexed.getCumulativeCardinality(indexed.size())) {
+      // the last container starting at or before the j-th value
+      int low = 0;
+      int high = indexed.size() - 1;
+      while (low < high) {
+        int middle = (low + high + 1) >>> 1;
+        if (indexed.getCumulativeCardinality(middle) <= leftover) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      int keycontrib = indexed.getKeyAtIndex(low) << 16;
+      MappeableContainer c = indexed.getContainerAtIndex(low);
+      leftover -= indexed.getCumulativeCardinality(low);
+      return BufferUtil.toIntUnsigned(c.select((int) leftover)) + keycontrib;
+    }
     for (int i = 0; i < this.highLowContainer.size(); i++) {
       int thiscard = this.highLowContainer.getCardinality(i);
       if (thiscard > leftover) {
@@ -1415,6 +1612,15 @@ public class ImmutableRoaringBitmap
                + this.getCardinality() + ".");
   }
 
+  // the mapped containers, when they come with their cumulative cardinalities
+  private ImmutableRoaringArray indexedHighLowContainer() {
+    if (highLowContainer instanceof ImmutableRoaringArray
+        && ((ImmutableRoaringArray) highLowContainer).hasCumulativeCardinalities()) {
+      return (ImmutableRoaringArray) highLowContainer;
+    }
+    return null;
+  }
+
 
   /**
    * Get the first (smallest) integer in this RoaringBitmap,
@@ -1438,6 +1644,102 @@ public class ImmutableRoaringBitmap
     return highLowContainer.last();
   }
 
+  @Override
+  public long nextValue(int fromValue) {
+    short key = BufferUtil.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex >= 0) {
+      int value = highLowContainer.getContainerAtIndex(containerIndex)
+          .nextValue(BufferUtil.lowbits(fromValue));
+      if (value != -1) {
+        return toUnsignedLong(key, value);
+      }
+      ++containerIndex;
+    } else {
+      containerIndex = -containerIndex - 1;
+    }
+    if (containerIndex == highLowContainer.size()) {
+      return -1L;
+    }
+    return toUnsignedLong(highLowContainer.getKeyAtIndex(containerIndex),
+        highLowContainer.getContainerAtIndex(containerIndex).first());
+  }
+
+  @Override
+  public long previousValue(int fromValue) {
+    short key = BufferUtil.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex >= 0) {
+      int value = highLowContainer.getContainerAtIndex(containerIndex)
+          .previousValue(BufferUtil.lowbits(fromValue));
+      if (value != -1) {
+        return toUnsignedLong(key, value);
+      }
+      --containerIndex;
+    } else {
+      containerIndex = -containerIndex - 2;
+    }
+    if (containerIndex < 0) {
+      return -1L;
+    }
+    return toUnsignedLong(highLowContainer.getKeyAtIndex(containerIndex),
+        highLowContainer.getContainerAtIndex(containerIndex).last());
+  }
+
+  @Override
+  public long nextAbsentValue(int fromValue) {
+    short key = BufferUtil.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex < 0) {
+      return Integer.toUnsignedLong(fromValue);
+    }
+    int value = highLowContainer.getContainerAtIndex(containerIndex)
+        .nextAbsentValue(BufferUtil.lowbits(fromValue));
+    // the container is full from fromValue on, moving on to the next keys
+    while (value == -1) {
+      if (key == -1) {
+        return -1L;
+      }
+      ++key;
+      ++containerIndex;
+      if (containerIndex == highLowContainer.size()
+          || highLowContainer.getKeyAtIndex(containerIndex) != key) {
+        return toUnsignedLong(key, 0);
+      }
+      value = highLowContainer.getContainerAtIndex(containerIndex).nextAbsentValue((short) 0);
+    }
+    return toUnsignedLong(key, value);
+  }
+
+  @Override
+  public long previousAbsentValue(int fromValue) {
+    short key = BufferUtil.highbits(fromValue);
+    int containerIndex = highLowContainer.getIndex(key);
+    if (containerIndex < 0) {
+      return Integer.toUnsignedLong(fromValue);
+    }
+    int value = highLowContainer.getContainerAtIndex(containerIndex)
+        .previousAbsentValue(BufferUtil.lowbits(fromValue));
+    // the container is full up to fromValue, moving on to the previous keys
+    while (value == -1) {
+      if (key == 0) {
+        return -1L;
+      }
+      --key;
+      --containerIndex;
+      if (containerIndex < 0 || highLowContainer.getKeyAtIndex(containerIndex) != key) {
+        return toUnsignedLong(key, 0xFFFF);
+      }
+      value = highLowContainer.getContainerAtIndex(containerIndex)
+          .previousAbsentValue((short) -1);
+    }
+    return toUnsignedLong(key, value);
+  }
+
+  private static long toUnsignedLong(short key, int value) {
+    return Integer.toUnsignedLong((BufferUtil.toIntUnsigned(key) << 16) | value);
+  }
+
   /**
    * Serialize this bitmap.
    *
@@ -1514,6 +1816,37 @@ public class ImmutableRoaringBitmap
     return this.highLowContainer.serializedSizeInBytes();
   }
 
+  /**
+   * Serialize this bitmap, followed by the number of values before each of its containers. Once
+   * mapped back with {@link #ImmutableRoaringBitmap(ByteBuffer)}, rank and select take a
+   * logarithmic time instead of a time linear in the number of containers. Readers ignoring these
+   * cumulative cardinalities see the usual serialized bitmap (see {@link #serialize(DataOutput)}),
+   * only followed by extra bytes.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void serializeWithCumulativeCardinalities(DataOutput out) throws IOException {
+    serialize(out);
+    int size = highLowContainer.size();
+    out.writeInt(Integer.reverseBytes(ImmutableRoaringArray.CUMULATIVE_CARDINALITIES_COOKIE));
+    out.writeInt(Integer.reverseBytes(size));
+    int cardinality = 0;
+    for (int k = 0; k < size; ++k) {
+      out.writeInt(Integer.reverseBytes(cardinality));
+      cardinality += highLowContainer.getCardinality(k);
+    }
+  }
+
+  /**
+   * Report the number of bytes written by serializeWithCumulativeCardinalities.
+   *
+   * @return the size in bytes
+   */
+  public int serializedSizeWithCumulativeCardinalitiesInBytes() {
+    return serializedSizeInBytes() + 8 + 4 * highLowContainer.size();
+  }
+
 
   /**
    * Return the set values as an array if the cardinality is less
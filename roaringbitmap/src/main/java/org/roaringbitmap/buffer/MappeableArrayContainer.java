@@ -6,6 +6,7 @@ package org.roaringbitmap.buffer;
 
 import org.roaringbitmap.ArrayContainer;
 import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerBatchIterator;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.PeekableShortIterator;
 import org.roaringbitmap.ShortIterator;
@@ -13,6 +14,7 @@ import org.roaringbitmap.Util;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -487,6 +489,11 @@ public final class MappeableArrayContainer extends MappeableContainer implements
     return cardinality;
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new MappeableArrayBatchIterator(this);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     if (this.isArrayBacked()) {
@@ -1426,6 +1433,69 @@ public final class MappeableArrayContainer extends MappeableContainer implements
     return toIntUnsigned(select(cardinality - 1));
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    int index = BufferUtil.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 1;
+    return index < cardinality ? toIntUnsigned(content.get(index)) : -1;
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    int index = BufferUtil.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    return index >= 0 ? toIntUnsigned(content.get(index)) : -1;
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    int index = BufferUtil.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index < 0) {
+      return toIntUnsigned(fromValue);
+    }
+    // value - index is the same for all the values of the run containing fromValue
+    final int base = toIntUnsigned(fromValue) - index;
+    int low = index;
+    int high = cardinality - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (toIntUnsigned(content.get(mid)) - mid == base) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    int next = toIntUnsigned(content.get(low)) + 1;
+    return next < (1 << 16) ? next : -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    int index = BufferUtil.unsignedBinarySearch(content, 0, cardinality, fromValue);
+    if (index < 0) {
+      return toIntUnsigned(fromValue);
+    }
+    // value - index is the same for all the values of the run containing fromValue
+    final int base = toIntUnsigned(fromValue) - index;
+    int low = 0;
+    int high = index;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (toIntUnsigned(content.get(mid)) - mid == base) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return toIntUnsigned(content.get(low)) - 1;
+  }
+
   @Override
   public Container toContainer() {
     return new ArrayContainer(this);
@@ -1492,6 +1562,50 @@ public final class MappeableArrayContainer extends MappeableContainer implements
     }
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    ShortBuffer source = content.duplicate();
+    source.position(0);
+    source.limit(cardinality);
+    buffer.asShortBuffer().put(source);
+    buffer.position(buffer.position() + 2 * cardinality);
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < cardinality; ++i) {
+      final int value = toIntUnsigned(content.get(i));
+      bits[value >>> 6] |= 1L << value;
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < cardinality; ++i) {
+      final int value = toIntUnsigned(content.get(i));
+      bits[value >>> 6] &= ~(1L << value);
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    int cleared = 0;
+    int i = 0;
+    while (i < cardinality) {
+      final int word = toIntUnsigned(content.get(i)) >>> 6;
+      long mask = 0;
+      do {
+        mask |= 1L << content.get(i);
+        ++i;
+      } while (i < cardinality && toIntUnsigned(content.get(i)) >>> 6 == word);
+      Arrays.fill(bits, cleared, word, 0L);
+      bits[word] &= mask;
+      cleared = word + 1;
+    }
+    Arrays.fill(bits, cleared, bits.length, 0L);
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     out.write(this.cardinality & 0xFF);
@@ -1911,3 +2025,43 @@ final class ReverseMappeableArrayContainerShortIterator implements ShortIterator
   }
 
 }
+
+
+final class MappeableArrayBatchIterator implements ContainerBatchIterator {
+  int index;
+  MappeableArrayContainer parent;
+
+  MappeableArrayBatchIterator(MappeableArrayContainer p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    final int consumed = Math.min(parent.cardinality - index, buffer.length - offset);
+    final ShortBuffer content = parent.content;
+    for (int k = 0; k < consumed; ++k) {
+      buffer[offset + k] = key | toIntUnsigned(content.get(index + k));
+    }
+    index += consumed;
+    return consumed;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return index < parent.cardinality;
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(MappeableArrayContainer p) {
+    parent = p;
+    index = 0;
+  }
+}
@@ -6,6 +6,7 @@ package org.roaringbitmap.buffer;
 
 import org.roaringbitmap.BitmapContainer;
 import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerBatchIterator;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.PeekableShortIterator;
 import org.roaringbitmap.ShortIterator;
@@ -13,6 +14,7 @@ import org.roaringbitmap.Util;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.LongBuffer;
 import java.util.Iterator;
 
@@ -565,6 +567,11 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     return cardinality;
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new MappeableBitmapBatchIterator(bitmap);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     if (this.isArrayBacked()) {
@@ -1749,6 +1756,36 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     }
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    LongBuffer source = bitmap.duplicate();
+    source.position(0);
+    buffer.asLongBuffer().put(source);
+    buffer.position(buffer.position() + 8 * source.limit());
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] |= bitmap.get(i);
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= ~bitmap.get(i);
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    for (int i = 0; i < bits.length; ++i) {
+      bits[i] &= bitmap.get(i);
+    }
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     writeArray(out);
@@ -1945,6 +1982,50 @@ public final class MappeableBitmapContainer extends MappeableContainer implement
     return (i + 1) * 64 - Long.numberOfLeadingZeros(lastNonZeroWord) - 1;
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    return nextSetBit(BufferUtil.toIntUnsigned(fromValue));
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    return prevSetBit(BufferUtil.toIntUnsigned(fromValue));
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    final int i = BufferUtil.toIntUnsigned(fromValue);
+    int x = i >>> 6;
+    long w = ~bitmap.get(x) >>> i;
+    if (w != 0) {
+      return i + numberOfTrailingZeros(w);
+    }
+    for (++x; x < MAX_CAPACITY / 64; ++x) {
+      w = ~bitmap.get(x);
+      if (w != 0) {
+        return x * 64 + numberOfTrailingZeros(w);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    final int i = BufferUtil.toIntUnsigned(fromValue);
+    int x = i >>> 6;
+    long w = ~bitmap.get(x) << (63 - i);
+    if (w != 0) {
+      return i - numberOfLeadingZeros(w);
+    }
+    for (--x; x >= 0; --x) {
+      w = ~bitmap.get(x);
+      if (w != 0) {
+        return x * 64 + 63 - numberOfLeadingZeros(w);
+      }
+    }
+    return -1;
+  }
+
   @Override
   protected boolean contains(MappeableBitmapContainer bitmapContainer) {
     if((cardinality != -1) && (bitmapContainer.cardinality != -1)) {
@@ -2199,3 +2280,60 @@ final class ReverseMappeableBitmapContainerShortIterator implements ShortIterato
     }
   }
 }
+
+
+final class MappeableBitmapBatchIterator implements ContainerBatchIterator {
+  long w;
+  int x;
+
+  LongBuffer bitmap;
+
+  MappeableBitmapBatchIterator(LongBuffer p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    int pos = offset;
+    final int limit = buffer.length;
+    final int len = bitmap.limit();
+    while (pos < limit && x < len) {
+      final int base = key + (x << 6);
+      while (w != 0 && pos < limit) {
+        buffer[pos++] = base + numberOfTrailingZeros(w);
+        w &= (w - 1);
+      }
+      while (w == 0) {
+        ++x;
+        if (x == len) {
+          break;
+        }
+        w = bitmap.get(x);
+      }
+    }
+    return pos - offset;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return x < bitmap.limit();
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(LongBuffer b) {
+    bitmap = b;
+    for (x = 0; x < bitmap.limit(); ++x) {
+      if ((w = bitmap.get(x)) != 0) {
+        break;
+      }
+    }
+  }
+}
@@ -5,13 +5,17 @@
 package org.roaringbitmap.buffer;
 
 import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerBatchIterator;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.PeekableShortIterator;
 import org.roaringbitmap.ShortIterator;
+import org.roaringbitmap.Util;
 
 import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.util.NoSuchElementException;
 
 /**
@@ -289,6 +293,13 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
    */
   public static String ContainerNames[] = {"mappeablebitmap","mappeablearray","mappeablerun"};
 
+  /**
+   * Iterator to write the values of the container, several at a time, into an integer array.
+   *
+   * @return batch iterator
+   */
+  public abstract ContainerBatchIterator getBatchIterator();
+
   /**
    * Iterator to visit the short values in the container in descending order.
    *
@@ -693,6 +704,23 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
 
   public abstract MappeableContainer or(MappeableRunContainer x);
 
+  /**
+   * Computes the union of this container with the values of [0, endOfRange) missing from the other
+   * container, without computing the complement of the other container. This container as well as
+   * the provided container are left unaffected.
+   *
+   * @param x other container
+   * @param endOfRange end of the range (exclusive), in [1, 65536]
+   * @return aggregated container
+   */
+  public MappeableContainer orNot(MappeableContainer x, int endOfRange) {
+    long[] bits = new long[1 << 10];
+    Util.setBitmapRange(bits, 0, endOfRange);
+    x.removeFrom(bits);
+    orInto(bits);
+    return new MappeableBitmapContainer(LongBuffer.wrap(bits), -1).repairAfterLazy();
+  }
+
   /**
    * Rank returns the number of integers that are smaller or equal to x (Rank(infinity) would be
    * GetCardinality()).
@@ -777,6 +805,35 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
    */
   protected abstract void writeArray(DataOutput out) throws IOException;
 
+  /**
+   * Write just the underlying array, starting at the position of the buffer, which is moved past
+   * the data.
+   *
+   * @param buffer little endian buffer with enough room left
+   */
+  protected abstract void writeArray(ByteBuffer buffer);
+
+  /**
+   * Sets the bits of the values of this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void orInto(long[] bits);
+
+  /**
+   * Clears the bits of the values of this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void removeFrom(long[] bits);
+
+  /**
+   * Clears the bits of the values missing from this container in the given bitset.
+   *
+   * @param bits bitset of 65536 bits
+   */
+  protected abstract void andInto(long[] bits);
+
   /**
    * Computes the bitwise XOR of this container with another (symmetric difference). This container
    * as well as the provided container are left unaffected.
@@ -836,6 +893,42 @@ public abstract class MappeableContainer implements Iterable<Short>, Cloneable,
    */
   public abstract int last();
 
+  /**
+   * Gets the smallest value held in the container which is greater than or equal to the given
+   * value.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int nextValue(short fromValue);
+
+  /**
+   * Gets the largest value held in the container which is smaller than or equal to the given
+   * value.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int previousValue(short fromValue);
+
+  /**
+   * Gets the smallest value missing from the container which is greater than or equal to the
+   * given value.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int nextAbsentValue(short fromValue);
+
+  /**
+   * Gets the largest value missing from the container which is smaller than or equal to the given
+   * value.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value, as an unsigned int, or -1 if there is none
+   */
+  public abstract int previousAbsentValue(short fromValue);
+
   /**
    * Throw if the container is empty
    * @param condition a boolean expression
@@ -5,13 +5,16 @@ package org.roaringbitmap.buffer;
 
 
 import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerBatchIterator;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.PeekableShortIterator;
 import org.roaringbitmap.RunContainer;
 import org.roaringbitmap.ShortIterator;
+import org.roaringbitmap.Util;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -946,6 +949,11 @@ public final class MappeableRunContainer extends MappeableContainer implements C
     return valueslength.get(2 * index + 1);
   }
 
+  @Override
+  public ContainerBatchIterator getBatchIterator() {
+    return new MappeableRunBatchIterator(this);
+  }
+
   @Override
   public ShortIterator getReverseShortIterator() {
     if (isArrayBacked()) {
@@ -2333,6 +2341,44 @@ public final class MappeableRunContainer extends MappeableContainer implements C
     }
   }
 
+  @Override
+  protected void writeArray(ByteBuffer buffer) {
+    assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+    buffer.putShort((short) this.nbrruns);
+    ShortBuffer source = valueslength.duplicate();
+    source.position(0);
+    source.limit(2 * nbrruns);
+    buffer.asShortBuffer().put(source);
+    buffer.position(buffer.position() + 4 * nbrruns);
+  }
+
+  @Override
+  protected void orInto(long[] bits) {
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.setBitmapRange(bits, start, start + toIntUnsigned(getLength(i)) + 1);
+    }
+  }
+
+  @Override
+  protected void removeFrom(long[] bits) {
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.resetBitmapRange(bits, start, start + toIntUnsigned(getLength(i)) + 1);
+    }
+  }
+
+  @Override
+  protected void andInto(long[] bits) {
+    int cleared = 0;
+    for (int i = 0; i < nbrruns; ++i) {
+      final int start = toIntUnsigned(getValue(i));
+      Util.resetBitmapRange(bits, cleared, start);
+      cleared = start + toIntUnsigned(getLength(i)) + 1;
+    }
+    Util.resetBitmapRange(bits, cleared, 1 << 16);
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     out.writeShort(Short.reverseBytes((short) this.nbrruns));
@@ -2569,6 +2615,71 @@ public final class MappeableRunContainer extends MappeableContainer implements C
     return start + length;
   }
 
+  @Override
+  public int nextValue(short fromValue) {
+    int index = bufferedUnsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    if (index >= 0 && toIntUnsigned(fromValue) <= runEnd(index)) {
+      return toIntUnsigned(fromValue);
+    }
+    return index + 1 < nbrruns ? toIntUnsigned(getValue(index + 1)) : -1;
+  }
+
+  @Override
+  public int previousValue(short fromValue) {
+    int index = bufferedUnsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index >= 0) {
+      return toIntUnsigned(fromValue);
+    }
+    index = -index - 2;
+    if (index < 0) {
+      return -1;
+    }
+    return Math.min(toIntUnsigned(fromValue), runEnd(index));
+  }
+
+  @Override
+  public int nextAbsentValue(short fromValue) {
+    int index = bufferedUnsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index < 0) {
+      index = -index - 2;
+      if (index < 0 || toIntUnsigned(fromValue) > runEnd(index)) {
+        return toIntUnsigned(fromValue);
+      }
+    }
+    // skipping adjacent runs, if any
+    int next = runEnd(index) + 1;
+    while (index + 1 < nbrruns && toIntUnsigned(getValue(index + 1)) == next) {
+      next = runEnd(++index) + 1;
+    }
+    return next < (1 << 16) ? next : -1;
+  }
+
+  @Override
+  public int previousAbsentValue(short fromValue) {
+    int index = bufferedUnsignedInterleavedBinarySearch(valueslength, 0, nbrruns, fromValue);
+    if (index < 0) {
+      index = -index - 2;
+      if (index < 0 || toIntUnsigned(fromValue) > runEnd(index)) {
+        return toIntUnsigned(fromValue);
+      }
+    }
+    // skipping adjacent runs, if any
+    int previous = toIntUnsigned(getValue(index)) - 1;
+    while (index > 0 && runEnd(index - 1) == previous) {
+      previous = toIntUnsigned(getValue(--index)) - 1;
+    }
+    return previous;
+  }
+
+  // last value of the run
+  private int runEnd(int index) {
+    return toIntUnsigned(getValue(index)) + toIntUnsigned(getLength(index));
+  }
+
 
   @Override
   protected boolean contains(MappeableRunContainer runContainer) {
@@ -3062,3 +3173,57 @@ final class ReverseMappeableRunContainerShortIterator implements ShortIterator {
   }
 
 }
+
+
+final class MappeableRunBatchIterator implements ContainerBatchIterator {
+  int pos;
+  int le;
+
+  MappeableRunContainer parent;
+
+  MappeableRunBatchIterator(MappeableRunContainer p) {
+    wrap(p);
+  }
+
+  @Override
+  public int next(int key, int[] buffer, int offset) {
+    int consumed = offset;
+    final int limit = buffer.length;
+    while (consumed < limit && pos < parent.nbrruns) {
+      final int base = toIntUnsigned(parent.getValue(pos));
+      final int maxlength = toIntUnsigned(parent.getLength(pos));
+      final int count = Math.min(maxlength + 1 - le, limit - consumed);
+      final int start = key + base + le;
+      for (int k = 0; k < count; ++k) {
+        buffer[consumed + k] = start + k;
+      }
+      consumed += count;
+      le += count;
+      if (le > maxlength) {
+        pos++;
+        le = 0;
+      }
+    }
+    return consumed - offset;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return pos < parent.nbrruns;
+  }
+
+  @Override
+  public ContainerBatchIterator clone() {
+    try {
+      return (ContainerBatchIterator) super.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+
+  void wrap(MappeableRunContainer p) {
+    parent = p;
+    pos = 0;
+    le = 0;
+  }
+}
@@ -6,9 +6,13 @@ package org.roaringbitmap.buffer;
 
 
 import java.io.*;
+import java.nio.Buffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.roaringbitmap.Util;
@@ -40,14 +44,36 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
 
   int size = 0;
 
+  // allocator providing the storage of offloaded containers, null if none
+  final BufferAllocator allocator;
+  // offloaded containers, mapped to the buffer obtained from the allocator
+  private IdentityHashMap<MappeableContainer, Buffer> offHeap = null;
+  private long offHeapSizeInBytes = 0;
+
   protected MutableRoaringArray() {
-    this(new short[INITIAL_CAPACITY], new MappeableContainer[INITIAL_CAPACITY], 0);
+    this((BufferAllocator) null);
+  }
+
+  /**
+   * Create an empty array whose containers may be offloaded to storage obtained from the
+   * provided allocator.
+   *
+   * @param allocator the allocator, or null to keep every container on the heap
+   */
+  protected MutableRoaringArray(BufferAllocator allocator) {
+    this(new short[INITIAL_CAPACITY], new MappeableContainer[INITIAL_CAPACITY], 0, allocator);
   }
 
   MutableRoaringArray(short[] keys, MappeableContainer[] values, int size) {
+    this(keys, values, size, null);
+  }
+
+  MutableRoaringArray(short[] keys, MappeableContainer[] values, int size,
+      BufferAllocator allocator) {
     this.keys = keys;
     this.values = values;
     this.size = size;
+    this.allocator = allocator;
   }
 
 
@@ -193,6 +219,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   }
 
   protected void clear() {
+    releaseOffHeap();
     this.keys = null;
     this.values = null;
     this.size = 0;
@@ -205,7 +232,9 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     keys = Arrays.copyOf(keys, size);
     values = Arrays.copyOf(values, size);
     for (MappeableContainer c : values) {
-      c.trim();
+      if (!isOffHeap(c)) {
+        c.trim();
+      }
     }
   }
 
@@ -223,6 +252,9 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
         sa.values[k] = sa.values[k].clone();
       }
       sa.size = this.size;
+      // clones live on the heap
+      sa.offHeap = null;
+      sa.offHeapSizeInBytes = 0;
       return sa;
 
     } catch (CloneNotSupportedException e) {
@@ -352,6 +384,170 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     return this.values[i];
   }
 
+  /**
+   * Get the container at the given index, ready to be modified in place. Offloaded containers
+   * cannot be modified in place: they are first copied back to the heap, and their off-heap
+   * storage is returned to the allocator.
+   *
+   * @param i index
+   * @return a container that may be modified in place
+   */
+  protected MappeableContainer getWritableContainerAtIndex(int i) {
+    MappeableContainer c = this.values[i];
+    if (isOffHeap(c)) {
+      MappeableContainer copy = c.clone();
+      releaseOffHeap(c);
+      this.values[i] = copy;
+      return copy;
+    }
+    return c;
+  }
+
+  /**
+   * Copy every container still on the heap into storage obtained from the allocator. Does
+   * nothing if there is no allocator.
+   */
+  protected void offload() {
+    if (allocator == null) {
+      return;
+    }
+    releaseUnreferencedOffHeap();
+    for (int k = 0; k < size; ++k) {
+      if (!isOffHeap(values[k])) {
+        values[k] = toOffHeap(values[k]);
+      }
+    }
+  }
+
+  private MappeableContainer toOffHeap(MappeableContainer c) {
+    final MappeableContainer answer;
+    final Buffer storage;
+    if (c instanceof MappeableBitmapContainer) {
+      MappeableBitmapContainer bc = (MappeableBitmapContainer) c;
+      LongBuffer src = bc.bitmap.duplicate();
+      src.clear();
+      LongBuffer dst = allocator.allocateLongBuffer(src.limit());
+      dst.put(src);
+      dst.flip();
+      answer = new MappeableBitmapContainer(dst, bc.cardinality);
+      storage = dst;
+      offHeapSizeInBytes += 8L * dst.capacity();
+    } else if (c instanceof MappeableArrayContainer) {
+      MappeableArrayContainer ac = (MappeableArrayContainer) c;
+      ShortBuffer src = ac.content.duplicate();
+      src.position(0);
+      src.limit(ac.cardinality);
+      ShortBuffer dst = allocator.allocateShortBuffer(ac.cardinality);
+      dst.put(src);
+      dst.flip();
+      answer = new MappeableArrayContainer(dst, ac.cardinality);
+      storage = dst;
+      offHeapSizeInBytes += 2L * dst.capacity();
+    } else {
+      MappeableRunContainer rc = (MappeableRunContainer) c;
+      ShortBuffer src = rc.valueslength.duplicate();
+      src.position(0);
+      src.limit(2 * rc.nbrruns);
+      ShortBuffer dst = allocator.allocateShortBuffer(2 * rc.nbrruns);
+      dst.put(src);
+      dst.flip();
+      answer = new MappeableRunContainer(dst, rc.nbrruns);
+      storage = dst;
+      offHeapSizeInBytes += 2L * dst.capacity();
+    }
+    if (offHeap == null) {
+      offHeap = new IdentityHashMap<MappeableContainer, Buffer>();
+    }
+    offHeap.put(answer, storage);
+    return answer;
+  }
+
+  /**
+   * Checks whether the container storage was obtained from the allocator of this array.
+   *
+   * @param c container
+   * @return whether the container is offloaded
+   */
+  protected boolean isOffHeap(MappeableContainer c) {
+    return offHeap != null && !offHeap.isEmpty() && offHeap.containsKey(c);
+  }
+
+  /**
+   * Number of bytes obtained from the allocator and not yet returned to it.
+   *
+   * @return off-heap memory usage
+   */
+  protected long getOffHeapSizeInBytes() {
+    return offHeapSizeInBytes;
+  }
+
+  private void releaseOffHeap(MappeableContainer c) {
+    if (offHeap == null || offHeap.isEmpty()) {
+      return;
+    }
+    Buffer storage = offHeap.remove(c);
+    if (storage != null) {
+      free(storage);
+    }
+  }
+
+  /**
+   * Return all off-heap storage to the allocator. Offloaded containers must no longer be used.
+   */
+  protected void releaseOffHeap() {
+    if (offHeap == null) {
+      return;
+    }
+    for (Buffer storage : offHeap.values()) {
+      free(storage);
+    }
+    offHeap.clear();
+  }
+
+  /**
+   * Replace the keys and containers with those of another array, keeping the allocator of this
+   * array. The storage of the offloaded containers which are no longer referenced is returned to
+   * the allocator.
+   *
+   * @param other the array whose content is taken over, which must no longer be used
+   */
+  protected void replaceContent(MutableRoaringArray other) {
+    this.keys = other.keys;
+    this.values = other.values;
+    this.size = other.size;
+    releaseUnreferencedOffHeap();
+  }
+
+  // containers can be moved around or dropped when the array is compacted
+  private void releaseUnreferencedOffHeap() {
+    if (offHeap == null || offHeap.isEmpty()) {
+      return;
+    }
+    IdentityHashMap<MappeableContainer, Boolean> live =
+        new IdentityHashMap<MappeableContainer, Boolean>();
+    for (int k = 0; k < size; ++k) {
+      live.put(values[k], Boolean.TRUE);
+    }
+    Iterator<Map.Entry<MappeableContainer, Buffer>> it = offHeap.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<MappeableContainer, Buffer> e = it.next();
+      if (!live.containsKey(e.getKey())) {
+        free(e.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private void free(Buffer storage) {
+    if (storage instanceof LongBuffer) {
+      offHeapSizeInBytes -= 8L * storage.capacity();
+      allocator.free((LongBuffer) storage);
+    } else {
+      offHeapSizeInBytes -= 2L * storage.capacity();
+      allocator.free((ShortBuffer) storage);
+    }
+  }
+
   @Override
   public MappeableContainerPointer getContainerPointer() {
     return getContainerPointer(0);
@@ -495,6 +691,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   }
 
   protected void removeAtIndex(int i) {
+    releaseOffHeap(values[i]);
     System.arraycopy(keys, i + 1, keys, i, size - i - 1);
     keys[size - 1] = 0;
     System.arraycopy(values, i + 1, values, i, size - i - 1);
@@ -508,6 +705,9 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
       return;
     }
     final int range = end - begin;
+    for (int i = begin; i < end; ++i) {
+      releaseOffHeap(values[i]);
+    }
     System.arraycopy(keys, end, keys, begin, size - end);
     System.arraycopy(values, end, values, begin, size - end);
     for (int i = 1; i <= range; ++i) {
@@ -527,6 +727,7 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
     Arrays.fill(this.keys, newLength, this.size, (short) 0);
     Arrays.fill(this.values, newLength, this.size, null);
     this.size = newLength;
+    releaseUnreferencedOffHeap();
   }
 
   /**
@@ -593,6 +794,9 @@ public final class MutableRoaringArray implements Cloneable, Externalizable, Poi
   }
 
   protected void setContainerAtIndex(int i, MappeableContainer c) {
+    if (c != values[i]) {
+      releaseOffHeap(values[i]);
+    }
     this.values[i] = c;
   }
 
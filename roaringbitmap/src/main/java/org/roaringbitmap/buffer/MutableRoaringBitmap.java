@@ -245,7 +245,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       currenthb = BufferUtil.highbits(val);
       currentcontainerindex = highLowContainer.getIndex(currenthb);
       if (currentcontainerindex >= 0) {
-        currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+        currentcont = mra.getWritableContainerAtIndex(currentcontainerindex);
         MappeableContainer newcont = currentcont.add(BufferUtil.lowbits(val));
         if(newcont != currentcont) {
           mra.setContainerAtIndex(currentcontainerindex, newcont);
@@ -273,7 +273,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
         currenthb = newhb;
         currentcontainerindex = highLowContainer.getIndex(currenthb);
         if (currentcontainerindex >= 0) {
-          currentcont = highLowContainer.getContainerAtIndex(currentcontainerindex);
+          currentcont = mra.getWritableContainerAtIndex(currentcontainerindex);
           MappeableContainer newcont = currentcont.add(BufferUtil.lowbits(val));
           if(newcont != currentcont) {
             mra.setContainerAtIndex(currentcontainerindex, newcont);
@@ -658,6 +658,18 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     this.highLowContainer = highLowContainer;
   }
 
+  /**
+   * Create an empty bitmap whose containers can be moved to storage obtained from the provided
+   * allocator, typically off-heap memory, by calling {@link #offload()}. Containers stay on the
+   * heap until then, and an offloaded container is copied back to the heap before it is
+   * modified. Call {@link #release()} to return the storage to the allocator.
+   *
+   * @param allocator the allocator providing the storage of offloaded containers
+   */
+  public MutableRoaringBitmap(BufferAllocator allocator) {
+    this(new MutableRoaringArray(allocator));
+  }
+
   /**
    * Create a MutableRoaringBitmap from a RoaringBitmap. The RoaringBitmap is not modified.
    *
@@ -688,7 +700,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
       getMappeableRoaringArray().setContainerAtIndex(i,
-          highLowContainer.getContainerAtIndex(i).add(BufferUtil.lowbits(x)));
+          getMappeableRoaringArray().getWritableContainerAtIndex(i).add(BufferUtil.lowbits(x)));
     } else {
       final MappeableArrayContainer newac = new MappeableArrayContainer();
       getMappeableRoaringArray().insertNewKeyValueAt(-i - 1, hb, newac.add(BufferUtil.lowbits(x)));
@@ -720,8 +732,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final int i = highLowContainer.getIndex((short) hb);
 
       if (i >= 0) {
-        final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(i).iadd(containerStart, containerLast + 1);
+        final MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(i)
+            .iadd(containerStart, containerLast + 1);
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
       } else {
         ((MutableRoaringArray) highLowContainer).insertNewKeyValueAt(-i - 1, (short) hb,
@@ -764,7 +776,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final short s1 = highLowContainer.getKeyAtIndex(pos1);
       final short s2 = array.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final MappeableContainer c1 = highLowContainer.getContainerAtIndex(pos1);
+        final MappeableContainer c1 = getMappeableRoaringArray().getWritableContainerAtIndex(pos1);
         final MappeableContainer c2 = array.highLowContainer.getContainerAtIndex(pos2);
         final MappeableContainer c = c1.iand(c2);
         if (c.getCardinality() > 0) {
@@ -795,7 +807,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final short s1 = highLowContainer.getKeyAtIndex(pos1);
       final short s2 = x2.highLowContainer.getKeyAtIndex(pos2);
       if (s1 == s2) {
-        final MappeableContainer c1 = highLowContainer.getContainerAtIndex(pos1);
+        final MappeableContainer c1 = getMappeableRoaringArray().getWritableContainerAtIndex(pos1);
         final MappeableContainer c2 = x2.highLowContainer.getContainerAtIndex(pos2);
         final MappeableContainer c = c1.iandNot(c2);
         if (c.getCardinality() > 0) {
@@ -832,7 +844,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final short hb = BufferUtil.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      MappeableContainer C = highLowContainer.getContainerAtIndex(i);
+      MappeableContainer C = getMappeableRoaringArray().getWritableContainerAtIndex(i);
       int oldcard = C.getCardinality();
       C = C.add(BufferUtil.lowbits(x));
       getMappeableRoaringArray().setContainerAtIndex(i, C);
@@ -856,7 +868,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     if (i < 0) {
       return false;
     }
-    MappeableContainer C = highLowContainer.getContainerAtIndex(i);
+    MappeableContainer C = getMappeableRoaringArray().getWritableContainerAtIndex(i);
     int oldcard = C.getCardinality();
     C.remove(BufferUtil.lowbits(x));
     int newcard = C.getCardinality();
@@ -875,7 +887,58 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
    * reset to an empty bitmap; result occupies as much space a newly created bitmap.
    */
   public void clear() {
-    highLowContainer = new MutableRoaringArray(); // lose references
+    MutableRoaringArray array = getMappeableRoaringArray();
+    array.releaseOffHeap();
+    highLowContainer = new MutableRoaringArray(array.allocator); // lose references
+  }
+
+  /**
+   * Move every container that is on the heap to storage obtained from the allocator this bitmap
+   * was created with. Containers modified afterwards go back to the heap until the next call.
+   * Does nothing if the bitmap has no allocator.
+   */
+  public void offload() {
+    getMappeableRoaringArray().offload();
+  }
+
+  /**
+   * Return all the storage obtained from the allocator and reset to an empty bitmap. Iterators
+   * and ImmutableRoaringBitmap views created beforehand must no longer be used: pooled storage
+   * may be handed to another bitmap.
+   */
+  public void release() {
+    clear();
+  }
+
+  /**
+   * Number of bytes of container storage currently obtained from the allocator of this bitmap.
+   *
+   * @return off-heap memory usage
+   */
+  public long getOffHeapSizeInBytes() {
+    return getMappeableRoaringArray().getOffHeapSizeInBytes();
+  }
+
+  /**
+   * Estimate of the memory usage of this data structure. Offloaded containers are accounted for
+   * with the storage actually obtained from the allocator.
+   *
+   * @return estimated memory usage.
+   */
+  @Override
+  public long getLongSizeInBytes() {
+    MutableRoaringArray array = getMappeableRoaringArray();
+    if (array.allocator == null) {
+      return super.getLongSizeInBytes();
+    }
+    long size = 4 + array.getOffHeapSizeInBytes();
+    for (int i = 0; i < array.size; ++i) {
+      size += 4;
+      if (!array.isOffHeap(array.values[i])) {
+        size += array.values[i].getArraySizeInBytes();
+      }
+    }
+    return size;
   }
 
   @Override
@@ -907,7 +970,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     final short hb = BufferUtil.highbits(x);
     final int i = highLowContainer.getIndex(hb);
     if (i >= 0) {
-      MappeableContainer c = highLowContainer.getContainerAtIndex(i);
+      MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(i);
       c = c.flip(BufferUtil.lowbits(x));
       if (c.getCardinality() > 0) {
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
@@ -949,8 +1012,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       final int i = highLowContainer.getIndex((short) hb);
 
       if (i >= 0) {
-        final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(i).inot(containerStart, containerLast + 1);
+        final MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(i)
+            .inot(containerStart, containerLast + 1);
         if (c.getCardinality() > 0) {
           getMappeableRoaringArray().setContainerAtIndex(i, c);
         } else {
@@ -1062,8 +1125,9 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          getMappeableRoaringArray().setContainerAtIndex(pos1, highLowContainer
-              .getContainerAtIndex(pos1).lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
+          getMappeableRoaringArray().setContainerAtIndex(pos1,
+              getMappeableRoaringArray().getWritableContainerAtIndex(pos1)
+                  .lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1109,8 +1173,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          MappeableBitmapContainer c1 = highLowContainer.getContainerAtIndex(pos1)
-              .toBitmapContainer();
+          MappeableBitmapContainer c1 =
+              getMappeableRoaringArray().getWritableContainerAtIndex(pos1).toBitmapContainer();
           getMappeableRoaringArray().setContainerAtIndex(pos1,
               c1.lazyIOR(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
@@ -1162,8 +1226,9 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          getMappeableRoaringArray().setContainerAtIndex(pos1, highLowContainer
-              .getContainerAtIndex(pos1).ior(x2.highLowContainer.getContainerAtIndex(pos2)));
+          getMappeableRoaringArray().setContainerAtIndex(pos1,
+              getMappeableRoaringArray().getWritableContainerAtIndex(pos1)
+                  .ior(x2.highLowContainer.getContainerAtIndex(pos2)));
           pos1++;
           pos2++;
           if ((pos1 == length1) || (pos2 == length2)) {
@@ -1195,6 +1260,61 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     }
   }
 
+  /**
+   * In-place bitwise ORNOT operation: the current bitmap gets all the values of [0, rangeEnd)
+   * which are missing from the other bitmap, values from rangeEnd on being left untouched. This
+   * is equivalent to flipping the other bitmap over [0, rangeEnd) and computing the union, without
+   * the intermediate bitmap. The current bitmap is modified.
+   *
+   * @param other other bitmap
+   * @param rangeEnd end point of the range (exclusive)
+   */
+  public void orNot(final ImmutableRoaringBitmap other, long rangeEnd) {
+    rangeSanityCheck(0, rangeEnd);
+    if (rangeEnd == 0) {
+      return;
+    }
+    final int maxKey = (int) ((rangeEnd - 1) >>> 16);
+    final int lastEnd = (int) (rangeEnd - ((long) maxKey << 16));
+    final MutableRoaringArray x1 = getMappeableRoaringArray();
+    final PointableRoaringArray x2 = other.highLowContainer;
+    final int length1 = x1.size(), length2 = x2.size();
+    // the keys past the range are kept as they are
+    final int tail = maxKey == 0xFFFF ? length1 : x1.advanceUntil((short) (maxKey + 1), -1);
+    final int capacity = maxKey + 1 + length1 - tail;
+    final MutableRoaringArray answer =
+        new MutableRoaringArray(new short[capacity], new MappeableContainer[capacity], 0);
+    int pos1 = 0, pos2 = 0;
+    for (int key = 0; key <= maxKey; ++key) {
+      final short s = (short) key;
+      final int end = key == maxKey ? lastEnd : 1 << 16;
+      MappeableContainer c1 = null;
+      if (pos1 < length1 && x1.getKeyAtIndex(pos1) == s) {
+        c1 = x1.getWritableContainerAtIndex(pos1++);
+      }
+      MappeableContainer c2 = null;
+      if (pos2 < length2 && x2.getKeyAtIndex(pos2) == s) {
+        c2 = x2.getContainerAtIndex(pos2++);
+      }
+      final MappeableContainer result;
+      if (c2 == null) {
+        result = c1 == null ? MappeableContainer.rangeOfOnes(0, end) : c1.iadd(0, end);
+      } else if (c1 == null) {
+        result = MappeableContainer.rangeOfOnes(0, end).iandNot(c2);
+      } else {
+        result = c1.orNot(c2, end);
+      }
+      if (!result.isEmpty()) {
+        answer.append(s, result);
+      }
+    }
+    for (int pos = tail; pos < length1; ++pos) {
+      answer.append(x1.getKeyAtIndex(pos), x1.getContainerAtIndex(pos));
+    }
+    // the offloaded containers of the tail stay tracked by the allocator of this bitmap
+    x1.replaceContent(answer);
+  }
+
 
 
   @Override
@@ -1217,7 +1337,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
       return;
     }
     getMappeableRoaringArray().setContainerAtIndex(i,
-        highLowContainer.getContainerAtIndex(i).remove(BufferUtil.lowbits(x)));
+        getMappeableRoaringArray().getWritableContainerAtIndex(i).remove(BufferUtil.lowbits(x)));
     if (highLowContainer.getContainerAtIndex(i).getCardinality() == 0) {
       getMappeableRoaringArray().removeAtIndex(i);
     }
@@ -1244,7 +1364,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
         return;
       }
       final MappeableContainer c =
-          highLowContainer.getContainerAtIndex(i).iremove(lbStart, lbLast + 1);
+          getMappeableRoaringArray().getWritableContainerAtIndex(i).iremove(lbStart, lbLast + 1);
       if (c.getCardinality() > 0) {
         ((MutableRoaringArray) highLowContainer).setContainerAtIndex(i, c);
       } else {
@@ -1256,8 +1376,8 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     int ilast = highLowContainer.getIndex((short) hbLast);
     if (ifirst >= 0) {
       if (lbStart != 0) {
-        final MappeableContainer c = highLowContainer.getContainerAtIndex(ifirst).iremove(lbStart,
-            BufferUtil.maxLowBitAsInteger() + 1);
+        final MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(ifirst)
+            .iremove(lbStart, BufferUtil.maxLowBitAsInteger() + 1);
         if (c.getCardinality() > 0) {
           ((MutableRoaringArray) highLowContainer).setContainerAtIndex(ifirst, c);
           ifirst++;
@@ -1269,7 +1389,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
     if (ilast >= 0) {
       if (lbLast != BufferUtil.maxLowBitAsInteger()) {
         final MappeableContainer c =
-            highLowContainer.getContainerAtIndex(ilast).iremove(0, lbLast + 1);
+            getMappeableRoaringArray().getWritableContainerAtIndex(ilast).iremove(0, lbLast + 1);
         if (c.getCardinality() > 0) {
           ((MutableRoaringArray) highLowContainer).setContainerAtIndex(ilast, c);
         } else {
@@ -1435,7 +1555,7 @@ public class MutableRoaringBitmap extends ImmutableRoaringBitmap
 
       while (true) {
         if (s1 == s2) {
-          final MappeableContainer c = highLowContainer.getContainerAtIndex(pos1)
+          final MappeableContainer c = getMappeableRoaringArray().getWritableContainerAtIndex(pos1)
               .ixor(x2.highLowContainer.getContainerAtIndex(pos2));
           if (c.getCardinality() > 0) {
             this.getMappeableRoaringArray().setContainerAtIndex(pos1, c);
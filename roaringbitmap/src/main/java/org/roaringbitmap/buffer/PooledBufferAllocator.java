@@ -0,0 +1,152 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Allocator recycling direct (off-heap) buffers. Requests are rounded up to the next power of two
+ * and freed buffers are kept in per-size free lists, so that a bitmap that is repeatedly
+ * offloaded, mutated and cleared does not keep asking the system for new direct memory.
+ *
+ * The amount of memory retained in the free lists is bounded: buffers freed once the bound is
+ * reached are left to the garbage collector. As with any direct ByteBuffer, the memory of a buffer
+ * which is not pooled is only given back to the system once the buffer is garbage collected:
+ * nothing is unmapped explicitly, which would require JDK internal APIs.
+ *
+ * This class is thread-safe.
+ */
+public class PooledBufferAllocator implements BufferAllocator {
+
+  /**
+   * Default bound on the memory retained by the free lists (64 MB).
+   */
+  public static final long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+
+  private static final int SIZE_CLASSES = 32;
+
+  private final long maxPooledBytes;
+  private final ArrayDeque<ShortBuffer>[] shortPool = newPool();
+  private final ArrayDeque<LongBuffer>[] longPool = newPool();
+  private long pooledBytes = 0;
+  private long allocatedBytes = 0;
+
+  /**
+   * Create an allocator retaining at most {@link #DEFAULT_MAX_POOLED_BYTES} of free memory.
+   */
+  public PooledBufferAllocator() {
+    this(DEFAULT_MAX_POOLED_BYTES);
+  }
+
+  /**
+   * Create an allocator retaining at most the given amount of free memory.
+   *
+   * @param maxPooledBytes bound on the memory kept in the free lists
+   */
+  public PooledBufferAllocator(long maxPooledBytes) {
+    if (maxPooledBytes < 0) {
+      throw new IllegalArgumentException("maxPooledBytes must be non-negative");
+    }
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> ArrayDeque<T>[] newPool() {
+    ArrayDeque<T>[] pool = (ArrayDeque<T>[]) new ArrayDeque<?>[SIZE_CLASSES];
+    for (int k = 0; k < pool.length; ++k) {
+      pool[k] = new ArrayDeque<>();
+    }
+    return pool;
+  }
+
+  // index of the smallest power of two greater than or equal to length
+  private static int sizeClass(int length) {
+    return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+  }
+
+  @Override
+  public synchronized ShortBuffer allocateShortBuffer(int length) {
+    final int sc = sizeClass(length);
+    ShortBuffer buffer = shortPool[sc].pollFirst();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(2 << sc).order(ByteOrder.nativeOrder()).asShortBuffer();
+    } else {
+      pooledBytes -= 2L << sc;
+    }
+    allocatedBytes += 2L << sc;
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  @Override
+  public synchronized LongBuffer allocateLongBuffer(int length) {
+    final int sc = sizeClass(length);
+    LongBuffer buffer = longPool[sc].pollFirst();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(8 << sc).order(ByteOrder.nativeOrder()).asLongBuffer();
+    } else {
+      pooledBytes -= 8L << sc;
+    }
+    allocatedBytes += 8L << sc;
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  @Override
+  public synchronized void free(ShortBuffer buffer) {
+    final long bytes = 2L * buffer.capacity();
+    allocatedBytes -= bytes;
+    if (pooledBytes + bytes <= maxPooledBytes) {
+      shortPool[sizeClass(buffer.capacity())].addFirst(buffer);
+      pooledBytes += bytes;
+    }
+  }
+
+  @Override
+  public synchronized void free(LongBuffer buffer) {
+    final long bytes = 8L * buffer.capacity();
+    allocatedBytes -= bytes;
+    if (pooledBytes + bytes <= maxPooledBytes) {
+      longPool[sizeClass(buffer.capacity())].addFirst(buffer);
+      pooledBytes += bytes;
+    }
+  }
+
+  /**
+   * Number of bytes handed out and not yet freed.
+   *
+   * @return allocated bytes
+   */
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Number of bytes retained in the free lists.
+   *
+   * @return pooled bytes
+   */
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /**
+   * Drop every buffer retained in the free lists. Their memory is given back to the system when
+   * the garbage collector reclaims them, not by this call.
+   */
+  public synchronized void trim() {
+    for (int k = 0; k < SIZE_CLASSES; ++k) {
+      shortPool[k].clear();
+      longPool[k].clear();
+    }
+    pooledBytes = 0;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Container;
+
+/**
+ * Adaptive radix tree (Leis et al., "The Adaptive Radix Tree: ARTful Indexing for Main-Memory
+ * Databases") mapping 48-bit keys to containers. Inner nodes grow from 4 to 16, 48 and 256
+ * children as needed, and use path compression so that sparse key spaces do not produce long
+ * chains of single-child nodes.
+ *
+ * This is not meant to be used by end users.
+ */
+final class Art {
+
+  private Node root = null;
+
+  boolean isEmpty() {
+    return root == null;
+  }
+
+  void clear() {
+    root = null;
+  }
+
+  Node getRoot() {
+    return root;
+  }
+
+  /**
+   * @param key the 48-bit key
+   * @return the leaf holding the key, or null
+   */
+  LeafNode findLeaf(long key) {
+    Node node = root;
+    while (node instanceof BranchNode) {
+      // the prefix is not checked on the way down: the leaf holds the full key
+      BranchNode branch = (BranchNode) node;
+      int pos = branch.getChildPos(Node.keyByte(key, branch.discriminator()));
+      if (pos == BranchNode.ILLEGAL_POS) {
+        return null;
+      }
+      node = branch.getChild(pos);
+    }
+    if (node != null && ((LeafNode) node).key == key) {
+      return (LeafNode) node;
+    }
+    return null;
+  }
+
+  /**
+   * Associate a container to a key, replacing the previous one if any.
+   *
+   * @param key the 48-bit key
+   * @param container the container
+   */
+  void insert(long key, Container container) {
+    root = insert(root, key, container, 0);
+  }
+
+  private static Node insert(Node node, long key, Container container, int depth) {
+    if (node == null) {
+      return new LeafNode(key, container);
+    }
+    if (node instanceof LeafNode) {
+      LeafNode leaf = (LeafNode) node;
+      if (leaf.key == key) {
+        leaf.container = container;
+        return leaf;
+      }
+      int mismatch = depth;
+      while (Node.keyByte(leaf.key, mismatch) == Node.keyByte(key, mismatch)) {
+        mismatch++;
+      }
+      Node4 split = new Node4(depth, mismatch - depth, key);
+      split.insert(Node.keyByte(leaf.key, mismatch), leaf);
+      split.insert(Node.keyByte(key, mismatch), new LeafNode(key, container));
+      return split;
+    }
+    BranchNode branch = (BranchNode) node;
+    final int end = branch.discriminator();
+    for (int i = branch.depth; i < end; i++) {
+      int existing = Node.keyByte(branch.prefixKey, i);
+      if (existing != Node.keyByte(key, i)) {
+        // the key leaves the compressed path: split it
+        Node4 split = new Node4(branch.depth, i - branch.depth, key);
+        branch.prefixLength = end - (i + 1);
+        branch.depth = i + 1;
+        split.insert(existing, branch);
+        split.insert(Node.keyByte(key, i), new LeafNode(key, container));
+        return split;
+      }
+    }
+    int keyByte = Node.keyByte(key, end);
+    int pos = branch.getChildPos(keyByte);
+    if (pos == BranchNode.ILLEGAL_POS) {
+      return branch.insert(keyByte, new LeafNode(key, container));
+    }
+    Node child = branch.getChild(pos);
+    Node updated = insert(child, key, container, end + 1);
+    if (updated != child) {
+      branch.replaceChild(pos, updated);
+    }
+    return branch;
+  }
+
+  /**
+   * Remove a key.
+   *
+   * @param key the 48-bit key
+   * @return the removed leaf, or null if the key was absent
+   */
+  LeafNode remove(long key) {
+    LeafNode leaf = findLeaf(key);
+    if (leaf != null) {
+      root = remove(root, key);
+    }
+    return leaf;
+  }
+
+  // the key is known to be present
+  private static Node remove(Node node, long key) {
+    if (node instanceof LeafNode) {
+      return null;
+    }
+    BranchNode branch = (BranchNode) node;
+    int pos = branch.getChildPos(Node.keyByte(key, branch.discriminator()));
+    Node child = branch.getChild(pos);
+    Node updated = remove(child, key);
+    if (updated != null) {
+      if (updated != child) {
+        branch.replaceChild(pos, updated);
+      }
+      return branch;
+    }
+    BranchNode shrunk = branch.remove(pos);
+    if (shrunk.count > 1) {
+      return shrunk;
+    }
+    // a single child is left: merge the branch into it
+    Node only = shrunk.getChild(shrunk.firstPos());
+    if (only instanceof BranchNode) {
+      BranchNode onlyBranch = (BranchNode) only;
+      onlyBranch.prefixLength += onlyBranch.depth - shrunk.depth;
+      onlyBranch.depth = shrunk.depth;
+    }
+    return only;
+  }
+
+  /**
+   * @return the leaf with the smallest key, or null if empty
+   */
+  LeafNode first() {
+    Node node = root;
+    while (node instanceof BranchNode) {
+      BranchNode branch = (BranchNode) node;
+      node = branch.getChild(branch.firstPos());
+    }
+    return (LeafNode) node;
+  }
+
+  /**
+   * @return the leaf with the largest key, or null if empty
+   */
+  LeafNode last() {
+    Node node = root;
+    while (node instanceof BranchNode) {
+      BranchNode branch = (BranchNode) node;
+      node = branch.getChild(branch.lastPos());
+    }
+    return (LeafNode) node;
+  }
+
+  /**
+   * Estimate of the memory usage of the tree, not counting the containers.
+   *
+   * @return estimated memory usage.
+   */
+  long getSizeInBytes() {
+    return root == null ? 0 : getSizeInBytes(root);
+  }
+
+  private static long getSizeInBytes(Node node) {
+    long size = node.getSizeInBytes();
+    if (node instanceof BranchNode) {
+      BranchNode branch = (BranchNode) node;
+      for (int pos = branch.firstPos(); pos != BranchNode.ILLEGAL_POS; pos = branch.nextPos(pos)) {
+        size += getSizeInBytes(branch.getChild(pos));
+      }
+    }
+    return size;
+  }
+
+  LeafNodeIterator leafIterator(boolean reverse) {
+    return new LeafNodeIterator(root, reverse);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Inner node of the adaptive radix tree. All the keys below a branch share the bytes
+ * [depth, depth + prefixLength) (path compression); the children are then indexed by the byte at
+ * depth + prefixLength.
+ *
+ * Children are addressed through an opaque position: the sorted index for the small nodes, the
+ * key byte itself for the large ones.
+ */
+abstract class BranchNode extends Node {
+
+  static final int ILLEGAL_POS = -1;
+
+  // index of the first key byte covered by this node
+  int depth;
+
+  // number of key bytes shared by every key below this node, starting at depth
+  int prefixLength;
+
+  // one of the keys below this node, used to read the shared prefix bytes
+  long prefixKey;
+
+  // number of children
+  int count;
+
+  BranchNode(int depth, int prefixLength, long prefixKey) {
+    this.depth = depth;
+    this.prefixLength = prefixLength;
+    this.prefixKey = prefixKey;
+  }
+
+  /**
+   * @return the index of the key byte used to select a child
+   */
+  final int discriminator() {
+    return depth + prefixLength;
+  }
+
+  final void copyHeader(BranchNode src) {
+    this.depth = src.depth;
+    this.prefixLength = src.prefixLength;
+    this.prefixKey = src.prefixKey;
+  }
+
+  /**
+   * @param keyByte the discriminating byte
+   * @return the position of the child, or ILLEGAL_POS if there is none
+   */
+  abstract int getChildPos(int keyByte);
+
+  abstract int getChildKey(int pos);
+
+  abstract Node getChild(int pos);
+
+  abstract void replaceChild(int pos, Node child);
+
+  /**
+   * Add a child, the key byte must not be present already.
+   *
+   * @param keyByte the discriminating byte
+   * @param child the new child
+   * @return this node or, if it was full, a larger node replacing it
+   */
+  abstract BranchNode insert(int keyByte, Node child);
+
+  /**
+   * Remove the child at the given position.
+   *
+   * @param pos position of the child
+   * @return this node or a smaller node replacing it
+   */
+  abstract BranchNode remove(int pos);
+
+  /**
+   * @param keyByte the lower bound
+   * @return the position of the first child whose key byte is at least keyByte, or ILLEGAL_POS
+   */
+  abstract int ceilingPos(int keyByte);
+
+  /**
+   * @param keyByte the upper bound
+   * @return the position of the last child whose key byte is at most keyByte, or ILLEGAL_POS
+   */
+  abstract int floorPos(int keyByte);
+
+  abstract int nextPos(int pos);
+
+  abstract int prevPos(int pos);
+
+  final int firstPos() {
+    return ceilingPos(0);
+  }
+
+  final int lastPos() {
+    return floorPos(0xFF);
+  }
+}
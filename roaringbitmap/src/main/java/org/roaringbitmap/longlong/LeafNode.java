@@ -0,0 +1,26 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import org.roaringbitmap.Container;
+
+/**
+ * Leaf of the adaptive radix tree: holds the container of the 16 low bits for one 48-bit key.
+ */
+final class LeafNode extends Node {
+
+  final long key;
+
+  Container container;
+
+  LeafNode(long key, Container container) {
+    this.key = key;
+    this.container = container;
+  }
+
+  @Override
+  int getSizeInBytes() {
+    return 16 + 8 + 8;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Visits the leaves of an {@link Art} in increasing (or decreasing) key order. The tree must not be
+ * structurally modified while iterating, but the containers of the leaves may be replaced.
+ */
+final class LeafNodeIterator implements Cloneable {
+
+  private final Node root;
+
+  private final boolean reverse;
+
+  // a key byte is consumed at each level at least, so the stack is bounded by the key length
+  private BranchNode[] stack = new BranchNode[Node.KEY_BYTES];
+
+  private int[] positions = new int[Node.KEY_BYTES];
+
+  private int top = -1;
+
+  private LeafNode next;
+
+  LeafNodeIterator(Node root, boolean reverse) {
+    this.root = root;
+    this.reverse = reverse;
+    this.next = root == null ? null : descend(root);
+  }
+
+  boolean hasNext() {
+    return next != null;
+  }
+
+  LeafNode peekNext() {
+    return next;
+  }
+
+  LeafNode next() {
+    LeafNode answer = next;
+    advance();
+    return answer;
+  }
+
+  /**
+   * Position the iterator on the first leaf whose key is at least (at most, when iterating in
+   * reverse) the given key.
+   *
+   * @param key the 48-bit key
+   */
+  void seek(long key) {
+    top = -1;
+    Node node = root;
+    if (node == null) {
+      next = null;
+      return;
+    }
+    while (node instanceof BranchNode) {
+      BranchNode branch = (BranchNode) node;
+      final int end = branch.discriminator();
+      for (int i = branch.depth; i < end; i++) {
+        int prefixByte = Node.keyByte(branch.prefixKey, i);
+        int keyByte = Node.keyByte(key, i);
+        if (prefixByte != keyByte) {
+          if (reverse ? prefixByte < keyByte : prefixByte > keyByte) {
+            // the whole subtree lies after the key
+            next = descend(branch);
+          } else {
+            advance();
+          }
+          return;
+        }
+      }
+      int keyByte = Node.keyByte(key, end);
+      int pos = reverse ? branch.floorPos(keyByte) : branch.ceilingPos(keyByte);
+      if (pos == BranchNode.ILLEGAL_POS) {
+        advance();
+        return;
+      }
+      push(branch, pos);
+      node = branch.getChild(pos);
+      if (branch.getChildKey(pos) != keyByte) {
+        next = descend(node);
+        return;
+      }
+    }
+    LeafNode leaf = (LeafNode) node;
+    int cmp = Long.compareUnsigned(leaf.key, key);
+    if (reverse ? cmp <= 0 : cmp >= 0) {
+      next = leaf;
+    } else {
+      advance();
+    }
+  }
+
+  private void push(BranchNode branch, int pos) {
+    top++;
+    stack[top] = branch;
+    positions[top] = pos;
+  }
+
+  private LeafNode descend(Node node) {
+    while (node instanceof BranchNode) {
+      BranchNode branch = (BranchNode) node;
+      int pos = reverse ? branch.lastPos() : branch.firstPos();
+      push(branch, pos);
+      node = branch.getChild(pos);
+    }
+    return (LeafNode) node;
+  }
+
+  private void advance() {
+    while (top >= 0) {
+      BranchNode branch = stack[top];
+      int pos = reverse ? branch.prevPos(positions[top]) : branch.nextPos(positions[top]);
+      if (pos != BranchNode.ILLEGAL_POS) {
+        positions[top] = pos;
+        next = descend(branch.getChild(pos));
+        return;
+      }
+      stack[top] = null;
+      top--;
+    }
+    next = null;
+  }
+
+  @Override
+  public LeafNodeIterator clone() {
+    try {
+      LeafNodeIterator x = (LeafNodeIterator) super.clone();
+      x.stack = this.stack.clone();
+      x.positions = this.positions.clone();
+      return x;
+    } catch (CloneNotSupportedException e) {
+      return null;// will not happen
+    }
+  }
+}
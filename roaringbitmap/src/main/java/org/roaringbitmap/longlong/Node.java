@@ -0,0 +1,33 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * A node of the adaptive radix tree used by {@link Roaring64Bitmap}. The tree is keyed by the 48
+ * high bits of the 64-bit values, consumed one byte at a time from the most significant byte, so
+ * that an in-order traversal visits the keys in unsigned order.
+ */
+abstract class Node {
+
+  // number of bytes in a key (48 bits)
+  static final int KEY_BYTES = 6;
+
+  /**
+   * Extract one byte of a 48-bit key.
+   *
+   * @param key the 48-bit key
+   * @param index byte index, 0 being the most significant byte
+   * @return the byte as an unsigned value
+   */
+  static int keyByte(long key, int index) {
+    return (int) (key >>> ((KEY_BYTES - 1 - index) << 3)) & 0xFF;
+  }
+
+  /**
+   * Estimate of the memory usage of this node, not counting its children.
+   *
+   * @return estimated memory usage.
+   */
+  abstract int getSizeInBytes();
+}
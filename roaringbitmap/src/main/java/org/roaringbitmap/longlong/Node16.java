@@ -0,0 +1,37 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Branch with 5 to 16 children.
+ */
+final class Node16 extends SortedBranchNode {
+
+  static final int CAPACITY = 16;
+
+  Node16(int depth, int prefixLength, long prefixKey) {
+    super(depth, prefixLength, prefixKey, CAPACITY);
+  }
+
+  @Override
+  BranchNode grow() {
+    Node48 n = new Node48(depth, prefixLength, prefixKey);
+    for (int i = 0; i < count; i++) {
+      n.insert(keys[i] & 0xFF, children[i]);
+    }
+    return n;
+  }
+
+  @Override
+  BranchNode shrinkIfNeeded() {
+    if (count >= Node4.CAPACITY) {
+      return this;
+    }
+    Node4 n = new Node4(depth, prefixLength, prefixKey);
+    for (int i = 0; i < count; i++) {
+      n.append(keys[i] & 0xFF, children[i]);
+    }
+    return n;
+  }
+}
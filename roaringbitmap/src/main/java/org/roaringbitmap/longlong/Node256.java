@@ -0,0 +1,94 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Branch with 49 to 256 children, directly indexed by the key byte. Positions are key bytes.
+ */
+final class Node256 extends BranchNode {
+
+  private final Node[] children = new Node[256];
+
+  Node256(int depth, int prefixLength, long prefixKey) {
+    super(depth, prefixLength, prefixKey);
+  }
+
+  @Override
+  int getChildPos(int keyByte) {
+    return children[keyByte] == null ? ILLEGAL_POS : keyByte;
+  }
+
+  @Override
+  int getChildKey(int pos) {
+    return pos;
+  }
+
+  @Override
+  Node getChild(int pos) {
+    return children[pos];
+  }
+
+  @Override
+  void replaceChild(int pos, Node child) {
+    children[pos] = child;
+  }
+
+  @Override
+  BranchNode insert(int keyByte, Node child) {
+    children[keyByte] = child;
+    count++;
+    return this;
+  }
+
+  @Override
+  BranchNode remove(int pos) {
+    children[pos] = null;
+    count--;
+    if (count >= Node48.CAPACITY - 12) {
+      return this;
+    }
+    Node48 n = new Node48(depth, prefixLength, prefixKey);
+    for (int b = 0; b < 256; b++) {
+      if (children[b] != null) {
+        n.insert(b, children[b]);
+      }
+    }
+    return n;
+  }
+
+  @Override
+  int ceilingPos(int keyByte) {
+    for (int b = keyByte; b < 256; b++) {
+      if (children[b] != null) {
+        return b;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int floorPos(int keyByte) {
+    for (int b = keyByte; b >= 0; b--) {
+      if (children[b] != null) {
+        return b;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int nextPos(int pos) {
+    return pos == 255 ? ILLEGAL_POS : ceilingPos(pos + 1);
+  }
+
+  @Override
+  int prevPos(int pos) {
+    return pos == 0 ? ILLEGAL_POS : floorPos(pos - 1);
+  }
+
+  @Override
+  int getSizeInBytes() {
+    return 16 + 24 + (16 + 8 * 256);
+  }
+}
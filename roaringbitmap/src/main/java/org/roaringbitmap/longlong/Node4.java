@@ -0,0 +1,31 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Branch with up to 4 children.
+ */
+final class Node4 extends SortedBranchNode {
+
+  static final int CAPACITY = 4;
+
+  Node4(int depth, int prefixLength, long prefixKey) {
+    super(depth, prefixLength, prefixKey, CAPACITY);
+  }
+
+  @Override
+  BranchNode grow() {
+    Node16 n = new Node16(depth, prefixLength, prefixKey);
+    for (int i = 0; i < count; i++) {
+      n.append(keys[i] & 0xFF, children[i]);
+    }
+    return n;
+  }
+
+  @Override
+  BranchNode shrinkIfNeeded() {
+    // a Node4 left with a single child is collapsed by the tree itself
+    return this;
+  }
+}
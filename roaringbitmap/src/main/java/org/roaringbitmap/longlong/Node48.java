@@ -0,0 +1,115 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Branch with 17 to 48 children: a 256-entry index maps a key byte to one of 48 child slots.
+ * Positions are key bytes.
+ */
+final class Node48 extends BranchNode {
+
+  static final int CAPACITY = 48;
+
+  // slot + 1 of the child for each key byte, 0 when absent
+  private final byte[] childIndex = new byte[256];
+
+  private final Node[] children = new Node[CAPACITY];
+
+  Node48(int depth, int prefixLength, long prefixKey) {
+    super(depth, prefixLength, prefixKey);
+  }
+
+  @Override
+  int getChildPos(int keyByte) {
+    return childIndex[keyByte] == 0 ? ILLEGAL_POS : keyByte;
+  }
+
+  @Override
+  int getChildKey(int pos) {
+    return pos;
+  }
+
+  @Override
+  Node getChild(int pos) {
+    return children[(childIndex[pos] & 0xFF) - 1];
+  }
+
+  @Override
+  void replaceChild(int pos, Node child) {
+    children[(childIndex[pos] & 0xFF) - 1] = child;
+  }
+
+  @Override
+  BranchNode insert(int keyByte, Node child) {
+    if (count == CAPACITY) {
+      Node256 n = new Node256(depth, prefixLength, prefixKey);
+      for (int b = 0; b < 256; b++) {
+        if (childIndex[b] != 0) {
+          n.insert(b, children[(childIndex[b] & 0xFF) - 1]);
+        }
+      }
+      return n.insert(keyByte, child);
+    }
+    int slot = 0;
+    while (children[slot] != null) {
+      slot++;
+    }
+    children[slot] = child;
+    childIndex[keyByte] = (byte) (slot + 1);
+    count++;
+    return this;
+  }
+
+  @Override
+  BranchNode remove(int pos) {
+    children[(childIndex[pos] & 0xFF) - 1] = null;
+    childIndex[pos] = 0;
+    count--;
+    if (count >= Node16.CAPACITY - 3) {
+      return this;
+    }
+    Node16 n = new Node16(depth, prefixLength, prefixKey);
+    for (int b = 0; b < 256; b++) {
+      if (childIndex[b] != 0) {
+        n.append(b, children[(childIndex[b] & 0xFF) - 1]);
+      }
+    }
+    return n;
+  }
+
+  @Override
+  int ceilingPos(int keyByte) {
+    for (int b = keyByte; b < 256; b++) {
+      if (childIndex[b] != 0) {
+        return b;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int floorPos(int keyByte) {
+    for (int b = keyByte; b >= 0; b--) {
+      if (childIndex[b] != 0) {
+        return b;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int nextPos(int pos) {
+    return pos == 255 ? ILLEGAL_POS : ceilingPos(pos + 1);
+  }
+
+  @Override
+  int prevPos(int pos) {
+    return pos == 0 ? ILLEGAL_POS : floorPos(pos - 1);
+  }
+
+  @Override
+  int getSizeInBytes() {
+    return 16 + 24 + (16 + 256) + (16 + 8 * CAPACITY);
+  }
+}
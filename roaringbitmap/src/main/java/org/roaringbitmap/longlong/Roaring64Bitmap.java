@@ -0,0 +1,906 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.roaringbitmap.ArrayContainer;
+import org.roaringbitmap.Container;
+import org.roaringbitmap.ContainerPointer;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.PeekableShortIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RunContainer;
+import org.roaringbitmap.ShortIterator;
+import org.roaringbitmap.Util;
+
+/**
+ * Roaring64Bitmap is a compressed bitmap of 64-bit values (treated as unsigned longs). The 48 high
+ * bits of each value are indexed by an adaptive radix tree whose leaves directly hold the usual
+ * containers (array, bitmap or run) of the 16 low bits: there is neither a boxed key nor an
+ * intermediate 32-bit bitmap, so sparse and dense 64-bit sets are both handled compactly.
+ *
+ * <pre>
+ * {@code
+ *      import org.roaringbitmap.longlong.*;
+ *
+ *      //...
+ *
+ *      Roaring64Bitmap rr = Roaring64Bitmap.bitmapOf(1, 2, 3, 1000, 1L << 40);
+ *      rr.addLong(-1L); // the largest unsigned long
+ *      long cardinality = rr.getLongCardinality(); // 6
+ * }
+ * </pre>
+ *
+ * The serialized form ({@link #serialize(DataOutput)}) follows the portable 64-bit Roaring
+ * format shared with the other Roaring implementations: the number of 32-bit buckets as an 8-byte
+ * little-endian integer, then for each bucket, in increasing order, its 32 high bits as a 4-byte
+ * little-endian integer followed by a RoaringBitmap in the usual portable format.
+ */
+// this class is not thread-safe
+public class Roaring64Bitmap implements Externalizable, LongBitmapDataProvider {
+
+  private static final long serialVersionUID = 1L;
+
+  // Not final to enable initialization in Externalizable.readObject
+  private Art art;
+
+  // The leaves in increasing key order, with their keys and the cumulated cardinalities of the
+  // leaves up to each of them, so that rank and select are binary searches. Built on demand, and
+  // dropped by any modification.
+  private transient LeafNode[] sortedLeaves = null;
+  private transient long[] sortedKeys = null;
+  private transient long[] sortedCumulatedCardinality = null;
+
+  /**
+   * Create an empty bitmap
+   */
+  public Roaring64Bitmap() {
+    art = new Art();
+  }
+
+  private static long high(long x) {
+    return x >>> 16;
+  }
+
+  private static short low(long x) {
+    return (short) x;
+  }
+
+  /**
+   * Generate a bitmap with the specified values set to true. The provided longs values don't have
+   * to be in sorted order, but it may be preferable to sort them from a performance point of view.
+   *
+   * @param dat set values
+   * @return a new bitmap
+   */
+  public static Roaring64Bitmap bitmapOf(final long... dat) {
+    final Roaring64Bitmap ans = new Roaring64Bitmap();
+    ans.add(dat);
+    return ans;
+  }
+
+  /**
+   * Set all the specified values to true. This can be expected to be slightly faster than calling
+   * "add" repeatedly. The provided integers values don't have to be in sorted order, but it may be
+   * preferable to sort them from a performance point of view.
+   *
+   * @param dat set values
+   */
+  public void add(long... dat) {
+    for (long oneLong : dat) {
+      addLong(oneLong);
+    }
+  }
+
+  @Override
+  public void addLong(long x) {
+    invalidateCumulatedCardinalities();
+    final long high = high(x);
+    LeafNode leaf = art.findLeaf(high);
+    if (leaf != null) {
+      leaf.container = leaf.container.add(low(x));
+    } else {
+      art.insert(high, new ArrayContainer().add(low(x)));
+    }
+  }
+
+  /**
+   * Add to the current bitmap all longs in [rangeStart,rangeEnd), using an unsigned
+   * interpretation.
+   *
+   * @param rangeStart inclusive beginning of range
+   * @param rangeEnd exclusive ending of range
+   */
+  public void add(final long rangeStart, final long rangeEnd) {
+    if (Long.compareUnsigned(rangeStart, rangeEnd) >= 0) {
+      return; // empty range
+    }
+    invalidateCumulatedCardinalities();
+    final long last = rangeEnd - 1;
+    final long highStart = high(rangeStart);
+    final long highEnd = high(last);
+    for (long high = highStart; Long.compareUnsigned(high, highEnd) <= 0; high++) {
+      final int containerStart = high == highStart ? (low(rangeStart) & 0xFFFF) : 0;
+      final int containerLast = high == highEnd ? (low(last) & 0xFFFF) : 0xFFFF;
+      LeafNode leaf = art.findLeaf(high);
+      if (leaf != null) {
+        leaf.container = leaf.container.iadd(containerStart, containerLast + 1);
+      } else {
+        art.insert(high, Container.rangeOfOnes(containerStart, containerLast + 1));
+      }
+      if (high == highEnd) {
+        break; // highEnd may be the largest 48-bit key
+      }
+    }
+  }
+
+  @Override
+  public void removeLong(long x) {
+    invalidateCumulatedCardinalities();
+    final long high = high(x);
+    LeafNode leaf = art.findLeaf(high);
+    if (leaf != null) {
+      Container c = leaf.container.remove(low(x));
+      if (c.isEmpty()) {
+        art.remove(high);
+      } else {
+        leaf.container = c;
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(long x) {
+    LeafNode leaf = art.findLeaf(high(x));
+    return leaf != null && leaf.container.contains(low(x));
+  }
+
+  @Override
+  public long getLongCardinality() {
+    if (sortedCumulatedCardinality != null) {
+      int size = sortedCumulatedCardinality.length;
+      return size == 0 ? 0L : sortedCumulatedCardinality[size - 1];
+    }
+    long cardinality = 0L;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      cardinality += it.next().container.getCardinality();
+    }
+    return cardinality;
+  }
+
+  /**
+   * Returns the cardinality as a (signed) int. Cardinalities from 2^31 on, which would only fit
+   * in an unsigned int, are rejected: use {@link #getLongCardinality()} for them.
+   *
+   * @return the cardinality as an int
+   * @throws UnsupportedOperationException if the cardinality is larger than Integer.MAX_VALUE
+   */
+  public int getIntCardinality() throws UnsupportedOperationException {
+    long cardinality = getLongCardinality();
+    if (cardinality > Integer.MAX_VALUE) {
+      throw new UnsupportedOperationException(
+          "Can not call .getIntCardinality as the cardinality is bigger than Integer.MAX_VALUE");
+    }
+    return (int) cardinality;
+  }
+
+  @Override
+  public void forEach(final LongConsumer lc) {
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode leaf = it.next();
+      final long base = leaf.key << 16;
+      leaf.container.forEach((short) 0, new IntConsumer() {
+        @Override
+        public void accept(int low) {
+          lc.accept(base | low);
+        }
+      });
+    }
+  }
+
+  /**
+   * For better performance, consider the Use the {@link #forEach forEach} method.
+   *
+   * @return a custom iterator over set bits, the bits are traversed in ascending unsigned order
+   */
+  @Override
+  public PeekableLongIterator getLongIterator() {
+    return new ForwardLongIterator();
+  }
+
+  @Override
+  public LongIterator getReverseLongIterator() {
+    return new ReverseLongIterator();
+  }
+
+  /**
+   * Rank returns the number of integers that are smaller or equal to x (Rank(infinity) would be
+   * GetCardinality()), using an unsigned order.
+   *
+   * @param x upper limit
+   *
+   * @return the rank
+   */
+  @Override
+  public long rankLong(long x) {
+    ensureCumulatedCardinalities();
+    // keys are 48-bit, so that the signed order is the unsigned one
+    final int index = Arrays.binarySearch(sortedKeys, high(x));
+    if (index >= 0) {
+      final long previous = index == 0 ? 0L : sortedCumulatedCardinality[index - 1];
+      return previous + sortedLeaves[index].container.rank(low(x));
+    }
+    final int insertionPoint = -index - 1;
+    return insertionPoint == 0 ? 0L : sortedCumulatedCardinality[insertionPoint - 1];
+  }
+
+  /**
+   * Return the jth value stored in this bitmap.
+   *
+   * @param j index of the value
+   *
+   * @return the value
+   * @throws IllegalArgumentException if j is out of the bounds of the bitmap cardinality
+   */
+  @Override
+  public long select(final long j) throws IllegalArgumentException {
+    ensureCumulatedCardinalities();
+    final int size = sortedLeaves.length;
+    if (j >= 0 && size > 0 && j < sortedCumulatedCardinality[size - 1]) {
+      // the first leaf whose cumulated cardinality is larger than j
+      int low = 0;
+      int high = size - 1;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (sortedCumulatedCardinality[middle] > j) {
+          high = middle;
+        } else {
+          low = middle + 1;
+        }
+      }
+      final LeafNode leaf = sortedLeaves[low];
+      final long left = j - (low == 0 ? 0L : sortedCumulatedCardinality[low - 1]);
+      return (leaf.key << 16) | (leaf.container.select((int) left) & 0xFFFF);
+    }
+    // see org.roaringbitmap.buffer.ImmutableRoaringBitmap.select(int)
+    throw new IllegalArgumentException(
+        "select " + j + " when the cardinality is " + this.getLongCardinality());
+  }
+
+  private void invalidateCumulatedCardinalities() {
+    sortedLeaves = null;
+    sortedKeys = null;
+    sortedCumulatedCardinality = null;
+  }
+
+  private void ensureCumulatedCardinalities() {
+    if (sortedLeaves != null) {
+      return;
+    }
+    LeafNode[] leaves = new LeafNode[4];
+    long[] keys = new long[4];
+    long[] cumulated = new long[4];
+    int size = 0;
+    long cardinality = 0L;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      if (size == leaves.length) {
+        leaves = Arrays.copyOf(leaves, 2 * size);
+        keys = Arrays.copyOf(keys, 2 * size);
+        cumulated = Arrays.copyOf(cumulated, 2 * size);
+      }
+      LeafNode leaf = it.next();
+      cardinality += leaf.container.getCardinality();
+      leaves[size] = leaf;
+      keys[size] = leaf.key;
+      cumulated[size] = cardinality;
+      size++;
+    }
+    sortedLeaves = Arrays.copyOf(leaves, size);
+    sortedKeys = Arrays.copyOf(keys, size);
+    sortedCumulatedCardinality = Arrays.copyOf(cumulated, size);
+  }
+
+  /**
+   * Get the first (smallest) integer in this bitmap, using an unsigned order.
+   *
+   * @return the first value
+   * @throws NoSuchElementException if empty
+   */
+  public long first() {
+    LeafNode leaf = art.first();
+    if (leaf == null) {
+      throw new NoSuchElementException("Empty bitmap");
+    }
+    return (leaf.key << 16) | leaf.container.first();
+  }
+
+  /**
+   * Get the last (largest) integer in this bitmap, using an unsigned order.
+   *
+   * @return the last value
+   * @throws NoSuchElementException if empty
+   */
+  public long last() {
+    LeafNode leaf = art.last();
+    if (leaf == null) {
+      throw new NoSuchElementException("Empty bitmap");
+    }
+    return (leaf.key << 16) | leaf.container.last();
+  }
+
+  @Override
+  public int getSizeInBytes() {
+    return (int) getLongSizeInBytes();
+  }
+
+  @Override
+  public long getLongSizeInBytes() {
+    long size = 8 + art.getSizeInBytes();
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      size += it.next().container.getSizeInBytes();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return art.isEmpty();
+  }
+
+  @Override
+  public ImmutableLongBitmapDataProvider limit(long x) {
+    final Roaring64Bitmap answer = new Roaring64Bitmap();
+    long left = x;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (left > 0 && it.hasNext()) {
+      LeafNode leaf = it.next();
+      int cardinality = leaf.container.getCardinality();
+      if (cardinality <= left) {
+        answer.art.insert(leaf.key, leaf.container.clone());
+        left -= cardinality;
+      } else {
+        answer.art.insert(leaf.key, leaf.container.limit((int) left));
+        left = 0;
+      }
+    }
+    return answer;
+  }
+
+  /**
+   * Use a run-length encoding where it is estimated as more space efficient
+   *
+   * @return whether a change was applied
+   */
+  public boolean runOptimize() {
+    boolean hasChanged = false;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode leaf = it.next();
+      Container c = leaf.container.runOptimize();
+      if (c != leaf.container) {
+        leaf.container = c;
+        hasChanged = true;
+      }
+    }
+    return hasChanged;
+  }
+
+  @Override
+  public void trim() {
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      it.next().container.trim();
+    }
+  }
+
+  /**
+   * reset to an empty bitmap; result occupies as much space a newly created bitmap.
+   */
+  public void clear() {
+    invalidateCumulatedCardinalities();
+    art.clear();
+  }
+
+  /**
+   * Return the set values as an array, if the cardinality is smaller than 2147483648. The long
+   * values are in sorted order.
+   *
+   * @return array representing the set values.
+   */
+  @Override
+  public long[] toArray() {
+    long cardinality = this.getLongCardinality();
+    if (cardinality > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The cardinality does not fit in an array");
+    }
+    final long[] array = new long[(int) cardinality];
+    int pos = 0;
+    LongIterator it = getLongIterator();
+    while (it.hasNext()) {
+      array[pos++] = it.next();
+    }
+    return array;
+  }
+
+  /**
+   * In-place bitwise OR (union) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void or(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      return;
+    }
+    invalidateCumulatedCardinalities();
+    LeafNodeIterator it = x2.art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode other = it.next();
+      LeafNode leaf = art.findLeaf(other.key);
+      if (leaf != null) {
+        leaf.container = leaf.container.ior(other.container);
+      } else {
+        art.insert(other.key, other.container.clone());
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise XOR (symmetrical difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void xor(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    invalidateCumulatedCardinalities();
+    LeafNodeIterator it = x2.art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode other = it.next();
+      LeafNode leaf = art.findLeaf(other.key);
+      if (leaf == null) {
+        art.insert(other.key, other.container.clone());
+      } else {
+        Container c = leaf.container.ixor(other.container);
+        if (c.isEmpty()) {
+          art.remove(other.key);
+        } else {
+          leaf.container = c;
+        }
+      }
+    }
+  }
+
+  /**
+   * In-place bitwise AND (intersection) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void and(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      return;
+    }
+    removeEmptied(new KeyFilter() {
+      @Override
+      public Container apply(LeafNode leaf) {
+        LeafNode other = x2.art.findLeaf(leaf.key);
+        return other == null ? null : leaf.container.iand(other.container);
+      }
+    });
+  }
+
+  /**
+   * In-place bitwise ANDNOT (difference) operation. The current bitmap is modified.
+   *
+   * @param x2 other bitmap
+   */
+  public void andNot(final Roaring64Bitmap x2) {
+    if (x2 == this) {
+      clear();
+      return;
+    }
+    removeEmptied(new KeyFilter() {
+      @Override
+      public Container apply(LeafNode leaf) {
+        LeafNode other = x2.art.findLeaf(leaf.key);
+        return other == null ? leaf.container : leaf.container.iandNot(other.container);
+      }
+    });
+  }
+
+  private interface KeyFilter {
+    // the new container of the leaf, null or empty to drop the key
+    Container apply(LeafNode leaf);
+  }
+
+  private void removeEmptied(KeyFilter filter) {
+    invalidateCumulatedCardinalities();
+    // the tree cannot be restructured while it is iterated: emptied keys are removed afterwards
+    long[] emptied = new long[4];
+    int nbEmptied = 0;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode leaf = it.next();
+      Container c = filter.apply(leaf);
+      if (c == null || c.isEmpty()) {
+        if (nbEmptied == emptied.length) {
+          emptied = Arrays.copyOf(emptied, 2 * nbEmptied);
+        }
+        emptied[nbEmptied++] = leaf.key;
+      } else {
+        leaf.container = c;
+      }
+    }
+    for (int i = 0; i < nbEmptied; i++) {
+      art.remove(emptied[i]);
+    }
+  }
+
+  /**
+   * Serialize this bitmap, in the portable 64-bit format described in the class documentation.
+   *
+   * Consider calling {@link #runOptimize} before serialization to improve compression.
+   *
+   * The current bitmap is not modified.
+   *
+   * @param out the DataOutput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void serialize(DataOutput out) throws IOException {
+    out.writeLong(Long.reverseBytes(numberOfBuckets()));
+    LeafNode[] bucket = new LeafNode[1 << 16];
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      final long bucketHigh = it.peekNext().key >>> 16;
+      int size = 0;
+      while (it.hasNext() && (it.peekNext().key >>> 16) == bucketHigh) {
+        bucket[size++] = it.next();
+      }
+      out.writeInt(Integer.reverseBytes((int) bucketHigh));
+      serializeBucket(out, bucket, size);
+    }
+  }
+
+  private long numberOfBuckets() {
+    long count = 0;
+    long previous = -1L;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      long bucketHigh = it.next().key >>> 16;
+      if (count == 0 || bucketHigh != previous) {
+        count++;
+        previous = bucketHigh;
+      }
+    }
+    return count;
+  }
+
+  // see org.roaringbitmap.RoaringArray.serialize(DataOutput)
+  private static void serializeBucket(DataOutput out, LeafNode[] bucket, int size)
+      throws IOException {
+    int startOffset;
+    boolean hasrun = hasRunContainer(bucket, size);
+    if (hasrun) {
+      out.writeInt(Integer.reverseBytes(SERIAL_COOKIE | ((size - 1) << 16)));
+      byte[] bitmapOfRunContainers = new byte[(size + 7) / 8];
+      for (int i = 0; i < size; ++i) {
+        if (bucket[i].container instanceof RunContainer) {
+          bitmapOfRunContainers[i / 8] |= (1 << (i % 8));
+        }
+      }
+      out.write(bitmapOfRunContainers);
+      if (size < NO_OFFSET_THRESHOLD) {
+        startOffset = 4 + 4 * size + bitmapOfRunContainers.length;
+      } else {
+        startOffset = 4 + 8 * size + bitmapOfRunContainers.length;
+      }
+    } else { // backwards compatibility
+      out.writeInt(Integer.reverseBytes(SERIAL_COOKIE_NO_RUNCONTAINER));
+      out.writeInt(Integer.reverseBytes(size));
+      startOffset = 4 + 4 + 4 * size + 4 * size;
+    }
+    for (int k = 0; k < size; ++k) {
+      out.writeShort(Short.reverseBytes((short) bucket[k].key));
+      out.writeShort(Short.reverseBytes((short) (bucket[k].container.getCardinality() - 1)));
+    }
+    if ((!hasrun) || (size >= NO_OFFSET_THRESHOLD)) {
+      // writing the containers offsets
+      for (int k = 0; k < size; k++) {
+        out.writeInt(Integer.reverseBytes(startOffset));
+        startOffset = startOffset + getArraySizeInBytes(bucket[k].container);
+      }
+    }
+    for (int k = 0; k < size; ++k) {
+      Container c = bucket[k].container;
+      if (c instanceof ArrayContainer) {
+        // unlike Container.serialize, the portable format does not repeat the cardinality
+        ShortIterator values = c.getShortIterator();
+        while (values.hasNext()) {
+          out.writeShort(Short.reverseBytes(values.next()));
+        }
+      } else {
+        c.serialize(out);
+      }
+    }
+  }
+
+  // same values as org.roaringbitmap.RoaringArray
+  private static final short SERIAL_COOKIE_NO_RUNCONTAINER = 12346;
+  private static final short SERIAL_COOKIE = 12347;
+  private static final int NO_OFFSET_THRESHOLD = 4;
+
+  private static boolean hasRunContainer(LeafNode[] bucket, int size) {
+    for (int k = 0; k < size; ++k) {
+      if (bucket[k].container instanceof RunContainer) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int getArraySizeInBytes(Container c) {
+    if (c instanceof ArrayContainer) {
+      return 2 * c.getCardinality();
+    }
+    // bitmap and run containers are written as by Container.serialize
+    return c.serializedSizeInBytes();
+  }
+
+  private static int headerSize(boolean hasrun, int size) {
+    if (hasrun) {
+      if (size < NO_OFFSET_THRESHOLD) { // for small bitmaps, we omit the offsets
+        return 4 + (size + 7) / 8 + 4 * size;
+      }
+      return 4 + (size + 7) / 8 + 8 * size;// - 4 because we pack the size with the cookie
+    } else {
+      return 4 + 4 + 8 * size;
+    }
+  }
+
+  /**
+   * Deserialize (retrieve) this bitmap, in the portable 64-bit format described in the class
+   * documentation.
+   *
+   * The current bitmap is overwritten.
+   *
+   * @param in the DataInput stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deserialize(DataInput in) throws IOException {
+    this.clear();
+    final long nbBuckets = Long.reverseBytes(in.readLong());
+    if (nbBuckets < 0 || nbBuckets > (1L << 32)) {
+      throw new IOException("Unsupported number of 32-bit buckets: " + nbBuckets);
+    }
+    final RoaringBitmap bucket = new RoaringBitmap();
+    for (long i = 0; i < nbBuckets; i++) {
+      final long bucketHigh = Util.toUnsignedLong(Integer.reverseBytes(in.readInt()));
+      bucket.deserialize(in);
+      ContainerPointer cp = bucket.getContainerPointer();
+      while (cp.getContainer() != null) {
+        art.insert((bucketHigh << 16) | (cp.key() & 0xFFFF), cp.getContainer());
+        cp.advance();
+      }
+    }
+  }
+
+  @Override
+  public long serializedSizeInBytes() {
+    long nbBytes = 8L;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      final long bucketHigh = it.peekNext().key >>> 16;
+      int size = 0;
+      boolean hasrun = false;
+      while (it.hasNext() && (it.peekNext().key >>> 16) == bucketHigh) {
+        Container c = it.next().container;
+        hasrun |= c instanceof RunContainer;
+        nbBytes += getArraySizeInBytes(c);
+        size++;
+      }
+      nbBytes += 4 + headerSize(hasrun, size);
+    }
+    return nbBytes;
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    serialize(out);
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    if (art == null) {
+      art = new Art();
+    }
+    deserialize(in);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    LeafNodeIterator it = art.leafIterator(false);
+    while (it.hasNext()) {
+      LeafNode leaf = it.next();
+      hash = 31 * hash + Long.hashCode(leaf.key);
+      hash = 31 * hash + leaf.container.hashCode();
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Roaring64Bitmap)) {
+      return false;
+    }
+    LeafNodeIterator it1 = art.leafIterator(false);
+    LeafNodeIterator it2 = ((Roaring64Bitmap) obj).art.leafIterator(false);
+    while (it1.hasNext() && it2.hasNext()) {
+      LeafNode l1 = it1.next();
+      LeafNode l2 = it2.next();
+      if (l1.key != l2.key || !l1.container.equals(l2.container)) {
+        return false;
+      }
+    }
+    return !it1.hasNext() && !it2.hasNext();
+  }
+
+  /**
+   * A string describing the bitmap.
+   *
+   * @return the string
+   */
+  @Override
+  public String toString() {
+    final StringBuilder answer = new StringBuilder();
+    final LongIterator i = this.getLongIterator();
+    answer.append("{");
+    if (i.hasNext()) {
+      answer.append(Long.toUnsignedString(i.next()));
+    }
+    while (i.hasNext()) {
+      answer.append(",");
+      // to avoid using too much memory, we limit the size
+      if (answer.length() > 0x80000) {
+        answer.append("...");
+        break;
+      }
+      answer.append(Long.toUnsignedString(i.next()));
+    }
+    answer.append("}");
+    return answer.toString();
+  }
+
+  private final class ForwardLongIterator implements PeekableLongIterator {
+
+    private LeafNodeIterator leaves = art.leafIterator(false);
+
+    private long high;
+
+    private PeekableShortIterator iter;
+
+    @Override
+    public boolean hasNext() {
+      while (iter == null || !iter.hasNext()) {
+        if (!leaves.hasNext()) {
+          return false;
+        }
+        LeafNode leaf = leaves.next();
+        high = leaf.key << 16;
+        iter = leaf.container.getShortIterator();
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return high | (iter.next() & 0xFFFF);
+    }
+
+    @Override
+    public long peekNext() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return high | (iter.peekNext() & 0xFFFF);
+    }
+
+    @Override
+    public void advanceIfNeeded(long minval) {
+      final long minHigh = Roaring64Bitmap.high(minval);
+      if (iter != null && Long.compareUnsigned(high >>> 16, minHigh) >= 0) {
+        if ((high >>> 16) == minHigh) {
+          iter.advanceIfNeeded(low(minval));
+        }
+        return;
+      }
+      iter = null;
+      leaves.seek(minHigh);
+      if (leaves.hasNext() && leaves.peekNext().key == minHigh) {
+        LeafNode leaf = leaves.next();
+        high = leaf.key << 16;
+        iter = leaf.container.getShortIterator();
+        iter.advanceIfNeeded(low(minval));
+      }
+    }
+
+    @Override
+    public PeekableLongIterator clone() {
+      try {
+        ForwardLongIterator x = (ForwardLongIterator) super.clone();
+        x.leaves = this.leaves.clone();
+        if (this.iter != null) {
+          x.iter = this.iter.clone();
+        }
+        return x;
+      } catch (CloneNotSupportedException e) {
+        return null;// will not happen
+      }
+    }
+  }
+
+  private final class ReverseLongIterator implements LongIterator {
+
+    private LeafNodeIterator leaves = art.leafIterator(true);
+
+    private long high;
+
+    private ShortIterator iter;
+
+    @Override
+    public boolean hasNext() {
+      while (iter == null || !iter.hasNext()) {
+        if (!leaves.hasNext()) {
+          return false;
+        }
+        LeafNode leaf = leaves.next();
+        high = leaf.key << 16;
+        iter = leaf.container.getReverseShortIterator();
+      }
+      return true;
+    }
+
+    @Override
+    public long next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return high | (iter.next() & 0xFFFF);
+    }
+
+    @Override
+    public LongIterator clone() {
+      try {
+        ReverseLongIterator x = (ReverseLongIterator) super.clone();
+        x.leaves = this.leaves.clone();
+        if (this.iter != null) {
+          x.iter = this.iter.clone();
+        }
+        return x;
+      } catch (CloneNotSupportedException e) {
+        return null;// will not happen
+      }
+    }
+  }
+}
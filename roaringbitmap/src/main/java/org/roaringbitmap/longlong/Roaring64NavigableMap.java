@@ -16,6 +16,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -1052,6 +1053,166 @@ public class Roaring64NavigableMap implements Externalizable, LongBitmapDataProv
     return lowBitmap.contains(low);
   }
 
+  /**
+   * Computes the number of values in the interval [start,end), longs being ordered as signed or
+   * unsigned depending on how the bitmap was built. Only the bitmaps overlapping the interval are
+   * visited.
+   *
+   * @param start inclusive beginning of the range
+   * @param end exclusive ending of the range
+   * @return the number of values in the range
+   */
+  public long rangeCardinality(long start, long end) {
+    if (signedLongs ? start >= end : Long.compareUnsigned(start, end) >= 0) {
+      return 0;
+    }
+    final long last = end - 1;
+    final int startHigh = RoaringIntPacking.high(start);
+    final int lastHigh = RoaringIntPacking.high(last);
+    long cardinality = 0;
+    for (Entry<Integer, BitmapDataProvider> entry : highToBitmap
+        .subMap(startHigh, true, lastHigh, true).entrySet()) {
+      final int high = entry.getKey();
+      final long lowStart =
+          high == startHigh ? Integer.toUnsignedLong(RoaringIntPacking.low(start)) : 0;
+      final long lowEnd =
+          high == lastHigh ? Integer.toUnsignedLong(RoaringIntPacking.low(last)) + 1 : 1L << 32;
+      cardinality += entry.getValue().rangeCardinality(lowStart, lowEnd);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Checks whether the cardinality of the bitmap is greater than the threshold, stopping as soon
+   * as enough values have been counted.
+   *
+   * @param threshold the threshold
+   * @return true if the cardinality is greater than the threshold
+   */
+  public boolean cardinalityExceeds(long threshold) {
+    if (doCacheCardinalities) {
+      return getLongCardinality() > threshold;
+    }
+    long cardinality = 0;
+    for (BitmapDataProvider bitmap : highToBitmap.values()) {
+      cardinality += bitmap.getLongCardinality();
+      if (cardinality > threshold) {
+        return true;
+      }
+    }
+    return threshold < 0;
+  }
+
+  /**
+   * Returns the first value in the bitmap which is greater than or equal to fromValue, longs
+   * being ordered as signed or unsigned depending on how the bitmap was built.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long nextValue(long fromValue) {
+    int high = RoaringIntPacking.high(fromValue);
+    BitmapDataProvider lowBitmap = highToBitmap.get(high);
+    if (lowBitmap != null) {
+      long low = lowBitmap.nextValue(RoaringIntPacking.low(fromValue));
+      if (low != -1L) {
+        return RoaringIntPacking.pack(high, (int) low);
+      }
+    }
+    for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.tailMap(high, false)
+        .entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        return RoaringIntPacking.pack(entry.getKey(), entry.getValue().first());
+      }
+    }
+    throw new NoSuchElementException("No value greater than or equal to " + fromValue);
+  }
+
+  /**
+   * Returns the last value in the bitmap which is smaller than or equal to fromValue, longs
+   * being ordered as signed or unsigned depending on how the bitmap was built.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long previousValue(long fromValue) {
+    int high = RoaringIntPacking.high(fromValue);
+    BitmapDataProvider lowBitmap = highToBitmap.get(high);
+    if (lowBitmap != null) {
+      long low = lowBitmap.previousValue(RoaringIntPacking.low(fromValue));
+      if (low != -1L) {
+        return RoaringIntPacking.pack(high, (int) low);
+      }
+    }
+    for (Entry<Integer, BitmapDataProvider> entry : highToBitmap.headMap(high, false)
+        .descendingMap().entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        return RoaringIntPacking.pack(entry.getKey(), entry.getValue().last());
+      }
+    }
+    throw new NoSuchElementException("No value smaller than or equal to " + fromValue);
+  }
+
+  /**
+   * Returns the first value missing from the bitmap which is greater than or equal to fromValue,
+   * longs being ordered as signed or unsigned depending on how the bitmap was built.
+   *
+   * @param fromValue the lower bound (inclusive)
+   * @return the value
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long nextAbsentValue(long fromValue) {
+    int high = RoaringIntPacking.high(fromValue);
+    int low = RoaringIntPacking.low(fromValue);
+    while (true) {
+      BitmapDataProvider lowBitmap = highToBitmap.get(high);
+      if (lowBitmap == null) {
+        return RoaringIntPacking.pack(high, low);
+      }
+      long absent = lowBitmap.nextAbsentValue(low);
+      if (absent != -1L) {
+        return RoaringIntPacking.pack(high, (int) absent);
+      }
+      if (high == highestHigh()) {
+        throw new NoSuchElementException("No absent value greater than or equal to " + fromValue);
+      }
+      ++high;
+      low = 0;
+    }
+  }
+
+  /**
+   * Returns the last value missing from the bitmap which is smaller than or equal to fromValue,
+   * longs being ordered as signed or unsigned depending on how the bitmap was built.
+   *
+   * @param fromValue the upper bound (inclusive)
+   * @return the value
+   * @throws NoSuchElementException if there is no such value
+   */
+  public long previousAbsentValue(long fromValue) {
+    // the lowest high is right after the highest one
+    final int lowestHigh = highestHigh() + 1;
+    int high = RoaringIntPacking.high(fromValue);
+    int low = RoaringIntPacking.low(fromValue);
+    while (true) {
+      BitmapDataProvider lowBitmap = highToBitmap.get(high);
+      if (lowBitmap == null) {
+        return RoaringIntPacking.pack(high, low);
+      }
+      long absent = lowBitmap.previousAbsentValue(low);
+      if (absent != -1L) {
+        return RoaringIntPacking.pack(high, (int) absent);
+      }
+      if (high == lowestHigh) {
+        throw new NoSuchElementException("No absent value smaller than or equal to " + fromValue);
+      }
+      --high;
+      low = -1;
+    }
+  }
+
 
   @Override
   public int getSizeInBytes() {
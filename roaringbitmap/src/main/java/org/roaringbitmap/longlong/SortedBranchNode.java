@@ -0,0 +1,127 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+package org.roaringbitmap.longlong;
+
+/**
+ * Small branch: the key bytes are kept sorted in a short array, positions are array indexes.
+ */
+abstract class SortedBranchNode extends BranchNode {
+
+  final byte[] keys;
+
+  final Node[] children;
+
+  SortedBranchNode(int depth, int prefixLength, long prefixKey, int capacity) {
+    super(depth, prefixLength, prefixKey);
+    this.keys = new byte[capacity];
+    this.children = new Node[capacity];
+  }
+
+  /**
+   * @return a larger node holding the same children
+   */
+  abstract BranchNode grow();
+
+  /**
+   * @return this node, or a smaller node if it has become too sparse
+   */
+  abstract BranchNode shrinkIfNeeded();
+
+  // used when copying from another node, in increasing key order
+  final void append(int keyByte, Node child) {
+    keys[count] = (byte) keyByte;
+    children[count] = child;
+    count++;
+  }
+
+  @Override
+  int getChildPos(int keyByte) {
+    for (int i = 0; i < count; i++) {
+      int k = keys[i] & 0xFF;
+      if (k == keyByte) {
+        return i;
+      }
+      if (k > keyByte) {
+        break;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int getChildKey(int pos) {
+    return keys[pos] & 0xFF;
+  }
+
+  @Override
+  Node getChild(int pos) {
+    return children[pos];
+  }
+
+  @Override
+  void replaceChild(int pos, Node child) {
+    children[pos] = child;
+  }
+
+  @Override
+  BranchNode insert(int keyByte, Node child) {
+    if (count == keys.length) {
+      return grow().insert(keyByte, child);
+    }
+    int i = count;
+    while (i > 0 && (keys[i - 1] & 0xFF) > keyByte) {
+      keys[i] = keys[i - 1];
+      children[i] = children[i - 1];
+      i--;
+    }
+    keys[i] = (byte) keyByte;
+    children[i] = child;
+    count++;
+    return this;
+  }
+
+  @Override
+  BranchNode remove(int pos) {
+    System.arraycopy(keys, pos + 1, keys, pos, count - pos - 1);
+    System.arraycopy(children, pos + 1, children, pos, count - pos - 1);
+    count--;
+    children[count] = null;
+    return shrinkIfNeeded();
+  }
+
+  @Override
+  int ceilingPos(int keyByte) {
+    for (int i = 0; i < count; i++) {
+      if ((keys[i] & 0xFF) >= keyByte) {
+        return i;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int floorPos(int keyByte) {
+    for (int i = count - 1; i >= 0; i--) {
+      if ((keys[i] & 0xFF) <= keyByte) {
+        return i;
+      }
+    }
+    return ILLEGAL_POS;
+  }
+
+  @Override
+  int nextPos(int pos) {
+    return pos + 1 < count ? pos + 1 : ILLEGAL_POS;
+  }
+
+  @Override
+  int prevPos(int pos) {
+    return pos > 0 ? pos - 1 : ILLEGAL_POS;
+  }
+
+  @Override
+  int getSizeInBytes() {
+    return 16 + 24 + (16 + keys.length) + (16 + 8 * children.length);
+  }
+}
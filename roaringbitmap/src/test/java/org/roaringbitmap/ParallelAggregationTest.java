@@ -5,6 +5,8 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
@@ -192,5 +194,91 @@ public class ParallelAggregationTest {
     Assert.assertEquals(FastAggregation.xor(one, two, three), ParallelAggregation.xor(one, two, three));
   }
 
+  @Test
+  public void singleContainerAND() {
+    RoaringBitmap one = testCase().withRunAt(0).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).build();
+    RoaringBitmap three = testCase().withArrayAt(0).build();
+    Assert.assertEquals(FastAggregation.and(one, two, three), ParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void missingMiddleContainerAND() {
+    RoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build();
+    RoaringBitmap three = testCase().withArrayAt(0).withRunAt(1).withBitmapAt(2).build();
+    Assert.assertEquals(FastAggregation.and(one, two, three), ParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void disjointAND() {
+    RoaringBitmap one = testCase().withRunAt(0).withArrayAt(2).build();
+    RoaringBitmap two = testCase().withBitmapAt(1).build();
+    RoaringBitmap three = testCase().withArrayAt(3).build();
+    Assert.assertTrue(ParallelAggregation.and(one, two, three).isEmpty());
+  }
+
+  @Test
+  public void wideAndInPool() {
+    RoaringBitmap[] input = IntStream.range(0, 200)
+            .mapToObj(i -> testCase().withBitmapAt(0).withBitmapAt(1).withRunAt(2).withBitmapAt(7)
+                    .withBitmapAt((1 << 15) | 3).build())
+            .toArray(RoaringBitmap[]::new);
+    Assert.assertEquals(FastAggregation.and(input), ParallelAggregation.and(POOL, input));
+    Assert.assertEquals(FastAggregation.and(input), ParallelAggregation.and(NO_PARALLELISM_AVAILABLE, input));
+  }
+
+  @Test
+  public void andNot() {
+    RoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).withBitmapAt(5).build();
+    RoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build();
+    RoaringBitmap three = testCase().withArrayAt(0).withRunAt(1).withRunAt((1 << 15) | 1).build();
+    RoaringBitmap expected = RoaringBitmap.andNot(one, RoaringBitmap.or(two, three));
+    Assert.assertEquals(expected, ParallelAggregation.andNot(one, two, three));
+    Assert.assertEquals(expected, ParallelAggregation.andNot(POOL, one, two, three));
+    Assert.assertEquals(one, ParallelAggregation.andNot(POOL, one));
+    Assert.assertTrue(ParallelAggregation.andNot(POOL, one, one, two).isEmpty());
+  }
+
+  @Test
+  public void hugeOrInPoolAndExecutor() {
+    RoaringBitmap[] input = IntStream.range(0, 1999)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build())
+            .toArray(RoaringBitmap[]::new);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      RoaringBitmap expected = FastAggregation.or(input);
+      Assert.assertEquals(expected, ParallelAggregation.or(POOL, input));
+      Assert.assertEquals(expected, ParallelAggregation.or(NO_PARALLELISM_AVAILABLE, input));
+      Assert.assertEquals(expected, ParallelAggregation.or(executor, 3, input));
+      Assert.assertEquals(expected, ParallelAggregation.or(executor, 16, input));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void xorAndAndNotInExecutor() {
+    RoaringBitmap one = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(4).build();
+    RoaringBitmap two = testCase().withBitmapAt(1).withArrayAt(4).build();
+    RoaringBitmap three = testCase().withArrayAt(1).withRunAt((1 << 15) | 3).build();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Assert.assertEquals(FastAggregation.xor(one, two, three), ParallelAggregation.xor(POOL, one, two, three));
+      Assert.assertEquals(FastAggregation.xor(one, two, three),
+              ParallelAggregation.xor(executor, 2, one, two, three));
+      Assert.assertEquals(FastAggregation.xor(one, one), ParallelAggregation.xor(executor, 2, one, one));
+      Assert.assertEquals(FastAggregation.and(one, two), ParallelAggregation.and(executor, 2, one, two));
+      Assert.assertEquals(RoaringBitmap.andNot(one, RoaringBitmap.or(two, three)),
+              ParallelAggregation.andNot(executor, 4, one, two, three));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void executorNeedsParallelism() {
+    ParallelAggregation.or(Runnable::run, 0, testCase().withArrayAt(0).build());
+  }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBatchIterator {
+
+  private static int[] drain(BatchIterator it, int bufferSize) {
+    int[] buffer = new int[bufferSize];
+    int[] result = new int[16];
+    int size = 0;
+    while (it.hasNext()) {
+      int n = it.nextBatch(buffer);
+      assertTrue(n > 0);
+      if (size + n > result.length) {
+        result = Arrays.copyOf(result, Math.max(2 * result.length, size + n));
+      }
+      System.arraycopy(buffer, 0, result, size, n);
+      size += n;
+    }
+    assertEquals(0, it.nextBatch(buffer));
+    return Arrays.copyOf(result, size);
+  }
+
+  private static RoaringBitmap mixed() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    Random random = new Random(1234);
+    // array container
+    for (int k = 0; k < 1000; ++k) {
+      bitmap.add(random.nextInt(1 << 16));
+    }
+    // bitmap container
+    for (int k = 0; k < 20000; ++k) {
+      bitmap.add((1 << 16) + random.nextInt(1 << 16));
+    }
+    // run container
+    bitmap.add(5L << 16, (5L << 16) + 30000);
+    bitmap.add((5L << 16) + 40000, (5L << 16) + 40003);
+    // negative values
+    bitmap.add(-1);
+    bitmap.add(-70000);
+    bitmap.runOptimize();
+    return bitmap;
+  }
+
+  @Test
+  public void testEmpty() {
+    BatchIterator it = new RoaringBitmap().getBatchIterator();
+    assertFalse(it.hasNext());
+    assertEquals(0, it.nextBatch(new int[10]));
+  }
+
+  @Test
+  public void testMatchesToArray() {
+    RoaringBitmap bitmap = mixed();
+    for (int bufferSize : new int[] {1, 3, 64, 255, 256, 4096, 65536, 1 << 17}) {
+      assertArrayEquals(bitmap.toArray(), drain(bitmap.getBatchIterator(), bufferSize));
+    }
+  }
+
+  @Test
+  public void testContainerBatchIterators() {
+    RoaringBitmap bitmap = mixed();
+    ContainerPointer cp = bitmap.getContainerPointer();
+    while (cp.getContainer() != null) {
+      Container c = cp.getContainer();
+      int key = Util.toIntUnsigned(cp.key()) << 16;
+      int[] expected = new int[c.getCardinality()];
+      c.fillLeastSignificant16bits(expected, 0, key);
+      int[] actual = new int[c.getCardinality() + 5];
+      ContainerBatchIterator it = c.getBatchIterator();
+      int pos = 0;
+      while (it.hasNext()) {
+        int[] small = new int[7];
+        int n = it.next(key, small, 2);
+        System.arraycopy(small, 2, actual, pos, n);
+        pos += n;
+      }
+      assertEquals(c.getCardinality(), pos);
+      assertArrayEquals(expected, Arrays.copyOf(actual, pos));
+      cp.advance();
+    }
+  }
+
+  @Test
+  public void testClone() {
+    RoaringBitmap bitmap = mixed();
+    BatchIterator it = bitmap.getBatchIterator();
+    int[] buffer = new int[100];
+    it.nextBatch(buffer);
+    BatchIterator copy = it.clone();
+    assertArrayEquals(drain(it, 333), drain(copy, 1000));
+  }
+}
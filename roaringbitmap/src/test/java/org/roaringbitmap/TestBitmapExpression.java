@@ -0,0 +1,91 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.roaringbitmap.RandomisedTestData.randomBitmap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBitmapExpression {
+
+  private static void check(RoaringBitmap expected, BitmapExpression expression) {
+    assertEquals(expected, expression.evaluate());
+    assertEquals(expected.getLongCardinality(), expression.cardinality());
+    assertEquals(expected.isEmpty(), expression.isEmpty());
+  }
+
+  @Test
+  public void simpleExpressions() {
+    RoaringBitmap a = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 16, 5 << 16);
+    RoaringBitmap b = RoaringBitmap.bitmapOf(2, 3, 4, 1 << 16, (1 << 16) + 1);
+    RoaringBitmap c = RoaringBitmap.bitmapOf(3, 1 << 16, 7 << 16);
+    check(RoaringBitmap.bitmapOf(3, 1 << 16), BitmapExpression.and(a, b, c));
+    check(FastAggregation.or(a, b, c), BitmapExpression.or(a, b, c));
+    check(RoaringBitmap.bitmapOf(1, 5 << 16), BitmapExpression.andNot(BitmapExpression.of(a),
+        BitmapExpression.or(b, c)));
+    check(a, BitmapExpression.and(a));
+    check(a, BitmapExpression.or(a));
+    check(new RoaringBitmap(), BitmapExpression.or(new RoaringBitmap[0]));
+    check(new RoaringBitmap(), BitmapExpression.and(a, new RoaringBitmap()));
+    check(new RoaringBitmap(), BitmapExpression.andNot(BitmapExpression.of(a),
+        BitmapExpression.of(a)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void andNeedsOperands() {
+    BitmapExpression.and(new BitmapExpression[0]);
+  }
+
+  @Test
+  public void nestedExpressionsMatchMaterializedOnes() {
+    Random random = new Random(42);
+    for (int trial = 0; trial < 20; ++trial) {
+      RoaringBitmap[] bitmaps = new RoaringBitmap[6];
+      for (int i = 0; i < bitmaps.length; ++i) {
+        bitmaps[i] = randomBitmap(8 + random.nextInt(24));
+      }
+      RoaringBitmap[] copies = Arrays.stream(bitmaps).map(RoaringBitmap::clone)
+          .toArray(RoaringBitmap[]::new);
+      RoaringBitmap a = bitmaps[0], b = bitmaps[1], c = bitmaps[2];
+      RoaringBitmap d = bitmaps[3], e = bitmaps[4], f = bitmaps[5];
+      // (A OR B OR C) AND NOT (D OR E) AND F
+      RoaringBitmap expected = RoaringBitmap.and(
+          RoaringBitmap.andNot(FastAggregation.or(a, b, c), RoaringBitmap.or(d, e)), f);
+      BitmapExpression expression = BitmapExpression.and(
+          BitmapExpression.andNot(BitmapExpression.or(a, b, c), BitmapExpression.or(d, e)),
+          BitmapExpression.of(f));
+      check(expected, expression);
+      // evaluating twice gives the same result
+      check(expected, expression);
+      // ((A AND B) OR (C AND NOT D)) OR (E OR F)
+      expected = FastAggregation.or(RoaringBitmap.and(a, b), RoaringBitmap.andNot(c, d),
+          RoaringBitmap.or(e, f));
+      check(expected, BitmapExpression.or(BitmapExpression.and(a, b),
+          BitmapExpression.andNot(BitmapExpression.of(c), BitmapExpression.of(d)),
+          BitmapExpression.or(e, f)));
+      // (A OR B) AND (C OR D) AND (E OR F)
+      expected = FastAggregation.and(RoaringBitmap.or(a, b), RoaringBitmap.or(c, d),
+          RoaringBitmap.or(e, f));
+      check(expected, BitmapExpression.and(BitmapExpression.or(a, b), BitmapExpression.or(c, d),
+          BitmapExpression.or(e, f)));
+      // inputs are left untouched
+      assertTrue(Arrays.equals(copies, bitmaps));
+    }
+  }
+
+  @Test
+  public void sharedBitmaps() {
+    RoaringBitmap a = randomBitmap(16);
+    RoaringBitmap b = randomBitmap(16);
+    BitmapExpression expression = BitmapExpression.or(BitmapExpression.and(a, b),
+        BitmapExpression.andNot(BitmapExpression.of(a), BitmapExpression.of(b)));
+    check(a, expression);
+  }
+}
@@ -0,0 +1,213 @@
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class TestConcurrentRoaringBitmap {
+
+  @Test
+  public void sameAsRoaringBitmap() {
+    for (int stripes : new int[] {1, 4, 1 << 10, 1 << 16}) {
+      Random r = new Random(stripes);
+      ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(stripes);
+      RoaringBitmap expected = new RoaringBitmap();
+      for (int i = 0; i < 20000; ++i) {
+        int x = r.nextBoolean() ? r.nextInt(1 << 20) : r.nextInt();
+        switch (r.nextInt(10)) {
+          case 0:
+            assertEquals(expected.checkedRemove(x), bitmap.checkedRemove(x));
+            break;
+          case 1:
+            long start = x & 0xFFFFFFFFL;
+            long end = Math.min(start + r.nextInt(1 << 18), 1L << 32);
+            if (r.nextBoolean()) {
+              expected.add(start, end);
+              bitmap.add(start, end);
+            } else {
+              expected.remove(start, end);
+              bitmap.remove(start, end);
+            }
+            break;
+          default:
+            assertEquals(expected.checkedAdd(x), bitmap.checkedAdd(x));
+        }
+        if (i % 1000 == 0) {
+          assertEquals(expected, bitmap.toRoaringBitmap());
+        }
+      }
+      assertEquals(expected, bitmap.toRoaringBitmap());
+      assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+      for (int i = 0; i < 10000; ++i) {
+        int x = r.nextBoolean()
+            ? expected.select(r.nextInt(expected.getCardinality())) : r.nextInt();
+        assertEquals(expected.contains(x), bitmap.contains(x));
+      }
+      bitmap.clear();
+      assertTrue(bitmap.isEmpty());
+    }
+  }
+
+  @Test
+  public void snapshotsAreNotAffectedByWriters() {
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(4);
+    bitmap.add(0L, 100000L);
+    bitmap.add(1 << 30);
+    PeekableIntIterator it = bitmap.getIntIterator();
+    RoaringBitmap copy = bitmap.toRoaringBitmap();
+    bitmap.remove(10L, 50000L);
+    bitmap.add(-1);
+    bitmap.remove(1 << 30);
+    copy.add(7 << 20);
+    RoaringBitmap iterated = new RoaringBitmap();
+    while (it.hasNext()) {
+      iterated.add(it.next());
+    }
+    RoaringBitmap expected = new RoaringBitmap();
+    expected.add(0L, 100000L);
+    expected.add(1 << 30);
+    assertEquals(expected, iterated);
+    expected.add(7 << 20);
+    assertEquals(expected, copy);
+    assertEquals(100000 - 49990 + 1, bitmap.getLongCardinality());
+    assertFalse(bitmap.contains(7 << 20));
+  }
+
+  @Test
+  public void serialization() throws IOException {
+    RoaringBitmap expected = RoaringBitmap.bitmapOf(1, 2, 1 << 16, -5);
+    expected.add(1L << 24, 1L << 25);
+    expected.runOptimize();
+    ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(16);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    expected.serialize(new DataOutputStream(bos));
+    bitmap.add(3);
+    bitmap.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    assertEquals(expected, bitmap.toRoaringBitmap());
+    bos.reset();
+    bitmap.serialize(new DataOutputStream(bos));
+    RoaringBitmap deserialized = new RoaringBitmap();
+    deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    assertEquals(expected, deserialized);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void stripesMustBeAPowerOfTwo() {
+    new ConcurrentRoaringBitmap(3);
+  }
+
+  @Test
+  public void concurrentWriters() throws Exception {
+    final ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(64);
+    final int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; ++t) {
+        final int thread = t;
+        futures.add(executor.submit(() -> {
+          // values of all threads share the keys
+          for (int i = thread; i < 1 << 20; i += threads) {
+            bitmap.add(i);
+          }
+          for (int i = thread; i < 1 << 20; i += 3 * threads) {
+            bitmap.remove(i);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    RoaringBitmap expected = new RoaringBitmap();
+    for (int i = 0; i < 1 << 20; ++i) {
+      if ((i / threads) % 3 != 0) {
+        expected.add(i);
+      }
+    }
+    assertEquals(expected, bitmap.toRoaringBitmap());
+  }
+
+  @Test
+  public void snapshotsAreConsistent() throws Exception {
+    final ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(1 << 8);
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // values are added in increasing order, across many stripes
+      Future<?> writer = executor.submit(() -> {
+        for (int i = 0; i < 1 << 21; i += 7) {
+          bitmap.add(i);
+        }
+        done.set(true);
+      });
+      int snapshots = 0;
+      while (!done.get() || snapshots == 0) {
+        int expected = 0;
+        PeekableIntIterator it = bitmap.getIntIterator();
+        while (it.hasNext()) {
+          assertEquals(expected, it.next());
+          expected += 7;
+        }
+        ++snapshots;
+      }
+      writer.get();
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  @Test
+  public void cardinalityIsConsistent() throws Exception {
+    final ConcurrentRoaringBitmap bitmap = new ConcurrentRoaringBitmap(1 << 8);
+    final int first = 1;
+    final int last = -2;
+    bitmap.add(first);
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // one of the values, at both ends of the stripes, is always present
+      Future<?> writer = executor.submit(() -> {
+        for (int i = 0; i < 200000; ++i) {
+          bitmap.add(last);
+          bitmap.remove(first);
+          bitmap.add(first);
+          bitmap.remove(last);
+        }
+        done.set(true);
+      });
+      while (!done.get()) {
+        long cardinality = bitmap.getLongCardinality();
+        assertTrue(cardinality == 1 || cardinality == 2);
+        assertFalse(bitmap.isEmpty());
+      }
+      writer.get();
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    assertEquals(1, bitmap.getLongCardinality());
+    bitmap.remove(first);
+    assertTrue(bitmap.isEmpty());
+  }
+}
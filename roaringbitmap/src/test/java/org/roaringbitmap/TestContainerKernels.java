@@ -0,0 +1,205 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+public class TestContainerKernels {
+
+  public static class CustomKernels extends ScalarContainerKernels {
+  }
+
+  private static short[] sortedValues(Random r, int count) {
+    int[] values = r.ints(count, 0, 1 << 16).sorted().distinct().toArray();
+    short[] shorts = new short[values.length];
+    for (int i = 0; i < values.length; ++i) {
+      shorts[i] = (short) values[i];
+    }
+    return shorts;
+  }
+
+  private static long[] randomBitmap(Random r) {
+    long[] bitmap = new long[1 << 10];
+    int density = r.nextInt(4);
+    for (int k = 0; k < bitmap.length; ++k) {
+      switch (density) {
+        case 0:
+          bitmap[k] = r.nextInt(16) == 0 ? 1L << r.nextInt(64) : 0L;
+          break;
+        case 1:
+          bitmap[k] = r.nextLong() & r.nextLong();
+          break;
+        case 2:
+          bitmap[k] = r.nextLong();
+          break;
+        default:
+          bitmap[k] = r.nextInt(8) == 0 ? r.nextLong() : -1L;
+      }
+    }
+    return bitmap;
+  }
+
+  // checks the kernels bit by bit, so that other implementations can be checked too
+  static void assertMatchesBitByBit(ContainerKernels kernels) {
+    Random r = new Random(1234);
+    for (int trial = 0; trial < 100; ++trial) {
+      short[] set1 = sortedValues(r, r.nextInt(trial % 10 == 0 ? 4096 : 200));
+      short[] set2 = sortedValues(r, r.nextInt(4096));
+      long[] bitmap1 = new long[1 << 10];
+      long[] bitmap2 = new long[1 << 10];
+      kernels.setBits(set1, set1.length, bitmap1);
+      kernels.setBits(set2, set2.length, bitmap2);
+      int bits = 0;
+      for (long word : bitmap1) {
+        bits += Long.bitCount(word);
+      }
+      assertEquals(set1.length, bits);
+      for (short v : set1) {
+        assertTrue((bitmap1[Util.toIntUnsigned(v) >>> 6] & (1L << v)) != 0);
+      }
+      short[] expected = new short[Math.min(set1.length, set2.length)];
+      int expectedLength = 0;
+      for (int i = 0; i < 1 << 16; ++i) {
+        if ((bitmap1[i >>> 6] & bitmap2[i >>> 6] & (1L << i)) != 0) {
+          expected[expectedLength++] = (short) i;
+        }
+      }
+      short[] buffer = new short[expected.length];
+      assertEquals(expectedLength, kernels.intersect(set1, set1.length, set2, set2.length, buffer));
+      assertArrayEquals(Arrays.copyOf(expected, expectedLength),
+          Arrays.copyOf(buffer, expectedLength));
+      assertEquals(expectedLength,
+          kernels.intersectionCardinality(set1, set1.length, set2, set2.length));
+      assertEquals(expectedLength,
+          kernels.intersect(set2, set2.length, set1, set1.length, buffer));
+
+      long[] words1 = randomBitmap(r);
+      long[] words2 = randomBitmap(r);
+      long[] and = new long[words1.length];
+      long[] or = new long[words1.length];
+      long[] xor = new long[words1.length];
+      int cardinality = 0;
+      int andCardinality = 0;
+      int orCardinality = 0;
+      int xorCardinality = 0;
+      for (int i = 0; i < 1 << 16; ++i) {
+        boolean bit1 = (words1[i >>> 6] & (1L << i)) != 0;
+        boolean bit2 = (words2[i >>> 6] & (1L << i)) != 0;
+        cardinality += bit1 ? 1 : 0;
+        if (bit1 && bit2) {
+          and[i >>> 6] |= 1L << i;
+          ++andCardinality;
+        }
+        if (bit1 || bit2) {
+          or[i >>> 6] |= 1L << i;
+          ++orCardinality;
+        }
+        if (bit1 != bit2) {
+          xor[i >>> 6] |= 1L << i;
+          ++xorCardinality;
+        }
+      }
+      assertEquals(cardinality, kernels.cardinality(words1));
+      assertEquals(andCardinality, kernels.andCardinality(words1, words2));
+      assertEquals(xorCardinality, kernels.xorCardinality(words1, words2));
+      long[] output = new long[words1.length];
+      kernels.and(words1, words2, output);
+      assertArrayEquals(and, output);
+      kernels.xor(words1, words2, output);
+      assertArrayEquals(xor, output);
+      assertEquals(orCardinality, kernels.or(words1, words2, output));
+      assertArrayEquals(or, output);
+      // in place
+      long[] copy = words1.clone();
+      kernels.xor(copy, words2, copy);
+      assertArrayEquals(xor, copy);
+      assertEquals(orCardinality, kernels.or(words2, copy, copy));
+      assertArrayEquals(or, copy);
+    }
+  }
+
+  @Test
+  public void scalarKernelsMatchBitByBit() {
+    assertMatchesBitByBit(new ScalarContainerKernels());
+  }
+
+  @Test
+  public void selectedKernelsMatchBitByBit() {
+    assertMatchesBitByBit(Kernels.INSTANCE);
+  }
+
+  @Test
+  public void fallBackToScalarKernels() {
+    assertSame(ScalarContainerKernels.class, Kernels.load(null).getClass());
+    assertSame(ScalarContainerKernels.class, Kernels.load("").getClass());
+    assertSame(ScalarContainerKernels.class, Kernels.load("org.roaringbitmap.NoSuchKernels")
+        .getClass());
+    assertSame(ScalarContainerKernels.class, Kernels.load("java.lang.String").getClass());
+    assertTrue(Kernels.load(CustomKernels.class.getName()) instanceof CustomKernels);
+  }
+
+  @Test
+  public void warnWhenFallingBack() {
+    final List<LogRecord> records = new ArrayList<>();
+    Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    Logger logger = Logger.getLogger(Kernels.class.getName());
+    logger.addHandler(handler);
+    try {
+      Kernels.load(null);
+      Kernels.load(CustomKernels.class.getName());
+      assertTrue(records.isEmpty());
+      Kernels.load("org.roaringbitmap.NoSuchKernels");
+      assertEquals(1, records.size());
+      assertEquals(Level.WARNING, records.get(0).getLevel());
+      assertTrue(records.get(0).getThrown() instanceof ClassNotFoundException);
+    } finally {
+      logger.removeHandler(handler);
+    }
+  }
+
+  @Test
+  public void intersectionStrategiesMatchBitByBit() {
+    for (IntersectionStrategy strategy : IntersectionStrategy.values()) {
+      assertMatchesBitByBit(new ScalarContainerKernels(strategy));
+    }
+  }
+
+  @Test
+  public void adaptiveIntersectionStrategy() {
+    assertSame(IntersectionStrategy.MERGE, IntersectionStrategy.choose(4096, 4096));
+    assertSame(IntersectionStrategy.MERGE, IntersectionStrategy.choose(200, 4000));
+    assertSame(IntersectionStrategy.GALLOP, IntersectionStrategy.choose(50, 4000));
+    assertSame(IntersectionStrategy.GALLOP, IntersectionStrategy.choose(4000, 50));
+    assertSame(IntersectionStrategy.BINARY_PROBE, IntersectionStrategy.choose(3, 4096));
+    assertSame(IntersectionStrategy.BINARY_PROBE, IntersectionStrategy.choose(0, 0));
+  }
+}
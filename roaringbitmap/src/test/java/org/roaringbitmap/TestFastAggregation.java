@@ -3,10 +3,12 @@ package org.roaringbitmap;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 public class TestFastAggregation {
 
@@ -196,4 +198,84 @@ public class TestFastAggregation {
         assertTrue(ebResult.contains(3));
     }
 
+    // bitmaps over a few shared keys, mixing array, bitmap and run containers
+    private static RoaringBitmap[] overlappingBitmaps(Random r, int count) {
+        RoaringBitmap[] bitmaps = new RoaringBitmap[count];
+        for (int i = 0; i < count; ++i) {
+            bitmaps[i] = new RoaringBitmap();
+            for (int key = 0; key < 8; ++key) {
+                if (r.nextInt(8) == 0) {
+                    continue;
+                }
+                int base = key << 16;
+                switch (r.nextInt(3)) {
+                    case 0:
+                        for (int k = 0; k < 2000; ++k) {
+                            bitmaps[i].add(base + r.nextInt(1 << 12));
+                        }
+                        break;
+                    case 1:
+                        for (int k = 0; k < 30000; ++k) {
+                            bitmaps[i].add(base + r.nextInt(1 << 16));
+                        }
+                        break;
+                    default:
+                        for (int k = 0; k < 5; ++k) {
+                            int start = base + r.nextInt(1 << 16);
+                            bitmaps[i].add(start, Math.min(start + r.nextInt(1 << 14), base + (1 << 16)));
+                        }
+                        bitmaps[i].runOptimize();
+                }
+            }
+        }
+        return bitmaps;
+    }
+
+    @Test
+    public void testWorkShyAnd() {
+        Random r = new Random(1234);
+        long[] buffer = new long[1 << 10];
+        for (int trial = 0; trial < 50; ++trial) {
+            RoaringBitmap[] bitmaps = overlappingBitmaps(r, 1 + r.nextInt(16));
+            RoaringBitmap expected = FastAggregation.naive_and(bitmaps);
+            assertEquals(expected, FastAggregation.workShyAnd(buffer, bitmaps));
+            assertEquals(expected, FastAggregation.and(bitmaps));
+        }
+    }
+
+    @Test
+    public void testBoundedAnd() {
+        Random r = new Random(5678);
+        long[] buffer = new long[1 << 10];
+        int[] limits = {0, 1, 100, 4096, 5000, 100000, Integer.MAX_VALUE};
+        for (int trial = 0; trial < 20; ++trial) {
+            RoaringBitmap[] bitmaps = overlappingBitmaps(r, 1 + r.nextInt(4));
+            RoaringBitmap full = FastAggregation.naive_and(bitmaps);
+            for (int limit : limits) {
+                assertEquals(full.limit(limit), FastAggregation.and(limit, bitmaps));
+                assertEquals(full.limit(limit), FastAggregation.workShyAnd(buffer, limit, bitmaps));
+            }
+        }
+        RoaringBitmap b1 = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 16, (1 << 16) + 1);
+        RoaringBitmap b2 = RoaringBitmap.bitmapOf(2, 3, 1 << 16, (1 << 16) + 1);
+        assertEquals(RoaringBitmap.bitmapOf(2, 3, 1 << 16), FastAggregation.and(3, b1, b2));
+    }
+
+    @Test
+    public void testWorkShyAndEdgeCases() {
+        long[] buffer = new long[1 << 10];
+        assertTrue(FastAggregation.workShyAnd(buffer).isEmpty());
+        RoaringBitmap b1 = RoaringBitmap.bitmapOf(1, 2, 1 << 16, 3 << 16);
+        RoaringBitmap b2 = RoaringBitmap.bitmapOf(2, 3, (1 << 16) + 1, 3 << 16);
+        assertEquals(RoaringBitmap.bitmapOf(2, 3 << 16), FastAggregation.workShyAnd(buffer, b1, b2));
+        assertEquals(b1, FastAggregation.workShyAnd(buffer, b1));
+        assertTrue(FastAggregation.workShyAnd(buffer, b1, new RoaringBitmap()).isEmpty());
+        try {
+            FastAggregation.workShyAnd(new long[16], b1, b2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
 }
@@ -42,4 +42,27 @@ public class TestOrderedWriter {
     writer.add(1);
     writer.flush();
   }
+
+  @Test
+  public void serializedSizeShouldNotFlushNorShareContainers() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    OrderedWriter writer = new OrderedWriter(bitmap);
+    RoaringBitmap expected = new RoaringBitmap();
+    // array, run and bitmap containers, with and without offsets in the header
+    for (int key = 0; key < 6; ++key) {
+      for (int low = 0; low < 65536; low += key % 3 == 0 ? 1000 : key % 3 == 1 ? 1 : 3) {
+        writer.add((key << 16) + low);
+        expected.add((key << 16) + low);
+        if (low % 6000 == 0) {
+          expected.runOptimize();
+          Assert.assertEquals(expected.serializedSizeInBytes(), writer.serializedSizeInBytes());
+        }
+      }
+    }
+    for (int i = 0; i < bitmap.highLowContainer.size(); ++i) {
+      Assert.assertFalse(bitmap.highLowContainer.getContainerAtIndex(i).isShared());
+    }
+    writer.flush();
+    Assert.assertEquals(expected, bitmap);
+  }
 }
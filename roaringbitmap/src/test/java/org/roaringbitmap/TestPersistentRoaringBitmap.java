@@ -0,0 +1,145 @@
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestPersistentRoaringBitmap {
+
+  @Test
+  public void sameAsRoaringBitmap() {
+    Random r = new Random(1234);
+    List<PersistentRoaringBitmap> versions = new ArrayList<>();
+    List<RoaringBitmap> expectedVersions = new ArrayList<>();
+    PersistentRoaringBitmap bitmap = PersistentRoaringBitmap.empty();
+    RoaringBitmap expected = new RoaringBitmap();
+    for (int i = 0; i < 5000; ++i) {
+      int x = r.nextBoolean() ? r.nextInt(1 << 22) : r.nextInt();
+      long start = x & 0xFFFFFFFFL;
+      long end = Math.min(start + r.nextInt(1 << 18), 1L << 32);
+      switch (r.nextInt(10)) {
+        case 0:
+          bitmap = bitmap.remove(x);
+          expected.remove(x);
+          break;
+        case 1:
+          bitmap = bitmap.add(start, end);
+          expected.add(start, end);
+          break;
+        case 2:
+          bitmap = bitmap.remove(start, end);
+          expected.remove(start, end);
+          break;
+        case 3:
+          RoaringBitmap other = RandomisedTestData.randomBitmap(5);
+          PersistentRoaringBitmap persistentOther =
+              PersistentRoaringBitmap.fromRoaringBitmap(other);
+          switch (r.nextInt(4)) {
+            case 0:
+              bitmap = bitmap.and(persistentOther);
+              expected.and(other);
+              break;
+            case 1:
+              bitmap = bitmap.andNot(persistentOther);
+              expected.andNot(other);
+              break;
+            case 2:
+              bitmap = bitmap.or(persistentOther);
+              expected.or(other);
+              break;
+            default:
+              bitmap = bitmap.xor(persistentOther);
+              expected.xor(other);
+          }
+          break;
+        default:
+          bitmap = bitmap.add(x);
+          expected.add(x);
+      }
+      if (i % 100 == 0) {
+        versions.add(bitmap);
+        expectedVersions.add(expected.clone());
+      }
+      assertEquals(expected.getLongCardinality(), bitmap.getLongCardinality());
+      assertEquals(expected.contains(x), bitmap.contains(x));
+    }
+    // the older versions are left unchanged
+    for (int i = 0; i < versions.size(); ++i) {
+      assertEquals(expectedVersions.get(i), versions.get(i).toRoaringBitmap());
+      assertEquals(versions.get(i),
+          PersistentRoaringBitmap.fromRoaringBitmap(expectedVersions.get(i)));
+      assertEquals(versions.get(i).hashCode(),
+          PersistentRoaringBitmap.fromRoaringBitmap(expectedVersions.get(i)).hashCode());
+    }
+  }
+
+  @Test
+  public void operationsBetweenVersions() {
+    RoaringBitmap expected = RandomisedTestData.randomBitmap(50);
+    PersistentRoaringBitmap v1 = PersistentRoaringBitmap.fromRoaringBitmap(expected);
+    PersistentRoaringBitmap v2 = v1.add(7).remove(expected.first()).add(1L << 31, (1L << 31) + 10);
+    RoaringBitmap expected2 = expected.clone();
+    expected2.add(7);
+    expected2.remove(expected.first());
+    expected2.add(1L << 31, (1L << 31) + 10);
+    assertEquals(expected2, v2.toRoaringBitmap());
+    assertNotEquals(v1, v2);
+    assertEquals(RoaringBitmap.xor(expected, expected2), v1.xor(v2).toRoaringBitmap());
+    assertEquals(RoaringBitmap.and(expected, expected2), v1.and(v2).toRoaringBitmap());
+    assertEquals(RoaringBitmap.andNot(expected, expected2), v1.andNot(v2).toRoaringBitmap());
+    assertEquals(RoaringBitmap.or(expected, expected2), v1.or(v2).toRoaringBitmap());
+    assertTrue(v1.xor(v1).isEmpty());
+    assertTrue(v1.andNot(v1).isEmpty());
+    assertSame(v1, v1.and(v1));
+    assertSame(v1, v1.or(v1));
+    assertSame(v1, v1.or(PersistentRoaringBitmap.empty()));
+    assertTrue(v1.and(PersistentRoaringBitmap.empty()).isEmpty());
+    assertSame(v2, v2.add(7));
+    assertSame(v2, v2.remove(expected.first()));
+    assertEquals(v2, v2.add(-1).remove(-1));
+  }
+
+  @Test
+  public void conversionsShareContainers() {
+    RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 16, 5 << 20);
+    bitmap.add(1L << 24, 1L << 25);
+    PersistentRoaringBitmap persistent = PersistentRoaringBitmap.fromRoaringBitmap(bitmap);
+    RoaringBitmap converted = persistent.toRoaringBitmap();
+    assertSame(bitmap.highLowContainer.getContainerAtIndex(0),
+        converted.highLowContainer.getContainerAtIndex(0));
+    // the RoaringBitmaps clone the containers before modifying them
+    bitmap.add(4);
+    bitmap.remove(1 << 24);
+    converted.add(5);
+    converted.remove((1 << 24) + 1);
+    assertTrue(bitmap.contains(4));
+    assertFalse(bitmap.contains(1 << 24));
+    assertTrue(converted.contains(5));
+    assertFalse(converted.contains((1 << 24) + 1));
+    assertFalse(persistent.contains(4));
+    assertFalse(persistent.contains(5));
+    assertTrue(persistent.contains(1 << 24));
+    assertTrue(persistent.contains((1 << 24) + 1));
+    assertEquals(5 + (1 << 24), persistent.getLongCardinality());
+  }
+
+  @Test
+  public void emptyBitmaps() {
+    PersistentRoaringBitmap empty = PersistentRoaringBitmap.empty();
+    assertTrue(empty.isEmpty());
+    assertEquals(0, empty.getLongCardinality());
+    assertFalse(empty.iterator().hasNext());
+    assertEquals(empty, PersistentRoaringBitmap.fromRoaringBitmap(new RoaringBitmap()));
+    assertEquals(empty, PersistentRoaringBitmap.bitmapOf(-1).remove(-1));
+    assertTrue(PersistentRoaringBitmap.bitmapOf(1, 2).remove(0L, 1L << 32).isEmpty());
+    assertEquals(new RoaringBitmap(), empty.toRoaringBitmap());
+  }
+}
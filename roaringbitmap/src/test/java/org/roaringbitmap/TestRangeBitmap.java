@@ -0,0 +1,164 @@
+package org.roaringbitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRangeBitmap {
+
+  private static RoaringBitmap expected(long[] values, long min, long max) {
+    RoaringBitmap answer = new RoaringBitmap();
+    for (int row = 0; row < values.length; row++) {
+      if (Long.compareUnsigned(min, values[row]) <= 0
+          && Long.compareUnsigned(values[row], max) <= 0) {
+        answer.add(row);
+      }
+    }
+    return answer;
+  }
+
+  private static void check(long[] values, RangeBitmap index, long threshold) {
+    Assert.assertEquals(expected(values, 0, threshold), index.lte(threshold));
+    Assert.assertEquals(expected(values, threshold, -1L), index.gte(threshold));
+    if (threshold != 0) {
+      Assert.assertEquals(expected(values, 0, threshold - 1), index.lt(threshold));
+    } else {
+      Assert.assertTrue(index.lt(threshold).isEmpty());
+    }
+    if (threshold != -1L) {
+      Assert.assertEquals(expected(values, threshold + 1, -1L), index.gt(threshold));
+    } else {
+      Assert.assertTrue(index.gt(threshold).isEmpty());
+    }
+  }
+
+  private static RangeBitmap build(long[] values, long maxValue) {
+    RangeBitmap.Appender appender = RangeBitmap.appender(maxValue);
+    for (long value : values) {
+      appender.add(value);
+    }
+    return appender.build();
+  }
+
+  @Test
+  public void testRandomValues() {
+    Random random = new Random(31);
+    long[] values = new long[200000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 3 == 0 ? random.nextInt(100) : random.nextInt(1 << 20);
+    }
+    RangeBitmap index = build(values, (1 << 20) - 1);
+    Assert.assertEquals(values.length, index.getRowCount());
+    for (long threshold : new long[] {0, 1, 50, 99, 100, 4096, 65535, 500000, (1 << 20) - 1,
+        1 << 20, -1L}) {
+      check(values, index, threshold);
+    }
+    for (int trial = 0; trial < 20; trial++) {
+      long min = random.nextInt(1 << 20);
+      long max = min + random.nextInt(1 << 18);
+      Assert.assertEquals(expected(values, min, max), index.between(min, max));
+    }
+    Assert.assertTrue(index.between(10, 9).isEmpty());
+    Assert.assertEquals(expected(values, 0, 20), index.between(0, 20));
+  }
+
+  @Test
+  public void testUnsignedValues() {
+    long[] values = {-1L, 0, Long.MAX_VALUE, Long.MIN_VALUE, 5, -2L, 5};
+    RangeBitmap index = build(values, -1L);
+    for (long threshold : values) {
+      check(values, index, threshold);
+    }
+    Assert.assertEquals(RoaringBitmap.bitmapOf(0, 3, 5), index.between(Long.MIN_VALUE, -1L));
+  }
+
+  @Test
+  public void testConstantColumn() {
+    long[] values = new long[1000];
+    RangeBitmap index = build(values, 0);
+    check(values, index, 0);
+    check(values, index, 1);
+    Assert.assertEquals(1000, index.lte(0).getCardinality());
+    Assert.assertTrue(index.gt(0).isEmpty());
+  }
+
+  @Test
+  public void testEmpty() {
+    RangeBitmap index = RangeBitmap.appender(1000).build();
+    Assert.assertEquals(0, index.getRowCount());
+    Assert.assertTrue(index.lte(10).isEmpty());
+    Assert.assertTrue(index.gte(0).isEmpty());
+    Assert.assertTrue(index.between(0, 1000).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testValueTooLarge() {
+    RangeBitmap.appender(10).add(11);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAppendAfterSerialization() {
+    RangeBitmap.Appender appender = RangeBitmap.appender(10);
+    appender.add(1);
+    appender.build();
+    appender.add(2);
+  }
+
+  @Test
+  public void testAppendAfterSizing() {
+    RangeBitmap.Appender appender = RangeBitmap.appender(1000);
+    long[] values = new long[70000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i * 7919L) % 1001;
+      appender.add(values[i]);
+      if (i % 10000 == 0) {
+        Assert.assertEquals(build(Arrays.copyOf(values, i + 1), 1000).serializedSizeInBytes(),
+            appender.serializedSizeInBytes());
+      }
+    }
+    int size = appender.serializedSizeInBytes();
+    RangeBitmap index = appender.build();
+    Assert.assertEquals(size, index.serializedSizeInBytes());
+    Assert.assertEquals(values.length, index.getRowCount());
+    check(values, index, 500);
+  }
+
+  @Test
+  public void testMapFromOffset() throws IOException {
+    Random random = new Random(5);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextInt(1000) + (i > 50000 ? 2000 : 0);
+    }
+    RangeBitmap.Appender appender = RangeBitmap.appender(3000);
+    for (long value : values) {
+      appender.add(value);
+    }
+    int size = appender.serializedSizeInBytes();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size + 7);
+    buffer.position(7);
+    appender.serialize(buffer);
+    Assert.assertEquals(size + 7, buffer.position());
+    buffer.position(7);
+
+    RangeBitmap index = RangeBitmap.map(buffer);
+    Assert.assertEquals(7, buffer.position());
+    Assert.assertEquals(size, index.serializedSizeInBytes());
+    Assert.assertEquals(3000, index.getMaxValue());
+    check(values, index, 500);
+    check(values, index, 2500);
+    Assert.assertEquals(expected(values, 900, 2100), index.between(900, 2100));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    appender.serialize(new DataOutputStream(bytes));
+    byte[] mapped = new byte[size];
+    buffer.get(mapped);
+    Assert.assertArrayEquals(bytes.toByteArray(), mapped);
+  }
+}
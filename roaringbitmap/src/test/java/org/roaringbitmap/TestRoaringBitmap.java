@@ -4661,4 +4661,270 @@ public class TestRoaringBitmap {
     assertFalse(bitmap.contains(1L << 31, 1L << 32));
   }
 
+  // the expected answers, computed with rank, select and contains
+  private static void assertNavigation(ImmutableBitmapDataProvider bitmap, int value) {
+    long expectedNext = -1L;
+    long expectedPrevious = -1L;
+    long rank = bitmap.rankLong(value);
+    if (rank > 0) {
+      expectedPrevious = Integer.toUnsignedLong(bitmap.select((int) rank - 1));
+    }
+    if (bitmap.contains(value)) {
+      expectedNext = Integer.toUnsignedLong(value);
+    } else if (rank < bitmap.getLongCardinality()) {
+      expectedNext = Integer.toUnsignedLong(bitmap.select((int) rank));
+    }
+    long expectedNextAbsent = Integer.toUnsignedLong(value);
+    while (expectedNextAbsent <= 0xFFFFFFFFL && bitmap.contains((int) expectedNextAbsent)) {
+      ++expectedNextAbsent;
+    }
+    long expectedPreviousAbsent = Integer.toUnsignedLong(value);
+    while (expectedPreviousAbsent >= 0 && bitmap.contains((int) expectedPreviousAbsent)) {
+      --expectedPreviousAbsent;
+    }
+    assertEquals(expectedNext, bitmap.nextValue(value));
+    assertEquals(expectedPrevious, bitmap.previousValue(value));
+    assertEquals(expectedNextAbsent > 0xFFFFFFFFL ? -1L : expectedNextAbsent,
+        bitmap.nextAbsentValue(value));
+    assertEquals(expectedPreviousAbsent, bitmap.previousAbsentValue(value));
+  }
+
+  static void assertNavigation(ImmutableBitmapDataProvider bitmap, Random random) {
+    assertNavigation(bitmap, 0);
+    assertNavigation(bitmap, -1);
+    IntIterator it = bitmap.getIntIterator();
+    while (it.hasNext()) {
+      int value = it.next();
+      if (random.nextInt(500) == 0) {
+        int key = value & 0xFFFF0000;
+        for (int candidate : new int[] {value, value - 1, value + 1, key, key - 1, key | 0xFFFF,
+            (key | 0xFFFF) + 1, key | random.nextInt(1 << 16)}) {
+          assertNavigation(bitmap, candidate);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void navigationOnRandomBitmaps() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 20; ++i) {
+      RoaringBitmap bitmap = RandomisedTestData.randomBitmap(20);
+      if (i % 2 == 0) {
+        bitmap.runOptimize();
+      }
+      assertNavigation(bitmap, random);
+    }
+  }
+
+  @Test
+  public void navigationOnEdgeCases() {
+    RoaringBitmap empty = new RoaringBitmap();
+    assertEquals(-1L, empty.nextValue(0));
+    assertEquals(-1L, empty.previousValue(-1));
+    assertEquals(12L, empty.nextAbsentValue(12));
+    assertEquals(0xFFFFFFFFL, empty.previousAbsentValue(-1));
+
+    RoaringBitmap all = new RoaringBitmap();
+    all.add(0L, 1L << 32);
+    assertEquals(-1L, all.nextAbsentValue(0));
+    assertEquals(-1L, all.previousAbsentValue(-1));
+    assertEquals(0xFFFFFFFFL, all.previousValue(-1));
+    all.remove(5 << 16);
+    assertEquals(5L << 16, all.nextAbsentValue(3));
+    assertEquals(5L << 16, all.previousAbsentValue(-1));
+    assertEquals((5L << 16) + 1, all.nextValue(5 << 16));
+    assertEquals((5L << 16) - 1, all.previousValue(5 << 16));
+
+    RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 2, 3, 5, 1 << 16, -2);
+    bitmap.add(2L << 16, 5L << 16);
+    Random random = new Random(5678);
+    assertNavigation(bitmap, random);
+    assertEquals(4L, bitmap.nextAbsentValue(1));
+    assertEquals(0L, bitmap.previousAbsentValue(3));
+    assertEquals(5L << 16, bitmap.nextAbsentValue(2 << 16));
+    assertEquals((2L << 16) - 1, bitmap.previousAbsentValue((5 << 16) - 1));
+    assertEquals(0xFFFFFFFEL, bitmap.nextValue(6 << 16));
+    assertEquals(-1L, bitmap.nextValue(-1));
+    bitmap.runOptimize();
+    assertNavigation(bitmap, random);
+    bitmap.removeRunCompression();
+    assertNavigation(bitmap, random);
+  }
+
+  @Test
+  public void orNotMatchesFlipAndOr() {
+    Random random = new Random(1234);
+    RoaringBitmap full = new RoaringBitmap();
+    full.add(0L, 1L << 32);
+    for (int i = 0; i < 12; ++i) {
+      RoaringBitmap x1 = i == 0 ? new RoaringBitmap() : RandomisedTestData.randomBitmap(20);
+      RoaringBitmap x2 = i == 1 ? new RoaringBitmap() : RandomisedTestData.randomBitmap(20);
+      if (i == 2) {
+        x2 = full;
+      } else if (i % 3 == 0) {
+        x2.add(7L << 16, 9L << 16);
+        x2.add((5 << 16) - 2);
+      }
+      for (long rangeEnd : new long[] {0, 1, 1 << 16, (1 << 16) + 1, (5 << 16) - 1, 5 << 16,
+          1L << 31, 0xFFFFFFFFL, 1L << 32, random.nextLong() & 0xFFFFFFFFL}) {
+        RoaringBitmap complement = RoaringBitmap.flip(x2, 0L, rangeEnd);
+        if (rangeEnd < 1L << 32) {
+          complement.remove(rangeEnd, 1L << 32);
+        }
+        RoaringBitmap expected = RoaringBitmap.or(x1, complement);
+        RoaringBitmap actual = RoaringBitmap.orNot(x1, x2, rangeEnd);
+        assertEquals(expected, actual);
+        assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+        RoaringBitmap inPlace = x1.clone();
+        inPlace.orNot(x2, rangeEnd);
+        assertEquals(expected, inPlace);
+        assertEquals(expected.getLongCardinality(), inPlace.getLongCardinality());
+      }
+    }
+  }
+
+  @Test
+  public void orNotWithItself() {
+    RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 3, 5, 1 << 20);
+    bitmap.orNot(bitmap, 10);
+    RoaringBitmap expected = new RoaringBitmap();
+    expected.add(0L, 10L);
+    expected.add(1 << 20);
+    assertEquals(expected, bitmap);
+  }
+
+  @Test
+  public void rangeCardinalityMatchesAndCardinality() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 20; ++i) {
+      RoaringBitmap bitmap = i == 0 ? new RoaringBitmap() : RandomisedTestData.randomBitmap(20);
+      for (int j = 0; j < 50; ++j) {
+        long start;
+        long end;
+        if (j < 10 && !bitmap.isEmpty()) {
+          // around the values of the bitmap
+          start = Integer.toUnsignedLong(bitmap.select(random.nextInt(bitmap.getCardinality())));
+          end = Math.min(1L << 32, start + random.nextInt(1 << 18));
+        } else {
+          start = random.nextLong() & 0xFFFFFFFFL;
+          end = j % 5 == 0 ? 1L << 32 : random.nextLong() & 0xFFFFFFFFL;
+        }
+        RoaringBitmap range = new RoaringBitmap();
+        range.add(start, end);
+        assertEquals(RoaringBitmap.andCardinality(bitmap, range),
+            bitmap.rangeCardinality(start, end));
+      }
+      assertEquals(bitmap.getLongCardinality(), bitmap.rangeCardinality(0, 1L << 32));
+      assertEquals(0, bitmap.rangeCardinality(10, 10));
+      long cardinality = bitmap.getLongCardinality();
+      for (long threshold : new long[] {-1, 0, cardinality - 1, cardinality, cardinality + 1,
+          random.nextInt(1 << 20)}) {
+        assertEquals(cardinality > threshold, bitmap.cardinalityExceeds(threshold));
+      }
+    }
+  }
+
+  @Test
+  public void snapshotsAreIndependent() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20; ++i) {
+      RoaringBitmap bitmap = i == 0 ? new RoaringBitmap() : RandomisedTestData.randomBitmap(20);
+      RoaringBitmap snapshot = bitmap.snapshot();
+      RoaringBitmap expectedBitmap = bitmap.clone();
+      RoaringBitmap expectedSnapshot = bitmap.clone();
+      assertEquals(expectedSnapshot, snapshot);
+      for (int j = 0; j < 50; ++j) {
+        RoaringBitmap other = RandomisedTestData.randomBitmap(5);
+        long seed = random.nextLong();
+        // modify one side, then the other, with the same operations
+        boolean modifySnapshot = random.nextBoolean();
+        modifyRandomly(modifySnapshot ? snapshot : bitmap, other, seed);
+        modifyRandomly(modifySnapshot ? expectedSnapshot : expectedBitmap, other, seed);
+        assertEquals(expectedBitmap, bitmap);
+        assertEquals(expectedSnapshot, snapshot);
+        if (j % 10 == 0) {
+          // snapshots of snapshots
+          snapshot = snapshot.snapshot();
+        }
+      }
+    }
+  }
+
+  private static void modifyRandomly(RoaringBitmap bitmap, RoaringBitmap other, long seed) {
+    Random random = new Random(seed);
+    int x = bitmap.isEmpty() || random.nextBoolean()
+        ? random.nextInt(1 << 22)
+        : bitmap.select((int) Math.floorMod(random.nextLong(), bitmap.getLongCardinality()));
+    long start = Integer.toUnsignedLong(x);
+    long end = Math.min(1L << 32, start + random.nextInt(1 << 18));
+    switch (random.nextInt(16)) {
+      case 0: bitmap.add(x); break;
+      case 1: bitmap.remove(x); break;
+      case 2: bitmap.checkedAdd(x); break;
+      case 3: bitmap.checkedRemove(x); break;
+      case 4: bitmap.add(x, x + 1, x + 3); break;
+      case 5: bitmap.flip(x); break;
+      case 6: bitmap.add(start, end); break;
+      case 7: bitmap.remove(start, end); break;
+      case 8: bitmap.flip(start, end); break;
+      case 9: bitmap.and(other); break;
+      case 10: bitmap.or(other); break;
+      case 11: bitmap.xor(other); break;
+      case 12: bitmap.andNot(other); break;
+      case 13: bitmap.orNot(other, end); break;
+      case 14: bitmap.runOptimize(); break;
+      default:
+        bitmap.lazyor(other);
+        bitmap.repairAfterLazy();
+    }
+  }
+
+  @Test
+  public void unorderedWritersLeaveSnapshotsUnchanged() {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int i = 0; i < 5000; ++i) {
+      bitmap.add(2 * i + 2);
+    }
+    RoaringBitmap expected = bitmap.clone();
+    RoaringBitmap snapshot = bitmap.snapshot();
+    PersistentRoaringBitmap persistent = PersistentRoaringBitmap.fromRoaringBitmap(bitmap);
+    UnorderedWriter writer = new UnorderedWriter(bitmap);
+    writer.add(5);
+    writer.add(1);
+    writer.add(3);
+    writer.flush();
+    assertEquals(5003, bitmap.getCardinality());
+    assertEquals(expected, snapshot);
+    assertEquals(expected, persistent.toRoaringBitmap());
+    assertFalse(persistent.contains(1));
+    assertEquals(5000, persistent.getLongCardinality());
+  }
+
+  @Test
+  public void snapshotsShareUnmodifiedContainers() {
+    RoaringBitmap bitmap = RoaringBitmap.bitmapOf(1, 2, 1 << 16, 3 << 16);
+    bitmap.add(5L << 16, 6L << 16);
+    RoaringBitmap snapshot = bitmap.snapshot();
+    for (int i = 0; i < bitmap.highLowContainer.size(); ++i) {
+      assertTrue(bitmap.highLowContainer.getContainerAtIndex(i)
+          == snapshot.highLowContainer.getContainerAtIndex(i));
+    }
+    bitmap.add(3);
+    snapshot.remove(5 << 16);
+    assertTrue(bitmap.highLowContainer.getContainerAtIndex(0)
+        != snapshot.highLowContainer.getContainerAtIndex(0));
+    assertTrue(bitmap.highLowContainer.getContainerAtIndex(1)
+        == snapshot.highLowContainer.getContainerAtIndex(1));
+    assertTrue(bitmap.highLowContainer.getContainerAtIndex(3)
+        != snapshot.highLowContainer.getContainerAtIndex(3));
+    assertTrue(bitmap.contains(3));
+    assertFalse(snapshot.contains(3));
+    assertTrue(bitmap.contains(5 << 16));
+    assertFalse(snapshot.contains(5 << 16));
+    // the first modification of a container after a snapshot clones it, not the next ones
+    Container cloned = bitmap.highLowContainer.getContainerAtIndex(0);
+    bitmap.add(4);
+    assertTrue(cloned == bitmap.highLowContainer.getContainerAtIndex(0));
+  }
 }
@@ -3,6 +3,10 @@
  */
 package org.roaringbitmap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Random;
 
 import org.junit.Assert;
@@ -393,6 +397,13 @@ public class TestRoaringBitmap_FastRank {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
     fast.flip(0);
+    // the bucket is updated in place: the cache is kept up-to-date
+    Assert.assertFalse(fast.isCacheDismissed());
+    Assert.assertEquals(2, fast.rank(123));
+
+    // removing the last values of a bucket removes it
+    fast.flip(0);
+    fast.flip(123);
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -416,7 +427,8 @@ public class TestRoaringBitmap_FastRank {
   public void testDismissCache_remove() {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
-    fast.remove(0);
+    fast.remove(123);
+    // the bucket is left empty, hence removed
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -441,6 +453,10 @@ public class TestRoaringBitmap_FastRank {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
     fast.checkedAdd(2);
+    Assert.assertFalse(fast.isCacheDismissed());
+    Assert.assertEquals(2, fast.select(0));
+
+    fast.checkedAdd(1 << 16);
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -448,7 +464,12 @@ public class TestRoaringBitmap_FastRank {
   public void testDismissCache_checkedRemove() {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
+    fast.checkedAdd(2);
     fast.checkedRemove(2);
+    Assert.assertFalse(fast.isCacheDismissed());
+    Assert.assertEquals(1, fast.rank(123));
+
+    fast.checkedRemove(123);
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -465,6 +486,9 @@ public class TestRoaringBitmap_FastRank {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
     fast.andNot(new RoaringBitmap());
+    Assert.assertFalse(fast.isCacheDismissed());
+
+    fast.andNot(RoaringBitmap.bitmapOf(123));
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -473,6 +497,9 @@ public class TestRoaringBitmap_FastRank {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
     fast.or(new RoaringBitmap());
+    Assert.assertFalse(fast.isCacheDismissed());
+
+    fast.or(RoaringBitmap.bitmapOf(0));
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
@@ -481,7 +508,110 @@ public class TestRoaringBitmap_FastRank {
     FastRankRoaringBitmap fast = prepareFastWithComputedCache();
 
     fast.xor(new RoaringBitmap());
+    Assert.assertFalse(fast.isCacheDismissed());
+
+    fast.xor(RoaringBitmap.bitmapOf(0));
     Assert.assertTrue(fast.isCacheDismissed());
   }
 
+  @Test
+  public void testKeepCache_mutationAfterIndexedBuckets() {
+    FastRankRoaringBitmap fast = prepareFastWithComputedCache();
+
+    // the values of the first bucket are left untouched
+    fast.add(3L << 16, 5L << 16);
+    fast.or(RoaringBitmap.bitmapOf(7 << 16));
+    Assert.assertEquals(1, fast.rank(123));
+    Assert.assertEquals((4 << 16) - 1, fast.select(1 << 16));
+    Assert.assertEquals(7 << 16, fast.select((2 << 16) + 1));
+    Assert.assertFalse(fast.isCacheDismissed());
+
+    fast.remove(4L << 16, 5L << 16);
+    Assert.assertEquals(1 + (1 << 16) + 1, fast.rank(7 << 16));
+  }
+
+  @Test
+  public void testClone() {
+    FastRankRoaringBitmap fast = prepareFastWithComputedCache();
+    FastRankRoaringBitmap clone = fast.clone();
+
+    fast.add(12);
+    Assert.assertEquals(2, fast.rank(123));
+    Assert.assertEquals(1, clone.rank(123));
+    Assert.assertEquals(123, clone.select(0));
+  }
+
+  @Test
+  public void testMixedMutationsAndQueries() {
+    Random r = new Random(1234);
+    FastRankRoaringBitmap fast = new FastRankRoaringBitmap();
+    RoaringBitmap normal = new RoaringBitmap();
+    for (int i = 0; i < 20000; i++) {
+      // values spread over 64 buckets, some of them in the upper half of the unsigned range
+      int value = (r.nextInt(64) << 26) + r.nextInt(1 << 6);
+      switch (r.nextInt(8)) {
+        case 0:
+          fast.remove(value);
+          normal.remove(value);
+          break;
+        case 1:
+          fast.flip(value);
+          normal.flip(value);
+          break;
+        case 2:
+          Assert.assertEquals(normal.checkedAdd(value), fast.checkedAdd(value));
+          break;
+        case 3:
+          long start = Util.toUnsignedLong(value);
+          fast.flip(start, start + 100);
+          normal.flip(start, start + 100);
+          break;
+        default:
+          fast.add(value);
+          normal.add(value);
+      }
+      Assert.assertEquals(normal.rankLong(value), fast.rankLong(value));
+      int cardinality = normal.getCardinality();
+      if (cardinality > 0) {
+        int j = r.nextInt(cardinality);
+        Assert.assertEquals(normal.select(j), fast.select(j));
+      }
+    }
+    Assert.assertEquals(normal, fast);
+  }
+
+  @Test
+  public void flushUnorderedWriter() {
+    FastRankRoaringBitmap b = new FastRankRoaringBitmap();
+    b.add(1, 2, 1 << 16);
+    Assert.assertEquals(2, b.rankLong(2));
+
+    UnorderedWriter writer = new UnorderedWriter(b);
+    writer.add(4);
+    writer.add(3);
+    writer.add(2 << 16);
+    writer.flush();
+    Assert.assertEquals(6, b.getCardinality());
+    Assert.assertEquals(4, b.rankLong(4));
+    Assert.assertEquals(4, b.select(3));
+    Assert.assertEquals(2 << 16, b.select(5));
+  }
+
+  @Test
+  public void orIntoFromStream() throws IOException {
+    FastRankRoaringBitmap b = new FastRankRoaringBitmap();
+    b.add(1, 2, 1 << 16);
+    Assert.assertEquals(2, b.rankLong(2));
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    RoaringBitmap.bitmapOf(3, 4, 2 << 16).serialize(new DataOutputStream(bos));
+    StreamingDeserializer deserializer =
+        new StreamingDeserializer(new ByteArrayInputStream(bos.toByteArray()));
+    Assert.assertTrue(deserializer.nextBitmap());
+    deserializer.orInto(b);
+    Assert.assertEquals(6, b.getCardinality());
+    Assert.assertEquals(4, b.rankLong(4));
+    Assert.assertEquals(4, b.select(3));
+    Assert.assertEquals(2 << 16, b.select(5));
+  }
 }
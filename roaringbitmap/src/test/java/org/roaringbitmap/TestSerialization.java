@@ -1,11 +1,14 @@
 package org.roaringbitmap;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Random;
@@ -441,7 +444,87 @@ public class TestSerialization {
     bitmap_a.serialize(dos);
   }
 
+  @Test
+  public void testByteBufferSerializationMatchesDataOutput() {
+    ByteBuffer[] buffers = {ByteBuffer.allocate(presoutbb.limit()),
+        ByteBuffer.allocateDirect(presoutbb.limit()),
+        ByteBuffer.allocate(presoutbb.limit()).order(ByteOrder.LITTLE_ENDIAN)};
+    for (ByteBuffer buffer : buffers) {
+      bitmap_empty.serialize(buffer);
+      assertEquals(bitmap_empty.serializedSizeInBytes(), buffer.position());
+      bitmap_a.serialize(buffer);
+      assertFalse(buffer.hasRemaining());
+      buffer.flip();
+      presoutbb.rewind();
+      assertEquals(presoutbb, buffer);
+    }
+  }
+
+  @Test
+  public void testByteBufferTruncated() throws IOException {
+    RoaringBitmap runs = RoaringBitmap.bitmapOf(1, 2, 3, 1 << 16, 2 << 16, 3 << 16, 4 << 16);
+    runs.add(5L << 16, 6L << 16);
+    runs.runOptimize();
+    for (RoaringBitmap bitmap : new RoaringBitmap[] {bitmap_a, runs}) {
+      ByteBuffer serialized = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+      bitmap.serialize(serialized);
+      // every cut in the header, then cuts spread over the containers
+      for (int length = 0; length < serialized.capacity(); length += length < 64 ? 1 : 257) {
+        ByteBuffer truncated = ByteBuffer.wrap(serialized.array(), 0, length);
+        try {
+          new RoaringBitmap().deserialize(truncated);
+          fail("deserialized " + length + " bytes");
+        } catch (EOFException e) {
+          assertEquals(0, truncated.position());
+        }
+        try {
+          new RoaringBitmap().deserialize(
+              new DataInputStream(new ByteArrayInputStream(serialized.array(), 0, length)));
+          fail("deserialized " + length + " bytes");
+        } catch (EOFException e) {
+          // both paths fail the same way
+        }
+      }
+    }
+  }
 
+  @Test
+  public void testByteBufferRoundTrip() throws IOException {
+    RoaringBitmap[] bitmaps = {bitmap_a, bitmap_a1, bitmap_empty, RoaringBitmap.bitmapOf(1, 2),
+        RoaringBitmap.bitmapOf(1 << 16, 2 << 16, 3 << 16, 4 << 16, 5 << 16)};
+    int size = 0;
+    for (RoaringBitmap bitmap : bitmaps) {
+      size += bitmap.serializedSizeInBytes();
+    }
+    for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(size + 3),
+        ByteBuffer.allocateDirect(size + 3)}) {
+      buffer.position(3); // unaligned
+      for (RoaringBitmap bitmap : bitmaps) {
+        bitmap.serialize(buffer);
+      }
+      buffer.position(3);
+      RoaringBitmap copy = new RoaringBitmap();
+      for (RoaringBitmap bitmap : bitmaps) {
+        copy.deserialize(buffer);
+        assertEquals(bitmap, copy);
+        assertEquals(bitmap.getCardinality(), copy.getCardinality());
+        assertEquals(bitmap.serializedSizeInBytes(), copy.serializedSizeInBytes());
+      }
+      assertFalse(buffer.hasRemaining());
+      // the copy does not depend on the buffer
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) 0);
+      }
+      copy.add(7);
+      assertEquals(RoaringBitmap.bitmapOf(7, 1 << 16, 2 << 16, 3 << 16, 4 << 16, 5 << 16), copy);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testByteBufferBadCookie() throws IOException {
+    new RoaringBitmap().deserialize(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+  }
 
 }
 
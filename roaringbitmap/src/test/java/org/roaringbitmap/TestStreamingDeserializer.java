@@ -0,0 +1,173 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.roaringbitmap.RandomisedTestData.randomBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestStreamingDeserializer {
+
+  // hands out at most a few bytes per read, like a slow network
+  private static final class TricklingInputStream extends InputStream {
+    private final ByteArrayInputStream in;
+    private final Random random = new Random(1234);
+
+    TricklingInputStream(byte[] data) {
+      this.in = new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      return in.read(b, off, Math.min(len, 1 + random.nextInt(3000)));
+    }
+  }
+
+  private static byte[] serialize(RoaringBitmap... bitmaps) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bos);
+    for (RoaringBitmap bitmap : bitmaps) {
+      bitmap.serialize(out);
+    }
+    out.flush();
+    return bos.toByteArray();
+  }
+
+  private static RoaringBitmap withoutRuns(RoaringBitmap bitmap) {
+    RoaringBitmap copy = bitmap.clone();
+    copy.removeRunCompression();
+    return copy;
+  }
+
+  @Test
+  public void roundTrip() throws IOException {
+    RoaringBitmap range = new RoaringBitmap();
+    range.add(0L, 1L << 20);
+    RoaringBitmap[] bitmaps = {new RoaringBitmap(), RoaringBitmap.bitmapOf(1, 2, 3),
+        RoaringBitmap.bitmapOf(0, 1 << 16, 2 << 16, 3 << 16, -1), randomBitmap(50),
+        withoutRuns(randomBitmap(50)), range, withoutRuns(range)};
+    for (RoaringBitmap bitmap : bitmaps) {
+      byte[] data = serialize(bitmap);
+      assertEquals(bitmap, StreamingDeserializer.deserialize(new ByteArrayInputStream(data)));
+      assertEquals(bitmap, new StreamingDeserializer(new TricklingInputStream(data)).read());
+    }
+  }
+
+  @Test
+  public void backToBackWithSmallBuffer() throws IOException {
+    RoaringBitmap[] bitmaps = new RoaringBitmap[20];
+    for (int i = 0; i < bitmaps.length; ++i) {
+      bitmaps[i] = i % 3 == 0 ? withoutRuns(randomBitmap(20)) : randomBitmap(20);
+    }
+    bitmaps[7] = new RoaringBitmap();
+    byte[] data = serialize(bitmaps);
+    StreamingDeserializer deserializer =
+        new StreamingDeserializer(Channels.newChannel(new TricklingInputStream(data)), 8192);
+    for (int i = 0; i < bitmaps.length; ++i) {
+      assertTrue(deserializer.nextBitmap());
+      assertEquals(bitmaps[i].highLowContainer.size, deserializer.getContainerCount());
+      if (i % 2 == 0) {
+        assertEquals(bitmaps[i], deserializer.read());
+      } else if (deserializer.next()) {
+        // leave most containers unread, nextBitmap skips them
+        assertEquals(bitmaps[i].highLowContainer.getKeyAtIndex(0), deserializer.getKey());
+        assertEquals(bitmaps[i].highLowContainer.getContainerAtIndex(0),
+            deserializer.getContainer());
+      }
+    }
+    assertFalse(deserializer.nextBitmap());
+    deserializer.reset(Channels.newChannel(new ByteArrayInputStream(data)));
+    assertEquals(bitmaps[0], deserializer.read());
+  }
+
+  @Test
+  public void orInto() throws IOException {
+    RoaringBitmap[] bitmaps = new RoaringBitmap[10];
+    for (int i = 0; i < bitmaps.length; ++i) {
+      bitmaps[i] = randomBitmap(30);
+    }
+    StreamingDeserializer deserializer =
+        new StreamingDeserializer(new TricklingInputStream(serialize(bitmaps)));
+    RoaringBitmap union = new RoaringBitmap();
+    while (deserializer.nextBitmap()) {
+      deserializer.orInto(union);
+    }
+    assertEquals(FastAggregation.or(bitmaps), union);
+    assertEquals(FastAggregation.or(bitmaps).getCardinality(), union.getCardinality());
+  }
+
+  @Test
+  public void orIntoLeavesSnapshotsUnchanged() throws IOException {
+    RoaringBitmap target = new RoaringBitmap();
+    for (int i = 0; i < 5000; ++i) {
+      target.add(2 * i + 2);
+    }
+    RoaringBitmap expected = target.clone();
+    RoaringBitmap snapshot = target.snapshot();
+    PersistentRoaringBitmap persistent = PersistentRoaringBitmap.fromRoaringBitmap(target);
+    StreamingDeserializer deserializer = new StreamingDeserializer(
+        new ByteArrayInputStream(serialize(RoaringBitmap.bitmapOf(1, 3, 5))));
+    assertTrue(deserializer.nextBitmap());
+    deserializer.orInto(target);
+    assertEquals(5003, target.getCardinality());
+    assertEquals(expected, snapshot);
+    assertEquals(expected, persistent.toRoaringBitmap());
+    assertFalse(persistent.contains(1));
+    assertEquals(5000, persistent.getLongCardinality());
+  }
+
+  @Test
+  public void containersBeforeTheEnd() throws IOException {
+    RoaringBitmap bitmap = new RoaringBitmap();
+    for (int k = 0; k < 100; ++k) {
+      for (int i = 0; i < 1000; ++i) {
+        bitmap.add((k << 16) + 3 * i);
+      }
+    }
+    byte[] data = serialize(bitmap);
+    StreamingDeserializer deserializer = new StreamingDeserializer(
+        new ByteArrayInputStream(Arrays.copyOf(data, data.length / 2)));
+    int read = 0;
+    try {
+      while (deserializer.next()) {
+        assertEquals(bitmap.highLowContainer.getContainerAtIndex(read),
+            deserializer.getContainer());
+        ++read;
+      }
+      fail("the input is truncated");
+    } catch (EOFException expected) {
+      assertTrue(read > 0);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void badCookie() throws IOException {
+    StreamingDeserializer.deserialize(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void bufferTooSmall() {
+    new StreamingDeserializer(Channels.newChannel(new ByteArrayInputStream(new byte[0])), 1024);
+  }
+}
@@ -50,6 +50,49 @@ public class UnorderedWriterRandomisedTest {
     assertEquals(baseline, test);
   }
 
+  @Test
+  public void unorderedWriterShouldBuildSameBitmapAsBitmapOf() {
+    RoaringBitmap baseline = RoaringBitmap.bitmapOf(data);
+    baseline.runOptimize();
+    UnorderedWriter writer = new UnorderedWriter();
+    for (int value : data) {
+      writer.add(value);
+    }
+    // duplicates are ignored
+    writer.addN(data, 0, data.length / 2);
+    writer.flush();
+    RoaringBitmap test = writer.getUnderlying();
+    RoaringArray baselineHLC = baseline.highLowContainer;
+    RoaringArray testHLC = test.highLowContainer;
+    Assert.assertEquals(baselineHLC.size, testHLC.size);
+    for (int i = 0; i < baselineHLC.size; ++i) {
+      Container baselineContainer = baselineHLC.getContainerAtIndex(i);
+      Container rbContainer = testHLC.getContainerAtIndex(i);
+      assertEquals(baselineContainer.getClass(), rbContainer.getClass());
+      assertEquals(baselineContainer, rbContainer);
+    }
+    assertEquals(baseline, test);
+  }
+
+  @Test
+  public void unorderedWriterShouldMergeFlushes() {
+    RoaringBitmap baseline = RoaringBitmap.bitmapOf(data);
+    baseline.add(-1, 1 << 20, -(1 << 20));
+    RoaringBitmap test = RoaringBitmap.bitmapOf(-1, 1 << 20);
+    UnorderedWriter writer = new UnorderedWriter(test);
+    for (int i = 0; i < data.length; ++i) {
+      writer.add(data[i]);
+      if (i % 1000 == 999) {
+        writer.flush();
+      }
+    }
+    writer.add(-(1 << 20));
+    writer.flush();
+    writer.flush();
+    assertEquals(baseline, test);
+    assertEquals(baseline.getCardinality(), test.getCardinality());
+  }
+
   private static int[] generateUnorderedArray(int size) {
     Random random = new Random();
     List<Integer> ints = new ArrayList<>(size);
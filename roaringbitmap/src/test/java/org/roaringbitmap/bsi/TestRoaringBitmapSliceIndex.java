@@ -0,0 +1,264 @@
+package org.roaringbitmap.bsi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.bsi.buffer.ImmutableBitSliceIndex;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+public class TestRoaringBitmapSliceIndex {
+
+  private static final int ROWS = 20000;
+
+  // value of each row, -1 when the row has no value
+  private long[] values;
+
+  private RoaringBitmapSliceIndex bsi;
+
+  @Before
+  public void setup() {
+    Random random = new Random(1234);
+    values = new long[ROWS];
+    bsi = new RoaringBitmapSliceIndex();
+    for (int row = 0; row < ROWS; row++) {
+      if (random.nextInt(10) == 0) {
+        values[row] = -1;
+        continue;
+      }
+      values[row] = random.nextBoolean() ? random.nextInt(1000) : random.nextInt(1 << 20);
+      bsi.setValue(row, values[row]);
+    }
+    // overwritten values
+    for (int row = 0; row < ROWS; row += 97) {
+      values[row] = random.nextInt(500);
+      bsi.setValue(row, values[row]);
+    }
+    bsi.runOptimize();
+  }
+
+  private RoaringBitmap expected(Operation operation, long start, long end,
+      RoaringBitmap foundSet) {
+    RoaringBitmap answer = new RoaringBitmap();
+    for (int row = 0; row < ROWS; row++) {
+      long v = values[row];
+      if (v < 0 || (foundSet != null && !foundSet.contains(row))) {
+        continue;
+      }
+      boolean match;
+      switch (operation) {
+        case EQ:
+          match = v == start;
+          break;
+        case NEQ:
+          match = v != start;
+          break;
+        case LT:
+          match = v < start;
+          break;
+        case LE:
+          match = v <= start;
+          break;
+        case GT:
+          match = v > start;
+          break;
+        case GE:
+          match = v >= start;
+          break;
+        default:
+          match = start <= v && v <= end;
+      }
+      if (match) {
+        answer.add(row);
+      }
+    }
+    return answer;
+  }
+
+  private RoaringBitmap evenRows() {
+    RoaringBitmap even = new RoaringBitmap();
+    for (int row = 0; row < ROWS + 10; row += 2) {
+      even.add(row);
+    }
+    return even;
+  }
+
+  @Test
+  public void testGetValue() {
+    for (int row = 0; row < ROWS; row++) {
+      Assert.assertEquals(values[row] >= 0, bsi.valueExist(row));
+      if (values[row] >= 0) {
+        Assert.assertEquals(values[row], bsi.getValue(row));
+      }
+    }
+    Assert.assertEquals(20, bsi.bitCount());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testGetMissingValue() {
+    bsi.getValue(ROWS + 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeValue() {
+    bsi.setValue(1, -1);
+  }
+
+  @Test
+  public void testRemove() {
+    bsi.remove(3);
+    bsi.remove(ROWS + 5);
+    Assert.assertFalse(bsi.valueExist(3));
+    values[3] = -1;
+    Assert.assertEquals(expected(Operation.GE, 0, 0, null), bsi.compare(Operation.GE, 0, 0, null));
+  }
+
+  @Test
+  public void testCompare() {
+    RoaringBitmap even = evenRows();
+    long[] probes = {-5, 0, 1, 17, 500, 999, 1000, 123456, 1 << 20, (1 << 20) - 1, 1L << 40};
+    for (Operation operation : Operation.values()) {
+      for (long probe : probes) {
+        long end = probe + 70000;
+        Assert.assertEquals(operation + " " + probe, expected(operation, probe, end, null),
+            bsi.compare(operation, probe, end, null));
+        Assert.assertEquals(operation + " " + probe, expected(operation, probe, end, even),
+            bsi.compare(operation, probe, end, even));
+      }
+    }
+  }
+
+  @Test
+  public void testAggregates() {
+    RoaringBitmap even = evenRows();
+    long sum = 0, evenSum = 0;
+    long min = Long.MAX_VALUE, max = -1, evenMin = Long.MAX_VALUE, evenMax = -1;
+    for (int row = 0; row < ROWS; row++) {
+      long v = values[row];
+      if (v < 0) {
+        continue;
+      }
+      sum += v;
+      min = Math.min(min, v);
+      max = Math.max(max, v);
+      if (row % 2 == 0) {
+        evenSum += v;
+        evenMin = Math.min(evenMin, v);
+        evenMax = Math.max(evenMax, v);
+      }
+    }
+    Assert.assertEquals(sum, bsi.sum(null));
+    Assert.assertEquals(evenSum, bsi.sum(even));
+    Assert.assertEquals(min, bsi.min(null));
+    Assert.assertEquals(max, bsi.max(null));
+    Assert.assertEquals(evenMin, bsi.min(even));
+    Assert.assertEquals(evenMax, bsi.max(even));
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testMaxOfNothing() {
+    bsi.max(RoaringBitmap.bitmapOf(ROWS + 1));
+  }
+
+  @Test
+  public void testTopK() {
+    RoaringBitmap even = evenRows();
+    for (int k : new int[] {0, 1, 10, 1000, ROWS}) {
+      checkTopK(bsi.topK(null, k), null, k);
+      checkTopK(bsi.topK(even, k), even, k);
+    }
+  }
+
+  private void checkTopK(RoaringBitmap top, RoaringBitmap foundSet, int k) {
+    RoaringBitmap all = expected(Operation.GE, 0, 0, foundSet);
+    Assert.assertEquals(Math.min(k, all.getCardinality()), top.getCardinality());
+    Assert.assertTrue(all.contains(top));
+    if (top.getCardinality() == 0 || top.getCardinality() == all.getCardinality()) {
+      return;
+    }
+    long[] sorted = new long[all.getCardinality()];
+    int pos = 0;
+    for (int row : all) {
+      sorted[pos++] = values[row];
+    }
+    Arrays.sort(sorted);
+    long threshold = sorted[sorted.length - k];
+    for (int row : top) {
+      Assert.assertTrue(values[row] >= threshold);
+    }
+    for (int row : RoaringBitmap.andNot(all, top)) {
+      Assert.assertTrue(values[row] <= threshold);
+    }
+  }
+
+  private byte[] serialize() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bsi.serialize(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    byte[] bytes = serialize();
+    Assert.assertEquals(bsi.serializedSizeInBytes(), bytes.length);
+    RoaringBitmapSliceIndex copy = new RoaringBitmapSliceIndex();
+    copy.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+    Assert.assertEquals(bsi.getExistenceBitmap(), copy.getExistenceBitmap());
+    Assert.assertEquals(bsi.compare(Operation.RANGE, 100, 800, null),
+        copy.compare(Operation.RANGE, 100, 800, null));
+  }
+
+  @Test
+  public void testMappedIndex() throws IOException {
+    byte[] bytes = serialize();
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+    buffer.position(3);
+    buffer.put(bytes);
+    buffer.position(3);
+    ImmutableBitSliceIndex mapped = new ImmutableBitSliceIndex(buffer);
+    Assert.assertEquals(3, buffer.position());
+    Assert.assertEquals(bytes.length, mapped.serializedSizeInBytes());
+    Assert.assertEquals(bsi.bitCount(), mapped.bitCount());
+    Assert.assertEquals(bsi.getLongCardinality(), mapped.getLongCardinality());
+
+    RoaringBitmap even = evenRows();
+    ImmutableRoaringBitmap mappedEven = even.toMutableRoaringBitmap();
+    for (Operation operation : Operation.values()) {
+      for (long probe : new long[] {-1, 0, 300, 70000, 1L << 33}) {
+        Assert.assertEquals(expected(operation, probe, probe + 500, null),
+            mapped.compare(operation, probe, probe + 500, null).toRoaringBitmap());
+        Assert.assertEquals(expected(operation, probe, probe + 500, even),
+            mapped.compare(operation, probe, probe + 500, mappedEven).toRoaringBitmap());
+      }
+    }
+    Assert.assertEquals(bsi.sum(even), mapped.sum(mappedEven));
+    Assert.assertEquals(bsi.min(even), mapped.min(mappedEven));
+    Assert.assertEquals(bsi.max(null), mapped.max(null));
+    Assert.assertEquals(bsi.getValue(42), mapped.getValue(42));
+    MutableRoaringBitmap top = mapped.topK(mappedEven, 100);
+    Assert.assertEquals(bsi.topK(even, 100), top.toRoaringBitmap());
+  }
+
+  @Test
+  public void testEmpty() {
+    RoaringBitmapSliceIndex empty = new RoaringBitmapSliceIndex();
+    Assert.assertEquals(0, empty.bitCount());
+    Assert.assertTrue(empty.compare(Operation.EQ, 0, 0, null).isEmpty());
+    Assert.assertEquals(0, empty.sum(null));
+    Assert.assertTrue(empty.topK(null, 5).isEmpty());
+    empty.setValue(7, 0);
+    Assert.assertEquals(RoaringBitmap.bitmapOf(7), empty.compare(Operation.EQ, 0, 0, null));
+    Assert.assertEquals(0, empty.max(null));
+  }
+}
@@ -5,6 +5,8 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
@@ -197,7 +199,74 @@ public class BufferParallelAggregationTest {
             .toMutableRoaringBitmap();
     Assert.assertEquals(BufferFastAggregation.xor(one, two, three), BufferParallelAggregation.xor(one, two, three));
   }
-}
 
+  @Test
+  public void missingMiddleContainerAND() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).build()
+            .toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(0).withRunAt(1).withBitmapAt(2).build()
+            .toMutableRoaringBitmap();
+    Assert.assertEquals(BufferFastAggregation.and(one, two, three), BufferParallelAggregation.and(one, two, three));
+  }
+
+  @Test
+  public void wideAndInPool() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 200)
+            .mapToObj(i -> testCase().withBitmapAt(0).withBitmapAt(1).withRunAt(2).withBitmapAt(7)
+                    .withBitmapAt((1 << 15) | 3).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    Assert.assertEquals(BufferFastAggregation.and(input), BufferParallelAggregation.and(POOL, input));
+  }
+
+  @Test
+  public void andNot() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withBitmapAt(1).withArrayAt(2).withBitmapAt(5).build()
+            .toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(0).withArrayAt(2).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(0).withRunAt(1).withRunAt((1 << 15) | 1).build()
+            .toMutableRoaringBitmap();
+    MutableRoaringBitmap expected = ImmutableRoaringBitmap.andNot(one, ImmutableRoaringBitmap.or(two, three));
+    Assert.assertEquals(expected, BufferParallelAggregation.andNot(one, two, three));
+    Assert.assertEquals(expected, BufferParallelAggregation.andNot(POOL, one, two, three));
+    Assert.assertTrue(BufferParallelAggregation.andNot(POOL, one, one, two).isEmpty());
+  }
+
+  @Test
+  public void hugeOrInPoolAndExecutor() {
+    ImmutableRoaringBitmap[] input = IntStream.range(0, 1999)
+            .mapToObj(i -> testCase().withBitmapAt(0).withArrayAt(1).withRunAt(2).build().toMutableRoaringBitmap())
+            .toArray(ImmutableRoaringBitmap[]::new);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      MutableRoaringBitmap expected = BufferFastAggregation.or(input);
+      Assert.assertEquals(expected, BufferParallelAggregation.or(POOL, input));
+      Assert.assertEquals(expected, BufferParallelAggregation.or(executor, 3, input));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
+  @Test
+  public void xorAndAndNotInExecutor() {
+    ImmutableRoaringBitmap one = testCase().withRunAt(0).withArrayAt(1).withBitmapAt(4).build()
+            .toMutableRoaringBitmap();
+    ImmutableRoaringBitmap two = testCase().withBitmapAt(1).withArrayAt(4).build().toMutableRoaringBitmap();
+    ImmutableRoaringBitmap three = testCase().withArrayAt(1).withRunAt((1 << 15) | 3).build()
+            .toMutableRoaringBitmap();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Assert.assertEquals(BufferFastAggregation.xor(one, two, three),
+              BufferParallelAggregation.xor(POOL, one, two, three));
+      Assert.assertEquals(BufferFastAggregation.xor(one, two, three),
+              BufferParallelAggregation.xor(executor, 2, one, two, three));
+      Assert.assertEquals(BufferFastAggregation.and(one, two),
+              BufferParallelAggregation.and(executor, 2, one, two));
+      Assert.assertEquals(ImmutableRoaringBitmap.andNot(one, ImmutableRoaringBitmap.or(two, three)),
+              BufferParallelAggregation.andNot(executor, 4, one, two, three));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
+}
@@ -0,0 +1,96 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.roaringbitmap.BatchIterator;
+
+public class TestBatchIterator {
+
+  private static int[] drain(BatchIterator it, int bufferSize) {
+    int[] buffer = new int[bufferSize];
+    int[] result = new int[16];
+    int size = 0;
+    while (it.hasNext()) {
+      int n = it.nextBatch(buffer);
+      assertTrue(n > 0);
+      if (size + n > result.length) {
+        result = Arrays.copyOf(result, Math.max(2 * result.length, size + n));
+      }
+      System.arraycopy(buffer, 0, result, size, n);
+      size += n;
+    }
+    assertEquals(0, it.nextBatch(buffer));
+    return Arrays.copyOf(result, size);
+  }
+
+  private static MutableRoaringBitmap mixed() {
+    MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+    Random random = new Random(1234);
+    for (int k = 0; k < 1000; ++k) {
+      bitmap.add(random.nextInt(1 << 16));
+    }
+    for (int k = 0; k < 20000; ++k) {
+      bitmap.add((1 << 16) + random.nextInt(1 << 16));
+    }
+    bitmap.add(5L << 16, (5L << 16) + 30000);
+    bitmap.add(-1);
+    bitmap.add(-70000);
+    bitmap.runOptimize();
+    return bitmap;
+  }
+
+  private static ImmutableRoaringBitmap map(MutableRoaringBitmap bitmap) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    bitmap.serialize(dos);
+    dos.close();
+    return new ImmutableRoaringBitmap(ByteBuffer.wrap(bos.toByteArray()));
+  }
+
+  @Test
+  public void testEmpty() {
+    BatchIterator it = new MutableRoaringBitmap().getBatchIterator();
+    assertFalse(it.hasNext());
+    assertEquals(0, it.nextBatch(new int[10]));
+  }
+
+  @Test
+  public void testMutableMatchesToArray() {
+    MutableRoaringBitmap bitmap = mixed();
+    for (int bufferSize : new int[] {1, 3, 64, 256, 4096, 65536, 1 << 17}) {
+      assertArrayEquals(bitmap.toArray(), drain(bitmap.getBatchIterator(), bufferSize));
+    }
+  }
+
+  @Test
+  public void testMappedMatchesToArray() throws IOException {
+    ImmutableRoaringBitmap bitmap = map(mixed());
+    for (int bufferSize : new int[] {1, 3, 64, 256, 4096, 65536, 1 << 17}) {
+      assertArrayEquals(bitmap.toArray(), drain(bitmap.getBatchIterator(), bufferSize));
+    }
+  }
+
+  @Test
+  public void testClone() throws IOException {
+    ImmutableRoaringBitmap bitmap = map(mixed());
+    BatchIterator it = bitmap.getBatchIterator();
+    it.nextBatch(new int[100]);
+    BatchIterator copy = it.clone();
+    assertArrayEquals(drain(it, 333), drain(copy, 1000));
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBufferAllocator {
+
+  private static MutableRoaringBitmap randomBitmap(Random r, int keys) {
+    MutableRoaringBitmap bm = new MutableRoaringBitmap();
+    for (int k = 0; k < keys; ++k) {
+      int base = r.nextInt(64) << 16;
+      switch (r.nextInt(3)) {
+        case 0:
+          for (int i = 0; i < 100; ++i) {
+            bm.add(base + r.nextInt(1 << 16));
+          }
+          break;
+        case 1:
+          for (int i = 0; i < 10000; ++i) {
+            bm.add(base + r.nextInt(1 << 16));
+          }
+          break;
+        default:
+          int start = r.nextInt(1 << 15);
+          bm.add((long) base + start, (long) base + start + r.nextInt(1 << 15));
+      }
+    }
+    bm.runOptimize();
+    return bm;
+  }
+
+  private static void fill(MutableRoaringBitmap target, MutableRoaringBitmap source) {
+    for (int x : source) {
+      target.add(x);
+    }
+    target.runOptimize();
+  }
+
+  @Test
+  public void offloadKeepsContent() throws IOException {
+    Random r = new Random(1234);
+    MutableRoaringBitmap expected = randomBitmap(r, 20);
+    DirectBufferAllocator allocator = new DirectBufferAllocator();
+    MutableRoaringBitmap bm = new MutableRoaringBitmap(allocator);
+    fill(bm, expected);
+    assertEquals(0, bm.getOffHeapSizeInBytes());
+    bm.offload();
+    assertTrue(bm.getOffHeapSizeInBytes() > 0);
+    assertEquals(allocator.getAllocatedBytes(), bm.getOffHeapSizeInBytes());
+    assertEquals(expected, bm);
+    assertEquals(expected.getCardinality(), bm.getCardinality());
+    assertTrue(bm.getLongSizeInBytes() >= bm.getOffHeapSizeInBytes());
+    ByteArrayOutputStream a = new ByteArrayOutputStream();
+    expected.serialize(new DataOutputStream(a));
+    ByteArrayOutputStream b = new ByteArrayOutputStream();
+    bm.serialize(new DataOutputStream(b));
+    assertEquals(new ImmutableRoaringBitmap(ByteBuffer.wrap(a.toByteArray())),
+        new ImmutableRoaringBitmap(ByteBuffer.wrap(b.toByteArray())));
+    bm.release();
+    assertTrue(bm.isEmpty());
+    assertEquals(0, bm.getOffHeapSizeInBytes());
+    assertEquals(0, allocator.getAllocatedBytes());
+  }
+
+  @Test
+  public void mutationsAfterOffload() {
+    Random r = new Random(5678);
+    PooledBufferAllocator allocator = new PooledBufferAllocator();
+    MutableRoaringBitmap expected = randomBitmap(r, 20);
+    MutableRoaringBitmap bm = new MutableRoaringBitmap(allocator);
+    fill(bm, expected);
+    for (int round = 0; round < 30; ++round) {
+      bm.offload();
+      assertEquals(allocator.getAllocatedBytes(), bm.getOffHeapSizeInBytes());
+      MutableRoaringBitmap other = randomBitmap(r, 10);
+      switch (round % 8) {
+        case 0:
+          expected.or(other);
+          bm.or(other);
+          break;
+        case 1:
+          expected.and(other);
+          bm.and(other);
+          break;
+        case 2:
+          expected.xor(other);
+          bm.xor(other);
+          break;
+        case 3:
+          expected.andNot(other);
+          bm.andNot(other);
+          break;
+        case 4:
+          for (int i = 0; i < 1000; ++i) {
+            int x = r.nextInt(64 << 16);
+            expected.add(x);
+            bm.add(x);
+            x = r.nextInt(64 << 16);
+            expected.remove(x);
+            bm.remove(x);
+            x = r.nextInt(64 << 16);
+            expected.flip(x);
+            bm.flip(x);
+          }
+          break;
+        case 5: {
+          long start = r.nextInt(64 << 16);
+          long end = start + r.nextInt(1 << 18);
+          expected.remove(start, end);
+          bm.remove(start, end);
+          break;
+        }
+        case 6: {
+          long start = r.nextInt(64 << 16);
+          long end = start + r.nextInt(1 << 18);
+          expected.flip(start, end);
+          bm.flip(start, end);
+          break;
+        }
+        default:
+          expected.runOptimize();
+          bm.runOptimize();
+          expected.add(other.toArray());
+          bm.add(other.toArray());
+      }
+      assertEquals(expected, bm);
+      assertEquals(expected.getCardinality(), bm.getCardinality());
+      assertEquals(allocator.getAllocatedBytes(), bm.getOffHeapSizeInBytes());
+    }
+    MutableRoaringBitmap copy = bm.clone();
+    bm.release();
+    assertEquals(0, allocator.getAllocatedBytes());
+    assertEquals(expected, copy);
+    assertTrue(allocator.getPooledBytes() > 0);
+  }
+
+  @Test
+  public void orNotAfterOffload() {
+    Random r = new Random(4321);
+    DirectBufferAllocator allocator = new DirectBufferAllocator();
+    MutableRoaringBitmap expected = randomBitmap(r, 20);
+    expected.add(63 << 16);
+    MutableRoaringBitmap bm = new MutableRoaringBitmap(allocator);
+    fill(bm, expected);
+    for (int round = 0; round < 10; ++round) {
+      bm.offload();
+      MutableRoaringBitmap other = randomBitmap(r, 10);
+      // keys past the range keep their offloaded containers
+      long rangeEnd = r.nextInt(32 << 16);
+      expected.orNot(other, rangeEnd);
+      bm.orNot(other, rangeEnd);
+      assertEquals(expected, bm);
+      assertTrue(bm.getOffHeapSizeInBytes() > 0);
+      assertEquals(allocator.getAllocatedBytes(), bm.getOffHeapSizeInBytes());
+    }
+    bm.offload();
+    bm.release();
+    assertEquals(0, bm.getOffHeapSizeInBytes());
+    assertEquals(0, allocator.getAllocatedBytes());
+  }
+
+  @Test
+  public void withoutAllocator() {
+    MutableRoaringBitmap bm = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20);
+    long size = bm.getLongSizeInBytes();
+    bm.offload();
+    assertEquals(0, bm.getOffHeapSizeInBytes());
+    assertEquals(size, bm.getLongSizeInBytes());
+    assertEquals(MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 20), bm);
+  }
+
+  @Test
+  public void pooledReuse() {
+    PooledBufferAllocator allocator = new PooledBufferAllocator(1 << 20);
+    ShortBuffer s = allocator.allocateShortBuffer(100);
+    assertEquals(100, s.limit());
+    assertEquals(128, s.capacity());
+    allocator.free(s);
+    assertEquals(256, allocator.getPooledBytes());
+    ShortBuffer t = allocator.allocateShortBuffer(120);
+    assertTrue(s == t);
+    assertEquals(120, t.limit());
+    assertEquals(0, t.position());
+    allocator.free(t);
+    allocator.trim();
+    assertEquals(0, allocator.getPooledBytes());
+    PooledBufferAllocator bounded = new PooledBufferAllocator(0);
+    bounded.free(bounded.allocateLongBuffer(1024));
+    assertEquals(0, bounded.getPooledBytes());
+    assertEquals(0, bounded.getAllocatedBytes());
+  }
+}
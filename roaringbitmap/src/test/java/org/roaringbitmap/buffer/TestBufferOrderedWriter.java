@@ -0,0 +1,128 @@
+/*
+ * (c) the authors Licensed under the Apache License, Version 2.0.
+ */
+
+package org.roaringbitmap.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestBufferOrderedWriter {
+
+  private static int[] ascendingValues(Random r, int keys) {
+    MutableRoaringBitmap bm = new MutableRoaringBitmap();
+    for (int k = 0; k < keys; ++k) {
+      int base = (r.nextInt(1 << 15) << 16) + (r.nextBoolean() ? Integer.MIN_VALUE : 0);
+      switch (r.nextInt(3)) {
+        case 0:
+          for (int i = 0; i < 100; ++i) {
+            bm.add(base + r.nextInt(1 << 16));
+          }
+          break;
+        case 1:
+          for (int i = 0; i < 10000; ++i) {
+            bm.add(base + r.nextInt(1 << 16));
+          }
+          break;
+        default:
+          int start = r.nextInt(1 << 15);
+          bm.add((long) (base + start) & 0xFFFFFFFFL,
+              (long) (base + start + 1 + r.nextInt(1 << 15)) & 0xFFFFFFFFL);
+      }
+    }
+    return bm.toArray();
+  }
+
+  private static byte[] serialize(int[] values) throws IOException {
+    MutableRoaringBitmap bm = MutableRoaringBitmap.bitmapOf(values);
+    bm.runOptimize();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bm.serialize(new DataOutputStream(bos));
+    return bos.toByteArray();
+  }
+
+  private static void write(BufferOrderedWriter writer, int[] values) throws IOException {
+    for (int value : values) {
+      writer.add(value);
+    }
+    writer.close();
+  }
+
+  @Test
+  public void writeToBuffers() throws IOException {
+    Random r = new Random(1234);
+    for (int trial = 0; trial < 20; ++trial) {
+      int[] values = trial == 0 ? new int[0] : ascendingValues(r, 1 + r.nextInt(50));
+      byte[] expected = serialize(values);
+      ByteBuffer[] buffers = {ByteBuffer.allocate(expected.length + (1 << 20)),
+          ByteBuffer.allocateDirect(expected.length + 1000)};
+      for (ByteBuffer buffer : buffers) {
+        buffer.position(7);
+        BufferOrderedWriter writer = buffer.isDirect()
+            ? new BufferOrderedWriter(buffer, 50) : new BufferOrderedWriter(buffer);
+        write(writer, values);
+        assertEquals(expected.length, writer.getSerializedSizeInBytes());
+        assertEquals(7 + expected.length, buffer.position());
+        buffer.flip();
+        buffer.position(7);
+        ByteBuffer serialized = buffer.slice();
+        assertEquals(ByteBuffer.wrap(expected), serialized);
+        assertEquals(MutableRoaringBitmap.bitmapOf(values),
+            new ImmutableRoaringBitmap(serialized));
+      }
+    }
+  }
+
+  @Test
+  public void writeToFile() throws IOException {
+    Path path = Files.createTempFile("roaring", ".bin");
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+      int[] values = ascendingValues(new Random(5678), 200);
+      write(new BufferOrderedWriter(channel), values);
+      byte[] expected = serialize(values);
+      assertEquals(3 + expected.length, channel.size());
+      assertEquals(3 + expected.length, channel.position());
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 3, expected.length);
+      assertEquals(ByteBuffer.wrap(expected), mapped);
+      assertEquals(MutableRoaringBitmap.bitmapOf(values), new ImmutableRoaringBitmap(mapped));
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void orderIsEnforced() throws IOException {
+    BufferOrderedWriter writer = new BufferOrderedWriter(ByteBuffer.allocate(1 << 10), 2);
+    writer.add(1 << 16);
+    writer.add(5 + (1 << 16));
+    writer.add(1 + (1 << 16)); // values of a key may come in any order
+    try {
+      writer.add(3 << 16);
+      writer.add(2 << 16);
+      fail();
+    } catch (IllegalStateException expected) {
+      // expected
+    }
+    try {
+      writer.add(4 << 16);
+      writer.add(5 << 16);
+      fail();
+    } catch (IllegalStateException expected) {
+      // expected, more than 2 keys
+    }
+  }
+}
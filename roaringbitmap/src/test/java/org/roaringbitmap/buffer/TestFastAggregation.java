@@ -7,7 +7,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 public class TestFastAggregation {
 
@@ -151,4 +155,178 @@ public class TestFastAggregation {
     Assert.assertEquals(data3, BufferFastAggregation.priorityqueue_xor(data1, data2));
     BufferFastAggregation.priorityqueue_xor(data1);
   }
+
+  // bitmaps over a few shared keys, mixing array, bitmap and run containers
+  private static ImmutableRoaringBitmap[] overlappingBitmaps(Random r, int count) {
+    ImmutableRoaringBitmap[] bitmaps = new ImmutableRoaringBitmap[count];
+    for (int i = 0; i < count; ++i) {
+      MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+      for (int key = 0; key < 8; ++key) {
+        if (r.nextInt(8) == 0) {
+          continue;
+        }
+        int base = key << 16;
+        switch (r.nextInt(3)) {
+          case 0:
+            for (int k = 0; k < 2000; ++k) {
+              bitmap.add(base + r.nextInt(1 << 12));
+            }
+            break;
+          case 1:
+            for (int k = 0; k < 30000; ++k) {
+              bitmap.add(base + r.nextInt(1 << 16));
+            }
+            break;
+          default:
+            for (int k = 0; k < 5; ++k) {
+              int start = base + r.nextInt(1 << 16);
+              bitmap.add(start, Math.min(start + r.nextInt(1 << 14), base + (1 << 16)));
+            }
+            bitmap.runOptimize();
+        }
+      }
+      bitmaps[i] = r.nextBoolean() ? bitmap : toMapped(bitmap);
+    }
+    return bitmaps;
+  }
+
+  @Test
+  public void testWorkShyAnd() {
+    Random r = new Random(1234);
+    long[] buffer = new long[1 << 10];
+    for (int trial = 0; trial < 50; ++trial) {
+      ImmutableRoaringBitmap[] bitmaps = overlappingBitmaps(r, 1 + r.nextInt(16));
+      MutableRoaringBitmap expected = BufferFastAggregation.naive_and(bitmaps);
+      Assert.assertEquals(expected, BufferFastAggregation.workShyAnd(buffer, bitmaps));
+      Assert.assertEquals(expected, BufferFastAggregation.and(bitmaps));
+    }
+  }
+
+  @Test
+  public void testBoundedAnd() {
+    Random r = new Random(5678);
+    long[] buffer = new long[1 << 10];
+    int[] limits = {0, 1, 100, 4096, 5000, 100000, Integer.MAX_VALUE};
+    for (int trial = 0; trial < 20; ++trial) {
+      ImmutableRoaringBitmap[] bitmaps = overlappingBitmaps(r, 1 + r.nextInt(4));
+      MutableRoaringBitmap full = BufferFastAggregation.naive_and(bitmaps);
+      for (int limit : limits) {
+        Assert.assertEquals(full.limit(limit), BufferFastAggregation.and(limit, bitmaps));
+        Assert.assertEquals(full.limit(limit),
+            BufferFastAggregation.workShyAnd(buffer, limit, bitmaps));
+      }
+    }
+    MutableRoaringBitmap b1 = MutableRoaringBitmap.bitmapOf(1, 2, 3, 1 << 16, (1 << 16) + 1);
+    MutableRoaringBitmap b2 = MutableRoaringBitmap.bitmapOf(2, 3, 1 << 16, (1 << 16) + 1);
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(2, 3, 1 << 16),
+        BufferFastAggregation.and(3, b1, b2));
+  }
+
+  // the serialized bitmap starts at the position of the returned buffer, after some padding
+  private static ByteBuffer serialize(ImmutableRoaringBitmap bitmap, int padding,
+      boolean direct) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (DataOutputStream dos = new DataOutputStream(bos)) {
+      bitmap.serialize(dos);
+    } catch (IOException e) {
+      throw new RuntimeException(e.toString());
+    }
+    byte[] bytes = bos.toByteArray();
+    ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(padding + bytes.length + padding)
+        : ByteBuffer.allocate(padding + bytes.length + padding);
+    buffer.position(padding);
+    buffer.put(bytes);
+    buffer.position(padding);
+    return buffer;
+  }
+
+  @Test
+  public void testSerializedOr() {
+    Random r = new Random(4321);
+    for (int trial = 0; trial < 20; ++trial) {
+      List<ByteBuffer> buffers = new ArrayList<>();
+      MutableRoaringBitmap expected = new MutableRoaringBitmap();
+      for (ImmutableRoaringBitmap bitmap : overlappingBitmaps(r, 1 + r.nextInt(30))) {
+        if (r.nextBoolean()) {
+          // fewer than 4 keys and runs, so that the offsets of the containers are not serialized
+          MutableRoaringBitmap runs = MutableRoaringBitmap.bitmapOf(r.nextInt(1 << 20));
+          long start = (long) r.nextInt(1 << 20) << 4;
+          runs.add(start, start + r.nextInt(1 << 17));
+          runs.runOptimize();
+          bitmap = runs;
+        }
+        ByteBuffer buffer = serialize(bitmap, r.nextInt(16), r.nextBoolean());
+        if (r.nextBoolean()) {
+          buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffers.add(buffer);
+        expected.or(bitmap);
+      }
+      buffers.add(serialize(new MutableRoaringBitmap(), 3, false));
+      int[] positions = new int[buffers.size()];
+      for (int k = 0; k < positions.length; ++k) {
+        positions[k] = buffers.get(k).position();
+      }
+      Assert.assertEquals(expected, BufferFastAggregation.serializedOr(buffers.iterator()));
+      for (int k = 0; k < positions.length; ++k) {
+        Assert.assertEquals(positions[k], buffers.get(k).position());
+      }
+    }
+  }
+
+  @Test
+  public void testSerializedOrEdgeCases() {
+    Assert.assertTrue(
+        BufferFastAggregation.serializedOr(new ArrayList<ByteBuffer>().iterator()).isEmpty());
+    MutableRoaringBitmap bitmap = MutableRoaringBitmap.bitmapOf(1, 2, -1);
+    bitmap.add(1L << 20, 1L << 21);
+    bitmap.runOptimize();
+    List<ByteBuffer> buffers = new ArrayList<>();
+    buffers.add(serialize(bitmap, 0, false));
+    Assert.assertEquals(bitmap, BufferFastAggregation.serializedOr(buffers.iterator()));
+    buffers.add(serialize(MutableRoaringBitmap.bitmapOf(3, -2), 5, true));
+    MutableRoaringBitmap expected = bitmap.clone();
+    expected.add(3);
+    expected.add(-2);
+    Assert.assertEquals(expected, BufferFastAggregation.serializedOr(buffers.iterator()));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testSerializedOrBadCookie() {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    buffers.add(ByteBuffer.allocate(16));
+    BufferFastAggregation.serializedOr(buffers.iterator());
+  }
+
+  @Test
+  public void testSerializedOrBadContainerCount() {
+    for (int size : new int[] {-1, (1 << 16) + 1, Integer.MAX_VALUE}) {
+      ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(0, MutableRoaringArray.SERIAL_COOKIE_NO_RUNCONTAINER).putInt(4, size);
+      try {
+        BufferFastAggregation.serializedOr(Collections.singletonList(buffer).iterator());
+        Assert.fail();
+      } catch (RuntimeException e) {
+        Assert.assertEquals("Invalid number of containers: " + size, e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testWorkShyAndEdgeCases() {
+    long[] buffer = new long[1 << 10];
+    Assert.assertTrue(BufferFastAggregation.workShyAnd(buffer).isEmpty());
+    MutableRoaringBitmap b1 = MutableRoaringBitmap.bitmapOf(1, 2, 1 << 16, 3 << 16);
+    ImmutableRoaringBitmap b2 = toMapped(MutableRoaringBitmap.bitmapOf(2, 3, (1 << 16) + 1, 3 << 16));
+    Assert.assertEquals(MutableRoaringBitmap.bitmapOf(2, 3 << 16),
+        BufferFastAggregation.workShyAnd(buffer, b1, b2));
+    Assert.assertEquals(b1, BufferFastAggregation.workShyAnd(buffer, b1));
+    Assert.assertTrue(
+        BufferFastAggregation.workShyAnd(buffer, b1, new MutableRoaringBitmap()).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWorkShyAndBufferSize() {
+    BufferFastAggregation.workShyAnd(new long[16], MutableRoaringBitmap.bitmapOf(1));
+  }
 }
@@ -7,7 +7,10 @@ package org.roaringbitmap.buffer;
 import org.junit.Assert;
 import org.junit.Test;
 import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.InvalidRoaringFormat;
 import org.roaringbitmap.OrderedWriter;
+import org.roaringbitmap.RandomisedTestData;
+import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 import org.roaringbitmap.buffer.MappeableArrayContainer;
 import org.roaringbitmap.buffer.MappeableBitmapContainer;
@@ -15,6 +18,7 @@ import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 import java.util.stream.IntStream;
 
@@ -1455,4 +1459,148 @@ public class TestImmutableRoaringBitmap {
     assertFalse(bitmap.contains(1L << 31, 1L << 32));
   }
 
+  @Test
+  public void navigationMatchesHeapBitmaps() throws IOException {
+    Random random = new Random(1234);
+    for (int i = 0; i < 20; ++i) {
+      RoaringBitmap expected = RandomisedTestData.randomBitmap(20);
+      if (i % 2 == 0) {
+        expected.runOptimize();
+      }
+      expected.add(0xFFFFFFFDL, 0xFFFFFFFFL);
+      MutableRoaringBitmap mutable = expected.toMutableRoaringBitmap();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      mutable.serialize(new DataOutputStream(bos));
+      ByteBuffer direct = ByteBuffer.allocateDirect(bos.size());
+      direct.put(bos.toByteArray()).flip();
+      ImmutableRoaringBitmap[] bitmaps = {mutable, new ImmutableRoaringBitmap(direct)};
+      IntIterator it = expected.getIntIterator();
+      while (it.hasNext()) {
+        int value = it.next();
+        if (random.nextInt(200) != 0) {
+          continue;
+        }
+        int key = value & 0xFFFF0000;
+        for (int candidate : new int[] {value, value - 1, value + 1, key, key - 1, key | 0xFFFF,
+            (key | 0xFFFF) + 1, key | random.nextInt(1 << 16), 0, -1}) {
+          for (ImmutableRoaringBitmap bitmap : bitmaps) {
+            assertEquals(expected.nextValue(candidate), bitmap.nextValue(candidate));
+            assertEquals(expected.previousValue(candidate), bitmap.previousValue(candidate));
+            assertEquals(expected.nextAbsentValue(candidate), bitmap.nextAbsentValue(candidate));
+            assertEquals(expected.previousAbsentValue(candidate),
+                bitmap.previousAbsentValue(candidate));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void rangeCardinalityMatchesHeapBitmaps() throws IOException {
+    Random random = new Random(1234);
+    for (int i = 0; i < 10; ++i) {
+      RoaringBitmap expected = RandomisedTestData.randomBitmap(20);
+      MutableRoaringBitmap mutable = expected.toMutableRoaringBitmap();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      mutable.serialize(new DataOutputStream(bos));
+      ImmutableRoaringBitmap[] bitmaps = {mutable,
+          new ImmutableRoaringBitmap(ByteBuffer.wrap(bos.toByteArray()))};
+      for (int j = 0; j < 50; ++j) {
+        long start = random.nextLong() & 0xFFFFFFFFL;
+        long end = j % 5 == 0 ? 1L << 32 : start + random.nextInt(1 << 20);
+        end = Math.min(end, 1L << 32);
+        long threshold = random.nextInt(2 * expected.getCardinality() + 1) - 1;
+        for (ImmutableRoaringBitmap bitmap : bitmaps) {
+          assertEquals(expected.rangeCardinality(start, end), bitmap.rangeCardinality(start, end));
+          assertEquals(expected.cardinalityExceeds(threshold),
+              bitmap.cardinalityExceeds(threshold));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void cumulativeCardinalitiesMatchHeapBitmaps() throws IOException {
+    Random random = new Random(5678);
+    for (int i = 0; i < 10; ++i) {
+      RoaringBitmap expected = i == 0 ? new RoaringBitmap() : RandomisedTestData.randomBitmap(50);
+      MutableRoaringBitmap mutable = expected.toMutableRoaringBitmap();
+      MutableRoaringBitmap next = MutableRoaringBitmap.bitmapOf(1, 2, 3);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(bos);
+      mutable.serializeWithCumulativeCardinalities(dos);
+      assertEquals(mutable.serializedSizeWithCumulativeCardinalitiesInBytes(), bos.size());
+      next.serialize(dos);
+      ByteBuffer direct = ByteBuffer.allocateDirect(bos.size());
+      direct.put(bos.toByteArray()).flip();
+      for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(bos.toByteArray()), direct}) {
+        ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(buffer);
+        assertTrue(((ImmutableRoaringArray) bitmap.highLowContainer).hasCumulativeCardinalities());
+        assertEquals(mutable, bitmap);
+        assertEquals(mutable.serializedSizeInBytes(), bitmap.serializedSizeInBytes());
+        int cardinality = expected.getCardinality();
+        for (int j = 0; j < 100; ++j) {
+          int x = random.nextInt();
+          assertEquals(expected.rankLong(x), bitmap.rankLong(x));
+          if (cardinality > 0) {
+            int rank = random.nextInt(cardinality);
+            assertEquals(expected.select(rank), bitmap.select(rank));
+          }
+        }
+        try {
+          bitmap.select(cardinality);
+          Assert.fail();
+        } catch (IllegalArgumentException expectedException) {
+          // out of bounds
+        }
+        buffer.position(bitmap.serializedSizeWithCumulativeCardinalitiesInBytes());
+        assertEquals(next, new ImmutableRoaringBitmap(buffer));
+      }
+      // readers ignoring the cumulative cardinalities
+      RoaringBitmap deserialized = new RoaringBitmap();
+      deserialized.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+      assertEquals(expected, deserialized);
+    }
+  }
+
+  @Test
+  public void noCumulativeCardinalitiesWithoutTheCookie() throws IOException {
+    MutableRoaringBitmap first = MutableRoaringBitmap.bitmapOf(1, 1 << 20);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    first.serialize(dos);
+    first.serialize(dos);
+    first.runOptimize();
+    first.serializeWithCumulativeCardinalities(dos);
+    ImmutableRoaringBitmap bitmap = new ImmutableRoaringBitmap(ByteBuffer.wrap(bos.toByteArray()));
+    assertFalse(((ImmutableRoaringArray) bitmap.highLowContainer).hasCumulativeCardinalities());
+    assertEquals(2, bitmap.rankLong(1 << 20));
+    assertEquals(1 << 20, bitmap.select(1));
+  }
+
+  @Test
+  public void invalidCumulativeCardinalities() throws IOException {
+    MutableRoaringBitmap bitmap = MutableRoaringBitmap.bitmapOf(1, 2, 1 << 16, 2 << 16);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bitmap.serializeWithCumulativeCardinalities(new DataOutputStream(bos));
+    final byte[] valid = bos.toByteArray();
+    final int start = bitmap.serializedSizeInBytes();
+    ByteBuffer wrongCount = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    wrongCount.putInt(start + 4, 4);
+    ByteBuffer truncated = ByteBuffer.wrap(valid, 0, valid.length - 1);
+    // the cardinality before the second container is 2
+    ByteBuffer wrongSum = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    wrongSum.putInt(start + 12, 3);
+    ByteBuffer notMonotone = ByteBuffer.wrap(valid.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    notMonotone.putInt(start + 16, 1);
+    for (ByteBuffer buffer : new ByteBuffer[] {wrongCount, truncated, wrongSum, notMonotone}) {
+      try {
+        new ImmutableRoaringBitmap(buffer);
+        Assert.fail();
+      } catch (InvalidRoaringFormat expected) {
+        // rank and select would be wrong
+      }
+    }
+    assertEquals(bitmap, new ImmutableRoaringBitmap(ByteBuffer.wrap(valid)));
+  }
 }
@@ -12,6 +12,7 @@ import org.junit.Test;
 import org.roaringbitmap.IntConsumer;
 import org.roaringbitmap.IntIterator;
 import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RandomisedTestData;
 import org.roaringbitmap.RoaringBitmap;
 
 import java.io.*;
@@ -3508,5 +3509,26 @@ public class TestRoaringBitmap {
     assertEquals(baseline.getCardinality(), MutableRoaringBitmap.andCardinality(baseline, baseline));
   }
 
-
+  @Test
+  public void orNotMatchesHeapBitmaps() {
+    Random random = new Random(1234);
+    for (int i = 0; i < 10; ++i) {
+      RoaringBitmap x1 = RandomisedTestData.randomBitmap(20);
+      RoaringBitmap x2 = RandomisedTestData.randomBitmap(20);
+      x2.add(3L << 16, 4L << 16);
+      for (long rangeEnd : new long[] {0, 1, (1 << 16) + 1, (4 << 16) - 1, 1L << 32,
+          random.nextLong() & 0xFFFFFFFFL}) {
+        MutableRoaringBitmap expected = RoaringBitmap.orNot(x1, x2, rangeEnd)
+            .toMutableRoaringBitmap();
+        MutableRoaringBitmap actual = ImmutableRoaringBitmap.orNot(x1.toMutableRoaringBitmap(),
+            x2.toMutableRoaringBitmap(), rangeEnd);
+        assertEquals(expected, actual);
+        assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+        MutableRoaringBitmap inPlace = x1.toMutableRoaringBitmap();
+        inPlace.orNot(x2.toMutableRoaringBitmap(), rangeEnd);
+        assertEquals(expected, inPlace);
+        assertEquals(expected.getLongCardinality(), inPlace.getLongCardinality());
+      }
+    }
+  }
 }
@@ -0,0 +1,403 @@
+package org.roaringbitmap.longlong;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+public class TestRoaring64Bitmap {
+
+  // values spread over many 48-bit keys sharing only some of their bytes, so that every kind of
+  // tree node gets created
+  private static long[] randomValues(Random random, int count) {
+    long[] values = new long[count];
+    for (int i = 0; i < count; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          values[i] = random.nextInt(1 << 20);
+          break;
+        case 1:
+          values[i] = ((long) random.nextInt(300) << 24) | random.nextInt(1 << 17);
+          break;
+        case 2:
+          values[i] = -1L - random.nextInt(1 << 18);
+          break;
+        default:
+          values[i] = random.nextLong();
+      }
+    }
+    return values;
+  }
+
+  private static Roaring64NavigableMap reference(long[] values) {
+    Roaring64NavigableMap map = new Roaring64NavigableMap();
+    map.add(values);
+    return map;
+  }
+
+  private static void assertSame(Roaring64NavigableMap expected, Roaring64Bitmap actual) {
+    Assert.assertEquals(expected.getLongCardinality(), actual.getLongCardinality());
+    Assert.assertArrayEquals(expected.toArray(), actual.toArray());
+  }
+
+  @Test
+  public void testEmpty() {
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertEquals(0, map.getLongCardinality());
+    Assert.assertFalse(map.contains(0));
+    Assert.assertFalse(map.getLongIterator().hasNext());
+    Assert.assertFalse(map.getReverseLongIterator().hasNext());
+    Assert.assertEquals(0, map.rankLong(Long.MAX_VALUE));
+    Assert.assertEquals(0, map.toArray().length);
+    Assert.assertEquals("{}", map.toString());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testFirstEmpty() {
+    new Roaring64Bitmap().first();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSelectOutOfBounds() {
+    Roaring64Bitmap.bitmapOf(1, 2, 3).select(3);
+  }
+
+  @Test
+  public void testUnsignedOrder() {
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(-1L, Long.MIN_VALUE, Long.MAX_VALUE, 0, 1);
+    Assert.assertArrayEquals(new long[] {0, 1, Long.MAX_VALUE, Long.MIN_VALUE, -1L},
+        map.toArray());
+    Assert.assertEquals(0, map.first());
+    Assert.assertEquals(-1L, map.last());
+    Assert.assertEquals(Long.MIN_VALUE, map.select(3));
+    Assert.assertEquals(3, map.rankLong(Long.MAX_VALUE));
+    Assert.assertEquals(5, map.rankLong(-1L));
+    Assert.assertEquals("{0,1,9223372036854775807,9223372036854775808,18446744073709551615}",
+        map.toString());
+  }
+
+  @Test
+  public void testAddRemoveContains() {
+    Random random = new Random(1234);
+    long[] values = randomValues(random, 20000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    Roaring64NavigableMap expected = reference(values);
+    assertSame(expected, map);
+    for (long v : values) {
+      Assert.assertTrue(map.contains(v));
+    }
+    for (int i = 0; i < values.length; i += 2) {
+      map.removeLong(values[i]);
+      expected.removeLong(values[i]);
+    }
+    assertSame(expected, map);
+    for (int i = 0; i < values.length; i++) {
+      Assert.assertEquals(expected.contains(values[i]), map.contains(values[i]));
+    }
+    for (long v : values) {
+      map.removeLong(v);
+    }
+    Assert.assertTrue(map.isEmpty());
+    Assert.assertEquals(0, map.getLongCardinality());
+  }
+
+  @Test
+  public void testAddRange() {
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    Roaring64NavigableMap expected = new Roaring64NavigableMap();
+    long start = (1L << 32) - 70000;
+    map.add(start, start + 200000);
+    expected.add(start, start + 200000);
+    map.add(5, 10);
+    expected.add(5, 10);
+    assertSame(expected, map);
+
+    Roaring64Bitmap top = new Roaring64Bitmap();
+    top.add(-100000L, -1L);
+    top.addLong(-1L);
+    Assert.assertEquals(100000, top.getLongCardinality());
+    Assert.assertEquals(-100000L, top.first());
+    Assert.assertEquals(-1L, top.last());
+
+    Roaring64Bitmap empty = new Roaring64Bitmap();
+    empty.add(10, 10);
+    empty.add(-1L, 0L);
+    Assert.assertTrue(empty.isEmpty());
+  }
+
+  @Test
+  public void testIterators() {
+    Random random = new Random(42);
+    long[] values = randomValues(random, 10000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    long[] sorted = reference(values).toArray();
+
+    LongIterator reverse = map.getReverseLongIterator();
+    for (int i = sorted.length - 1; i >= 0; i--) {
+      Assert.assertTrue(reverse.hasNext());
+      Assert.assertEquals(sorted[i], reverse.next());
+    }
+    Assert.assertFalse(reverse.hasNext());
+
+    final long[] visited = new long[sorted.length];
+    map.forEach(new LongConsumer() {
+      int pos = 0;
+
+      @Override
+      public void accept(long value) {
+        visited[pos++] = value;
+      }
+    });
+    Assert.assertArrayEquals(sorted, visited);
+
+    PeekableLongIterator it = map.getLongIterator();
+    it.next();
+    PeekableLongIterator copy = it.clone();
+    Assert.assertEquals(sorted[1], it.next());
+    Assert.assertEquals(sorted[1], copy.peekNext());
+    Assert.assertEquals(sorted[1], copy.next());
+  }
+
+  @Test
+  public void testAdvanceIfNeeded() {
+    Random random = new Random(7);
+    long[] values = randomValues(random, 5000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    long[] sorted = reference(values).toArray();
+    for (int trial = 0; trial < 500; trial++) {
+      long target = random.nextBoolean() ? sorted[random.nextInt(sorted.length)] + random.nextInt(3)
+          : random.nextLong();
+      PeekableLongIterator it = map.getLongIterator();
+      int expectedIndex = 0;
+      if (random.nextBoolean()) {
+        it.next(); // start from the middle of a container
+        expectedIndex++;
+      }
+      it.advanceIfNeeded(target);
+      while (expectedIndex < sorted.length
+          && Long.compareUnsigned(sorted[expectedIndex], target) < 0) {
+        expectedIndex++;
+      }
+      if (expectedIndex == sorted.length) {
+        Assert.assertFalse(it.hasNext());
+      } else {
+        Assert.assertEquals(sorted[expectedIndex], it.peekNext());
+      }
+    }
+  }
+
+  @Test
+  public void testRankSelect() {
+    Random random = new Random(99);
+    long[] values = randomValues(random, 5000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    long[] sorted = reference(values).toArray();
+    for (int i = 0; i < sorted.length; i++) {
+      Assert.assertEquals(sorted[i], map.select(i));
+      Assert.assertEquals(i + 1, map.rankLong(sorted[i]));
+    }
+    Assert.assertEquals(sorted[0], map.first());
+    Assert.assertEquals(sorted[sorted.length - 1], map.last());
+  }
+
+  @Test
+  public void testRankSelectAfterModifications() {
+    Random random = new Random(123);
+    long[] values = randomValues(random, 5000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    Roaring64NavigableMap expected = reference(values);
+    for (int round = 0; round < 50; round++) {
+      long x = values[random.nextInt(values.length)] + random.nextInt(3) - 1;
+      switch (random.nextInt(4)) {
+        case 0:
+          map.removeLong(x);
+          expected.removeLong(x);
+          break;
+        case 1:
+          long start = x >>> 2;
+          map.add(start, start + 70000);
+          expected.add(start, start + 70000);
+          break;
+        case 2:
+          map.or(Roaring64Bitmap.bitmapOf(x, x + 1, -1L));
+          expected.add(x, x + 1, -1L);
+          break;
+        default:
+          map.addLong(x);
+          expected.addLong(x);
+      }
+      long cardinality = expected.getLongCardinality();
+      Assert.assertEquals(cardinality, map.getLongCardinality());
+      for (int i = 0; i < 20; i++) {
+        long j = Math.floorMod(random.nextLong(), cardinality);
+        long value = expected.select(j);
+        Assert.assertEquals(value, map.select(j));
+        Assert.assertEquals(j + 1, map.rankLong(value));
+        Assert.assertEquals(expected.rankLong(x), map.rankLong(x));
+      }
+    }
+    map.clear();
+    Assert.assertEquals(0, map.rankLong(1));
+    try {
+      map.select(0);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLogicalOperations() {
+    Random random = new Random(2019);
+    for (int trial = 0; trial < 20; trial++) {
+      long[] v1 = randomValues(random, 3000);
+      long[] v2 = Arrays.copyOf(v1, 6000);
+      long[] extra = randomValues(random, 4500);
+      System.arraycopy(extra, 0, v2, 1500, 4500);
+
+      Roaring64NavigableMap e1 = reference(v1);
+      Roaring64NavigableMap e2 = reference(v2);
+
+      Roaring64Bitmap or = Roaring64Bitmap.bitmapOf(v1);
+      or.or(Roaring64Bitmap.bitmapOf(v2));
+      Roaring64NavigableMap eor = reference(v1);
+      eor.or(e2);
+      assertSame(eor, or);
+
+      Roaring64Bitmap and = Roaring64Bitmap.bitmapOf(v1);
+      and.and(Roaring64Bitmap.bitmapOf(v2));
+      Roaring64NavigableMap eand = reference(v1);
+      eand.and(e2);
+      assertSame(eand, and);
+
+      Roaring64Bitmap xor = Roaring64Bitmap.bitmapOf(v1);
+      xor.xor(Roaring64Bitmap.bitmapOf(v2));
+      Roaring64NavigableMap exor = reference(v1);
+      exor.xor(e2);
+      assertSame(exor, xor);
+
+      Roaring64Bitmap andNot = Roaring64Bitmap.bitmapOf(v1);
+      andNot.andNot(Roaring64Bitmap.bitmapOf(v2));
+      Roaring64NavigableMap eandNot = reference(v1);
+      eandNot.andNot(e2);
+      assertSame(eandNot, andNot);
+      assertSame(e1, Roaring64Bitmap.bitmapOf(v1));
+    }
+  }
+
+  @Test
+  public void testLogicalOperationsWithItself() {
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(1, 1L << 40, -1L);
+    map.or(map);
+    map.and(map);
+    Assert.assertEquals(3, map.getLongCardinality());
+    map.xor(map);
+    Assert.assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testLimit() {
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    map.add(0, 100000);
+    map.addLong(1L << 50);
+    Roaring64Bitmap limited = (Roaring64Bitmap) map.limit(70000);
+    Assert.assertEquals(70000, limited.getLongCardinality());
+    Assert.assertEquals(69999, limited.last());
+    Assert.assertEquals(map, map.limit(200000));
+  }
+
+  @Test
+  public void testEqualsHashCode() {
+    Roaring64Bitmap a = Roaring64Bitmap.bitmapOf(1, 2, 1L << 33, -5L);
+    Roaring64Bitmap b = Roaring64Bitmap.bitmapOf(-5L, 1L << 33, 2, 1);
+    Assert.assertEquals(a, b);
+    Assert.assertEquals(a.hashCode(), b.hashCode());
+    b.removeLong(2);
+    Assert.assertNotEquals(a, b);
+  }
+
+  private static byte[] serialize(Roaring64Bitmap map) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    map.serialize(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    Random random = new Random(5);
+    long[] values = randomValues(random, 20000);
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(values);
+    map.add(1L << 36, (1L << 36) + 300000);
+    map.runOptimize();
+    byte[] bytes = serialize(map);
+    Assert.assertEquals(bytes.length, map.serializedSizeInBytes());
+
+    Roaring64Bitmap copy = new Roaring64Bitmap();
+    copy.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+    Assert.assertEquals(map, copy);
+
+    Roaring64Bitmap empty = new Roaring64Bitmap();
+    bytes = serialize(empty);
+    Assert.assertEquals(8, bytes.length);
+    Assert.assertEquals(8, empty.serializedSizeInBytes());
+  }
+
+  @Test
+  public void testPortableFormat() throws IOException {
+    RoaringBitmap low = RoaringBitmap.bitmapOf(1, 2, 100000, -1);
+    RoaringBitmap high = RoaringBitmap.bitmapOf(7);
+    high.add(1000L, 5000L);
+    high.runOptimize();
+
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    for (int v : low.toArray()) {
+      map.addLong(v & 0xFFFFFFFFL);
+    }
+    for (int v : high.toArray()) {
+      map.addLong((3L << 32) | v);
+    }
+    map.runOptimize();
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(expected);
+    out.writeLong(Long.reverseBytes(2));
+    out.writeInt(0);
+    low.serialize(out);
+    out.writeInt(Integer.reverseBytes(3));
+    high.serialize(out);
+    Assert.assertArrayEquals(expected.toByteArray(), serialize(map));
+  }
+
+  @Test
+  public void testExternalizable() throws IOException, ClassNotFoundException {
+    Roaring64Bitmap map = Roaring64Bitmap.bitmapOf(1, 1L << 40, -1L);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(map);
+    oos.close();
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Assert.assertEquals(map, ois.readObject());
+  }
+
+  @Test
+  public void testSizeInBytes() {
+    Roaring64Bitmap map = new Roaring64Bitmap();
+    long empty = map.getLongSizeInBytes();
+    for (int i = 0; i < 1000; i++) {
+      map.addLong((long) i << 20);
+    }
+    Assert.assertTrue(map.getLongSizeInBytes() > empty);
+    Assert.assertEquals(map.getLongSizeInBytes(), map.getSizeInBytes());
+  }
+}
@@ -12,7 +12,9 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.TreeSet;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -1447,4 +1449,143 @@ public class TestRoaring64NavigableMap {
     }
     Assert.assertTrue(map.isEmpty());
   }
+
+  private static void assertNavigation(Roaring64NavigableMap map, TreeSet<Long> expected,
+      long value) {
+    Long next = expected.ceiling(value);
+    if (next == null) {
+      try {
+        map.nextValue(value);
+        Assert.fail();
+      } catch (NoSuchElementException e) {
+        // expected
+      }
+    } else {
+      Assert.assertEquals(next.longValue(), map.nextValue(value));
+    }
+    Long previous = expected.floor(value);
+    if (previous == null) {
+      try {
+        map.previousValue(value);
+        Assert.fail();
+      } catch (NoSuchElementException e) {
+        // expected
+      }
+    } else {
+      Assert.assertEquals(previous.longValue(), map.previousValue(value));
+    }
+    // the largest long, in the order of the map
+    long last = expected.comparator().compare(-1L, 0L) > 0 ? -1L : Long.MAX_VALUE;
+    long nextAbsent = value;
+    while (expected.contains(nextAbsent) && nextAbsent != last) {
+      ++nextAbsent;
+    }
+    if (expected.contains(nextAbsent)) {
+      try {
+        map.nextAbsentValue(value);
+        Assert.fail();
+      } catch (NoSuchElementException e) {
+        // expected
+      }
+    } else {
+      Assert.assertEquals(nextAbsent, map.nextAbsentValue(value));
+    }
+    long previousAbsent = value;
+    while (expected.contains(previousAbsent) && previousAbsent != last + 1) {
+      --previousAbsent;
+    }
+    if (expected.contains(previousAbsent)) {
+      try {
+        map.previousAbsentValue(value);
+        Assert.fail();
+      } catch (NoSuchElementException e) {
+        // expected
+      }
+    } else {
+      Assert.assertEquals(previousAbsent, map.previousAbsentValue(value));
+    }
+  }
+
+  @Test
+  public void testNavigation() {
+    for (boolean signedLongs : new boolean[] {true, false}) {
+      TreeSet<Long> expected = new TreeSet<>(
+          signedLongs ? Comparator.<Long>naturalOrder() : Long::compareUnsigned);
+      Roaring64NavigableMap map = signedLongs ? newSignedBuffered() : newUnsignedHeap();
+      Random random = new Random(1234);
+      for (long high : new long[] {0, 1, 2, 7, Integer.MAX_VALUE, -1, Integer.MIN_VALUE}) {
+        long base = high << 32;
+        for (long low : new long[] {0, 1, 2, 3, 10, 0xFFFF, 0x10000, 0xFFFFFFFEL, 0xFFFFFFFFL,
+            random.nextInt() & 0xFFFFFFFFL}) {
+          expected.add(base + low);
+          map.addLong(base + low);
+        }
+      }
+      for (long value : new ArrayList<>(expected)) {
+        for (long candidate : new long[] {value - 1, value, value + 1}) {
+          assertNavigation(map, expected, candidate);
+        }
+      }
+      assertNavigation(map, expected, Long.MIN_VALUE);
+      assertNavigation(map, expected, Long.MAX_VALUE);
+      assertNavigation(map, expected, 5L << 32);
+    }
+  }
+
+  @Test
+  public void testNavigationOverFullHighs() {
+    Roaring64NavigableMap map = newUnsignedHeap();
+    map.add(5L << 32, 7L << 32);
+    map.addLong(8L << 32);
+    Assert.assertEquals(7L << 32, map.nextAbsentValue(5L << 32));
+    Assert.assertEquals((5L << 32) - 1, map.previousAbsentValue((7L << 32) - 1));
+    Assert.assertEquals((7L << 32) - 1, map.previousValue((8L << 32) - 1));
+    Assert.assertEquals(8L << 32, map.nextValue(7L << 32));
+    Assert.assertEquals((8L << 32) + 1, map.nextAbsentValue(8L << 32));
+
+    Roaring64NavigableMap signed = newSignedBuffered();
+    signed.add(Long.MIN_VALUE, Long.MIN_VALUE + (1L << 32));
+    try {
+      signed.previousAbsentValue(Long.MIN_VALUE + 10);
+      Assert.fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+    Assert.assertEquals(Long.MIN_VALUE + (1L << 32), signed.nextAbsentValue(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void testRangeCardinality() {
+    for (boolean signedLongs : new boolean[] {true, false}) {
+      TreeSet<Long> expected = new TreeSet<>(
+          signedLongs ? Comparator.<Long>naturalOrder() : Long::compareUnsigned);
+      Roaring64NavigableMap map = signedLongs ? newSignedBuffered() : newUnsignedHeap();
+      Random random = new Random(1234);
+      for (long high : new long[] {0, 1, 7, Integer.MAX_VALUE, -1, Integer.MIN_VALUE}) {
+        for (int i = 0; i < 100; ++i) {
+          long value = (high << 32) + (random.nextInt(1 << 20) & 0xFFFFFFFFL);
+          expected.add(value);
+          map.addLong(value);
+        }
+        expected.add((high << 32) | 0xFFFFFFFFL);
+        map.addLong((high << 32) | 0xFFFFFFFFL);
+      }
+      List<Long> values = new ArrayList<>(expected);
+      for (int i = 0; i < 200; ++i) {
+        long start = values.get(random.nextInt(values.size())) + random.nextInt(3) - 1;
+        long end = values.get(random.nextInt(values.size())) + random.nextInt(3) - 1;
+        long count = expected.comparator().compare(start, end) >= 0 ? 0
+            : expected.subSet(start, true, end, false).size();
+        Assert.assertEquals(count, map.rangeCardinality(start, end));
+      }
+      Assert.assertEquals(0, map.rangeCardinality(5, 5));
+      for (boolean cache : new boolean[] {true, false}) {
+        Roaring64NavigableMap copy = new Roaring64NavigableMap(signedLongs, cache);
+        copy.or(map);
+        for (long threshold : new long[] {-1, 0, values.size() - 1, values.size(), 1000000}) {
+          Assert.assertEquals(values.size() > threshold, copy.cardinalityExceeds(threshold));
+        }
+      }
+    }
+  }
 }